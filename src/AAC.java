@@ -1,4 +1,6 @@
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -6,8 +8,10 @@ import javax.swing.JPanel;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Font;
@@ -17,12 +21,14 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.speech.Central;
-import javax.speech.synthesis.Synthesizer;
-import javax.speech.synthesis.SynthesizerModeDesc;
 
 /**
  * Creates a GUI that has a grid of images that represent the communication
@@ -34,7 +40,7 @@ import javax.speech.synthesis.SynthesizerModeDesc;
 public class AAC implements ActionListener {
 
 	private JFrame frame;
-	private static Synthesizer synthesizer;
+	private static SpeechBackend speech;
 	private int startIndex;
 	private int endIndex;
 	private static final int NUM_ACROSS = 3;
@@ -42,21 +48,70 @@ public class AAC implements ActionListener {
 	private String[] images;
 	private AACPage page;
 	private Scanner input;
+	private ImageAtlas atlas;
+	private SwitchScanner scanner;
+	private NavigationGraph navigation;
+	private Preloader preloader;
+	private String shownLoc;
+	private static final int PRELOAD_COUNT = Integer.getInteger("aac.preload.count", 2);
+	// the number of pages built so far, so that icons read for an old page are dropped
+	private volatile int shown;
+	private final ExecutorService iconLoader = Executors.newSingleThreadExecutor((runnable) -> {
+		Thread thread = new Thread(runnable, "aac-icons");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 	/**
 	 * Creates the AAC display for the file provided
 	 *
 	 * @param filename the name of the file that contains the images and text that
-	 *                 will be in the AAC
+	 *                 will be in the AAC, or of a board manifest listing several
+	 *                 such files
 	 */
-	public AAC(String filename) throws FileNotFoundException {
+	public AAC(String filename) throws IOException {
 //		this.page = new AACCategory("test");
-		this.page = new AACMappings(filename);
+		if (Boolean.getBoolean("aac.offheap")) {
+			// very large boards: keep the vocabulary off the heap
+			this.page = new OffHeapBoard(filename);
+		} else {
+			AACMappings mappings = AACMappings.load(filename);
+			for (String conflict : mappings.getConflicts()) {
+				System.err.println(conflict);
+			}
+			trackUsage(mappings);
+			this.page = mappings;
+			// show a text layer from the start when run with -Daac.locale=<language tag>
+			String tag = System.getProperty("aac.locale");
+			if (tag != null) {
+				setLocale(mappings, Locale.forLanguageTag(tag));
+			}
+			// after the locale, so that the log starts in it
+			record(mappings, filename);
+			if (mappings.getLocale() == null) {
+				// setLocale warms the layer it switches to; warm the board's own text otherwise
+				warmUp(mappings);
+			}
+		}
 		this.images = this.page.getImageLocs();
 		this.startIndex = 0;
 		this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		// atlases go in the user's cache directory, or in the one named by -Daac.atlas.dir;
+		// at most -Daac.atlas.mb megabytes of icons (64 by default) stay loaded
+		String atlasDir = System.getProperty("aac.atlas.dir");
+		this.atlas = new ImageAtlas(
+				(atlasDir == null) ? ImageAtlas.defaultDir() : new File(atlasDir),
+				Integer.getInteger("aac.cellSize", ImageAtlas.DEFAULT_CELL_SIZE),
+				Long.getLong("aac.atlas.mb", ImageAtlas.DEFAULT_MAX_BYTES >> 20) << 20);
+		if (Boolean.getBoolean("aac.preload") && this.page instanceof AACMappings) {
+			startPreloading();
+		}
 		frame = new JFrame();
 		frame.setPreferredSize(new Dimension(500, 500));
+		if (Boolean.getBoolean("aac.scan")) {
+			// single-switch users: scan the buttons, stepping every -Daac.scan.millis
+			this.scanner = new SwitchScanner(frame, Long.getLong("aac.scan.millis", 1000));
+		}
 		loadImages(NUM_ACROSS, NUM_DOWN);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.pack();
@@ -64,6 +119,101 @@ public class AAC implements ActionListener {
 		input = new Scanner(System.in);
 	}
 
+	/**
+	 * Shows the text of a locale and speaks it, with the voice named by
+	 * -Daac.voice.<language tag> if set. The images and the atlases stay as they are.
+	 *
+	 * @param mappings the board
+	 * @param locale   the locale, or null for the board's own (US English) text
+	 */
+	private static void setLocale(AACMappings mappings, Locale locale) {
+		try {
+			mappings.setLocale(locale);
+		} catch (FileNotFoundException e) {
+			System.err.println("No text for " + locale.toLanguageTag());
+			return;
+		}
+		if (speech != null) {
+			Locale spoken = (locale == null) ? Locale.US : locale;
+			speech.setLocaleVoice(spoken, System.getProperty("aac.voice." + spoken.toLanguageTag()));
+			speech.setLocale(spoken);
+		}
+		warmUp(mappings);
+	}
+
+	/**
+	 * Renders every phrase on the board, in the text and voices in use, in the background so
+	 * that taps can skip synthesis
+	 *
+	 * @param mappings the board
+	 */
+	private static void warmUp(AACMappings mappings) {
+		if (speech == null) {
+			return;
+		}
+		for (String categoryLoc : mappings.getCategoryLocs()) {
+			speech.warmUp(speech.voiceFor(categoryLoc), mappings.getTextsAt(categoryLoc));
+		}
+	}
+
+	/**
+	 * Logs every tap to the file named by -Daac.record, if set, for replaying with
+	 * TapReplay. The log is written when the program exits.
+	 *
+	 * @param mappings the board to log
+	 * @param filename the name of the board's file
+	 */
+	private static void record(AACMappings mappings, String filename) {
+		String logFile = System.getProperty("aac.record");
+		if (logFile == null) {
+			return;
+		}
+		try {
+			TapRecorder recorder = new TapRecorder(new File(logFile), filename,
+					mappings.getLocale());
+			mappings.record(recorder);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					recorder.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Records selections in the file named by -Daac.usage.file, if set, and lists the
+	 * most used images first when run with -Daac.usage.rank=true. The counts are
+	 * written every -Daac.usage.period seconds and when the program exits.
+	 *
+	 * @param mappings the board to track
+	 */
+	private static void trackUsage(AACMappings mappings) {
+		String usageFile = System.getProperty("aac.usage.file");
+		if (usageFile == null) {
+			return;
+		}
+		try {
+			UsageStore usage = new UsageStore(new File(usageFile),
+					Long.getLong("aac.usage.halfLife", UsageStore.DEFAULT_HALF_LIFE));
+			mappings.trackUsage(usage);
+			mappings.rankByUsage(Boolean.getBoolean("aac.usage.rank"));
+			usage.startFlushing(Long.getLong("aac.usage.period", 30));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					usage.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Loads the images in the screen in a width by length grid
 	 *
@@ -71,6 +221,7 @@ public class AAC implements ActionListener {
 	 * @param length the number of images down to display
 	 */
 	public void loadImages(int width, int length) {
+		long renderStart = AACMetrics.start();
 		Container pane = frame.getContentPane();
 		pane.removeAll();
 
@@ -89,7 +240,9 @@ public class AAC implements ActionListener {
 		topPanel.add(cat, c);
 		JPanel panel1 = new JPanel();
 		panel1.setLayout(new GridLayout(1, 3));
-		if (this.page instanceof AACMappings) {
+		// the rows of buttons, top to bottom, for the scanner if there is one
+		List<JButton[]> rows = (scanner == null) ? null : new ArrayList<JButton[]>();
+		if (this.page instanceof AACBoard) {
 			JButton home = new JButton(new ImageIcon("img/home.png"));
 			home.setActionCommand("");
 			home.addActionListener(this);
@@ -103,37 +256,87 @@ public class AAC implements ActionListener {
 		add.setActionCommand("add");
 		add.addActionListener(this);
 		panel1.add(add);
+		if (this.page instanceof AACMappings) {
+			AACMappings mappings = (AACMappings) this.page;
+			JButton undo = new JButton("Undo");
+			undo.setActionCommand("undo");
+			undo.addActionListener(this);
+			undo.setEnabled(mappings.canUndo());
+			panel1.add(undo);
+			JButton redo = new JButton("Redo");
+			redo.setActionCommand("redo");
+			redo.addActionListener(this);
+			redo.setEnabled(mappings.canRedo());
+			panel1.add(redo);
+			// mark unsaved edits in the title bar
+			frame.setTitle(mappings.isModified() ? "AAC *" : "AAC");
+			if (mappings.getLocales().length > 0) {
+				Locale locale = mappings.getLocale();
+				JButton language = new JButton(locale == null ? "Default" : locale.toLanguageTag());
+				language.setActionCommand("language");
+				language.addActionListener(this);
+				panel1.add(language);
+			}
+		}
 		c.gridx = 0;
 		c.gridy = 1;
 		topPanel.add(panel1, c);
+		if (rows != null) {
+			rows.add(buttonsOf(panel1));
+		}
 		pane.add(topPanel, BorderLayout.PAGE_START);
 
 		// if on page 2+, add back button
+		List<JButton> arrows = (rows == null) ? null : new ArrayList<JButton>();
 		if (startIndex > 0) {
 			JButton backArrow = new JButton(new ImageIcon("img/back-to.png"));
 			backArrow.setActionCommand("back");
 			backArrow.addActionListener(this);
 			pane.add(backArrow, BorderLayout.LINE_START);
+			if (arrows != null) {
+				arrows.add(backArrow);
+			}
 		}
 
-		// add images
+		// add images, all read from the category's atlas at once; the atlas is found by the
+		// category's image, so that it is the same in every locale
+		String atlasKey = categoryLoc();
+		int shown = ++this.shown;
+		// icons not yet loaded are read in the background and filled in when ready, so that
+		// no reading or decoding happens on the event thread
+		Map<String, ImageIcon> icons = atlas.cached(atlasKey, this.images);
+		List<JButton> waiting = new ArrayList<JButton>();
 		JPanel panel = new JPanel();
 		panel.setLayout(new GridLayout(width, length));
 		int currImage = startIndex;
 		for (int y = 0; y < length; y++) {
+			List<JButton> row = (rows == null) ? null : new ArrayList<JButton>();
 			for (int x = 0; x < width; x++) {
 				if (currImage < this.images.length) {
-					ImageIcon img = new ImageIcon(images[currImage]);
+					ImageIcon img = (icons == null) ? null : icons.get(images[currImage]);
 					JButton button = new JButton(img);
+					if (img == null) {
+						waiting.add(button);
+					}
 					button.setActionCommand(images[currImage]);
 					button.addActionListener(this);
 					panel.add(button);
+					if (row != null) {
+						row.add(button);
+					}
 					currImage++;
 
 				}
 			}
+			if (rows != null) {
+				rows.add(row.toArray(new JButton[0]));
+			}
 		}
 		pane.add(panel, BorderLayout.CENTER);
+		if (!waiting.isEmpty()) {
+			String[] imageLocs = this.images;
+			iconLoader.execute(() -> loadIcons(shown, atlasKey, imageLocs, waiting));
+		}
 
 		// if have later pages, add next button
 		if (endIndex < images.length) {
@@ -141,34 +344,180 @@ public class AAC implements ActionListener {
 			nextArrow.setActionCommand("next");
 			nextArrow.addActionListener(this);
 			pane.add(nextArrow, BorderLayout.LINE_END);
+			if (arrows != null) {
+				arrows.add(nextArrow);
+			}
 		}
 
 		JLabel ack = new JLabel("All provided icons are from icons8: icons8.com");
 		pane.add(ack, BorderLayout.PAGE_END);
 		pane.revalidate();
 		pane.requestFocusInWindow();
+		if (rows != null) {
+			rows.add(arrows.toArray(new JButton[0]));
+			scanner.setRows(rows.toArray(new JButton[0][]));
+		}
+		if (preloader != null && !atlasKey.equals(shownLoc)) {
+			if (shownLoc != null) {
+				navigation.record(shownLoc, atlasKey);
+			}
+			shownLoc = atlasKey;
+			preloadAfter(atlasKey);
+		}
+		AACMetrics.stop(AACMetrics.Stage.RENDER, renderStart);
 	}
 
-	public static void main(String[] args) throws FileNotFoundException {
+	/**
+	 * Reads the icons of buttons shown without them and gives them their icons on the event
+	 * thread, unless the page has been rebuilt since. Runs on the icon loader's thread.
+	 *
+	 * @param shown     the number of the page the buttons are on, from this.shown
+	 * @param atlasKey  the key of the category's atlas
+	 * @param imageLocs the locations of the category's images
+	 * @param buttons   the buttons without icons, each named by its image's location
+	 */
+	private void loadIcons(int shown, String atlasKey, String[] imageLocs,
+			List<JButton> buttons) {
+		if (shown != this.shown) {
+			return;
+		}
+		if (preloader != null) {
+			// the icons may be on their way already
+			preloader.await(atlasKey);
+		}
+		Map<String, ImageIcon> icons = atlas.iconsFor(atlasKey, imageLocs);
+		ImageIcon[] found = new ImageIcon[buttons.size()];
+		for (int i = 0; i < found.length; i++) {
+			String imageLoc = buttons.get(i).getActionCommand();
+			found[i] = icons.get(imageLoc);
+			if (found[i] == null) {
+				long decodeStart = AACMetrics.start();
+				found[i] = new ImageIcon(imageLoc);
+				AACMetrics.stop(AACMetrics.Stage.IMAGE_DECODE, decodeStart);
+			}
+		}
+		SwingUtilities.invokeLater(() -> {
+			if (shown == this.shown) {
+				for (int i = 0; i < found.length; i++) {
+					buttons.get(i).setIcon(found[i]);
+				}
+				frame.getContentPane().revalidate();
+			}
+		});
+	}
 
+	/**
+	 * Loads the categories the user is likely to go to next before they are tapped, when
+	 * run with -Daac.preload=true. The guesses come from the moves the user has made, kept
+	 * in the file named by -Daac.nav.file if set. At most -Daac.preload.mb megabytes of
+	 * icons (32 by default) are held for categories not yet entered.
+	 */
+	private void startPreloading() {
+		String navFile = System.getProperty("aac.nav.file");
 		try {
-			// Set property as Kevin Dictionary
-			System.setProperty("freetts.voices", "com.sun.speech.freetts.en.us" + ".cmu_us_kal.KevinVoiceDirectory");
+			this.navigation = (navFile == null) ? new NavigationGraph()
+					: NavigationGraph.load(new File(navFile));
+		} catch (IOException e) {
+			e.printStackTrace();
+			this.navigation = new NavigationGraph();
+		}
+		this.preloader = new Preloader(atlas, speech, Long.getLong("aac.preload.mb", 32) << 20,
+				Integer.getInteger("aac.preload.threads", 2));
+		if (navFile != null) {
+			NavigationGraph graph = this.navigation;
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					graph.save(new File(navFile));
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}));
+		}
+	}
 
-			// Register Engine
-			Central.registerEngineCentral("com.sun.speech.freetts" + ".jsapi.FreeTTSEngineCentral");
-			synthesizer = Central.createSynthesizer(new SynthesizerModeDesc(Locale.US));
+	/**
+	 * Starts loading the categories most likely to follow one
+	 *
+	 * @param categoryLoc the location of the category the user is in ("" for home)
+	 */
+	private void preloadAfter(String categoryLoc) {
+		AACMappings mappings = (AACMappings) this.page;
+		List<Preloader.Request> requests = new ArrayList<Preloader.Request>();
+		for (String next : navigation.likely(categoryLoc, PRELOAD_COUNT)) {
+			AACCategory category = mappings.categoryAt(next);
+			if (category != null) {
+				requests.add(new Preloader.Request(next, category.getImageLocs(),
+						(speech == null) ? null : speech.voiceFor(next),
+						(speech == null) ? null : mappings.getTextsAt(next)));
+			}
+		}
+		preloader.expect(categoryLoc, requests.toArray(new Preloader.Request[0]));
+	}
 
-			// Allocate synthesizer
-			synthesizer.allocate();
+	/**
+	 * Gets the location of the current category's image, which names it in every locale
+	 *
+	 * @return the location, or "" on the home page
+	 */
+	private String categoryLoc() {
+		return (this.page instanceof AACMappings)
+				? ((AACMappings) this.page).getCategoryLoc()
+				: this.page.getCategory();
+	}
 
-			// Resume Synthesizer
-			synthesizer.resume();
+	/**
+	 * Lists the buttons in a panel
+	 *
+	 * @param panel the panel
+	 * @return its buttons, in order
+	 */
+	private static JButton[] buttonsOf(JPanel panel) {
+		List<JButton> buttons = new ArrayList<JButton>();
+		for (Component component : panel.getComponents()) {
+			if (component instanceof JButton) {
+				buttons.add((JButton) component);
+			}
+		}
+		return buttons.toArray(new JButton[0]);
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		try {
+			// Choose the speech backend (-Daac.speech=direct skips JSAPI) and pre-load the default voice
+			if ("direct".equals(System.getProperty("aac.speech"))) {
+				speech = new DirectSpeech();
+			} else {
+				// JSAPI speaks each phrase afresh: the phrase audio cache and the warm-up of
+				// the phrases a category is about to need come only with -Daac.speech=direct
+				SynthesizerPool.registerEngine();
+				speech = new SynthesizerPool(Integer.getInteger("aac.voice.synthesizers", 1),
+						Long.getLong("aac.voice.idleMillis", 5 * 60 * 1000));
+			}
+			speech.setDefaultVoice(System.getProperty("aac.voice", SpeechBackend.DEFAULT_VOICE));
+			// -Daac.voice.category.<category image>=<voice> gives a category its own voice
+			speech.setCategoryVoices(System.getProperties());
+			for (String voice : speech.voices()) {
+				speech.prewarm(voice);
+			}
 
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		AAC aac = new AAC("AACMappings.txt");
+
+		// Expose metrics when run with -Daac.metrics=true
+		if (AACMetrics.enabled) {
+			try {
+				AACMetrics.registerMBean();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			String metricsFile = System.getProperty("aac.metrics.file");
+			if (metricsFile != null) {
+				AACMetrics.startExport(metricsFile, Long.getLong("aac.metrics.period", 10));
+			}
+		}
+		AAC aac = new AAC(System.getProperty("aac.board", "AACMappings.txt"));
 	}
 
 	/**
@@ -178,23 +527,55 @@ public class AAC implements ActionListener {
 	 */
 	public void actionPerformed(ActionEvent e) {
 		String actionCommand = e.getActionCommand();
+		long actionStart = AACMetrics.start();
 		if (actionCommand.equals("back")) {
 			this.startIndex -= NUM_ACROSS * NUM_DOWN;
 			this.endIndex -= NUM_ACROSS * NUM_DOWN;
+			AACMetrics.stop(AACMetrics.Stage.NAVIGATION, actionStart);
 		} else if (actionCommand.equals("next")) {
 			this.startIndex += NUM_ACROSS * NUM_DOWN;
 			this.endIndex = Math.min(endIndex + NUM_ACROSS * NUM_DOWN, this.images.length);
-		} else if (actionCommand.equals("save") && this.page instanceof AACMappings) {
-			((AACMappings) this.page).writeToFile("AACMappingsNew.txt");
+			AACMetrics.stop(AACMetrics.Stage.NAVIGATION, actionStart);
+		} else if (actionCommand.equals("save")) {
+			if (this.page instanceof AACBoard) {
+				try {
+					((AACBoard) this.page).writeToFile("AACMappingsNew.txt");
+				} catch (IOException e1) {
+					System.err.println("Could not save: " + e1.getMessage());
+				}
+			}
 			this.images = this.page.getImageLocs();
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		} else if ((actionCommand.equals("undo") || actionCommand.equals("redo"))
+				&& this.page instanceof AACMappings) {
+			AACMappings mappings = (AACMappings) this.page;
+			if (actionCommand.equals("undo")) {
+				mappings.undo();
+			} else {
+				mappings.redo();
+			}
+			this.images = this.page.getImageLocs();
+			this.startIndex = 0;
+			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		} else if (actionCommand.equals("language") && this.page instanceof AACMappings) {
+			// cycle through the board's own text and each locale that has a text layer
+			AACMappings mappings = (AACMappings) this.page;
+			Locale[] locales = mappings.getLocales();
+			int next = 0;
+			for (int i = 0; i < locales.length; i++) {
+				if (locales[i].equals(mappings.getLocale())) {
+					next = i + 1;
+				}
+			}
+			setLocale(mappings, next < locales.length ? locales[next] : null);
 		} else if (actionCommand.equals("add")) {
 			JFileChooser chooser = new JFileChooser();
 			int returnVal = chooser.showOpenDialog(frame);
 			String imageLoc = "";
 			if (returnVal == JFileChooser.APPROVE_OPTION) {
-				imageLoc = chooser.getSelectedFile().getPath();
+				// Store the image the way the mappings file names it, not as an absolute path
+				imageLoc = ImageLocs.canonical(chooser.getSelectedFile().getPath());
 				String result = (String) JOptionPane.showInputDialog(frame, "What is the text?", "AAC Add",
 						JOptionPane.PLAIN_MESSAGE, null, null, "");
 				if (result != null && result.length() > 0) {
@@ -204,24 +585,29 @@ public class AAC implements ActionListener {
 			this.images = this.page.getImageLocs();
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
-		} else if (actionCommand.equals("") && this.page instanceof AACMappings) {
-			((AACMappings) this.page).reset();
+		} else if (actionCommand.equals("") && this.page instanceof AACBoard) {
+			((AACBoard) this.page).reset();
 			this.images = this.page.getImageLocs();
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+			AACMetrics.stop(AACMetrics.Stage.NAVIGATION, actionStart);
 		} else {
 			if (this.page.getCategory().equals("")) {
 				this.page.select(actionCommand);
+				AACMetrics.stop(AACMetrics.Stage.SELECT, actionStart);
+				// time entering the category apart from the select, as for the other moves
+				long navigationStart = AACMetrics.start();
 				this.images = this.page.getImageLocs();
 				this.startIndex = 0;
 				this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+				AACMetrics.stop(AACMetrics.Stage.NAVIGATION, navigationStart);
 			} else {
-				try {
-					String toSpeak = this.page.select(actionCommand);
-					synthesizer.speakPlainText(toSpeak, null);
-					synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
-				} catch (Exception e1) {
-					e1.printStackTrace();
+				String toSpeak = this.page.select(actionCommand);
+				AACMetrics.stop(AACMetrics.Stage.SELECT, actionStart);
+				if (speech != null) {
+					// spoken on the backend's own thread, so that the screen and the
+					// scanner keep going while the phrase is heard
+					speech.speakLater(speech.voiceFor(categoryLoc()), toSpeak);
 				}
 			}
 		}
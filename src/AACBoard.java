@@ -0,0 +1,25 @@
+import java.io.IOException;
+
+/**
+ * A whole board: a home page of categories, each with its own page of
+ * items, of which one page is shown at a time. The board can go back
+ * to its home page and be written to a mappings file.
+ */
+public interface AACBoard extends AACPage {
+
+	/**
+	 * Goes back to the home page, whose images are the categories
+	 */
+	public void reset();
+
+	/**
+	 * Writes the board to a mappings file: one line per category, with
+	 * the location of its image and its name, each followed by one line
+	 * per item that starts with > and has the location of the item's
+	 * image and its text
+	 * @param filename the name of the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeToFile(String filename) throws IOException;
+
+}
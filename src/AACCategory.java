@@ -1,10 +1,13 @@
 import edu.grinnell.csc207.util.AssociativeArray;
 import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.PairEncoder;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-import edu.grinnell.csc207.util.AssociativeArray;
-
 /**
  * Represents the mappings for a single category of items that should be displayed
  *
@@ -12,9 +15,43 @@ import edu.grinnell.csc207.util.AssociativeArray;
  * @author Grant Sackmann
  */
 public class AACCategory implements AACPage {
+  /**
+   * Writes an item as a line of the mappings file: ">imageLoc text"
+   */
+  static final PairEncoder<String, String> ITEM_ENCODER = (imageLoc, text, out) -> {
+    out.append('>').append(imageLoc).append(' ').append(text).append(System.lineSeparator());
+  };
+
+  /**
+   * Whether boards index image locations with hardened maps, so that users who can add items
+   * (as on a shared server) cannot slow a board down with locations crafted to collide. Set
+   * with -Daac.hardened=true.
+   */
+  static final boolean HARDENED = Boolean.getBoolean("aac.hardened");
+
   String catName;
+
+  /** The items while the category is thawed, or null while it is frozen */
   AssociativeArray<String, String> aa;
 
+  /** The image locations in insertion order while the category is frozen, or null */
+  String[] frozenLocs;
+
+  /** The texts while the category is frozen, parallel to frozenLocs, or null */
+  String[] frozenTexts;
+
+  /**
+   * An open-addressed hash table of one plus the position of each image in frozenLocs, with
+   * 0 for an empty slot, or null
+   */
+  int[] slots;
+
+  /** Ranks the items by how often they are used, or null to keep them in insertion order */
+  UsageStore usage;
+
+  /** The image locations, most used first, or null if they have not been ranked yet */
+  String[] ranked;
+
   /**
    * Creates a new empty category with the given name
    *
@@ -22,9 +59,20 @@ public class AACCategory implements AACPage {
    */
   public AACCategory(String name) {
     this.catName = name;
-    this.aa = new AssociativeArray<>();
+    this.aa = newMap(AssociativeArray.DEFAULT_CAPACITY);
   } // AACCategory
 
+  /**
+   * Creates an empty associative array keyed by image location, hardened if HARDENED is set
+   *
+   * @param capacity the number of pairs it can hold before expanding
+   * @return the array
+   */
+  static <V> AssociativeArray<String, V> newMap(int capacity) {
+    return new AssociativeArray<String, V>(capacity, AssociativeArray.DEFAULT_GROWTH_FACTOR,
+        HARDENED);
+  } // newMap(int)
+
   /**
    * Adds the image location, text pairing to the category
    *
@@ -32,13 +80,80 @@ public class AACCategory implements AACPage {
    * @param text     the text that image should speak
    */
   public void addItem(String imageLoc, String text) {
+    thaw();
     try {
       aa.set(imageLoc, text);
+      ranked = null;
     } catch (Exception e) {
 //		do nothing
     } // try-catch
   } // addItem()
 
+  /**
+   * Adds all of the image location, text pairings to the category at once. Behaves like calling
+   * addItem on each pair in order, but sizes the category once rather than growing per item.
+   *
+   * @param imageLocs the locations of the images
+   * @param texts     the text each image should speak, parallel to imageLocs
+   */
+  public void addItems(String[] imageLocs, String[] texts) {
+    thaw();
+    try {
+      aa.putAll(imageLocs, texts);
+      ranked = null;
+    } catch (Exception e) {
+//		do nothing
+    } // try-catch
+  } // addItems()
+
+  /**
+   * Removes an item from the category. The item added last takes its place.
+   *
+   * @param imageLoc the location of the image
+   * @throws NoSuchElementException if the image is not in the category
+   */
+  public void removeItem(String imageLoc) {
+    // Check before thawing, so that a failed edit leaves a frozen category frozen
+    if (!hasImage(imageLoc)) {
+      throw new NoSuchElementException(imageLoc);
+    } // if
+    thaw();
+    aa.remove(imageLoc);
+    ranked = null;
+  } // removeItem()
+
+  /**
+   * Changes the text of an item without changing its place
+   *
+   * @param imageLoc the location of the image
+   * @param text     the new text
+   * @throws NoSuchElementException if the image is not in the category
+   */
+  public void renameItem(String imageLoc, String text) {
+    if (!hasImage(imageLoc)) {
+      throw new NoSuchElementException(imageLoc);
+    } // if
+    thaw();
+    try {
+      aa.set(imageLoc, text);
+    } catch (Exception e) {
+//		do nothing
+    } // try-catch
+  } // renameItem()
+
+  /**
+   * Gets the image of the item added last, which is the one that moves when another item is
+   * removed
+   *
+   * @return the location of the image, or null if the category is empty
+   */
+  String lastImageLoc() {
+    if (aa == null) {
+      return (frozenLocs.length == 0) ? null : frozenLocs[frozenLocs.length - 1];
+    } // if
+    return (aa.size() == 0) ? null : aa.keyAt(aa.size() - 1);
+  } // lastImageLoc()
+
   /**
    * Returns an array of all the images in the category
    *
@@ -54,6 +169,12 @@ public class AACCategory implements AACPage {
 //    }
 //  } // getImageLocs()
   public String[] getImageLocs() {
+    if (usage != null) {
+      return ranked().clone();
+    } // if
+    if (aa == null) {
+      return frozenLocs.clone();
+    } // if
     String[] imageLocs = new String[aa.size()];
     Iterator<KVPair<String, String>> itemIterator = aa.iterator();
     int index = 0;
@@ -64,6 +185,61 @@ public class AACCategory implements AACPage {
    return imageLocs;
   } // getImageLocs()
 
+  /**
+   * Orders the items by how often they have been used, most used first, or goes back to
+   * insertion order
+   *
+   * @param usage the counts to rank by, or null for insertion order
+   */
+  public void rankBy(UsageStore usage) {
+    this.usage = usage;
+    this.ranked = null;
+  } // rankBy(UsageStore)
+
+  /**
+   * Moves an item that has just been used up the ranking, past every item now used less.
+   * The rest of the ranking is unchanged, since the other counts have not changed relative
+   * to each other.
+   *
+   * @param imageLoc the location of the image used
+   */
+  void promote(String imageLoc) {
+    if (ranked == null) {
+      return;
+    } // if
+    int index = 0;
+    while (index < ranked.length && !ranked[index].equals(imageLoc)) {
+      index++;
+    } // while
+    if (index == ranked.length) {
+      return;
+    } // if
+    double score = usage.score(imageLoc);
+    while (index > 0 && usage.score(ranked[index - 1]) < score) {
+      ranked[index] = ranked[index - 1];
+      index--;
+    } // while
+    ranked[index] = imageLoc;
+  } // promote(String)
+
+  /**
+   * Returns an array of the text of every item in the category, in the order they were
+   * added
+   *
+   * @return the array of texts; if there are no images, it should return an empty array
+   */
+  public String[] getTexts() {
+    if (aa == null) {
+      return frozenTexts.clone();
+    } // if
+    String[] texts = new String[aa.size()];
+    int index = 0;
+    for (KVPair<String, String> item : aa) {
+      texts[index++] = item.getValue();
+    } // for
+    return texts;
+  } // getTexts()
+
   /**
    * Returns the name of the category
    *
@@ -81,6 +257,13 @@ public class AACCategory implements AACPage {
    * @throws NoSuchElementException if the image provided is not in the current category
    */
   public String select(String imageLoc) {
+    if (aa == null) {
+      int position = frozenPosition(imageLoc);
+      if (position < 0) {
+        throw new NoSuchElementException(imageLoc);
+      } // if
+      return frozenTexts[position];
+    } // if
     try{
       return aa.get(imageLoc);
     } catch (Exception e) {
@@ -96,10 +279,176 @@ public class AACCategory implements AACPage {
    * @return true if it is in the category, false otherwise
    */
   public boolean hasImage(String imageLoc) {
-      return aa.hasKey(imageLoc);
+      return (aa == null) ? frozenPosition(imageLoc) >= 0 : aa.hasKey(imageLoc);
   } // hasImage()
 
+  /**
+   * Writes every item in the category to out, one mappings-file line per item
+   *
+   * @param out where to write the items
+   * @throws IOException if out cannot be written
+   */
+  public void writeItems(Appendable out) throws IOException {
+    if (aa == null) {
+      for (int i = 0; i < frozenLocs.length; i++) {
+        ITEM_ENCODER.encode(frozenLocs[i], frozenTexts[i], out);
+      } // for
+      return;
+    } // if
+    aa.writeTo(out, ITEM_ENCODER);
+  } // writeItems()
+
   public int size(){
-    return aa.size();
+    return (aa == null) ? frozenLocs.length : aa.size();
   }
+
+  /**
+   * Gets the items in insertion order, for reading only
+   *
+   * @return the items
+   */
+  Iterable<KVPair<String, String>> items() {
+    if (aa != null) {
+      return aa;
+    } // if
+    String[] locs = frozenLocs;
+    String[] texts = frozenTexts;
+    return () -> new Iterator<KVPair<String, String>>() {
+      int next = 0;
+
+      public boolean hasNext() {
+        return next < locs.length;
+      } // hasNext()
+
+      public KVPair<String, String> next() {
+        if (next >= locs.length) {
+          throw new NoSuchElementException();
+        } // if
+        KVPair<String, String> item = new KVPair<String, String>(locs[next], texts[next]);
+        next++;
+        return item;
+      } // next()
+    };
+  } // items()
+
+  /**
+   * Packs the items into flat arrays for a category that will mostly be read, such as one
+   * just loaded. Listing and writing the items then scans two arrays in order rather than
+   * following a reference to a pair for each item, and the pairs and their index no longer
+   * take up memory. The next change to the category thaws it back into an associative array.
+   * <p>
+   * Hardened boards are never frozen, since the frozen lookup table uses String.hashCode.
+   */
+  void freeze() {
+    if (aa == null || HARDENED) {
+      return;
+    } // if
+    int size = aa.size();
+    String[] locs = new String[size];
+    String[] texts = new String[size];
+    int index = 0;
+    for (KVPair<String, String> item : aa) {
+      locs[index] = item.getKey();
+      texts[index] = item.getValue();
+      index++;
+    } // for
+    // At most half full, so probe sequences stay short
+    int[] table = new int[Math.max(2, Integer.highestOneBit(Math.max(size, 1)) * 4)];
+    for (int i = 0; i < size; i++) {
+      int slot = slotOf(locs[i], table.length);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & (table.length - 1);
+      } // while
+      table[slot] = i + 1;
+    } // for
+    slots = table;
+    frozenLocs = locs;
+    frozenTexts = texts;
+    aa = null;
+  } // freeze()
+
+  /**
+   * Determines whether the category is frozen
+   *
+   * @return true if its items are in flat arrays, false if they are in an associative array
+   */
+  boolean isFrozen() {
+    return aa == null;
+  } // isFrozen()
+
+  /**
+   * Unpacks a frozen category so that it can be changed; does nothing if it is not frozen
+   */
+  void thaw() {
+    if (aa != null) {
+      return;
+    } // if
+    AssociativeArray<String, String> items =
+        newMap(Math.max(frozenLocs.length, AssociativeArray.DEFAULT_CAPACITY));
+    try {
+      items.putAll(frozenLocs, frozenTexts);
+    } catch (NullKeyException e) {
+      // A frozen category has no null locations
+    } // try-catch
+    aa = items;
+    frozenLocs = null;
+    frozenTexts = null;
+    slots = null;
+  } // thaw()
+
+  /**
+   * Finds an image in a frozen category
+   *
+   * @param imageLoc the location of the image
+   * @return its position in frozenLocs, or -1 if it is not in the category
+   */
+  int frozenPosition(String imageLoc) {
+    if (imageLoc == null) {
+      return -1;
+    } // if
+    for (int slot = slotOf(imageLoc, slots.length); slots[slot] != 0;
+        slot = (slot + 1) & (slots.length - 1)) {
+      String loc = frozenLocs[slots[slot] - 1];
+      if (loc == imageLoc || loc.equals(imageLoc)) {
+        return slots[slot] - 1;
+      } // if
+    } // for
+    return -1;
+  } // frozenPosition(String)
+
+  /**
+   * Finds the first slot to probe for an image
+   *
+   * @param imageLoc the location of the image
+   * @param length   the length of the table, a power of two
+   * @return the slot
+   */
+  static int slotOf(String imageLoc, int length) {
+    int hash = imageLoc.hashCode();
+    return (hash ^ (hash >>> 16)) & (length - 1);
+  } // slotOf(String, int)
+
+  /**
+   * Gets the ranked image locations, ranking them if they have changed since last time
+   *
+   * @return the image locations, most used first; ties keep insertion order
+   */
+  String[] ranked() {
+    if (ranked == null) {
+      String[] imageLocs;
+      if (aa == null) {
+        imageLocs = frozenLocs.clone();
+      } else {
+        imageLocs = new String[aa.size()];
+        int index = 0;
+        for (KVPair<String, String> item : aa) {
+          imageLocs[index++] = item.getKey();
+        } // for
+      } // if
+      UsageStore counts = usage;
+      Arrays.sort(imageLocs, Comparator.comparingDouble(counts::score).reversed());
+      ranked = imageLocs;
+    } // if
+    return ranked;
+  } // ranked()
 } // ACCCategory
@@ -2,12 +2,28 @@ import edu.grinnell.csc207.util.AssociativeArray;
 import edu.grinnell.csc207.util.KVPair;
 import edu.grinnell.csc207.util.KeyNotFoundException;
 import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.PathTrie;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Creates a set of mappings of an AAC that has two levels, one for categories and then within each
@@ -18,13 +34,49 @@ import java.util.Scanner;
  * @author Catie Baker
  * @author Grant Sackmann
  */
-public class AACMappings implements AACPage {
+public class AACMappings implements AACBoard {
 
   AssociativeArray<String, AACCategory> categories;
   AACCategory currentCategory;
   AACCategory homeCategory;
   File file;
 
+  /** The image location of the current category ("" for the home page) */
+  String currentLoc = "";
+
+  /** Every version of the board since it was read, for undo and redo */
+  BoardHistory history;
+
+  /** Records every selection, or null */
+  UsageStore usage;
+
+  /** Whether each category lists its most used images first */
+  boolean rankByUsage;
+
+  /** Logs every select, reset and addItem, or null */
+  TapRecorder recorder;
+
+  /**
+   * How many times each image appears on the board, as a category or an item; built the first
+   * time it is needed, so null until then
+   */
+  PathTrie<Integer> imageIndex;
+
+  /** The conflicts found while merging packs */
+  final List<String> conflicts = new ArrayList<String>();
+
+  /** The locale of the text layer in use, or null if the board shows its own text */
+  Locale locale;
+
+  /** The text layer in use, by the location of each category's image, or null */
+  Map<String, AACCategory> layer;
+
+  /** The suffix of board manifest files */
+  public static final String MANIFEST_SUFFIX = ".board";
+
+  /** The suffix of mappings files, and so of text layers */
+  public static final String LAYER_SUFFIX = ".txt";
+
   /**
    * Creates a set of mappings fo r the AAC based on the provided file. The file is read in to
    * create categories and fill each of the categories with initial items. The file is formatted as
@@ -43,47 +95,236 @@ public class AACMappings implements AACPage {
    * @param filename the name of the file that stores the mapping information
    */
   public AACMappings(String filename) throws FileNotFoundException {
-    this.categories = new AssociativeArray<>();
+    this();
     this.file = new File(filename);
+    this.readFile();
+    this.freezeAll();
+    this.startHistory();
+  }
+
+  /**
+   * Creates a set of mappings with no categories
+   */
+  private AACMappings() {
+    this.categories = AACCategory.newMap(AssociativeArray.DEFAULT_CAPACITY);
     this.homeCategory = new AACCategory("");
+    this.currentCategory = homeCategory;
     try {
       this.categories.set("", homeCategory);
     } catch (NullKeyException e) {
 //      do nothing
     }
+  } // AACMappings()
 
-    this.readFile();
-  }
+  /**
+   * Loads a board: a board manifest (see compose) if the file name ends in MANIFEST_SUFFIX,
+   * and a single mappings file otherwise
+   *
+   * @param filename the name of the manifest or mappings file
+   * @return the board
+   * @throws IOException if a file cannot be read
+   */
+  public static AACMappings load(String filename) throws IOException {
+    return filename.endsWith(MANIFEST_SUFFIX) ? compose(filename) : new AACMappings(filename);
+  } // load(String)
+
+  /**
+   * Creates one set of mappings from the mapping files (packs) listed in a board manifest.
+   * The manifest names one pack per line, relative to the manifest's directory; a directory
+   * stands for every .txt file in it, in name order. Blank lines and lines starting with #
+   * are ignored. The packs are read in parallel, on the common fork-join pool, and then
+   * merged in the order they are listed.
+   * <p>
+   * A category that appears in several packs gets the items of all of them. When two packs
+   * disagree (the same category image with different names, or the same item image in a
+   * category with different texts) the pack listed first wins, and the conflict is reported
+   * by getConflicts.
+   *
+   * @param manifest the name of the manifest file
+   * @return the mappings
+   * @throws IOException if the manifest or one of its packs cannot be read
+   */
+  public static AACMappings compose(String manifest) throws IOException {
+    List<File> packs = new ArrayList<File>();
+    File dir = new File(manifest).getAbsoluteFile().getParentFile();
+    for (String line : Files.readAllLines(Paths.get(manifest))) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      } // if
+      File pack = new File(line).isAbsolute() ? new File(line) : new File(dir, line);
+      File[] contents = pack.listFiles((parent, name) -> name.endsWith(".txt"));
+      if (contents != null) {
+        Arrays.sort(contents);
+        packs.addAll(Arrays.asList(contents));
+      } else {
+        packs.add(pack);
+      } // if
+    } // for
+
+    // Parse every pack at once, then merge them in order
+    List<ForkJoinTask<LinkedHashMap<String, AACCategory>>> parsed =
+        new ArrayList<ForkJoinTask<LinkedHashMap<String, AACCategory>>>();
+    for (File pack : packs) {
+      parsed.add(ForkJoinPool.commonPool().submit(() -> {
+        try {
+          return parse(pack);
+        } catch (FileNotFoundException e) {
+          throw new UncheckedIOException(new FileNotFoundException(pack.getPath()));
+        } // try-catch
+      }));
+    } // for
+    AACMappings mappings = new AACMappings();
+    mappings.file = new File(manifest);
+    for (int i = 0; i < packs.size(); i++) {
+      try {
+        mappings.merge(packs.get(i).getPath(), parsed.get(i).get());
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof UncheckedIOException) {
+          throw ((UncheckedIOException) e.getCause()).getCause();
+        } // if
+        throw new IOException(e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } // try-catch
+    } // for
+    mappings.freezeAll();
+    mappings.startHistory();
+    return mappings;
+  } // compose(String)
+
+  /**
+   * Lists the conflicts found when the board was composed from several packs
+   *
+   * @return a description of each conflict; empty if there were none
+   */
+  public List<String> getConflicts() {
+    return Collections.unmodifiableList(conflicts);
+  } // getConflicts()
 
   private void readFile() throws FileNotFoundException {
+    merge(this.file.getPath(), parse(this.file));
+  } // readFile()
+
+  /**
+   * Reads a mappings file into new categories
+   *
+   * @param file the mappings file
+   * @return the categories, in the order they appear, by the location of their images
+   * @throws FileNotFoundException if the file cannot be read
+   */
+  static LinkedHashMap<String, AACCategory> parse(File file) throws FileNotFoundException {
+    LinkedHashMap<String, AACCategory> pack = new LinkedHashMap<String, AACCategory>();
     try {
-      Scanner scan = new Scanner(this.file);
+      Scanner scan = new Scanner(file);
+      AACCategory category = null;
+      ArrayList<String> itemLocs = new ArrayList<String>();
+      ArrayList<String> itemTexts = new ArrayList<String>();
       while (scan.hasNextLine()) {
         String line = scan.nextLine();
 
-        String[] tokens = line.split("\\s", 2);
-        if (tokens.length >= 2) {
-          if (tokens[0].charAt(0) == '>') {
-            currentCategory.addItem(tokens[0].substring(1), tokens[1]);
+        // Split at the first whitespace by hand; a regex split costs more than the rest of
+        // the line's processing
+        int space = 0;
+        while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+          space++;
+        } // while
+        if (space > 0 && space < line.length()) {
+          String loc = line.substring(0, space);
+          String text = line.substring(space + 1);
+          if (loc.charAt(0) == '>') {
+            itemLocs.add(ImageLocs.canonical(loc.substring(1)));
+            itemTexts.add(text);
           } else {
-            try {
-              currentCategory = new AACCategory(tokens[1]);
-              categories.set(tokens[0], currentCategory);
-              homeCategory.addItem(tokens[0], tokens[1]);
-            } catch (NullKeyException e) {
-//					Do Nothing
-            } // try-catch
+            flushItems(category, itemLocs, itemTexts);
+            category = new AACCategory(text);
+            pack.put(ImageLocs.canonical(loc), category);
           } // if
         } // if
       } // while
-
-      this.currentCategory = homeCategory;
+      flushItems(category, itemLocs, itemTexts);
+      scan.close();
 
     } catch (FileNotFoundException e) {
       throw new FileNotFoundException();
     }
+    return pack;
+  } // parse(File)
 
-  } // readFile()
+  /**
+   * Adds the buffered items to the category being read in one bulk operation, then clears
+   * the buffers.
+   *
+   * @param category  the category being read, or null if there is none yet
+   * @param itemLocs  the buffered image locations
+   * @param itemTexts the buffered texts, parallel to itemLocs
+   */
+  private static void flushItems(AACCategory category, ArrayList<String> itemLocs,
+      ArrayList<String> itemTexts) {
+    if (category != null && !itemLocs.isEmpty()) {
+      category.addItems(itemLocs.toArray(new String[0]), itemTexts.toArray(new String[0]));
+    } // if
+    itemLocs.clear();
+    itemTexts.clear();
+  } // flushItems()
+
+  /**
+   * Adds the categories read from a pack. A new category is added as is; the items of a
+   * category we already have are added to it, unless they conflict with items it has.
+   *
+   * @param source where the categories came from, for reporting conflicts
+   * @param pack   the categories, by the location of their images
+   */
+  private void merge(String source, Map<String, AACCategory> pack) {
+    for (Map.Entry<String, AACCategory> entry : pack.entrySet()) {
+      String loc = entry.getKey();
+      AACCategory incoming = entry.getValue();
+      try {
+        if (!categories.hasKey(loc)) {
+          categories.set(loc, incoming);
+          homeCategory.addItem(loc, incoming.getCategory());
+          indexImage(loc, 1);
+          indexItems(incoming, 1);
+          continue;
+        } // if
+        AACCategory existing = categories.get(loc);
+        if (!existing.getCategory().equals(incoming.getCategory())) {
+          conflicts.add(source + ": category " + loc + " is already \"" + existing.getCategory()
+              + "\"; ignoring the name \"" + incoming.getCategory() + "\"");
+        } // if
+        for (KVPair<String, String> item : incoming.items()) {
+          if (!existing.hasImage(item.getKey())) {
+            existing.addItem(item.getKey(), item.getValue());
+            indexImage(item.getKey(), 1);
+          } else if (!existing.select(item.getKey()).equals(item.getValue())) {
+            conflicts.add(source + ": " + item.getKey() + " in category " + loc
+                + " is already \"" + existing.select(item.getKey()) + "\"; ignoring \""
+                + item.getValue() + "\"");
+          } // if
+        } // for
+      } catch (NullKeyException | KeyNotFoundException e) {
+        // Keys come from a parsed file, so they are never null and always present
+      } // try-catch
+    } // for
+  } // merge(String, Map)
+
+  /**
+   * Packs every category into its flat, read-mostly form; see AACCategory.freeze
+   */
+  private void freezeAll() {
+    for (KVPair<String, AACCategory> pair : categories) {
+      pair.getValue().freeze();
+    } // for
+  } // freezeAll()
+
+  /**
+   * Starts the undo history from the board as it is now
+   */
+  private void startHistory() {
+    this.history = new BoardHistory(snapshot(),
+        Long.getLong("aac.history.bytes", BoardHistory.DEFAULT_MAX_BYTES));
+  } // startHistory()
 
   /**
    * Given the image location selected, it determines the action to be taken. This can be updating
@@ -98,19 +339,83 @@ public class AACMappings implements AACPage {
    * @throws NoSuchElementException if the image provided is not in the current category
    */
   public String select(String imageLoc) {
+    imageLoc = ImageLocs.find(imageLoc);
     if (currentCategory.equals(homeCategory)) {
       try {
         currentCategory = categories.get(imageLoc);
+        currentLoc = imageLoc;
+        used(homeCategory, imageLoc);
+        if (recorder != null) {
+          recorder.select(imageLoc, "");
+        } // if
         return "";
       } catch (KeyNotFoundException e) {
         //do nothing
       }
     } else if (currentCategory.hasImage(imageLoc)) {
-      return currentCategory.select(imageLoc);
+      String text = currentCategory.select(imageLoc);
+      AACCategory translated = translation(currentLoc);
+      if (translated != null && translated.hasImage(imageLoc)) {
+        text = translated.select(imageLoc);
+      } // if
+      used(currentCategory, imageLoc);
+      if (recorder != null) {
+        recorder.select(imageLoc, text);
+      } // if
+      return text;
     }
+    if (recorder != null) {
+      recorder.select(imageLoc, null);
+    } // if
     throw new NoSuchElementException();
   } // select()
 
+  /**
+   * Logs every later select, reset, addItem and setLocale, for replaying with TapReplay
+   *
+   * @param recorder the log, or null to stop logging
+   */
+  public void record(TapRecorder recorder) {
+    this.recorder = recorder;
+  } // record(TapRecorder)
+
+  /**
+   * Records every later selection in a usage store
+   *
+   * @param usage the store, or null to stop recording
+   */
+  public void trackUsage(UsageStore usage) {
+    this.usage = usage;
+    rankByUsage(this.rankByUsage);
+  } // trackUsage(UsageStore)
+
+  /**
+   * Chooses whether getImageLocs lists the most used images first (on the home page as well
+   * as in each category) or in the order they were added. Ranking needs a usage store; see
+   * trackUsage.
+   *
+   * @param rank true to rank by usage, false for insertion order
+   */
+  public void rankByUsage(boolean rank) {
+    this.rankByUsage = rank;
+    for (KVPair<String, AACCategory> pair : categories) {
+      pair.getValue().rankBy(rank ? usage : null);
+    } // for
+  } // rankByUsage(boolean)
+
+  /**
+   * Records the selection of an image and moves it up its category's ranking
+   *
+   * @param category the category the image is in
+   * @param imageLoc the location of the image
+   */
+  private void used(AACCategory category, String imageLoc) {
+    if (usage != null) {
+      usage.record(imageLoc);
+      category.promote(imageLoc);
+    } // if
+  } // used(AACCategory, String)
+
   /**
    * Provides an array of all the images in the current category
    *
@@ -124,11 +429,47 @@ public class AACMappings implements AACPage {
     return new String[0];
   } // getImageLocs
 
+  /**
+   * Provides every category other than the default (home) category
+   *
+   * @return the array of categories, in the order they were added
+   */
+  public AACCategory[] getCategories() {
+    AACCategory[] result = new AACCategory[Math.max(categories.size() - 1, 0)];
+    int index = 0;
+    for (KVPair<String, AACCategory> pair : categories) {
+      if (!pair.getValue().equals(homeCategory)) {
+        result[index++] = pair.getValue();
+      } // if
+    } // for
+    return result;
+  } // getCategories()
+
+  /**
+   * Provides the image location of every category other than the default (home) category
+   *
+   * @return the locations, in the order the categories were added
+   */
+  public String[] getCategoryLocs() {
+    String[] result = new String[Math.max(categories.size() - 1, 0)];
+    int index = 0;
+    for (KVPair<String, AACCategory> pair : categories) {
+      if (!pair.getValue().equals(homeCategory)) {
+        result[index++] = pair.getKey();
+      } // if
+    } // for
+    return result;
+  } // getCategoryLocs()
+
   /**
    * Resets the current category of the AAC ≠back to the default category
    */
   public void reset() {
     this.currentCategory = homeCategory;
+    this.currentLoc = "";
+    if (recorder != null) {
+      recorder.reset();
+    } // if
   }
 
 
@@ -149,7 +490,7 @@ public class AACMappings implements AACPage {
    * @param filename the name of the file to write the AAC mapping to
    */
   public void writeToFile(String filename) {
-    Iterator<KVPair<String, AACCategory>> categoriesIterator = categories.iterator();
+    Iterator<KVPair<String, AACCategory>> categoriesIterator = categories.snapshotIterator();
 
     try {
       PrintWriter writer = new PrintWriter(filename);
@@ -159,17 +500,16 @@ public class AACMappings implements AACPage {
         String catImageLoc = pair.getKey();
         AACCategory aacCat = pair.getValue();
         if (!aacCat.equals(homeCategory)) {
-          writer.println(catImageLoc + " " + aacCat.getCategory());
+          writer.append(catImageLoc).append(' ').append(aacCat.getCategory()).println();
           //      Processing individual category
-          for (KVPair<String, String> item : aacCat.aa) {
-            String itemImageLoc = item.getKey();
-            String itemName = item.getValue();
-            writer.println(">" + itemImageLoc + " " + itemName);
-          }
+          aacCat.writeItems(writer);
         }
       }
       writer.close();
-    } catch (FileNotFoundException e) {
+      if (!writer.checkError()) {
+        history.markSaved();
+      }
+    } catch (IOException e) {
 //        do nothing
     }
   }
@@ -178,32 +518,414 @@ public class AACMappings implements AACPage {
    * Adds the mapping to the current category (or the default category if that is the current
    * category)
    *
-   * @param imageLoc the location of the image
+   * @param imageLoc the location of the image, relative to the working directory or absolute
    * @param text     the text associated with the image
    */
   public void addItem(String imageLoc, String text) {
+    imageLoc = ImageLocs.canonical(imageLoc);
+    if (!currentCategory.hasImage(imageLoc)) {
+      indexImage(imageLoc, 1);
+    } // if
     currentCategory.addItem(imageLoc, text);
     if (currentCategory.equals(homeCategory)) {
       try {
-        currentCategory.addItem(imageLoc, text);
-        categories.set(imageLoc, new AACCategory(text));
-      } catch (NullKeyException e) {
+        if (categories.hasKey(imageLoc)) {
+          // The new category replaces the old one and its items
+          indexItems(categories.get(imageLoc), -1);
+        } // if
+        AACCategory category = new AACCategory(text);
+        category.rankBy(rankByUsage ? usage : null);
+        categories.set(imageLoc, category);
+        history.record(history.current().setCategory(imageLoc, text));
+      } catch (NullKeyException | KeyNotFoundException e) {
         // Do nothing
       }
+    } else {
+      history.record(history.current().setItem(currentLoc, imageLoc, text));
     }
-
+    if (recorder != null) {
+      recorder.addItem(imageLoc, text);
+    } // if
   }
 
+  /**
+   * Removes an image from the current category. On the home page, removes the category the
+   * image stands for, with all of its items. Either way the image added last takes the
+   * removed image's place, and the removal can be undone.
+   *
+   * @param imageLoc the location of the image
+   * @throws NoSuchElementException if the image is not in the current category
+   */
+  public void removeItem(String imageLoc) {
+    imageLoc = ImageLocs.find(imageLoc);
+    if (currentCategory.equals(homeCategory)) {
+      if (imageLoc == null || imageLoc.isEmpty() || !categories.hasKey(imageLoc)) {
+        throw new NoSuchElementException(imageLoc);
+      } // if
+      String movedLoc = homeCategory.lastImageLoc();
+      homeCategory.removeItem(imageLoc);
+      try {
+        indexItems(categories.get(imageLoc), -1);
+      } catch (KeyNotFoundException e) {
+        // We checked for it above
+      } // try-catch
+      categories.remove(imageLoc);
+      indexImage(imageLoc, -1);
+      history.record(history.current().removeCategory(imageLoc, movedLoc));
+    } else {
+      String movedLoc = currentCategory.lastImageLoc();
+      currentCategory.removeItem(imageLoc);
+      indexImage(imageLoc, -1);
+      history.record(history.current().removeItem(currentLoc, imageLoc, movedLoc));
+    } // if
+  } // removeItem(String)
+
+  /**
+   * Changes the text of an image in the current category without moving it. On the home
+   * page, renames the category the image stands for.
+   *
+   * @param imageLoc the location of the image
+   * @param text     the new text
+   * @throws NoSuchElementException if the image is not in the current category
+   */
+  public void renameItem(String imageLoc, String text) {
+    imageLoc = ImageLocs.find(imageLoc);
+    currentCategory.renameItem(imageLoc, text);
+    if (currentCategory.equals(homeCategory)) {
+      try {
+        categories.get(imageLoc).catName = text;
+      } catch (KeyNotFoundException e) {
+        // Every image on the home page is a category
+      } // try-catch
+      history.record(history.current().renameCategory(imageLoc, text));
+    } else {
+      history.record(history.current().setItem(currentLoc, imageLoc, text));
+    } // if
+  } // renameItem(String, String)
+
+  /**
+   * Moves an image, with its text, from the current category to the end of another
+   * category. The image added last to the current category takes its place.
+   *
+   * @param imageLoc    the location of the image
+   * @param categoryLoc the location of the image of the category to move it to
+   * @throws NoSuchElementException if the image is not in the current category, the current
+   *                                category is the home page, or there is no such category
+   */
+  public void moveItem(String imageLoc, String categoryLoc) {
+    imageLoc = ImageLocs.find(imageLoc);
+    categoryLoc = ImageLocs.find(categoryLoc);
+    AACCategory destination;
+    try {
+      destination = categories.get(categoryLoc);
+    } catch (KeyNotFoundException e) {
+      throw new NoSuchElementException(categoryLoc);
+    } // try-catch
+    if (currentCategory.equals(homeCategory) || destination.equals(homeCategory)
+        || !currentCategory.hasImage(imageLoc)) {
+      throw new NoSuchElementException(imageLoc);
+    } // if
+    if (destination.equals(currentCategory)) {
+      return;
+    } // if
+    String text = currentCategory.select(imageLoc);
+    String movedLoc = currentCategory.lastImageLoc();
+    currentCategory.removeItem(imageLoc);
+    indexImage(imageLoc, -1);
+    if (!destination.hasImage(imageLoc)) {
+      indexImage(imageLoc, 1);
+    } // if
+    destination.addItem(imageLoc, text);
+    history.record(history.current().moveItem(currentLoc, imageLoc, movedLoc, categoryLoc));
+  } // moveItem(String, String)
+
+  /**
+   * Undoes the most recent edit that has not been undone. If that removes the current
+   * category, goes back to the home page.
+   *
+   * @return true if there was an edit to undo, false otherwise
+   */
+  public boolean undo() {
+    BoardHistory.Board before = history.current();
+    BoardHistory.Board after = history.undo();
+    if (after == null) {
+      return false;
+    }
+    restore(before, after);
+    return true;
+  } // undo()
+
+  /**
+   * Redoes the edit most recently undone
+   *
+   * @return true if there was an edit to redo, false otherwise
+   */
+  public boolean redo() {
+    BoardHistory.Board before = history.current();
+    BoardHistory.Board after = history.redo();
+    if (after == null) {
+      return false;
+    }
+    restore(before, after);
+    return true;
+  } // redo()
 
   /**
-   * Gets the name of the current category
+   * Determines if there is an edit to undo
+   *
+   * @return true if undo would change the board, false otherwise
+   */
+  public boolean canUndo() {
+    return history.canUndo();
+  } // canUndo()
+
+  /**
+   * Determines if there is an undone edit to redo
+   *
+   * @return true if redo would change the board, false otherwise
+   */
+  public boolean canRedo() {
+    return history.canRedo();
+  } // canRedo()
+
+  /**
+   * Determines if the board has been edited since it was read or last saved
+   *
+   * @return true if there are unsaved edits, false otherwise
+   */
+  public boolean isModified() {
+    return !history.isSaved();
+  } // isModified()
+
+  /**
+   * Builds the current board as a version for the history
+   *
+   * @return the board
+   */
+  private BoardHistory.Board snapshot() {
+    BoardHistory.Board board = new BoardHistory.Board();
+    for (KVPair<String, AACCategory> pair : categories) {
+      if (!pair.getValue().equals(homeCategory)) {
+        board = board.setCategory(pair.getKey(), pair.getValue().getCategory(),
+            pair.getValue().items());
+      } // if
+    } // for
+    return board;
+  } // snapshot()
+
+  /**
+   * Changes the board from one version to another. Only the categories that differ between
+   * the versions are rebuilt; since versions share unchanged categories, comparing them is
+   * a reference comparison.
+   *
+   * @param before the version the board is now
+   * @param after  the version to change it to
+   */
+  private void restore(BoardHistory.Board before, BoardHistory.Board after) {
+    AssociativeArray<String, AACCategory> restored =
+        AACCategory.newMap(after.categories.size() + 1);
+    AACCategory home = new AACCategory("");
+    try {
+      restored.set("", home);
+      for (KVPair<String, BoardHistory.Category> pair : after.inOrder()) {
+        String loc = pair.getKey();
+        BoardHistory.Category category = pair.getValue();
+        home.addItem(loc, category.name);
+        AACCategory aacCat;
+        if (before.category(loc) == category && categories.hasKey(loc)) {
+          aacCat = categories.get(loc);
+        } else {
+          aacCat = new AACCategory(category.name);
+          for (KVPair<String, BoardHistory.Item> item : category.inOrder()) {
+            aacCat.addItem(item.getKey(), item.getValue().text);
+          } // for
+          aacCat.rankBy(rankByUsage ? usage : null);
+          aacCat.freeze();
+          indexItems(aacCat, 1);
+        } // if
+        if (!categories.hasKey(loc)) {
+          indexImage(loc, 1);
+        } // if
+        restored.set(loc, aacCat);
+      } // for
+      // Forget the images of the categories we did not keep
+      for (KVPair<String, AACCategory> pair : categories) {
+        String loc = pair.getKey();
+        if (pair.getValue() != homeCategory) {
+          if (!restored.hasKey(loc)) {
+            indexImage(loc, -1);
+            indexItems(pair.getValue(), -1);
+          } else if (restored.get(loc) != pair.getValue()) {
+            indexItems(pair.getValue(), -1);
+          } // if
+        } // if
+      } // for
+    } catch (NullKeyException | KeyNotFoundException e) {
+      // Keys come from the history, so they are never null and always present
+    } // try-catch
+    home.rankBy(rankByUsage ? usage : null);
+    home.freeze();
+    this.categories = restored;
+    this.homeCategory = home;
+    try {
+      this.currentCategory = currentLoc.isEmpty() ? home : restored.get(currentLoc);
+    } catch (KeyNotFoundException e) {
+      reset();
+    } // try-catch
+  } // restore(Board, Board)
+
+
+  /**
+   * Gets the name of the current category, in the locale in use if its layer names it
    *
    * @return returns the current category or the empty string if on the default category
    */
   public String getCategory() {
-    return currentCategory.getCategory();
+    AACCategory translated = currentLoc.isEmpty() ? null : translation(currentLoc);
+    return (translated != null) ? translated.getCategory() : currentCategory.getCategory();
   }
 
+  /**
+   * Gets the image location of the current category, which stays the same whatever the locale
+   *
+   * @return the location, or the empty string if on the default category
+   */
+  public String getCategoryLoc() {
+    return currentLoc;
+  } // getCategoryLoc()
+
+  /**
+   * Gets a category without going to it
+   *
+   * @param categoryLoc the location of the category's image ("" for the default category)
+   * @return the category, or null if there is none
+   */
+  public AACCategory categoryAt(String categoryLoc) {
+    try {
+      return categories.get(ImageLocs.find(categoryLoc));
+    } catch (KeyNotFoundException e) {
+      return null;
+    } // try-catch
+  } // categoryAt(String)
+
+  /**
+   * Lists the texts the items of a category speak in the locale in use: the text layer's
+   * where it has one, and the board's own elsewhere
+   *
+   * @param categoryLoc the location of the category's image
+   * @return the texts, or an empty array if there is no such category
+   */
+  public String[] getTextsAt(String categoryLoc) {
+    AACCategory category = categoryAt(categoryLoc);
+    if (category == null) {
+      return new String[0];
+    } // if
+    AACCategory translated = translation(ImageLocs.find(categoryLoc));
+    if (translated == null) {
+      return category.getTexts();
+    } // if
+    String[] imageLocs = category.getImageLocs();
+    String[] texts = new String[imageLocs.length];
+    for (int i = 0; i < imageLocs.length; i++) {
+      texts[i] = translated.hasImage(imageLocs[i]) ? translated.select(imageLocs[i])
+          : category.select(imageLocs[i]);
+    } // for
+    return texts;
+  } // getTextsAt(String)
+
+  /**
+   * Shows the text of a locale: category names and item texts are taken from the locale's
+   * text layer, and from the board itself wherever the layer has none. A text layer is a
+   * mappings file next to the board's file, named for the board and the locale's language
+   * tag (AACMappings.es.txt for AACMappings.txt in Spanish), that gives text to some or all
+   * of the board's images. Only the layer of the locale in use is kept in memory; the
+   * categories, their images and their order are those of the board and do not change.
+   * <p>
+   * Layers are only read: edits change the board's own text, which shows wherever the layer
+   * has no text of its own.
+   *
+   * @param locale the locale, or null for the board's own text
+   * @throws FileNotFoundException if the locale has no text layer; the locale in use is kept
+   */
+  public void setLocale(Locale locale) throws FileNotFoundException {
+    if (locale == null) {
+      this.layer = null;
+    } else {
+      LinkedHashMap<String, AACCategory> loaded = parse(layerFile(locale.toLanguageTag()));
+      for (AACCategory category : loaded.values()) {
+        category.freeze();
+      } // for
+      this.layer = loaded;
+    } // if
+    this.locale = locale;
+    if (recorder != null) {
+      recorder.setLocale(locale);
+    } // if
+  } // setLocale(Locale)
+
+  /**
+   * Gets the locale whose text is shown
+   *
+   * @return the locale, or null if the board shows its own text
+   */
+  public Locale getLocale() {
+    return locale;
+  } // getLocale()
+
+  /**
+   * Lists the locales that have a text layer for this board, without reading the layers
+   *
+   * @return the locales, in order of their language tags
+   */
+  public Locale[] getLocales() {
+    String prefix = layerFile("").getName();
+    prefix = prefix.substring(0, prefix.length() - LAYER_SUFFIX.length());
+    File dir = file.getAbsoluteFile().getParentFile();
+    String[] names = (dir == null) ? null : dir.list();
+    ArrayList<String> tags = new ArrayList<String>();
+    for (String name : (names == null) ? new String[0] : names) {
+      if (name.length() > prefix.length() + LAYER_SUFFIX.length() && name.startsWith(prefix)
+          && name.endsWith(LAYER_SUFFIX)) {
+        String tag = name.substring(prefix.length(), name.length() - LAYER_SUFFIX.length());
+        if (!tag.isEmpty() && tag.indexOf('.') < 0
+            && !Locale.forLanguageTag(tag).getLanguage().isEmpty()) {
+          tags.add(tag);
+        } // if
+      } // if
+    } // for
+    Collections.sort(tags);
+    Locale[] locales = new Locale[tags.size()];
+    for (int i = 0; i < locales.length; i++) {
+      locales[i] = Locale.forLanguageTag(tags.get(i));
+    } // for
+    return locales;
+  } // getLocales()
+
+  /**
+   * Finds the text layer of a locale: the board's file name with its extension replaced by
+   * the language tag and LAYER_SUFFIX
+   *
+   * @param tag the language tag of the locale
+   * @return the file, which may not exist
+   */
+  private File layerFile(String tag) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    String base = (dot > 0) ? name.substring(0, dot) : name;
+    return new File(file.getAbsoluteFile().getParentFile(), base + "." + tag + LAYER_SUFFIX);
+  } // layerFile(String)
+
+  /**
+   * Gets the text of a category in the locale in use
+   *
+   * @param categoryLoc the location of the category's image
+   * @return the category from the text layer, or null if there is no layer or it does not
+   *         name the category
+   */
+  private AACCategory translation(String categoryLoc) {
+    return (layer == null) ? null : layer.get(categoryLoc);
+  } // translation(String)
+
 
   /**
    * Determines if the provided image is in the set of images that can be displayed and false
@@ -213,15 +935,82 @@ public class AACMappings implements AACPage {
    * @return true if it is in the set of images that can be displayed, false otherwise
    */
   public boolean hasImage(String imageLoc) {
-//    try {
-//      String catImageLoc = getImageCat(imageLoc);
-//      return categories.get(catImageLoc).hasImage(imageLoc);
-//    } catch (Exception e) {
-//      return false;
-//    }
-    return false;
+    return imageIndex().hasKey(ImageLocs.find(imageLoc));
   }
 
+  /**
+   * Lists every image on the board that lies under a directory, whether as a category or an
+   * item, with each image listed once
+   *
+   * @param directory the directory, such as "img/clothing"; "" for every image
+   * @return the image locations, grouped by directory
+   */
+  public String[] getImageLocsUnder(String directory) {
+    ArrayList<String> imageLocs = new ArrayList<String>();
+    Iterator<KVPair<String, Integer>> images =
+        imageIndex().withPrefix(ImageLocs.find(directory));
+    while (images.hasNext()) {
+      imageLocs.add(images.next().getKey());
+    } // while
+    return imageLocs.toArray(new String[0]);
+  } // getImageLocsUnder(String)
+
+  /**
+   * Gets the index of the board's images, building it if this is the first time it is needed
+   *
+   * @return the index
+   */
+  private PathTrie<Integer> imageIndex() {
+    if (imageIndex == null) {
+      imageIndex = new PathTrie<Integer>();
+      for (KVPair<String, AACCategory> pair : categories) {
+        if (pair.getValue() != homeCategory) {
+          indexImage(pair.getKey(), 1);
+          indexItems(pair.getValue(), 1);
+        } // if
+      } // for
+    } // if
+    return imageIndex;
+  } // imageIndex()
+
+  /**
+   * Counts one more or one fewer use of an image in the index, if it has been built
+   *
+   * @param imageLoc the location of the image
+   * @param change   1 for a new use, -1 for a use removed
+   */
+  private void indexImage(String imageLoc, int change) {
+    if (imageIndex == null) {
+      return;
+    } // if
+    try {
+      int uses = (imageIndex.hasKey(imageLoc) ? imageIndex.get(imageLoc) : 0) + change;
+      if (uses > 0) {
+        imageIndex.set(imageLoc, uses);
+      } else {
+        imageIndex.remove(imageLoc);
+      } // if
+    } catch (NullKeyException | KeyNotFoundException e) {
+      // We only index images that are on the board
+    } // try-catch
+  } // indexImage(String, int)
+
+  /**
+   * Counts one more or one fewer use of each item of a category in the index, if it has been
+   * built
+   *
+   * @param category the category
+   * @param change   1 if the items were added, -1 if they were removed
+   */
+  private void indexItems(AACCategory category, int change) {
+    if (imageIndex == null) {
+      return;
+    } // if
+    for (KVPair<String, String> item : category.items()) {
+      indexImage(item.getKey(), change);
+    } // for
+  } // indexItems(AACCategory, int)
+
   private String getImageCat(String imageLoc) {
     return imageLoc.split("/")[1];
   }
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the stages of the AAC interaction loop. Timing a
+ * stage looks like
+ * <p>
+ * long start = AACMetrics.start();
+ * ... the work ...
+ * AACMetrics.stop(AACMetrics.Stage.RENDER, start);
+ * <p>
+ * When metrics are disabled (the default, unless the aac.metrics system property is
+ * true), start returns 0 without reading the clock and stop returns immediately, so the
+ * cost is a single volatile read per stage.
+ */
+public class AACMetrics implements AACMetricsMXBean {
+
+  /**
+   * The stages of the interaction loop that we time
+   */
+  public enum Stage {
+    /** Looking up a tapped image in the mappings */
+    SELECT("select"),
+    /** Moving between categories or pages */
+    NAVIGATION("navigation"),
+    /** Rebuilding the grid of buttons */
+    RENDER("render"),
+    /** Loading and decoding one image */
+    IMAGE_DECODE("image_decode"),
+    /** Speaking a phrase, from request until the speech queue is empty */
+    SYNTHESIS("synthesis"),
+    /** From the request to speak until audio starts playing */
+    AUDIO_START("audio_start"),
+    /** How late a switch-scanning step is shown, from the time it was due */
+    SCAN_STEP("scan_step");
+
+    /** The name used in exported metrics */
+    final String label;
+
+    Stage(String label) {
+      this.label = label;
+    } // Stage(String)
+  } // enum Stage
+
+  /** The name under which the metrics are registered with JMX */
+  static final String OBJECT_NAME = "AAC:type=Metrics";
+
+  /** Whether metrics are being recorded */
+  static volatile boolean enabled = Boolean.getBoolean("aac.metrics");
+
+  /** One histogram per stage, indexed by ordinal */
+  static final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  static {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    } // for
+  } // static
+
+  /** The single instance exposed through JMX */
+  static final AACMetrics INSTANCE = new AACMetrics();
+
+  /** The thread that periodically exports the metrics, if any */
+  static ScheduledExecutorService exporter;
+
+  /**
+   * Only the single INSTANCE exists
+   */
+  private AACMetrics() {
+  } // AACMetrics()
+
+  /**
+   * Starts timing a stage
+   *
+   * @return the start time to pass to stop, or 0 if metrics are disabled
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0L;
+  } // start()
+
+  /**
+   * Finishes timing a stage
+   *
+   * @param stage the stage that was timed
+   * @param start the value returned by start
+   */
+  public static void stop(Stage stage, long start) {
+    if (start != 0L) {
+      histograms[stage.ordinal()].record(System.nanoTime() - start);
+    } // if
+  } // stop(Stage, long)
+
+  /**
+   * Returns the histogram for a stage
+   *
+   * @param stage the stage
+   * @return its histogram
+   */
+  public static LatencyHistogram histogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  } // histogram(Stage)
+
+  /**
+   * Registers the metrics with the platform MBean server so that they can be read with
+   * JConsole or any other JMX client
+   *
+   * @throws JMException if registration fails
+   */
+  public static void registerMBean() throws JMException {
+    ManagementFactory.getPlatformMBeanServer()
+        .registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+  } // registerMBean()
+
+  /**
+   * Writes the metrics in the Prometheus text exposition format
+   *
+   * @param out where to write the metrics
+   * @throws IOException if out cannot be written
+   */
+  public static void writePrometheus(Appendable out) throws IOException {
+    String name = "aac_stage_latency_seconds";
+    out.append("# HELP ").append(name)
+        .append(" Latency of each stage of the AAC interaction loop.\n");
+    out.append("# TYPE ").append(name).append(" summary\n");
+    for (Stage stage : Stage.values()) {
+      LatencyHistogram histogram = histogram(stage);
+      String labels = "{stage=\"" + stage.label + "\"";
+      out.append(name).append(labels).append(",quantile=\"0.5\"} ")
+          .append(seconds(histogram.getPercentile(0.5))).append('\n');
+      out.append(name).append(labels).append(",quantile=\"0.99\"} ")
+          .append(seconds(histogram.getPercentile(0.99))).append('\n');
+      out.append(name).append("_sum").append(labels).append("} ")
+          .append(seconds(histogram.getSum())).append('\n');
+      out.append(name).append("_count").append(labels).append("} ")
+          .append(Long.toString(histogram.getCount())).append('\n');
+    } // for
+  } // writePrometheus(Appendable)
+
+  /**
+   * Starts a background thread that rewrites filename with the current metrics in the
+   * Prometheus text format every period seconds. The file is replaced atomically, so it
+   * suits the node_exporter textfile collector. Does nothing if already started.
+   *
+   * @param filename the file to write
+   * @param period   the number of seconds between writes
+   */
+  public static synchronized void startExport(String filename, long period) {
+    if (exporter != null) {
+      return;
+    } // if
+    Path target = Paths.get(filename).toAbsolutePath();
+    exporter = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+      Thread thread = new Thread(runnable, "aac-metrics-export");
+      thread.setDaemon(true);
+      return thread;
+    });
+    exporter.scheduleAtFixedRate(() -> {
+      try {
+        Path temp = Files.createTempFile(target.getParent(), "aac-metrics", ".tmp");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temp))) {
+          writePrometheus(writer);
+        } // try
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        e.printStackTrace();
+      } // try-catch
+    }, period, period, TimeUnit.SECONDS);
+  } // startExport(String, long)
+
+  /**
+   * Stops the background export thread, if any
+   */
+  public static synchronized void stopExport() {
+    if (exporter != null) {
+      exporter.shutdown();
+      exporter = null;
+    } // if
+  } // stopExport()
+
+  // +------------------+--------------------------------------------
+  // | MXBean interface |
+  // +------------------+
+
+  public boolean isEnabled() {
+    return enabled;
+  } // isEnabled()
+
+  public void setEnabled(boolean enabled) {
+    AACMetrics.enabled = enabled;
+  } // setEnabled(boolean)
+
+  public Map<String, Long> getCounts() {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    for (Stage stage : Stage.values()) {
+      counts.put(stage.label, histogram(stage).getCount());
+    } // for
+    return counts;
+  } // getCounts()
+
+  public Map<String, Double> getP50Millis() {
+    return percentileMillis(0.5);
+  } // getP50Millis()
+
+  public Map<String, Double> getP99Millis() {
+    return percentileMillis(0.99);
+  } // getP99Millis()
+
+  public Map<String, Double> getMaxMillis() {
+    Map<String, Double> maxima = new LinkedHashMap<String, Double>();
+    for (Stage stage : Stage.values()) {
+      maxima.put(stage.label, histogram(stage).getMax() / 1e6);
+    } // for
+    return maxima;
+  } // getMaxMillis()
+
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    } // for
+  } // reset()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Returns a percentile of every stage in milliseconds
+   *
+   * @param fraction the percentile, as a fraction
+   * @return the percentiles, by stage
+   */
+  private Map<String, Double> percentileMillis(double fraction) {
+    Map<String, Double> result = new LinkedHashMap<String, Double>();
+    for (Stage stage : Stage.values()) {
+      result.put(stage.label, histogram(stage).getPercentile(fraction) / 1e6);
+    } // for
+    return result;
+  } // percentileMillis(double)
+
+  /**
+   * Converts nanoseconds to a string of seconds
+   *
+   * @param nanos the number of nanoseconds
+   * @return the number of seconds
+   */
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  } // seconds(long)
+} // class AACMetrics
@@ -0,0 +1,49 @@
+import java.util.Map;
+
+/**
+ * The JMX view of the AAC's interaction metrics. Each map is keyed by the
+ * name of a stage of the interaction loop (e.g., "select", "render").
+ */
+public interface AACMetricsMXBean {
+
+  /**
+   * Returns whether metrics are being recorded
+   * @return true if metrics are enabled
+   */
+  public boolean isEnabled();
+
+  /**
+   * Turns the recording of metrics on or off
+   * @param enabled whether metrics should be recorded
+   */
+  public void setEnabled(boolean enabled);
+
+  /**
+   * Returns the number of times each stage has been timed
+   * @return the counts, by stage
+   */
+  public Map<String, Long> getCounts();
+
+  /**
+   * Returns the median latency of each stage in milliseconds
+   * @return the medians, by stage
+   */
+  public Map<String, Double> getP50Millis();
+
+  /**
+   * Returns the 99th percentile latency of each stage in milliseconds
+   * @return the 99th percentiles, by stage
+   */
+  public Map<String, Double> getP99Millis();
+
+  /**
+   * Returns the largest latency of each stage in milliseconds
+   * @return the maxima, by stage
+   */
+  public Map<String, Double> getMaxMillis();
+
+  /**
+   * Forgets every recorded latency
+   */
+  public void reset();
+}
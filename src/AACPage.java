@@ -17,6 +17,23 @@ public interface AACPage {
 	 * @param text the text that image should speak
 	 */
 	public void addItem(String imageLoc, String text);
+
+	/**
+	 * Removes the image from the page. Removing a category also
+	 * removes all of its items.
+	 * @param imageLoc the location of the image
+	 * @throws NoSuchElementException if the image is not on the page
+	 */
+	public void removeItem(String imageLoc);
+
+	/**
+	 * Changes the text of an image on the page (or, for a category,
+	 * the name of the category) without changing its place
+	 * @param imageLoc the location of the image
+	 * @param text the new text of the image
+	 * @throws NoSuchElementException if the image is not on the page
+	 */
+	public void renameItem(String imageLoc, String text);
 	
 	/**
 	 * Returns an array of all the images to be displayed on
@@ -0,0 +1,463 @@
+import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.PersistentMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The undo and redo history of a board. Each version of the board is immutable and built
+ * from PersistentMaps, so a version shares everything except the changed path with the
+ * version before it: an edit costs O(log n) memory, not a copy of the board. The oldest
+ * versions are dropped once the memory the history holds goes over a limit.
+ */
+public class BoardHistory {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The default limit on the memory held by the history: 1 MB */
+  public static final long DEFAULT_MAX_BYTES = 1L << 20;
+
+  /** An estimate of the bytes taken by an Item, Category or Board object */
+  static final int OBJECT_BYTES = 32;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The most bytes of earlier versions to keep */
+  final long maxBytes;
+
+  /** The versions before the current one, most recent first */
+  final ArrayDeque<Board> undos = new ArrayDeque<Board>();
+
+  /** The versions undone, most recently undone first */
+  final ArrayDeque<Board> redos = new ArrayDeque<Board>();
+
+  /** The bytes held by the versions in undos and redos */
+  long bytes;
+
+  /** The current version */
+  Board current;
+
+  /** The version last saved, or null if it has been dropped */
+  Board saved;
+
+  // +---------------+-----------------------------------------------
+  // | Inner Classes |
+  // +---------------+
+
+  /**
+   * An item in a category. The sequence number records the order items were added in.
+   */
+  static final class Item {
+    final long seq;
+    final String text;
+
+    Item(long seq, String text) {
+      this.seq = seq;
+      this.text = text;
+    } // Item(long, String)
+  } // class Item
+
+  /**
+   * A category and its items. The sequence number records the order categories were added
+   * in.
+   */
+  static final class Category {
+    final long seq;
+    final String name;
+    final PersistentMap<String, Item> items;
+    final long nextSeq;
+
+    Category(long seq, String name, PersistentMap<String, Item> items, long nextSeq) {
+      this.seq = seq;
+      this.name = name;
+      this.items = items;
+      this.nextSeq = nextSeq;
+    } // Category(long, String, PersistentMap, long)
+
+    /**
+     * Lists the items in the order they were added
+     *
+     * @return the image locations and texts
+     */
+    List<KVPair<String, Item>> inOrder() {
+      List<KVPair<String, Item>> ordered = new ArrayList<KVPair<String, Item>>(items.size());
+      for (KVPair<String, Item> item : items) {
+        ordered.add(item);
+      } // for
+      ordered.sort(Comparator.comparingLong((KVPair<String, Item> item) -> item.getValue().seq));
+      return ordered;
+    } // inOrder()
+  } // class Category
+
+  /**
+   * One version of a board: its categories, by image location
+   */
+  public static final class Board {
+    final PersistentMap<String, Category> categories;
+    final long nextSeq;
+
+    /** The bytes this version added to the one it was made from */
+    final long cost;
+
+    Board(PersistentMap<String, Category> categories, long nextSeq, long cost) {
+      this.categories = categories;
+      this.nextSeq = nextSeq;
+      this.cost = cost;
+    } // Board(PersistentMap, long, long)
+
+    /**
+     * Creates an empty board
+     */
+    public Board() {
+      this(PersistentMap.<String, Category>empty(), 0, 0);
+    } // Board()
+
+    /**
+     * Returns a board with a new, empty category, which replaces any category with the same
+     * image
+     *
+     * @param imageLoc the location of the category's image
+     * @param name     the name of the category
+     * @return the new board
+     */
+    public Board setCategory(String imageLoc, String name) {
+      Category old = category(imageLoc);
+      Category category = new Category((old == null) ? nextSeq : old.seq, name,
+          PersistentMap.<String, Item>empty(), 0);
+      try {
+        return new Board(categories.set(imageLoc, category), nextSeq + 1,
+            categories.updateBytes() + OBJECT_BYTES * 2 + 2L * name.length());
+      } catch (NullKeyException e) {
+        return this;
+      } // try-catch
+    } // setCategory(String, String)
+
+    /**
+     * Returns a board with an item set in a category. If the category already has the
+     * image, its text changes but it keeps its place.
+     *
+     * @param categoryLoc the location of the category's image
+     * @param imageLoc    the location of the item's image
+     * @param text        the text of the item
+     * @return the new board, or this board if there is no such category
+     */
+    public Board setItem(String categoryLoc, String imageLoc, String text) {
+      Category category = category(categoryLoc);
+      if (category == null) {
+        return this;
+      } // if
+      Item old = item(category, imageLoc);
+      long seq = (old == null) ? category.nextSeq : old.seq;
+      try {
+        Category changed = new Category(category.seq, category.name,
+            category.items.set(imageLoc, new Item(seq, text)),
+            Math.max(category.nextSeq, seq + 1));
+        return new Board(categories.set(categoryLoc, changed), nextSeq,
+            category.items.updateBytes() + categories.updateBytes() + OBJECT_BYTES * 3
+                + 2L * text.length());
+      } catch (NullKeyException e) {
+        return this;
+      } // try-catch
+    } // setItem(String, String, String)
+
+    /**
+     * Returns a board with a new category holding the given items, which replaces any
+     * category with the same image
+     *
+     * @param imageLoc the location of the category's image
+     * @param name     the name of the category
+     * @param items    the image locations and texts of its items, in order
+     * @return the new board
+     */
+    public Board setCategory(String imageLoc, String name,
+        Iterable<KVPair<String, String>> items) {
+      Category old = category(imageLoc);
+      PersistentMap<String, Item> itemMap = PersistentMap.<String, Item>empty();
+      long seq = 0;
+      long bytes = categories.updateBytes() + OBJECT_BYTES * 2 + 2L * name.length();
+      try {
+        for (KVPair<String, String> item : items) {
+          bytes += itemMap.updateBytes() + OBJECT_BYTES + 2L * item.getValue().length();
+          itemMap = itemMap.set(item.getKey(), new Item(seq++, item.getValue()));
+        } // for
+        return new Board(categories.set(imageLoc,
+            new Category((old == null) ? nextSeq : old.seq, name, itemMap, seq)), nextSeq + 1,
+            bytes);
+      } catch (NullKeyException e) {
+        return this;
+      } // try-catch
+    } // setCategory(String, String, Iterable)
+
+    /**
+     * Returns a board with a category renamed; its items are unchanged
+     *
+     * @param imageLoc the location of the category's image
+     * @param name     the new name of the category
+     * @return the new board, or this board if there is no such category
+     */
+    public Board renameCategory(String imageLoc, String name) {
+      Category category = category(imageLoc);
+      if (category == null) {
+        return this;
+      } // if
+      try {
+        return new Board(categories.set(imageLoc,
+            new Category(category.seq, name, category.items, category.nextSeq)), nextSeq,
+            categories.updateBytes() + OBJECT_BYTES * 2 + 2L * name.length());
+      } catch (NullKeyException e) {
+        return this;
+      } // try-catch
+    } // renameCategory(String, String)
+
+    /**
+     * Returns a board without a category. As in an AssociativeArray, the category added last
+     * takes the removed category's place.
+     *
+     * @param imageLoc the location of the category's image
+     * @param movedLoc the location of the category added last
+     * @return the new board, or this board if there is no such category
+     */
+    public Board removeCategory(String imageLoc, String movedLoc) {
+      Category category = category(imageLoc);
+      if (category == null) {
+        return this;
+      } // if
+      PersistentMap<String, Category> remaining = categories.remove(imageLoc);
+      Category moved = imageLoc.equals(movedLoc) ? null : category(movedLoc);
+      try {
+        if (moved != null) {
+          remaining = remaining.set(movedLoc,
+              new Category(category.seq, moved.name, moved.items, moved.nextSeq));
+        } // if
+      } catch (NullKeyException e) {
+        return this;
+      } // try-catch
+      return new Board(remaining, nextSeq, 2 * categories.updateBytes() + OBJECT_BYTES * 2);
+    } // removeCategory(String, String)
+
+    /**
+     * Returns a board without an item. As in an AssociativeArray, the item added last takes
+     * the removed item's place.
+     *
+     * @param categoryLoc the location of the category's image
+     * @param imageLoc    the location of the item's image
+     * @param movedLoc    the location of the image of the category's last item
+     * @return the new board, or this board if there is no such item
+     */
+    public Board removeItem(String categoryLoc, String imageLoc, String movedLoc) {
+      Category category = category(categoryLoc);
+      Item item = (category == null) ? null : item(category, imageLoc);
+      if (item == null) {
+        return this;
+      } // if
+      PersistentMap<String, Item> items = category.items.remove(imageLoc);
+      Item moved = imageLoc.equals(movedLoc) ? null : item(category, movedLoc);
+      try {
+        if (moved != null) {
+          items = items.set(movedLoc, new Item(item.seq, moved.text));
+        } // if
+        return new Board(categories.set(categoryLoc,
+            new Category(category.seq, category.name, items, category.nextSeq)), nextSeq,
+            2 * category.items.updateBytes() + categories.updateBytes() + OBJECT_BYTES * 3);
+      } catch (NullKeyException e) {
+        return this;
+      } // try-catch
+    } // removeItem(String, String, String)
+
+    /**
+     * Returns a board with an item moved from one category to the end of another, as one
+     * edit
+     *
+     * @param fromLoc  the location of the image of the category the item is in
+     * @param imageLoc the location of the item's image
+     * @param movedLoc the location of the image of that category's last item
+     * @param toLoc    the location of the image of the category to move it to
+     * @return the new board, or this board if there is no such item or category
+     */
+    public Board moveItem(String fromLoc, String imageLoc, String movedLoc, String toLoc) {
+      Category from = category(fromLoc);
+      Item item = (from == null) ? null : item(from, imageLoc);
+      if (item == null || category(toLoc) == null) {
+        return this;
+      } // if
+      Board removed = removeItem(fromLoc, imageLoc, movedLoc);
+      Board added = removed.setItem(toLoc, imageLoc, item.text);
+      return new Board(added.categories, added.nextSeq, removed.cost + added.cost);
+    } // moveItem(String, String, String, String)
+
+    /**
+     * Gets a category
+     *
+     * @param imageLoc the location of the category's image
+     * @return the category, or null if there is none
+     */
+    Category category(String imageLoc) {
+      try {
+        return categories.get(imageLoc);
+      } catch (KeyNotFoundException e) {
+        return null;
+      } // try-catch
+    } // category(String)
+
+    /**
+     * Lists the categories in the order they were added
+     *
+     * @return the image locations and categories
+     */
+    List<KVPair<String, Category>> inOrder() {
+      List<KVPair<String, Category>> ordered =
+          new ArrayList<KVPair<String, Category>>(categories.size());
+      for (KVPair<String, Category> category : categories) {
+        ordered.add(category);
+      } // for
+      ordered.sort(
+          Comparator.comparingLong((KVPair<String, Category> cat) -> cat.getValue().seq));
+      return ordered;
+    } // inOrder()
+
+    /**
+     * Gets an item of a category
+     */
+    static Item item(Category category, String imageLoc) {
+      try {
+        return category.items.get(imageLoc);
+      } catch (KeyNotFoundException e) {
+        return null;
+      } // try-catch
+    } // item(Category, String)
+  } // class Board
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates a history whose current version is initial, which counts as saved
+   *
+   * @param initial  the board as it is now
+   * @param maxBytes the most bytes of earlier versions to keep
+   */
+  public BoardHistory(Board initial, long maxBytes) {
+    this.current = initial;
+    this.saved = initial;
+    this.maxBytes = maxBytes;
+  } // BoardHistory(Board, long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Gets the current version
+   *
+   * @return the board as it is now
+   */
+  public Board current() {
+    return current;
+  } // current()
+
+  /**
+   * Makes an edited board the current version. The old version can be undone back to; any
+   * versions that were undone can no longer be redone.
+   *
+   * @param next the edited board
+   */
+  public void record(Board next) {
+    if (next == current) {
+      return;
+    } // if
+    for (Board redo : redos) {
+      bytes -= redo.cost;
+    } // for
+    redos.clear();
+    undos.push(current);
+    bytes += next.cost;
+    current = next;
+    while (bytes > maxBytes && !undos.isEmpty()) {
+      // The oldest version's changes are now only reachable through the next one
+      Board oldest = undos.removeLast();
+      Board successor = undos.isEmpty() ? current : undos.peekLast();
+      bytes -= successor.cost;
+      if (saved == oldest) {
+        saved = null;
+      } // if
+    } // while
+  } // record(Board)
+
+  /**
+   * Determines if there is a version to go back to
+   *
+   * @return true if undo would change the board
+   */
+  public boolean canUndo() {
+    return !undos.isEmpty();
+  } // canUndo()
+
+  /**
+   * Determines if there is an undone version to go forward to
+   *
+   * @return true if redo would change the board
+   */
+  public boolean canRedo() {
+    return !redos.isEmpty();
+  } // canRedo()
+
+  /**
+   * Goes back to the version before the current one
+   *
+   * @return the new current version, or null if there is nothing to undo
+   */
+  public Board undo() {
+    if (undos.isEmpty()) {
+      return null;
+    } // if
+    redos.push(current);
+    current = undos.pop();
+    return current;
+  } // undo()
+
+  /**
+   * Goes forward to the version most recently undone
+   *
+   * @return the new current version, or null if there is nothing to redo
+   */
+  public Board redo() {
+    if (redos.isEmpty()) {
+      return null;
+    } // if
+    undos.push(current);
+    current = redos.pop();
+    return current;
+  } // redo()
+
+  /**
+   * Notes that the current version has been saved
+   */
+  public void markSaved() {
+    saved = current;
+  } // markSaved()
+
+  /**
+   * Determines if the current version is the one last saved
+   *
+   * @return true if there are no unsaved edits
+   */
+  public boolean isSaved() {
+    return saved == current;
+  } // isSaved()
+
+  /**
+   * Returns the bytes of memory held by earlier and undone versions, beyond the current one
+   *
+   * @return the estimate
+   */
+  public long bytes() {
+    return bytes;
+  } // bytes()
+} // class BoardHistory
@@ -0,0 +1,310 @@
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A command-line tool that renders every phrase on a board to audio ahead of time, so that
+ * a device can play pre-rendered speech instead of synthesizing it. Usage:
+ * <p>
+ * java BoardRenderer mappings-file bundle-dir [voice]
+ * <p>
+ * The bundle directory holds audio.pcm, the rendered audio one phrase after another, and
+ * manifest.txt, one line per image in each category, of the form
+ * <p>
+ * categoryLoc imageLoc offset length sampleRate digest
+ * <p>
+ * where categoryLoc is the location of the category's image (HOME for the home page, whose
+ * images speak the names of the categories), offset and length locate the phrase's 16-bit,
+ * mono, signed, big-endian PCM in audio.pcm, and digest identifies the voice and text it was
+ * rendered from. An image that appears in two categories has a line in each, with the text
+ * it has there. Re-running the tool only renders phrases whose digest is not already in the
+ * bundle; new audio is appended to audio.pcm.
+ */
+public class BoardRenderer {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The name of the audio file in a bundle */
+  static final String AUDIO_FILE = "audio.pcm";
+
+  /** The name of the manifest in a bundle */
+  static final String MANIFEST_FILE = "manifest.txt";
+
+  /** The category location of the home page in a manifest, which no image can have */
+  static final String HOME = ".";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The directory holding the bundle */
+  final File bundle;
+
+  /** The voice to render with */
+  final String voiceName;
+
+  /** The bundle entries for each digest already rendered */
+  final Map<String, Entry> rendered = new LinkedHashMap<String, Entry>();
+
+  /** The number of phrases rendered by the last call to render */
+  int renderedCount;
+
+  /**
+   * Renders phrases to audio for one worker thread
+   */
+  interface Worker {
+    /**
+     * Renders a phrase
+     *
+     * @param text the phrase
+     * @return its audio
+     * @throws IOException if it cannot be rendered
+     */
+    PhraseAudioCache.Audio render(String text) throws IOException;
+
+    /**
+     * Releases what the worker holds
+     */
+    void close();
+  } // interface Worker
+
+  /**
+   * Where a rendered phrase lives in the bundle
+   */
+  static class Entry {
+    final long offset;
+    final int length;
+    final float sampleRate;
+
+    Entry(long offset, int length, float sampleRate) {
+      this.offset = offset;
+      this.length = length;
+      this.sampleRate = sampleRate;
+    } // Entry(long, int, float)
+  } // class Entry
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates a renderer for the bundle in a directory, reading its manifest if it has one
+   *
+   * @param bundle    the bundle directory; created if need be
+   * @param voiceName the voice to render with
+   * @throws IOException if the existing manifest cannot be read
+   */
+  public BoardRenderer(File bundle, String voiceName) throws IOException {
+    this.bundle = bundle;
+    this.voiceName = voiceName;
+    bundle.mkdirs();
+    File manifest = new File(bundle, MANIFEST_FILE);
+    if (manifest.exists()) {
+      try (Scanner scan = new Scanner(manifest, StandardCharsets.UTF_8)) {
+        while (scan.hasNextLine()) {
+          String[] tokens = scan.nextLine().split(" ");
+          // Manifests written before lines named their category have one token fewer
+          int at = tokens.length - 4;
+          if (tokens.length == 5 || tokens.length == 6) {
+            rendered.put(tokens[at + 3], new Entry(Long.parseLong(tokens[at]),
+                Integer.parseInt(tokens[at + 1]), Float.parseFloat(tokens[at + 2])));
+          } // if
+        } // while
+      } // try
+    } // if
+  } // BoardRenderer(File, String)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Renders every category name and item text of a board into the bundle, using every
+   * core, and rewrites the manifest
+   *
+   * @param mappings the board
+   * @throws Exception if a phrase cannot be rendered or the bundle cannot be written
+   */
+  public void render(AACMappings mappings) throws Exception {
+    // Collect the text for every image in every category, home page first, keyed by the
+    // category's location and the image's (neither has spaces)
+    Map<String, String> phrases = new LinkedHashMap<String, String>();
+    mappings.reset();
+    for (String categoryLoc : mappings.getImageLocs()) {
+      mappings.select(categoryLoc);
+      phrases.put(HOME + ' ' + categoryLoc, mappings.getCategory());
+      for (String itemLoc : mappings.getImageLocs()) {
+        phrases.put(categoryLoc + ' ' + itemLoc, mappings.select(itemLoc));
+      } // for
+      mappings.reset();
+    } // for
+
+    // Render each distinct phrase not already in the bundle
+    Map<String, String> digests = new LinkedHashMap<String, String>();
+    Map<String, String> toRender = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, String> phrase : phrases.entrySet()) {
+      String digest = digest(phrase.getValue());
+      digests.put(phrase.getKey(), digest);
+      if (!rendered.containsKey(digest)) {
+        toRender.put(digest, phrase.getValue());
+      } // if
+    } // for
+    renderAll(toRender);
+
+    // Write the manifest
+    File manifest = new File(bundle, MANIFEST_FILE);
+    File temp = new File(bundle, MANIFEST_FILE + ".tmp");
+    try (PrintWriter writer = new PrintWriter(temp, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, String> image : digests.entrySet()) {
+        Entry entry = rendered.get(image.getValue());
+        writer.append(image.getKey()).append(' ').append(Long.toString(entry.offset))
+            .append(' ').append(Integer.toString(entry.length))
+            .append(' ').append(Float.toString(entry.sampleRate))
+            .append(' ').append(image.getValue()).println();
+      } // for
+    } // try
+    if (!temp.renameTo(manifest)) {
+      manifest.delete();
+      if (!temp.renameTo(manifest)) {
+        throw new IOException("Could not replace " + manifest);
+      } // if
+    } // if
+  } // render(AACMappings)
+
+  /**
+   * Renders a board to a bundle from the command line
+   *
+   * @param args the mappings file, the bundle directory and, optionally, the voice
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("Usage: java BoardRenderer mappings-file bundle-dir [voice]");
+      System.exit(1);
+    } // if
+    SpeechBackend.registerVoices();
+    String voice = (args.length > 2) ? args[2] : SpeechBackend.DEFAULT_VOICE;
+    BoardRenderer renderer = new BoardRenderer(new File(args[1]), voice);
+    try {
+      renderer.render(AACMappings.load(args[0]));
+    } catch (FileNotFoundException e) {
+      System.err.println("Cannot read " + args[0]);
+      System.exit(1);
+    } // try-catch
+    System.out.println("Rendered " + renderer.renderedCount + " new phrases into " + args[1]);
+  } // main(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Renders phrases in parallel, one voice per worker, appending the audio to the bundle
+   * as each finishes
+   *
+   * @param toRender the phrases to render, by digest
+   */
+  void renderAll(Map<String, String> toRender) throws Exception {
+    renderedCount = 0;
+    if (toRender.isEmpty()) {
+      return;
+    } // if
+    int threads = Math.min(Runtime.getRuntime().availableProcessors(), toRender.size());
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Worker> workers = new ArrayList<Worker>();
+    ThreadLocal<Worker> threadWorker = ThreadLocal.withInitial(() -> {
+      Worker worker = newWorker();
+      synchronized (workers) {
+        workers.add(worker);
+      } // synchronized
+      return worker;
+    });
+    try (RandomAccessFile audio = new RandomAccessFile(new File(bundle, AUDIO_FILE), "rw")) {
+      List<Future<?>> results = new ArrayList<Future<?>>();
+      for (Map.Entry<String, String> phrase : toRender.entrySet()) {
+        results.add(pool.submit(() -> {
+          PhraseAudioCache.Audio rendering = threadWorker.get().render(phrase.getValue());
+          synchronized (audio) {
+            long offset = audio.length();
+            audio.seek(offset);
+            audio.write(rendering.pcm);
+            rendered.put(phrase.getKey(),
+                new Entry(offset, rendering.pcm.length, rendering.format.getSampleRate()));
+            renderedCount++;
+          } // synchronized
+          return null;
+        }));
+      } // for
+      for (Future<?> result : results) {
+        result.get();
+      } // for
+    } finally {
+      pool.shutdown();
+      synchronized (workers) {
+        for (Worker worker : workers) {
+          worker.close();
+        } // for
+      } // synchronized
+    } // try-finally
+  } // renderAll(Map)
+
+  /**
+   * Makes the worker for one thread, with a voice of its own that records into memory
+   *
+   * @return the worker
+   * @throws IllegalArgumentException if FreeTTS has no voice of our name
+   */
+  Worker newWorker() {
+    Voice voice = VoiceManager.getInstance().getVoice(voiceName);
+    if (voice == null) {
+      throw new IllegalArgumentException("No such voice: " + voiceName);
+    } // if
+    StreamingAudioPlayer.Memory player = new StreamingAudioPlayer.Memory();
+    voice.setAudioPlayer(player);
+    voice.allocate();
+    return new Worker() {
+      public PhraseAudioCache.Audio render(String text) throws IOException {
+        player.clear();
+        if (!voice.speak(text)) {
+          throw new IOException("Could not render \"" + text + "\"");
+        } // if
+        return new PhraseAudioCache.Audio(player.getAudioFormat(), player.getAudio());
+      } // render(String)
+
+      public void close() {
+        voice.deallocate();
+      } // close()
+    };
+  } // newWorker()
+
+  /**
+   * Identifies a phrase as spoken by our voice
+   *
+   * @param text the phrase
+   * @return a hex digest of the voice and phrase
+   */
+  String digest(String text) throws NoSuchAlgorithmException {
+    MessageDigest sha = MessageDigest.getInstance("SHA-256");
+    byte[] hash = sha.digest((voiceName + '\u0000' + text).getBytes(StandardCharsets.UTF_8));
+    StringBuilder hex = new StringBuilder();
+    for (int i = 0; i < 12; i++) {
+      hex.append(String.format("%02x", hash[i]));
+    } // for
+    return hex.toString();
+  } // digest(String)
+} // class BoardRenderer
@@ -0,0 +1,118 @@
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.NullKeyException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+/**
+ * Measures how long it takes to fill a large category one item at a time and all at once. For
+ * each size it builds the same items (a tenth of them repeated, so that the later text must
+ * win) and times four ways of loading them:
+ * <ul>
+ * <li>set: AssociativeArray.set on each pair, from the default capacity;</li>
+ * <li>putAll: AssociativeArray.putAll on the parallel arrays;</li>
+ * <li>addItem: AACCategory.addItem on each item;</li>
+ * <li>addItems: AACCategory.addItems on the parallel arrays.</li>
+ * </ul>
+ * It also writes a board of that many items to a temporary file and times reading it, which
+ * goes through addItems. The nanoseconds per item should stay flat as the size grows if a
+ * load is linear. Each time is the best of several runs.
+ * <p>
+ * Run as java BulkLoadBenchmark [largest size].
+ */
+public class BulkLoadBenchmark {
+  /** The number of times each load is repeated; the fastest is reported */
+  static final int RUNS = 5;
+
+  /**
+   * Runs the benchmark
+   *
+   * @param args the largest number of items, 262144 by default
+   */
+  public static void main(String[] args) throws Exception {
+    int largest = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 18;
+    System.out.printf("%-8s %12s %12s %12s %12s %12s%n", "items", "set", "putAll",
+        "addItem", "addItems", "read file");
+    System.out.printf("%-8s %12s %12s %12s %12s %12s%n", "", "ns/item", "ns/item",
+        "ns/item", "ns/item", "ns/item");
+    // Run the smallest size first as a warm-up, so that the JIT has compiled the code
+    run(Math.min(1 << 10, largest), false);
+    for (int n = Math.min(1 << 10, largest); n <= largest; n *= 4) {
+      run(n, true);
+    } // for
+  } // main(String[])
+
+  /**
+   * Times each way of loading n items, and prints the times
+   *
+   * @param n     the number of items
+   * @param print whether to print the results
+   */
+  static void run(int n, boolean print) throws IOException, NullKeyException {
+    Random random = new Random(207);
+    String[] imageLocs = new String[n];
+    String[] texts = new String[n];
+    for (int i = 0; i < n; i++) {
+      // Repeat an earlier image a tenth of the time
+      int image = (i > 0 && random.nextInt(10) == 0) ? random.nextInt(i) : i;
+      imageLocs[i] = "img/bulk/" + image + ".png";
+      texts[i] = "item " + i;
+    } // for
+
+    long set = Long.MAX_VALUE;
+    long putAll = Long.MAX_VALUE;
+    long addItem = Long.MAX_VALUE;
+    long addItems = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      AssociativeArray<String, String> one = new AssociativeArray<String, String>();
+      for (int i = 0; i < n; i++) {
+        one.set(imageLocs[i], texts[i]);
+      } // for
+      set = Math.min(set, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      AssociativeArray<String, String> all = new AssociativeArray<String, String>();
+      all.putAll(imageLocs, texts);
+      putAll = Math.min(putAll, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      AACCategory oneCategory = new AACCategory("bulk");
+      for (int i = 0; i < n; i++) {
+        oneCategory.addItem(imageLocs[i], texts[i]);
+      } // for
+      addItem = Math.min(addItem, System.nanoTime() - start);
+
+      start = System.nanoTime();
+      AACCategory allCategory = new AACCategory("bulk");
+      allCategory.addItems(imageLocs, texts);
+      addItems = Math.min(addItems, System.nanoTime() - start);
+
+      if (one.size() != all.size() || oneCategory.size() != allCategory.size()) {
+        throw new IllegalStateException("The loads disagree on the number of items");
+      } // if
+    } // for
+
+    File board = File.createTempFile("BulkLoadBenchmark", ".txt");
+    board.deleteOnExit();
+    try (PrintWriter out = new PrintWriter(board, "UTF-8")) {
+      out.println("img/bulk/category.png bulk");
+      for (int i = 0; i < n; i++) {
+        out.println(">" + imageLocs[i] + " " + texts[i]);
+      } // for
+    } // try
+    long read = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      new AACMappings(board.getPath());
+      read = Math.min(read, System.nanoTime() - start);
+    } // for
+    board.delete();
+
+    if (print) {
+      System.out.printf("%-8d %12.1f %12.1f %12.1f %12.1f %12.1f%n", n, (double) set / n,
+          (double) putAll / n, (double) addItem / n, (double) addItems / n, (double) read / n);
+    } // if
+  } // run(int, boolean)
+} // class BulkLoadBenchmark
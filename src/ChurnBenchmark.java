@@ -0,0 +1,191 @@
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.NullKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time and memory of associative arrays under churn: a board that is edited over
+ * and over, so that items are added and removed many times. It reports two things.
+ * <ul>
+ * <li>Growth: for each initial capacity and growth factor, the throughput of a churn workload
+ * (fill to n keys, then repeatedly remove a random key and add a new one, then remove down to
+ * a tenth), the capacity left at the end, and the heap that a batch of such arrays holds
+ * before and after trimToSize.</li>
+ * <li>Clone: the time of clone, which copies the pairs, against the original clone, which set
+ * each pair into an empty array and so scanned for a duplicate every time.</li>
+ * </ul>
+ * Run as java ChurnBenchmark [keys].
+ */
+public class ChurnBenchmark {
+  /** The number of arrays measured together for the heap figures */
+  static final int BATCH = 32;
+
+  /** The growth factors compared */
+  static final double[] GROWTH_FACTORS = {1.25, 1.5, 2.0, 3.0};
+
+  /**
+   * Runs the benchmark
+   *
+   * @param args the number of keys, 16384 by default
+   */
+  public static void main(String[] args) throws Exception {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 14;
+    String[] keys = new String[4 * n];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = "img/churn/" + i + ".png";
+    } // for
+
+    System.out.printf("%-9s %-7s %12s %10s %10s %12s %12s%n", "capacity", "growth",
+        "ops/ms", "slots", "size", "heap KB", "trimmed KB");
+    // Run twice, so that the second run is measured after the JIT has compiled the code
+    for (int round = 0; round < 2; round++) {
+      for (int capacity : new int[] {AssociativeArray.DEFAULT_CAPACITY, n}) {
+        for (double growthFactor : GROWTH_FACTORS) {
+          growth(keys, n, capacity, growthFactor, round == 1);
+        } // for
+      } // for
+    } // for
+
+    System.out.println();
+    System.out.printf("%-9s %14s %14s%n", "pairs", "clone us", "set-each us");
+    for (int round = 0; round < 2; round++) {
+      for (int size = 1 << 10; size <= n; size *= 2) {
+        clone(keys, size, round == 1);
+      } // for
+    } // for
+  } // main(String[])
+
+  /**
+   * Churns one array and measures its throughput, then churns a batch and measures the heap
+   * they hold, and prints the results
+   *
+   * @param keys         the keys to draw from
+   * @param n            the number of keys to hold at the peak
+   * @param capacity     the initial capacity
+   * @param growthFactor the growth factor
+   * @param print        whether to print the results
+   */
+  static void growth(String[] keys, int n, int capacity, double growthFactor, boolean print)
+      throws NullKeyException {
+    long start = System.nanoTime();
+    AssociativeArray<String, Integer> timed = churn(keys, n, capacity, growthFactor);
+    long nanos = System.nanoTime() - start;
+    // The fill, the churn and the removals
+    long ops = n + 4L * n + (n - n / 10);
+
+    List<AssociativeArray<String, Integer>> batch =
+        new ArrayList<AssociativeArray<String, Integer>>(BATCH);
+    long before = usedHeap();
+    for (int i = 0; i < BATCH; i++) {
+      batch.add(churn(keys, n, capacity, growthFactor));
+    } // for
+    long held = usedHeap() - before;
+    for (AssociativeArray<String, Integer> array : batch) {
+      array.trimToSize();
+    } // for
+    long trimmed = usedHeap() - before;
+
+    if (print) {
+      System.out.printf("%-9d %-7.2f %12.0f %10d %10d %12.1f %12.1f%n", capacity, growthFactor,
+          ops / (nanos / 1e6), timed.capacity(), timed.size(), held / 1024.0 / BATCH,
+          trimmed / 1024.0 / BATCH);
+    } // if
+  } // growth(String[], int, int, double, boolean)
+
+  /**
+   * Fills an array to n keys, replaces a random key with a new one 4n times, then removes
+   * keys until a tenth are left
+   *
+   * @param keys         the keys to draw from
+   * @param n            the number of keys to hold at the peak
+   * @param capacity     the initial capacity
+   * @param growthFactor the growth factor
+   * @return the array
+   */
+  static AssociativeArray<String, Integer> churn(String[] keys, int n, int capacity,
+      double growthFactor) throws NullKeyException {
+    Random random = new Random(207);
+    AssociativeArray<String, Integer> array =
+        new AssociativeArray<String, Integer>(capacity, growthFactor);
+    int next = 0;
+    for (; next < n; next++) {
+      array.set(keys[next], next);
+    } // for
+    for (int i = 0; i < 4 * n; i++) {
+      array.remove(array.keyAt(random.nextInt(array.size())));
+      array.set(keys[next % keys.length], i);
+      next++;
+    } // for
+    while (array.size() > n / 10) {
+      array.remove(array.keyAt(random.nextInt(array.size())));
+    } // while
+    return array;
+  } // churn(String[], int, int, double)
+
+  /**
+   * Times clone against setting each pair into an empty array, and prints the times
+   *
+   * @param keys  the keys to draw from
+   * @param size  the number of pairs to copy
+   * @param print whether to print the results
+   */
+  static void clone(String[] keys, int size, boolean print) throws NullKeyException {
+    AssociativeArray<String, Integer> array = new AssociativeArray<String, Integer>(size);
+    for (int i = 0; i < size; i++) {
+      array.set(keys[i], i);
+    } // for
+    long start = System.nanoTime();
+    AssociativeArray<String, Integer> copy = array.clone();
+    long cloned = System.nanoTime() - start;
+    start = System.nanoTime();
+    AssociativeArray<String, Integer> old = setEach(array);
+    long setEach = System.nanoTime() - start;
+    if (copy.size() != size || old.size() != size) {
+      throw new IllegalStateException("A copy lost pairs");
+    } // if
+    if (print) {
+      System.out.printf("%-9d %14.1f %14.1f%n", size, cloned / 1e3, setEach / 1e3);
+    } // if
+  } // clone(String[], int, boolean)
+
+  /**
+   * Copies an array the way clone once did: by setting each pair into an empty array, which
+   * scanned the pairs copied so far for the key before adding it
+   *
+   * @param array the array to copy
+   * @return the copy
+   */
+  static AssociativeArray<String, Integer> setEach(AssociativeArray<String, Integer> array)
+      throws NullKeyException {
+    AssociativeArray<String, Integer> copy = new AssociativeArray<String, Integer>();
+    for (int i = 0; i < array.size(); i++) {
+      String key = array.keyAt(i);
+      boolean found = false;
+      for (int j = 0; j < copy.size() && !found; j++) {
+        found = copy.keyAt(j).equals(key);
+      } // for
+      if (!found) {
+        try {
+          copy.set(key, array.get(key));
+        } catch (Exception e) {
+          // Do nothing; the key is there.
+        } // try-catch
+      } // if
+    } // for
+    return copy;
+  } // setEach(AssociativeArray)
+
+  /**
+   * Gets the bytes of heap in use after collecting garbage
+   *
+   * @return the bytes
+   */
+  static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    } // for
+    return runtime.totalMemory() - runtime.freeMemory();
+  } // usedHeap()
+} // class ChurnBenchmark
@@ -0,0 +1,177 @@
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Speaks by driving FreeTTS voices directly, without the JSAPI layer and its queue of
+ * speakables and engine-state polling. Each voice streams its audio into its own
+ * StreamingAudioPlayer, so playback starts with the first chunk FreeTTS produces.
+ * Different voices may speak at once; phrases in the same voice are spoken one at a time.
+ * <p>
+ * The audio of each phrase is cached, so a phrase that has been spoken (or warmed up)
+ * before is played straight from memory without running FreeTTS at all.
+ */
+public class DirectSpeech extends SpeechBackend {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** Makes the audio player for each newly loaded voice */
+  final Supplier<StreamingAudioPlayer> players;
+
+  /** The loaded voices, by name */
+  final Map<String, Voice> voices = new ConcurrentHashMap<String, Voice>();
+
+  /** The audio of phrases spoken or warmed up so far */
+  final PhraseAudioCache cache;
+
+  /** Separate voices, recording into memory, used to warm up the cache */
+  final Map<String, Voice> warmers = new ConcurrentHashMap<String, Voice>();
+
+  /** The thread that warms up the cache */
+  final ExecutorService warmer = Executors.newSingleThreadExecutor((runnable) -> {
+    Thread thread = new Thread(runnable, "aac-speech-warmup");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates a backend that plays through the sound card
+   */
+  public DirectSpeech() {
+    this(StreamingAudioPlayer.Line::new, Long.getLong("aac.speech.cacheBytes", 32L << 20));
+  } // DirectSpeech()
+
+  /**
+   * Creates a backend that sends each voice's audio to a player made by players (e.g.,
+   * StreamingAudioPlayer.Memory::new for headless use)
+   *
+   * @param players    makes one audio player per voice
+   * @param cacheBytes the most bytes of phrase audio to cache
+   */
+  public DirectSpeech(Supplier<StreamingAudioPlayer> players, long cacheBytes) {
+    this.players = players;
+    this.cache = new PhraseAudioCache(cacheBytes);
+    registerVoices();
+  } // DirectSpeech(Supplier, long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  @Override
+  public void speak(String voiceName, String text, Runnable onAudioStart) throws Exception {
+    Voice voice = load(voiceName, voices, players);
+    synchronized (voice) {
+      StreamingAudioPlayer player = (StreamingAudioPlayer) voice.getAudioPlayer();
+      PhraseAudioCache.Audio cached = cache.get(voiceName, text);
+      if (cached != null) {
+        player.play(cached.format, cached.pcm, onAudioStart);
+        return;
+      } // if
+      player.expectAudio(onAudioStart);
+      player.startRecording();
+      boolean spoken = voice.speak(text);
+      byte[] pcm = player.stopRecording();
+      player.drain();
+      if (spoken) {
+        cache.put(voiceName, text, new PhraseAudioCache.Audio(player.getAudioFormat(), pcm));
+      } // if
+    } // synchronized
+  } // speak(String, String, Runnable)
+
+  /**
+   * Renders each phrase not yet cached into the cache, in the background, using a separate
+   * copy of the voice so that speech is not held up
+   *
+   * @param voiceName the voice the phrases will be spoken in
+   * @param phrases   the phrases
+   */
+  @Override
+  public void warmUp(String voiceName, String[] phrases) {
+    warmer.execute(() -> {
+      try {
+        Voice voice = load(voiceName, warmers, StreamingAudioPlayer.Memory::new);
+        StreamingAudioPlayer.Memory player = (StreamingAudioPlayer.Memory) voice.getAudioPlayer();
+        for (String phrase : phrases) {
+          if (!cache.contains(voiceName, phrase)) {
+            player.clear();
+            player.expectAudio(null);
+            if (voice.speak(phrase)) {
+              cache.put(voiceName, phrase,
+                  new PhraseAudioCache.Audio(player.getAudioFormat(), player.getAudio()));
+            } // if
+          } // if
+        } // for
+        player.clear();
+      } catch (Exception e) {
+        e.printStackTrace();
+      } // try-catch
+    });
+  } // warmUp(String, String[])
+
+  @Override
+  public void prewarm(String voiceName) throws Exception {
+    load(voiceName, voices, players);
+  } // prewarm(String)
+
+  /**
+   * Returns the audio player of a voice, loading the voice if need be
+   *
+   * @param voiceName the name of the voice
+   * @return its player
+   */
+  public StreamingAudioPlayer playerFor(String voiceName) {
+    return (StreamingAudioPlayer) load(voiceName, voices, players).getAudioPlayer();
+  } // playerFor(String)
+
+  @Override
+  public void close() {
+    warmer.shutdownNow();
+    for (Map<String, Voice> loaded : List.of(voices, warmers)) {
+      for (Voice voice : loaded.values()) {
+        synchronized (voice) {
+          voice.getAudioPlayer().close();
+          voice.deallocate();
+        } // synchronized
+      } // for
+      loaded.clear();
+    } // for
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Gets a loaded voice, loading it and attaching a player on first use
+   *
+   * @param voiceName the name of the voice
+   * @param loaded    the voices loaded so far, by name
+   * @param playerMaker makes the player for a newly loaded voice
+   * @return the voice
+   * @throws IllegalArgumentException if FreeTTS has no such voice
+   */
+  static Voice load(String voiceName, Map<String, Voice> loaded,
+      Supplier<? extends StreamingAudioPlayer> playerMaker) {
+    return loaded.computeIfAbsent(voiceName, (name) -> {
+      Voice voice = VoiceManager.getInstance().getVoice(name);
+      if (voice == null) {
+        throw new IllegalArgumentException("No such voice: " + name);
+      } // if
+      voice.setAudioPlayer(playerMaker.get());
+      voice.allocate();
+      return voice;
+    });
+  } // load(String, Map, Supplier)
+} // class DirectSpeech
@@ -0,0 +1,110 @@
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import java.util.Random;
+
+/**
+ * Measures how plain and hardened associative arrays cope with keys crafted to collide. For
+ * each set of keys it adds every key to an empty array and then looks each one up, recording
+ * the latency of every operation, and prints the mean, 99th percentile and worst latency.
+ * <p>
+ * The key sets are:
+ * <ul>
+ * <li>random: ordinary image locations;</li>
+ * <li>colliding: image locations that all have the same String.hashCode, built from the
+ * blocks "Aa" and "BB", which hash alike;</li>
+ * <li>constant: keys whose hashCode is the same constant, which no seed can separate, so
+ * that only tree buckets keep them from becoming a scan.</li>
+ * </ul>
+ * Run as java HashFloodBenchmark [keys].
+ */
+public class HashFloodBenchmark {
+  /** A key that a hash cannot tell from any other */
+  static final class ConstantKey implements Comparable<ConstantKey> {
+    final String name;
+
+    ConstantKey(String name) {
+      this.name = name;
+    } // ConstantKey(String)
+
+    @Override
+    public int hashCode() {
+      return 42;
+    } // hashCode()
+
+    @Override
+    public boolean equals(Object other) {
+      return (other instanceof ConstantKey) && ((ConstantKey) other).name.equals(name);
+    } // equals(Object)
+
+    @Override
+    public int compareTo(ConstantKey other) {
+      return name.compareTo(other.name);
+    } // compareTo(ConstantKey)
+  } // class ConstantKey
+
+  /**
+   * Runs the benchmark
+   *
+   * @param args the number of keys in each set, 32768 by default
+   */
+  public static void main(String[] args) throws Exception {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 15;
+    Random random = new Random(207);
+    String[] randomKeys = new String[n];
+    String[] collidingKeys = new String[n];
+    ConstantKey[] constantKeys = new ConstantKey[n];
+    int bits = 32 - Integer.numberOfLeadingZeros(n - 1);
+    for (int i = 0; i < n; i++) {
+      randomKeys[i] = "img/" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + ".png";
+      StringBuilder colliding = new StringBuilder("img/");
+      for (int bit = bits - 1; bit >= 0; bit--) {
+        colliding.append(((i >> bit) & 1) == 0 ? "Aa" : "BB");
+      } // for
+      collidingKeys[i] = colliding.append(".png").toString();
+      constantKeys[i] = new ConstantKey(randomKeys[i]);
+    } // for
+
+    System.out.printf("%-10s %-9s %10s %10s %10s %10s %10s %10s%n", "keys", "array",
+        "set mean", "set p99", "set max", "get mean", "get p99", "get max");
+    // Run twice, so that the second run is measured after the JIT has compiled the code
+    for (int round = 0; round < 2; round++) {
+      for (boolean hardened : new boolean[] {false, true}) {
+        run("random", hardened, randomKeys, round == 1);
+        run("colliding", hardened, collidingKeys, round == 1);
+        run("constant", hardened, constantKeys, round == 1);
+      } // for
+    } // for
+  } // main(String[])
+
+  /**
+   * Adds and then looks up every key of a set, and prints the latencies
+   *
+   * @param name     the name of the key set
+   * @param hardened whether to harden the array
+   * @param keys     the keys
+   * @param print    whether to print the results
+   */
+  static <K> void run(String name, boolean hardened, K[] keys, boolean print)
+      throws NullKeyException, KeyNotFoundException {
+    AssociativeArray<K, Integer> array = new AssociativeArray<K, Integer>(
+        AssociativeArray.DEFAULT_CAPACITY, AssociativeArray.DEFAULT_GROWTH_FACTOR, hardened);
+    LatencyHistogram sets = new LatencyHistogram();
+    LatencyHistogram gets = new LatencyHistogram();
+    for (int i = 0; i < keys.length; i++) {
+      long start = System.nanoTime();
+      array.set(keys[i], i);
+      sets.record(System.nanoTime() - start);
+    } // for
+    for (int i = 0; i < keys.length; i++) {
+      long start = System.nanoTime();
+      array.get(keys[i]);
+      gets.record(System.nanoTime() - start);
+    } // for
+    if (print) {
+      System.out.printf("%-10s %-9s %10.0f %10d %10d %10.0f %10d %10d%n", name,
+          hardened ? "hardened" : "plain", sets.getMean(), sets.getPercentile(0.99),
+          sets.getMax(), gets.getMean(), gets.getPercentile(0.99), gets.getMax());
+    } // if
+  } // run(String, boolean, K[], boolean)
+} // class HashFloodBenchmark
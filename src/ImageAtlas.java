@@ -0,0 +1,536 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * Pre-scaled images for the AAC grid, packed into one atlas file per category. Building an
+ * atlas decodes each of the category's images once, scales it to fit a cell, and writes the
+ * pixels as raw ARGB; loading it later is a single read with no image decoding. Atlases are
+ * rebuilt automatically when an image is added to a category or an image file changes.
+ * Images that cannot be decoded are recorded as missing, with a null icon, so that they are
+ * not decoded again on every render; the atlas is rebuilt if such a file changes or appears.
+ * <p>
+ * Showing a category reads its atlas without looking at the image files, so that a cold
+ * switch costs the one read. The files' modification times are checked afterwards on a
+ * background thread, and a changed image shows from the next time the category is drawn.
+ * The icons of the categories loaded are kept, least recently used dropped first, up to a
+ * budget of bytes.
+ * <p>
+ * An atlas file holds the magic number, the cell size, the number of images, and then, for
+ * each image, its location, the modification time of its file, and cellSize * cellSize ARGB
+ * pixels. Then come the number of missing images and, for each, its location and the
+ * modification time of its file (0 if there is none).
+ * <p>
+ * Run as java ImageAtlas mappings-file atlas-dir [cell-size] to build every atlas for a
+ * board ahead of time.
+ */
+public class ImageAtlas {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** Identifies an atlas file */
+  static final int MAGIC = 0x41414342;
+
+  /** The default width and height of a cell, in pixels */
+  public static final int DEFAULT_CELL_SIZE = 96;
+
+  /** The default most bytes of icons to keep loaded */
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The directory where atlases are kept */
+  final File dir;
+
+  /** The width and height of a cell, in pixels */
+  final int cellSize;
+
+  /** The most bytes of icons to keep loaded */
+  final long maxBytes;
+
+  /**
+   * The icons of each category loaded, by category key, least recently used first; null for
+   * missing images
+   */
+  final LinkedHashMap<String, Map<String, ImageIcon>> loaded =
+      new LinkedHashMap<String, Map<String, ImageIcon>>(16, 0.75f, true);
+
+  /** The bytes of the icons loaded */
+  long bytes;
+
+  /** The thread that checks the atlases read against the images' files */
+  final ExecutorService checker = Executors.newSingleThreadExecutor((runnable) -> {
+    Thread thread = new Thread(runnable, "aac-atlas-check");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    return thread;
+  });
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates an atlas store in a directory that keeps up to DEFAULT_MAX_BYTES of icons loaded
+   *
+   * @param dir      the directory where atlases are kept; created if need be
+   * @param cellSize the width and height of a cell, in pixels
+   */
+  public ImageAtlas(File dir, int cellSize) {
+    this(dir, cellSize, DEFAULT_MAX_BYTES);
+  } // ImageAtlas(File, int)
+
+  /**
+   * Creates an atlas store in a directory
+   *
+   * @param dir      the directory where atlases are kept; created if need be
+   * @param cellSize the width and height of a cell, in pixels
+   * @param maxBytes the most bytes of icons to keep loaded; the category last loaded is
+   *                 kept even if it alone is larger
+   */
+  public ImageAtlas(File dir, int cellSize, long maxBytes) {
+    this.dir = dir;
+    this.cellSize = cellSize;
+    this.maxBytes = maxBytes;
+    dir.mkdirs();
+  } // ImageAtlas(File, int, long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Returns scaled icons for the images of a category, reading its atlas if it has every
+   * image and building it otherwise. The store's lock is not held while reading or building,
+   * and the atlas read is checked against the images' files in the background.
+   *
+   * @param category  the key of the category: the location of its image, which is the same
+   *                  in every locale, or its name on boards without one ("" for the home page)
+   * @param imageLocs the locations of every image in the category
+   * @return the icons, by image location; null for images that cannot be decoded
+   */
+  public Map<String, ImageIcon> iconsFor(String category, String[] imageLocs) {
+    Map<String, ImageIcon> icons = cached(category, imageLocs);
+    if (icons != null) {
+      return icons;
+    } // if
+    Map<String, Long> modified = new HashMap<String, Long>();
+    icons = read(category, imageLocs, modified);
+    if (icons != null) {
+      checker.execute(() -> revalidate(category, imageLocs, modified));
+    } else {
+      icons = build(category, imageLocs);
+      if (icons == null) {
+        // Interrupted; the caller decodes the images itself
+        return new HashMap<String, ImageIcon>();
+      } // if
+    } // if
+    keep(category, icons);
+    return icons;
+  } // iconsFor(String, String[])
+
+  /**
+   * Loads the icons of a category ahead of need, as iconsFor would, but without holding the
+   * store's lock while reading or building the atlas, so that iconsFor is not kept waiting.
+   * Building stops early if the calling thread is interrupted.
+   *
+   * @param category  the key of the category
+   * @param imageLocs the locations of every image in the category
+   * @return the bytes of pixels loaded; 0 if the icons were already loaded, or -1 if the
+   *         thread was interrupted before they were
+   */
+  public long preload(String category, String[] imageLocs) {
+    if (cached(category, imageLocs) != null) {
+      return 0;
+    } // if
+    // Off the event thread, so the images' files can be checked as the atlas is read
+    Map<String, ImageIcon> icons = read(category, imageLocs, null);
+    if (icons == null) {
+      icons = build(category, imageLocs);
+    } // if
+    if (icons == null) {
+      return -1;
+    } // if
+    synchronized (this) {
+      if (cached(category, imageLocs) != null) {
+        // iconsFor loaded them while we were reading
+        return 0;
+      } // if
+      keep(category, icons);
+    } // synchronized
+    return bytesOf(icons);
+  } // preload(String, String[])
+
+  /**
+   * Forgets the icons of a category; they are read again from its atlas when next needed
+   *
+   * @param category the key of the category
+   */
+  public synchronized void evict(String category) {
+    Map<String, ImageIcon> icons = loaded.remove(category);
+    if (icons != null) {
+      bytes -= bytesOf(icons);
+    } // if
+  } // evict(String)
+
+  /**
+   * Gets the bytes of the icons loaded
+   *
+   * @return the bytes
+   */
+  public synchronized long size() {
+    return bytes;
+  } // size()
+
+  /**
+   * Builds the atlas of every category of a board, and of its home page
+   *
+   * @param mappings the board
+   */
+  public void buildAll(AACMappings mappings) {
+    mappings.reset();
+    String[] categoryLocs = mappings.getImageLocs();
+    build(mappings.getCategoryLoc(), categoryLocs);
+    for (String categoryLoc : categoryLocs) {
+      mappings.select(categoryLoc);
+      build(categoryLoc, mappings.getImageLocs());
+      mappings.reset();
+    } // for
+  } // buildAll(AACMappings)
+
+  /**
+   * Finds the directory where atlases are kept unless another is named: aac-atlas in the
+   * user's cache directory ($XDG_CACHE_HOME, or .cache in their home directory)
+   *
+   * @return the directory
+   */
+  public static File defaultDir() {
+    String cache = System.getenv("XDG_CACHE_HOME");
+    File base = (cache == null || cache.isEmpty())
+        ? new File(System.getProperty("user.home"), ".cache") : new File(cache);
+    return new File(base, "aac-atlas");
+  } // defaultDir()
+
+  /**
+   * Builds every atlas for a board from the command line
+   *
+   * @param args the mappings file (or board manifest), the atlas directory and, optionally,
+   *             the cell size
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: java ImageAtlas mappings-file atlas-dir [cell-size]");
+      System.exit(1);
+    } // if
+    int cellSize = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_CELL_SIZE;
+    new ImageAtlas(new File(args[1]), cellSize).buildAll(AACMappings.load(args[0]));
+  } // main(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Gets the icons of a category if they are loaded, marking them as recently used
+   *
+   * @param category  the key of the category
+   * @param imageLocs the images there must be icons for
+   * @return the icons, or null if they are not loaded or an image is new
+   */
+  synchronized Map<String, ImageIcon> cached(String category, String[] imageLocs) {
+    Map<String, ImageIcon> icons = loaded.get(category);
+    return (icons != null && icons.keySet().containsAll(Arrays.asList(imageLocs)))
+        ? icons : null;
+  } // cached(String, String[])
+
+  /**
+   * Keeps the icons of a category loaded, dropping the icons least recently used until the
+   * budget is met
+   *
+   * @param category the key of the category, which is kept
+   * @param icons    its icons
+   */
+  synchronized void keep(String category, Map<String, ImageIcon> icons) {
+    Map<String, ImageIcon> old = loaded.put(category, icons);
+    if (old != null) {
+      bytes -= bytesOf(old);
+    } // if
+    bytes += bytesOf(icons);
+    Iterator<Map.Entry<String, Map<String, ImageIcon>>> eldest = loaded.entrySet().iterator();
+    while (bytes > maxBytes && eldest.hasNext()) {
+      Map.Entry<String, Map<String, ImageIcon>> entry = eldest.next();
+      if (!entry.getKey().equals(category)) {
+        bytes -= bytesOf(entry.getValue());
+        eldest.remove();
+      } // if
+    } // while
+  } // keep(String, Map)
+
+  /**
+   * Counts the bytes of pixels of some icons
+   *
+   * @param icons the icons, with null for missing images
+   * @return the bytes
+   */
+  long bytesOf(Map<String, ImageIcon> icons) {
+    long decoded = 0;
+    for (ImageIcon icon : icons.values()) {
+      if (icon != null) {
+        decoded++;
+      } // if
+    } // for
+    return decoded * cellSize * cellSize * 4;
+  } // bytesOf(Map)
+
+  /**
+   * Checks the atlas of a category against its images' files, rebuilding it if one changed.
+   * If the category is still loaded, the rebuilt icons replace its icons.
+   *
+   * @param category  the key of the category
+   * @param imageLocs the locations of every image in the category
+   * @param modified  the modification time the atlas holds for each image
+   */
+  void revalidate(String category, String[] imageLocs, Map<String, Long> modified) {
+    for (Map.Entry<String, Long> stamp : modified.entrySet()) {
+      if (new File(stamp.getKey()).lastModified() != stamp.getValue()) {
+        Map<String, ImageIcon> icons = build(category, imageLocs);
+        if (icons != null) {
+          synchronized (this) {
+            if (loaded.containsKey(category)) {
+              keep(category, icons);
+            } // if
+          } // synchronized
+        } // if
+        return;
+      } // if
+    } // for
+  } // revalidate(String, String[], Map)
+
+  /**
+   * Reads the atlas of a category with a single read
+   *
+   * @param category  the key of the category
+   * @param imageLocs the images the atlas must contain
+   * @param modified  where to put the modification time the atlas holds for each image, to
+   *                  be checked later; null to check each against its file as it is read
+   * @return the icons, with null for missing images, or null if there is no current atlas
+   *         with every image
+   */
+  Map<String, ImageIcon> read(String category, String[] imageLocs,
+      Map<String, Long> modified) {
+    File file = fileFor(category);
+    if (!file.exists()) {
+      return null;
+    } // if
+    try {
+      DataInputStream in = new DataInputStream(
+          new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+      if (in.readInt() != MAGIC || in.readInt() != cellSize) {
+        return null;
+      } // if
+      int count = in.readInt();
+      Map<String, ImageIcon> icons = new LinkedHashMap<String, ImageIcon>();
+      for (int i = 0; i < count; i++) {
+        String imageLoc = in.readUTF();
+        if (!current(imageLoc, in.readLong(), modified)) {
+          return null;
+        } // if
+        byte[] raw = new byte[cellSize * cellSize * 4];
+        in.readFully(raw);
+        BufferedImage image = new BufferedImage(cellSize, cellSize, BufferedImage.TYPE_INT_ARGB);
+        // Copy straight into the image's own pixel array
+        ByteBuffer.wrap(raw).asIntBuffer()
+            .get(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        icons.put(imageLoc, new ImageIcon(image));
+      } // for
+      int missing = in.readInt();
+      for (int i = 0; i < missing; i++) {
+        String imageLoc = in.readUTF();
+        if (!current(imageLoc, in.readLong(), modified)) {
+          // It may decode now
+          return null;
+        } // if
+        icons.put(imageLoc, null);
+      } // for
+      return icons.keySet().containsAll(Arrays.asList(imageLocs)) ? icons : null;
+    } catch (IOException e) {
+      return null;
+    } // try-catch
+  } // read(String, String[], Map)
+
+  /**
+   * Checks the modification time an atlas holds for an image, now or later
+   *
+   * @param imageLoc the location of the image
+   * @param stamp    the modification time the atlas holds
+   * @param modified where to note it to be checked later, or null to check it now
+   * @return false if it was checked now and the file has changed, true otherwise
+   */
+  static boolean current(String imageLoc, long stamp, Map<String, Long> modified) {
+    if (modified != null) {
+      modified.put(imageLoc, stamp);
+      return true;
+    } // if
+    return new File(imageLoc).lastModified() == stamp;
+  } // current(String, long, Map)
+
+  /**
+   * Decodes and scales every image of a category and writes them to its atlas. The atlas is
+   * written to a temporary file and moved into place, so that a reader on another thread
+   * never sees half of it.
+   *
+   * @param category  the key of the category
+   * @param imageLocs the locations of its images
+   * @return the scaled icons, by image location, with null for those that cannot be decoded,
+   *         or null if the thread was interrupted
+   */
+  Map<String, ImageIcon> build(String category, String[] imageLocs) {
+    Map<String, ImageIcon> icons = new LinkedHashMap<String, ImageIcon>();
+    Map<String, Long> modified = new LinkedHashMap<String, Long>();
+    for (String imageLoc : imageLocs) {
+      if (Thread.currentThread().isInterrupted()) {
+        // A preload that is no longer wanted
+        return null;
+      } // if
+      long decodeStart = AACMetrics.start();
+      BufferedImage scaled = scale(imageLoc);
+      AACMetrics.stop(AACMetrics.Stage.IMAGE_DECODE, decodeStart);
+      icons.put(imageLoc, (scaled == null) ? null : new ImageIcon(scaled));
+      modified.put(imageLoc, new File(imageLoc).lastModified());
+    } // for
+    File file = fileFor(category);
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(dir.toPath(), "atlas", ".tmp");
+      writeAtlas(temp, icons, modified);
+      Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // The icons are still usable; we just rebuild the atlas next time.
+      try {
+        if (temp != null) {
+          Files.deleteIfExists(temp);
+        } // if
+      } catch (IOException ignored) {
+        // Nothing more we can do
+      } // try-catch
+    } // try-catch
+    return icons;
+  } // build(String, String[])
+
+  /**
+   * Writes an atlas file
+   *
+   * @param path     where to write it
+   * @param icons    the scaled icons, by image location, with null for missing images
+   * @param modified the modification time of each image's file
+   * @throws IOException if the file cannot be written
+   */
+  void writeAtlas(Path path, Map<String, ImageIcon> icons, Map<String, Long> modified)
+      throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(path.toFile())))) {
+      out.writeInt(MAGIC);
+      out.writeInt(cellSize);
+      List<String> missing = new ArrayList<String>();
+      for (Map.Entry<String, ImageIcon> icon : icons.entrySet()) {
+        if (icon.getValue() == null) {
+          missing.add(icon.getKey());
+        } // if
+      } // for
+      out.writeInt(icons.size() - missing.size());
+      ByteBuffer raw = ByteBuffer.allocate(cellSize * cellSize * 4);
+      for (Map.Entry<String, ImageIcon> icon : icons.entrySet()) {
+        if (icon.getValue() == null) {
+          continue;
+        } // if
+        out.writeUTF(icon.getKey());
+        out.writeLong(modified.get(icon.getKey()));
+        BufferedImage image = (BufferedImage) icon.getValue().getImage();
+        raw.clear();
+        raw.asIntBuffer().put(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        out.write(raw.array());
+      } // for
+      out.writeInt(missing.size());
+      for (String imageLoc : missing) {
+        out.writeUTF(imageLoc);
+        out.writeLong(modified.get(imageLoc));
+      } // for
+    } // try
+  } // writeAtlas(Path, Map, Map)
+
+  /**
+   * Decodes an image and scales it to fit a cell, keeping its proportions and centering it
+   *
+   * @param imageLoc the location of the image
+   * @return the scaled image, or null if it cannot be read
+   */
+  BufferedImage scale(String imageLoc) {
+    BufferedImage source;
+    try {
+      source = ImageIO.read(new File(imageLoc));
+    } catch (IOException e) {
+      return null;
+    } // try-catch
+    if (source == null) {
+      return null;
+    } // if
+    double factor = Math.min((double) cellSize / source.getWidth(),
+        (double) cellSize / source.getHeight());
+    int width = Math.max(1, (int) Math.round(source.getWidth() * factor));
+    int height = Math.max(1, (int) Math.round(source.getHeight() * factor));
+    BufferedImage scaled = new BufferedImage(cellSize, cellSize, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = scaled.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+        RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    g.drawImage(source, (cellSize - width) / 2, (cellSize - height) / 2, width, height, null);
+    g.dispose();
+    return scaled;
+  } // scale(String)
+
+  /**
+   * Finds the atlas file of a category
+   *
+   * @param category the key of the category
+   * @return the file
+   */
+  File fileFor(String category) {
+    StringBuilder name = new StringBuilder("atlas-");
+    for (byte b : category.getBytes(StandardCharsets.UTF_8)) {
+      if ((b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z')) {
+        name.append((char) b);
+      } else {
+        name.append('_').append(String.format("%02x", b));
+      } // if
+    } // for
+    return new File(dir, name.append(".bin").toString());
+  } // fileFor(String)
+} // class ImageAtlas
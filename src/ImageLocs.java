@@ -0,0 +1,130 @@
+import java.io.File;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Puts image locations in one canonical form, so that the same image file always has the same
+ * key. A canonical location uses '/' between directories, has no "." or ".." segments that
+ * can be removed, and is relative to the working directory when the image lies under it; an
+ * absolute path from a file chooser and the relative path in a mappings file therefore become
+ * the same location.
+ * <p>
+ * Canonical locations are interned: every call that yields a given location returns the same
+ * String, so each image takes one string and one cache slot however often it is named, and
+ * keys can be compared with == before falling back to equals. Only locations that are stored
+ * on a board are interned, through canonical; lookups go through find, which returns the
+ * interned instance if there is one but never adds to the pool, so that probing for images
+ * that are not on the board does not grow it.
+ */
+public class ImageLocs {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The one instance of each canonical location seen so far */
+  static final ConcurrentHashMap<String, String> POOL = new ConcurrentHashMap<String, String>();
+
+  /** The directory that relative locations are relative to */
+  static final Path BASE = Paths.get("").toAbsolutePath().normalize();
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Gets the canonical form of an image location
+   *
+   * @param imageLoc the location, relative to the working directory or absolute
+   * @return the canonical location, the same instance for every location of the same file,
+   *         or null if imageLoc is null
+   */
+  public static String canonical(String imageLoc) {
+    if (imageLoc == null) {
+      return null;
+    } // if
+    // Most locations are already canonical, which a scan of their characters tells us
+    // without building a Path
+    String canonical = isPlain(imageLoc) ? imageLoc : normalize(imageLoc);
+    String interned = POOL.putIfAbsent(canonical, canonical);
+    return (interned == null) ? canonical : interned;
+  } // canonical(String)
+
+  /**
+   * Gets the canonical form of an image location to look it up, without interning it
+   *
+   * @param imageLoc the location, relative to the working directory or absolute
+   * @return the interned canonical location if it has been seen, the canonical location
+   *         otherwise, or null if imageLoc is null
+   */
+  public static String find(String imageLoc) {
+    if (imageLoc == null) {
+      return null;
+    } // if
+    String canonical = isPlain(imageLoc) ? imageLoc : normalize(imageLoc);
+    String interned = POOL.get(canonical);
+    return (interned == null) ? canonical : interned;
+  } // find(String)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determines whether a location is canonical as it stands: relative, with '/' between
+   * directories, and without empty, "." or ".." segments
+   *
+   * @param imageLoc the location
+   * @return true if normalizing it would not change it
+   */
+  static boolean isPlain(String imageLoc) {
+    if (File.separatorChar != '/' && imageLoc.indexOf(File.separatorChar) >= 0) {
+      return false;
+    } // if
+    int start = 0;
+    while (start <= imageLoc.length()) {
+      int end = imageLoc.indexOf('/', start);
+      if (end < 0) {
+        end = imageLoc.length();
+      } // if
+      int length = end - start;
+      if ((length == 0 && imageLoc.length() > 0)
+          || (length == 1 && imageLoc.charAt(start) == '.')
+          || (length == 2 && imageLoc.startsWith("..", start))) {
+        return false;
+      } // if
+      start = end + 1;
+    } // while
+    if (File.separatorChar == '/' || imageLoc.isEmpty()) {
+      // A leading '/' made an empty segment above
+      return true;
+    } // if
+    try {
+      return !Paths.get(imageLoc).isAbsolute();
+    } catch (InvalidPathException e) {
+      return false;
+    } // try-catch
+  } // isPlain(String)
+
+  /**
+   * Normalizes a location, making it relative to the working directory if it lies under it
+   *
+   * @param imageLoc the location
+   * @return the normalized location, with '/' between directories
+   */
+  static String normalize(String imageLoc) {
+    Path path;
+    try {
+      path = Paths.get(imageLoc).normalize();
+    } catch (InvalidPathException e) {
+      // Not a path we can read anyway; leave it as it is
+      return imageLoc;
+    } // try-catch
+    if (path.isAbsolute() && path.startsWith(BASE)) {
+      path = BASE.relativize(path);
+    } // if
+    String normalized = path.toString();
+    return (File.separatorChar == '/') ? normalized : normalized.replace(File.separatorChar, '/');
+  } // normalize(String)
+} // class ImageLocs
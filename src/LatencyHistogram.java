@@ -0,0 +1,170 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, log-linear histogram of latencies in nanoseconds, in the style of
+ * HdrHistogram. Each power of two is split into 16 linear sub-buckets, so any recorded
+ * value is reported to within about 6% of its true value, using under 8KB no matter how
+ * many values are recorded. Recording is lock-free and safe from any thread.
+ */
+public class LatencyHistogram {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The number of bits of precision kept below the leading bit. */
+  static final int SUB_BITS = 4;
+
+  /** The number of linear sub-buckets per power of two. */
+  static final int SUB_COUNT = 1 << SUB_BITS;
+
+  /** Enough buckets for any non-negative long. */
+  static final int BUCKET_COUNT = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The number of values in each bucket. */
+  final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+  /** The number of values recorded. */
+  final LongAdder count = new LongAdder();
+
+  /** The sum of the values recorded. */
+  final LongAdder sum = new LongAdder();
+
+  /** The largest value recorded. */
+  final AtomicLong max = new AtomicLong();
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Records one latency.
+   *
+   * @param nanos the latency in nanoseconds; negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    buckets.incrementAndGet(bucketFor(value));
+    count.increment();
+    sum.add(value);
+    max.accumulateAndGet(value, Math::max);
+  } // record(long)
+
+  /**
+   * Returns the number of latencies recorded
+   *
+   * @return the count
+   */
+  public long getCount() {
+    return count.sum();
+  } // getCount()
+
+  /**
+   * Returns the sum of the latencies recorded in nanoseconds
+   *
+   * @return the sum
+   */
+  public long getSum() {
+    return sum.sum();
+  } // getSum()
+
+  /**
+   * Returns the mean latency in nanoseconds
+   *
+   * @return the mean, or 0 if nothing has been recorded
+   */
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  } // getMean()
+
+  /**
+   * Returns the largest latency recorded in nanoseconds
+   *
+   * @return the maximum, or 0 if nothing has been recorded
+   */
+  public long getMax() {
+    return max.get();
+  } // getMax()
+
+  /**
+   * Returns an upper bound on the latency below which the given fraction of recorded
+   * latencies fall
+   *
+   * @param fraction the fraction, between 0 and 1 (e.g., 0.99 for the 99th percentile)
+   * @return the latency in nanoseconds, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double fraction) {
+    long total = 0;
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    } // for
+    if (total == 0) {
+      return 0;
+    } // if
+    long target = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return Math.min(highestInBucket(i), max.get());
+      } // if
+    } // for
+    return max.get();
+  } // getPercentile(double)
+
+  /**
+   * Forgets every recorded latency
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    } // for
+    count.reset();
+    sum.reset();
+    max.set(0);
+  } // reset()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Finds the bucket that holds a value
+   *
+   * @param value a non-negative value
+   * @return the index of its bucket
+   */
+  static int bucketFor(long value) {
+    if (value < SUB_COUNT) {
+      return (int) value;
+    } // if
+    int highBit = 63 - Long.numberOfLeadingZeros(value);
+    int shift = highBit - SUB_BITS;
+    int subBucket = (int) (value >>> shift) & (SUB_COUNT - 1);
+    return SUB_COUNT + shift * SUB_COUNT + subBucket;
+  } // bucketFor(long)
+
+  /**
+   * Finds the largest value that falls in a bucket
+   *
+   * @param index the index of the bucket
+   * @return the largest value in that bucket
+   */
+  static long highestInBucket(int index) {
+    if (index < SUB_COUNT) {
+      return index;
+    } // if
+    int shift = (index - SUB_COUNT) / SUB_COUNT;
+    long subBucket = (index - SUB_COUNT) % SUB_COUNT;
+    long lowest = (SUB_COUNT + subBucket) << shift;
+    return lowest + (1L << shift) - 1;
+  } // highestInBucket(int)
+} // class LatencyHistogram
@@ -0,0 +1,183 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often the user goes from each page of a board to each other: a directed graph
+ * whose nodes are category locations ("" for the home page) and whose edges are weighted by
+ * the number of times the user took them. From it we can guess where the user will go next.
+ * The pages of a category are not nodes of their own, since they all show the same category.
+ * <p>
+ * A navigation file holds the magic number, the number of pages with edges, and then, for
+ * each page, its location, the number of its edges, and the location and count of each.
+ */
+public class NavigationGraph {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** Identifies a navigation file */
+  static final int MAGIC = 0x4141434E;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The number of times each edge was taken, by the page it leaves and the page it enters */
+  final Map<String, Map<String, Long>> edges = new HashMap<String, Map<String, Long>>();
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Records that the user went from one page to another
+   *
+   * @param from the location of the category left ("" for the home page)
+   * @param to   the location of the category entered
+   */
+  public synchronized void record(String from, String to) {
+    edges.computeIfAbsent(from, (page) -> new HashMap<String, Long>()).merge(to, 1L, Long::sum);
+  } // record(String, String)
+
+  /**
+   * Gets the number of times the user went from one page to another
+   *
+   * @param from the location of the category left
+   * @param to   the location of the category entered
+   * @return the count
+   */
+  public synchronized long count(String from, String to) {
+    Map<String, Long> out = edges.get(from);
+    return (out == null) ? 0 : out.getOrDefault(to, 0L);
+  } // count(String, String)
+
+  /**
+   * Guesses the categories the user is most likely to enter next from a page. Going home is
+   * not an end in itself: the chance of going home is shared among the categories entered
+   * from there, so that from a category we predict the next category rather than the home
+   * page.
+   *
+   * @param from  the location of the current category ("" for the home page)
+   * @param count the most categories to return
+   * @return the locations of the likeliest categories, likeliest first; never "" or from
+   */
+  public synchronized String[] likely(String from, int count) {
+    Map<String, Double> chances = new HashMap<String, Double>();
+    addChances(chances, from, 1.0, !from.isEmpty());
+    chances.remove("");
+    chances.remove(from);
+    List<Map.Entry<String, Double>> ranked =
+        new ArrayList<Map.Entry<String, Double>>(chances.entrySet());
+    Collections.sort(ranked, (a, b) -> (a.getValue().equals(b.getValue()))
+        ? a.getKey().compareTo(b.getKey())
+        : Double.compare(b.getValue(), a.getValue()));
+    String[] likely = new String[Math.min(count, ranked.size())];
+    for (int i = 0; i < likely.length; i++) {
+      likely[i] = ranked.get(i).getKey();
+    } // for
+    return likely;
+  } // likely(String, int)
+
+  /**
+   * Writes the counts to a file, replacing it whole
+   *
+   * @param file the file
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void save(File file) throws IOException {
+    Path target = file.toPath().toAbsolutePath();
+    Path temp = Files.createTempFile(target.getParent(), "aac-nav", ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(edges.size());
+        for (Map.Entry<String, Map<String, Long>> page : edges.entrySet()) {
+          out.writeUTF(page.getKey());
+          out.writeInt(page.getValue().size());
+          for (Map.Entry<String, Long> edge : page.getValue().entrySet()) {
+            out.writeUTF(edge.getKey());
+            out.writeLong(edge.getValue());
+          } // for
+        } // for
+      } // try
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    } // try-catch
+  } // save(File)
+
+  /**
+   * Reads the counts written by save
+   *
+   * @param file the file
+   * @return the graph; empty if the file does not exist
+   * @throws IOException if the file exists but is not a navigation file
+   */
+  public static NavigationGraph load(File file) throws IOException {
+    NavigationGraph graph = new NavigationGraph();
+    if (!file.exists()) {
+      return graph;
+    } // if
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a navigation file");
+      } // if
+      for (int pages = in.readInt(); pages > 0; pages--) {
+        Map<String, Long> out = new HashMap<String, Long>();
+        graph.edges.put(in.readUTF(), out);
+        for (int count = in.readInt(); count > 0; count--) {
+          out.put(in.readUTF(), in.readLong());
+        } // for
+      } // for
+    } // try
+    return graph;
+  } // load(File)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Adds the chance of entering each page next, given a chance of being on a page
+   *
+   * @param chances     the chances so far, by location
+   * @param from        the page
+   * @param chance      the chance of being on it
+   * @param throughHome whether to look one step past the home page
+   */
+  void addChances(Map<String, Double> chances, String from, double chance,
+      boolean throughHome) {
+    Map<String, Long> out = edges.get(from);
+    if (out == null) {
+      return;
+    } // if
+    long total = 0;
+    for (long taken : out.values()) {
+      total += taken;
+    } // for
+    for (Map.Entry<String, Long> edge : out.entrySet()) {
+      double next = chance * edge.getValue() / total;
+      if (edge.getKey().isEmpty() && throughHome) {
+        addChances(chances, "", next, false);
+      } else {
+        chances.merge(edge.getKey(), next, Double::sum);
+      } // if
+    } // for
+  } // addChances(Map, String, double, boolean)
+} // class NavigationGraph
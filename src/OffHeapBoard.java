@@ -0,0 +1,638 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * A board, like AACMappings, whose categories and items are kept outside the Java heap, for
+ * vocabularies of millions of items. Image locations and texts are stored as UTF-8 bytes in a
+ * direct buffer, and items are fixed-size records in another, found through an open-addressed
+ * hash table in a third. The heap holds only these three buffers, however large the board,
+ * so the garbage collector has nothing to trace; strings are decoded only when asked for,
+ * and an item's text only when it is selected.
+ * <p>
+ * Each record holds the offsets and lengths of its location and text, its category (or HOME,
+ * for a category), the items before and after it in its category, and, for a category and for
+ * the home page, its first and last items and how many it has. Removing an item keeps the
+ * order of the others. The bytes of removed and renamed strings are not reclaimed until the
+ * board is written out and read back.
+ * <p>
+ * Image locations are normalized as by ImageLocs, but not interned, since that would keep
+ * them on the heap.
+ */
+public class OffHeapBoard implements AACBoard {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The record of the home page, whose items are the categories */
+  static final int HOME = 0;
+
+  /** Marks the absence of a record */
+  static final int NONE = -1;
+
+  /** The fields of a record, as byte offsets within it */
+  static final int LOC_OFFSET = 0;
+  static final int LOC_LENGTH = 4;
+  static final int TEXT_OFFSET = 8;
+  static final int TEXT_LENGTH = 12;
+  static final int PARENT = 16;
+  static final int PREV = 20;
+  static final int NEXT = 24;
+  static final int FIRST = 28;
+  static final int LAST = 32;
+  static final int COUNT = 36;
+  static final int HASH = 40;
+
+  /** The size of a record, in bytes */
+  static final int RECORD_BYTES = 44;
+
+  /** A hash table slot that once held a record, so that probing continues past it */
+  static final int TOMBSTONE = -1;
+
+  /** The line separator, as it is written to a mappings file */
+  static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The UTF-8 bytes of every location and text */
+  ByteBuffer strings;
+
+  /** The records */
+  ByteBuffer records;
+
+  /** The hash table: 0 for an empty slot, TOMBSTONE, or one plus a record number */
+  ByteBuffer table;
+
+  /** The number of records in use or on the free list, including HOME */
+  int recordCount;
+
+  /** The first record on the free list, chained through NEXT, or NONE */
+  int free = NONE;
+
+  /** The number of slots of the table that are not empty */
+  int used;
+
+  /** The record of the category being shown, or HOME */
+  int current = HOME;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates an empty board
+   */
+  public OffHeapBoard() {
+    this.strings = ByteBuffer.allocateDirect(1 << 16);
+    this.records = ByteBuffer.allocateDirect(RECORD_BYTES * 1024);
+    this.table = ByteBuffer.allocateDirect(4 * 2048);
+    this.recordCount = 1;
+    initRecord(HOME, 0, 0, 0, 0, NONE, 0);
+  } // OffHeapBoard()
+
+  /**
+   * Reads a board from a mappings file, in the format of AACMappings
+   *
+   * @param filename the name of the mappings file
+   * @throws FileNotFoundException if the file cannot be read
+   */
+  public OffHeapBoard(String filename) throws FileNotFoundException {
+    this();
+    try (BufferedReader in =
+        new BufferedReader(new FileReader(filename, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int space = 0;
+        while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+          space++;
+        } // while
+        if (space == 0 || space == line.length()) {
+          continue;
+        } // if
+        String text = line.substring(space + 1);
+        if (line.charAt(0) == '>') {
+          // Items before the first category have nowhere to go
+          if (current != HOME) {
+            addItem(line.substring(1, space), text);
+          } // if
+        } else {
+          current = HOME;
+          String loc = line.substring(0, space);
+          addItem(loc, text);
+          current = find(HOME, encode(loc));
+        } // if
+      } // while
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new FileNotFoundException(filename + ": " + e.getMessage());
+    } // try-catch
+    current = HOME;
+  } // OffHeapBoard(String)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Adds an item to the current category, or a category to the home page. Adding an image
+   * that is already there changes its text; adding a category that is already there
+   * replaces it with an empty category, as in AACMappings.
+   *
+   * @param imageLoc the location of the image
+   * @param text     the text of the item, or the name of the category
+   */
+  public void addItem(String imageLoc, String text) {
+    if (imageLoc == null || text == null) {
+      return;
+    } // if
+    byte[] loc = encode(imageLoc);
+    int record = find(current, loc);
+    if (record != NONE) {
+      setText(record, text);
+      if (current == HOME) {
+        removeChildren(record);
+      } // if
+      return;
+    } // if
+    int locOffset = append(loc);
+    byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+    int textOffset = append(textBytes);
+    record = newRecord();
+    initRecord(record, locOffset, loc.length, textOffset, textBytes.length, current,
+        hash(current, loc));
+    link(record, current);
+    insert(record);
+  } // addItem(String, String)
+
+  /**
+   * Removes an item from the current category, or a category, with all of its items, from
+   * the home page
+   *
+   * @param imageLoc the location of the image
+   * @throws NoSuchElementException if the image is not on the current page
+   */
+  public void removeItem(String imageLoc) {
+    int record = (imageLoc == null) ? NONE : find(current, encode(imageLoc));
+    if (record == NONE) {
+      throw new NoSuchElementException(imageLoc);
+    } // if
+    if (current == HOME) {
+      removeChildren(record);
+    } // if
+    unlink(record);
+    delete(record);
+    release(record);
+  } // removeItem(String)
+
+  /**
+   * Changes the text of an item in the current category, or the name of a category on the
+   * home page, without moving it
+   *
+   * @param imageLoc the location of the image
+   * @param text     the new text
+   * @throws NoSuchElementException if the image is not on the current page
+   */
+  public void renameItem(String imageLoc, String text) {
+    int record = (imageLoc == null) ? NONE : find(current, encode(imageLoc));
+    if (record == NONE) {
+      throw new NoSuchElementException(imageLoc);
+    } // if
+    setText(record, text);
+  } // renameItem(String, String)
+
+  /**
+   * Gets the images of the current page, in the order they were added
+   *
+   * @return the image locations
+   */
+  public String[] getImageLocs() {
+    String[] imageLocs = new String[field(current, COUNT)];
+    int index = 0;
+    for (int record = field(current, FIRST); record != NONE; record = field(record, NEXT)) {
+      imageLocs[index++] = decode(field(record, LOC_OFFSET), field(record, LOC_LENGTH));
+    } // for
+    return imageLocs;
+  } // getImageLocs()
+
+  /**
+   * Gets the name of the current category
+   *
+   * @return the name, or the empty string on the home page
+   */
+  public String getCategory() {
+    return (current == HOME) ? "" : text(current);
+  } // getCategory()
+
+  /**
+   * Selects an image: on the home page, opens its category and returns the empty string;
+   * in a category, returns the item's text, which is only now decoded
+   *
+   * @param imageLoc the location of the image
+   * @return the text to speak, or the empty string
+   * @throws NoSuchElementException if the image is not on the current page
+   */
+  public String select(String imageLoc) {
+    int record = (imageLoc == null) ? NONE : find(current, encode(imageLoc));
+    if (record == NONE) {
+      throw new NoSuchElementException(imageLoc);
+    } // if
+    if (current == HOME) {
+      current = record;
+      return "";
+    } // if
+    return text(record);
+  } // select(String)
+
+  /**
+   * Determines whether an image is on the current page
+   *
+   * @param imageLoc the location of the image
+   * @return true if it is, false otherwise
+   */
+  public boolean hasImage(String imageLoc) {
+    return imageLoc != null && find(current, encode(imageLoc)) != NONE;
+  } // hasImage(String)
+
+  /**
+   * Goes back to the home page
+   */
+  public void reset() {
+    current = HOME;
+  } // reset()
+
+  /**
+   * Counts the categories and items on the board
+   *
+   * @return the number of categories plus the number of items
+   */
+  public int size() {
+    int size = field(HOME, COUNT);
+    for (int record = field(HOME, FIRST); record != NONE; record = field(record, NEXT)) {
+      size += field(record, COUNT);
+    } // for
+    return size;
+  } // size()
+
+  /**
+   * Gets the memory the board holds outside the heap
+   *
+   * @return the capacity of its buffers, in bytes
+   */
+  public long offHeapBytes() {
+    return (long) strings.capacity() + records.capacity() + table.capacity();
+  } // offHeapBytes()
+
+  /**
+   * Writes the board to a mappings file, in the format of AACMappings. Strings are copied
+   * from the buffer as bytes, without being decoded.
+   *
+   * @param filename the name of the file
+   * @throws IOException if the file cannot be written
+   */
+  public void writeToFile(String filename) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16)) {
+      byte[] chunk = new byte[256];
+      for (int category = field(HOME, FIRST); category != NONE;
+          category = field(category, NEXT)) {
+        chunk = write(out, category, false, chunk);
+        for (int item = field(category, FIRST); item != NONE; item = field(item, NEXT)) {
+          chunk = write(out, item, true, chunk);
+        } // for
+      } // for
+    } // try
+  } // writeToFile(String)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Writes a record as a line of a mappings file
+   *
+   * @param out  where to write
+   * @param record the record
+   * @param item whether it is an item, so its line starts with '>'
+   * @param chunk a buffer for copying bytes
+   * @return the buffer, grown if need be
+   */
+  byte[] write(OutputStream out, int record, boolean item, byte[] chunk) throws IOException {
+    int locLength = field(record, LOC_LENGTH);
+    int textLength = field(record, TEXT_LENGTH);
+    int length = Math.max(locLength, textLength);
+    if (chunk.length < length) {
+      chunk = new byte[Math.max(length, chunk.length * 2)];
+    } // if
+    if (item) {
+      out.write('>');
+    } // if
+    strings.get(field(record, LOC_OFFSET), chunk, 0, locLength);
+    out.write(chunk, 0, locLength);
+    out.write(' ');
+    strings.get(field(record, TEXT_OFFSET), chunk, 0, textLength);
+    out.write(chunk, 0, textLength);
+    out.write(NEWLINE);
+    return chunk;
+  } // write(OutputStream, int, boolean, byte[])
+
+  /**
+   * Gets a field of a record
+   */
+  int field(int record, int field) {
+    return records.getInt(record * RECORD_BYTES + field);
+  } // field(int, int)
+
+  /**
+   * Sets a field of a record
+   */
+  void setField(int record, int field, int value) {
+    records.putInt(record * RECORD_BYTES + field, value);
+  } // setField(int, int, int)
+
+  /**
+   * Fills in a new record, with no neighbours and no items
+   */
+  void initRecord(int record, int locOffset, int locLength, int textOffset, int textLength,
+      int parent, int hash) {
+    setField(record, LOC_OFFSET, locOffset);
+    setField(record, LOC_LENGTH, locLength);
+    setField(record, TEXT_OFFSET, textOffset);
+    setField(record, TEXT_LENGTH, textLength);
+    setField(record, PARENT, parent);
+    setField(record, PREV, NONE);
+    setField(record, NEXT, NONE);
+    setField(record, FIRST, NONE);
+    setField(record, LAST, NONE);
+    setField(record, COUNT, 0);
+    setField(record, HASH, hash);
+  } // initRecord(int, int, int, int, int, int, int)
+
+  /**
+   * Gets a record from the free list, or a new one at the end
+   *
+   * @return the record number
+   */
+  int newRecord() {
+    if (free != NONE) {
+      int record = free;
+      free = field(record, NEXT);
+      return record;
+    } // if
+    if ((recordCount + 1) * RECORD_BYTES > records.capacity()) {
+      records = grow(records, (long) (recordCount + 1) * RECORD_BYTES);
+    } // if
+    return recordCount++;
+  } // newRecord()
+
+  /**
+   * Puts a record on the free list
+   */
+  void release(int record) {
+    setField(record, PARENT, NONE);
+    setField(record, NEXT, free);
+    free = record;
+  } // release(int)
+
+  /**
+   * Adds a record to the end of its page
+   */
+  void link(int record, int parent) {
+    int last = field(parent, LAST);
+    setField(record, PREV, last);
+    if (last == NONE) {
+      setField(parent, FIRST, record);
+    } else {
+      setField(last, NEXT, record);
+    } // if
+    setField(parent, LAST, record);
+    setField(parent, COUNT, field(parent, COUNT) + 1);
+  } // link(int, int)
+
+  /**
+   * Takes a record out of its page
+   */
+  void unlink(int record) {
+    int parent = field(record, PARENT);
+    int prev = field(record, PREV);
+    int next = field(record, NEXT);
+    if (prev == NONE) {
+      setField(parent, FIRST, next);
+    } else {
+      setField(prev, NEXT, next);
+    } // if
+    if (next == NONE) {
+      setField(parent, LAST, prev);
+    } else {
+      setField(next, PREV, prev);
+    } // if
+    setField(parent, COUNT, field(parent, COUNT) - 1);
+  } // unlink(int)
+
+  /**
+   * Removes every item of a category
+   */
+  void removeChildren(int category) {
+    int item = field(category, FIRST);
+    while (item != NONE) {
+      int next = field(item, NEXT);
+      delete(item);
+      release(item);
+      item = next;
+    } // while
+    setField(category, FIRST, NONE);
+    setField(category, LAST, NONE);
+    setField(category, COUNT, 0);
+  } // removeChildren(int)
+
+  /**
+   * Gives a record new text. The old text's bytes are left where they are.
+   */
+  void setText(int record, String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    setField(record, TEXT_OFFSET, append(bytes));
+    setField(record, TEXT_LENGTH, bytes.length);
+  } // setText(int, String)
+
+  /**
+   * Decodes the text of a record
+   */
+  String text(int record) {
+    return decode(field(record, TEXT_OFFSET), field(record, TEXT_LENGTH));
+  } // text(int)
+
+  /**
+   * Copies bytes to the end of the string buffer
+   *
+   * @return their offset
+   */
+  int append(byte[] bytes) {
+    if (strings.position() + bytes.length > strings.capacity()) {
+      strings = grow(strings, (long) strings.position() + bytes.length);
+    } // if
+    int offset = strings.position();
+    strings.put(bytes);
+    return offset;
+  } // append(byte[])
+
+  /**
+   * Decodes bytes from the string buffer
+   */
+  String decode(int offset, int length) {
+    byte[] bytes = new byte[length];
+    strings.get(offset, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // decode(int, int)
+
+  /**
+   * Normalizes and encodes an image location
+   */
+  static byte[] encode(String imageLoc) {
+    String normalized = ImageLocs.isPlain(imageLoc) ? imageLoc : ImageLocs.normalize(imageLoc);
+    return normalized.getBytes(StandardCharsets.UTF_8);
+  } // encode(String)
+
+  /**
+   * Hashes an image location within a page (FNV-1a, then a final mix)
+   */
+  static int hash(int parent, byte[] loc) {
+    int hash = 0x811C9DC5 ^ (parent * 0x9E3779B9);
+    for (byte b : loc) {
+      hash = (hash ^ (b & 0xFF)) * 0x01000193;
+    } // for
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    return hash ^ (hash >>> 13);
+  } // hash(int, byte[])
+
+  /**
+   * Determines whether a record's location is the given bytes
+   */
+  boolean locEquals(int record, byte[] loc) {
+    if (field(record, LOC_LENGTH) != loc.length) {
+      return false;
+    } // if
+    int offset = field(record, LOC_OFFSET);
+    for (int i = 0; i < loc.length; i++) {
+      if (strings.get(offset + i) != loc[i]) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // locEquals(int, byte[])
+
+  /**
+   * Finds the record of an image on a page
+   *
+   * @param parent the page: HOME or a category
+   * @param loc    the encoded location of the image
+   * @return the record, or NONE
+   */
+  int find(int parent, byte[] loc) {
+    int hash = hash(parent, loc);
+    int mask = table.capacity() / 4 - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int entry = table.getInt(slot * 4);
+      if (entry == 0) {
+        return NONE;
+      } else if (entry != TOMBSTONE) {
+        int record = entry - 1;
+        if (field(record, HASH) == hash && field(record, PARENT) == parent
+            && locEquals(record, loc)) {
+          return record;
+        } // if
+      } // if
+    } // for
+  } // find(int, byte[])
+
+  /**
+   * Adds a record to the hash table, growing the table if it is half full
+   */
+  void insert(int record) {
+    if ((used + 1) * 2 > table.capacity() / 4) {
+      rehash();
+    } // if
+    int mask = table.capacity() / 4 - 1;
+    int slot = field(record, HASH) & mask;
+    while (table.getInt(slot * 4) > 0) {
+      slot = (slot + 1) & mask;
+    } // while
+    if (table.getInt(slot * 4) == 0) {
+      used++;
+    } // if
+    table.putInt(slot * 4, record + 1);
+  } // insert(int)
+
+  /**
+   * Removes a record from the hash table, leaving a tombstone
+   */
+  void delete(int record) {
+    int mask = table.capacity() / 4 - 1;
+    for (int slot = field(record, HASH) & mask; ; slot = (slot + 1) & mask) {
+      int entry = table.getInt(slot * 4);
+      if (entry == record + 1) {
+        table.putInt(slot * 4, TOMBSTONE);
+        return;
+      } else if (entry == 0) {
+        return;
+      } // if
+    } // for
+  } // delete(int)
+
+  /**
+   * Rebuilds the hash table without tombstones, doubling it if it is more than a quarter
+   * full of records
+   */
+  void rehash() {
+    int live = 0;
+    int slots = table.capacity() / 4;
+    for (int slot = 0; slot < slots; slot++) {
+      if (table.getInt(slot * 4) > 0) {
+        live++;
+      } // if
+    } // for
+    int size = (live * 4 > slots) ? slots * 2 : slots;
+    ByteBuffer old = table;
+    table = ByteBuffer.allocateDirect(size * 4);
+    used = 0;
+    int mask = size - 1;
+    for (int slot = 0; slot < slots; slot++) {
+      int entry = old.getInt(slot * 4);
+      if (entry > 0) {
+        int target = field(entry - 1, HASH) & mask;
+        while (table.getInt(target * 4) != 0) {
+          target = (target + 1) & mask;
+        } // while
+        table.putInt(target * 4, entry);
+        used++;
+      } // if
+    } // for
+  } // rehash()
+
+  /**
+   * Copies a buffer into a new one at least twice as large and at least minimum bytes
+   */
+  static ByteBuffer grow(ByteBuffer buffer, long minimum) {
+    long capacity = Math.max(minimum, 2L * buffer.capacity());
+    if (capacity > Integer.MAX_VALUE - 8) {
+      if (minimum > Integer.MAX_VALUE - 8) {
+        throw new OutOfMemoryError("A board buffer would exceed 2GB");
+      } // if
+      capacity = Integer.MAX_VALUE - 8;
+    } // if
+    ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+    int position = buffer.position();
+    buffer.clear();
+    grown.put(buffer);
+    grown.position(position);
+    return grown;
+  } // grow(ByteBuffer, long)
+} // class OffHeapBoard
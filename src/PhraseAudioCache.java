@@ -0,0 +1,160 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A least-recently-used cache of the audio rendered for each phrase in each voice, bounded
+ * by the total number of bytes of audio held. Phrases are matched after collapsing
+ * whitespace, so "t shirt" and " t  shirt" share an entry.
+ */
+public class PhraseAudioCache {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The most bytes of audio to keep */
+  final long maxBytes;
+
+  /** The bytes of audio currently kept */
+  long bytes;
+
+  /** The cached audio, least recently used first */
+  final LinkedHashMap<String, Audio> entries = new LinkedHashMap<String, Audio>(64, 0.75f, true);
+
+  /**
+   * The audio for one phrase
+   */
+  public static class Audio {
+    /** The format of the audio */
+    public final AudioFormat format;
+
+    /** The PCM samples */
+    public final byte[] pcm;
+
+    /**
+     * Creates an entry
+     *
+     * @param format the format of the audio
+     * @param pcm    the PCM samples
+     */
+    public Audio(AudioFormat format, byte[] pcm) {
+      this.format = format;
+      this.pcm = pcm;
+    } // Audio(AudioFormat, byte[])
+  } // class Audio
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates an empty cache
+   *
+   * @param maxBytes the most bytes of audio to keep
+   */
+  public PhraseAudioCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  } // PhraseAudioCache(long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Returns the cached audio for a phrase, marking it as recently used
+   *
+   * @param voice  the name of the voice
+   * @param phrase the phrase
+   * @return the audio, or null if it is not cached
+   */
+  public synchronized Audio get(String voice, String phrase) {
+    return entries.get(key(voice, phrase));
+  } // get(String, String)
+
+  /**
+   * Determines if a phrase is cached, without marking it as used
+   *
+   * @param voice  the name of the voice
+   * @param phrase the phrase
+   * @return true if it is cached, false otherwise
+   */
+  public synchronized boolean contains(String voice, String phrase) {
+    return entries.containsKey(key(voice, phrase));
+  } // contains(String, String)
+
+  /**
+   * Caches the audio for a phrase, evicting the least recently used phrases if the cache
+   * is over its limit. Audio larger than the whole cache is not kept.
+   *
+   * @param voice  the name of the voice
+   * @param phrase the phrase
+   * @param audio  its audio
+   */
+  public synchronized void put(String voice, String phrase, Audio audio) {
+    if (audio.pcm.length > maxBytes) {
+      return;
+    } // if
+    Audio old = entries.put(key(voice, phrase), audio);
+    if (old != null) {
+      bytes -= old.pcm.length;
+    } // if
+    bytes += audio.pcm.length;
+    Iterator<Map.Entry<String, Audio>> eldest = entries.entrySet().iterator();
+    while (bytes > maxBytes && eldest.hasNext()) {
+      bytes -= eldest.next().getValue().pcm.length;
+      eldest.remove();
+    } // while
+  } // put(String, String, Audio)
+
+  /**
+   * Returns the number of bytes of audio cached
+   *
+   * @return the number of bytes
+   */
+  public synchronized long size() {
+    return bytes;
+  } // size()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Builds the key for a phrase in a voice
+   *
+   * @param voice  the name of the voice
+   * @param phrase the phrase
+   * @return the key
+   */
+  static String key(String voice, String phrase) {
+    // Collapse by hand rather than with a regular expression, since this runs on every tap
+    StringBuilder key = new StringBuilder(voice.length() + 1 + phrase.length());
+    key.append(voice).append('\u0000');
+    int start = key.length();
+    boolean space = false;
+    for (int i = 0; i < phrase.length(); i++) {
+      char c = phrase.charAt(i);
+      if (isSpace(c)) {
+        space = true;
+      } else {
+        if (space && key.length() > start) {
+          key.append(' ');
+        } // if
+        space = false;
+        key.append(c);
+      } // if
+    } // for
+    return key.toString();
+  } // key(String, String)
+
+  /**
+   * Determines if a character is whitespace, as \s matches it
+   *
+   * @param c the character
+   * @return true if it is a space, tab, line break, vertical tab or form feed
+   */
+  static boolean isSpace(char c) {
+    return c == ' ' || (c >= '\t' && c <= '\r');
+  } // isSpace(char)
+} // class PhraseAudioCache
@@ -0,0 +1,259 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads the categories the user is likely to enter next (see NavigationGraph) before they are
+ * tapped: their icons, from their atlases, and the audio of their phrases. The loading runs
+ * on a pool of background threads, so a slow disk delays the guess rather than the tap.
+ * <p>
+ * Each time the user moves, expect is told the new guesses. Loads of categories that are no
+ * longer guessed are cancelled. Icons loaded ahead of need count against a memory budget;
+ * when it is exceeded, the icons least recently loaded or guessed are dropped. A category the
+ * user enters is no longer counted, since its icons are then loaded as they always were.
+ * <p>
+ * The loading threads run at the lowest priority. A thread that waits for a load raises the
+ * priority of the thread running it to its own, so that the event thread is never kept
+ * waiting behind work the scheduler puts off; a load not yet started is cancelled instead.
+ */
+public class Preloader {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** Where the icons are loaded */
+  final ImageAtlas atlas;
+
+  /** Where the audio is prepared, or null */
+  final SpeechBackend speech;
+
+  /** The most bytes of icons to hold for categories not yet entered */
+  final long maxBytes;
+
+  /** The threads that load */
+  final ExecutorService pool;
+
+  /** The loads queued or running, by category key */
+  final Map<String, Request> loading = new HashMap<String, Request>();
+
+  /** The bytes of icons loaded for each category not yet entered, least recently used first */
+  final LinkedHashMap<String, Long> loaded = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+  /** The sum of the loaded bytes */
+  long bytes;
+
+  /**
+   * A category to load
+   */
+  public static final class Request {
+    /** The key of the category's atlas */
+    final String key;
+
+    /** The locations of its images */
+    final String[] imageLocs;
+
+    /** The voice its phrases are spoken in */
+    final String voice;
+
+    /** Its phrases, or null to leave the audio alone */
+    final String[] phrases;
+
+    /** The load of the category, once it is queued */
+    FutureTask<Void> task;
+
+    /** The thread running the load, or null if it is not running */
+    Thread runner;
+
+    /**
+     * Describes a category to load
+     *
+     * @param key       the key of the category's atlas
+     * @param imageLocs the locations of its images
+     * @param voice     the voice its phrases are spoken in
+     * @param phrases   its phrases, or null to leave the audio alone
+     */
+    public Request(String key, String[] imageLocs, String voice, String[] phrases) {
+      this.key = key;
+      this.imageLocs = imageLocs;
+      this.voice = voice;
+      this.phrases = phrases;
+    } // Request(String, String[], String, String[])
+  } // class Request
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates a preloader
+   *
+   * @param atlas    where to load icons
+   * @param speech   where to prepare audio, or null for none
+   * @param maxBytes the most bytes of icons to hold for categories not yet entered
+   * @param threads  the number of loading threads
+   */
+  public Preloader(ImageAtlas atlas, SpeechBackend speech, long maxBytes, int threads) {
+    this.atlas = atlas;
+    this.speech = speech;
+    this.maxBytes = maxBytes;
+    this.pool = Executors.newFixedThreadPool(threads, (runnable) -> {
+      Thread thread = new Thread(runnable, "aac-preload");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+  } // Preloader(ImageAtlas, SpeechBackend, long, int)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Notes that the user is now in a category and loads the categories guessed to come next,
+   * in order, cancelling the loads of any other categories
+   *
+   * @param current  the key of the category the user is in
+   * @param requests the categories to load, likeliest first
+   */
+  public synchronized void expect(String current, Request[] requests) {
+    Long entered = loaded.remove(current);
+    if (entered != null) {
+      bytes -= entered;
+    } // if
+    Map<String, Request> wanted = new LinkedHashMap<String, Request>();
+    for (Request request : requests) {
+      if (!request.key.equals(current)) {
+        wanted.put(request.key, request);
+      } // if
+    } // for
+    for (Iterator<Map.Entry<String, Request>> tasks = loading.entrySet().iterator();
+        tasks.hasNext(); ) {
+      Map.Entry<String, Request> task = tasks.next();
+      if (!wanted.containsKey(task.getKey())) {
+        // The guess was wrong
+        task.getValue().task.cancel(true);
+        tasks.remove();
+      } // if
+    } // for
+    for (Request request : wanted.values()) {
+      if (loaded.get(request.key) == null && !loading.containsKey(request.key)) {
+        request.task = new FutureTask<Void>(() -> load(request), null);
+        loading.put(request.key, request);
+        pool.execute(request.task);
+      } // if
+    } // for
+  } // expect(String, Request[])
+
+  /**
+   * Waits for the load of a category, if one is running, rather than loading it again. The
+   * thread running it is raised to the caller's priority while the caller waits. A load
+   * still queued is cancelled, since it may be queued behind others; the caller loads the
+   * category itself.
+   *
+   * @param key the key of the category
+   */
+  public void await(String key) {
+    FutureTask<Void> task;
+    synchronized (this) {
+      Request request = loading.get(key);
+      if (request == null || request.task.isDone()) {
+        return;
+      } // if
+      if (request.runner == null) {
+        request.task.cancel(false);
+        loading.remove(key);
+        return;
+      } // if
+      int priority = Thread.currentThread().getPriority();
+      if (request.runner.getPriority() < priority) {
+        request.runner.setPriority(priority);
+      } // if
+      task = request.task;
+    } // synchronized
+    try {
+      task.get();
+    } catch (CancellationException | ExecutionException e) {
+      // The caller loads it itself
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } // try-catch
+  } // await(String)
+
+  /**
+   * Gets the bytes of icons held for categories not yet entered
+   *
+   * @return the bytes
+   */
+  public synchronized long size() {
+    return bytes;
+  } // size()
+
+  /**
+   * Stops every load
+   */
+  public void close() {
+    pool.shutdownNow();
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Loads a category, on a pool thread
+   *
+   * @param request the category
+   */
+  void load(Request request) {
+    synchronized (this) {
+      request.runner = Thread.currentThread();
+    } // synchronized
+    long size;
+    try {
+      if (speech != null && request.phrases != null) {
+        speech.warmUp(request.voice, request.phrases);
+      } // if
+      size = atlas.preload(request.key, request.imageLocs);
+    } finally {
+      synchronized (this) {
+        // Back to the lowest priority, in case a waiting thread raised it
+        request.runner = null;
+        Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+      } // synchronized
+    } // try-finally
+    synchronized (this) {
+      if (loading.get(request.key) == request) {
+        loading.remove(request.key);
+      } // if
+      if (size > 0) {
+        // Count the icons even if we were cancelled once they were in, since they are held
+        loaded.put(request.key, size);
+        bytes += size;
+        trim(request.key);
+      } // if
+    } // synchronized
+  } // load(Request)
+
+  /**
+   * Drops the least recently used icons until the budget is met, keeping one category
+   *
+   * @param keep the key of the category to keep
+   */
+  void trim(String keep) {
+    Iterator<Map.Entry<String, Long>> oldest = loaded.entrySet().iterator();
+    while (bytes > maxBytes && oldest.hasNext()) {
+      Map.Entry<String, Long> entry = oldest.next();
+      if (!entry.getKey().equals(keep)) {
+        atlas.evict(entry.getKey());
+        bytes -= entry.getValue();
+        oldest.remove();
+      } // if
+    } // while
+  } // trim(String)
+} // class Preloader
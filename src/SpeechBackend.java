@@ -0,0 +1,224 @@
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Something that can speak text aloud in a choice of voices. Keeps track of which voice
+ * each category should be spoken in; subclasses decide how the speech is produced.
+ * <p>
+ * A category is known by the location of its image rather than by its name, so that its
+ * voice stays the same when its name is changed or shown in another locale.
+ * <p>
+ * speak blocks until the text has been spoken, so callers on the event thread use
+ * speakLater, which speaks on a thread of the backend's own.
+ */
+public abstract class SpeechBackend {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The voice used when nothing else is selected */
+  public static final String DEFAULT_VOICE = "kevin16";
+
+  /**
+   * The prefix of the system properties that give categories their voices: the rest of the
+   * property's name is the location of the category's image
+   */
+  public static final String CATEGORY_VOICE_PREFIX = "aac.voice.category.";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The voice to use for each category, by the location of its image */
+  final Map<String, String> categoryVoices = new ConcurrentHashMap<String, String>();
+
+  /** The voice to use for each locale, for categories without their own voice */
+  final Map<Locale, String> localeVoices = new ConcurrentHashMap<Locale, String>();
+
+  /** The voice used for categories without their own voice, in locales without one */
+  volatile String defaultVoice = DEFAULT_VOICE;
+
+  /** The locale of the text being spoken */
+  volatile Locale locale = Locale.US;
+
+  /** The thread that speaks the phrases passed to speakLater, one at a time, in order */
+  final ExecutorService speaker = Executors.newSingleThreadExecutor((runnable) -> {
+    Thread thread = new Thread(runnable, "aac-speak");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // +------------------+--------------------------------------------
+  // | Abstract Methods |
+  // +------------------+
+
+  /**
+   * Speaks text in the given voice and waits until it has been spoken
+   *
+   * @param voice        the name of the voice
+   * @param text         the text to speak
+   * @param onAudioStart run when the first audio is played, or null
+   * @throws Exception if the text cannot be spoken
+   */
+  public abstract void speak(String voice, String text, Runnable onAudioStart)
+      throws Exception;
+
+  /**
+   * Loads a voice ahead of time so that the first phrase spoken in it is not delayed
+   *
+   * @param voice the name of the voice
+   * @throws Exception if the voice cannot be loaded
+   */
+  public abstract void prewarm(String voice) throws Exception;
+
+  /**
+   * Releases every resource held by the backend
+   */
+  public abstract void close();
+
+  /**
+   * Prepares phrases that are likely to be spoken, so that speaking them later is faster.
+   * Returns at once; any work happens in the background. Does nothing by default.
+   *
+   * @param voice   the voice the phrases will be spoken in
+   * @param phrases the phrases
+   */
+  public void warmUp(String voice, String[] phrases) {
+  } // warmUp(String, String[])
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Tells FreeTTS where to find its voices, unless the freetts.voices property already says.
+   * Must be called before any voice is loaded.
+   */
+  public static void registerVoices() {
+    // Set property as Kevin Dictionary
+    if (System.getProperty("freetts.voices") == null) {
+      System.setProperty("freetts.voices",
+          "com.sun.speech.freetts.en.us" + ".cmu_us_kal.KevinVoiceDirectory");
+    } // if
+  } // registerVoices()
+
+  /**
+   * Speaks text in the given voice on the backend's speaking thread, after any phrases
+   * already asked for, and returns at once. The time to speak it is recorded as
+   * AACMetrics.Stage.SYNTHESIS, and the time until its audio starts as AUDIO_START, both
+   * from when the thread starts on it. A phrase that cannot be spoken is reported on
+   * standard error.
+   *
+   * @param voice the name of the voice
+   * @param text  the text to speak
+   * @return a future that is done once the text has been spoken, or has failed
+   */
+  public Future<?> speakLater(String voice, String text) {
+    return speaker.submit(() -> {
+      long speakStart = AACMetrics.start();
+      try {
+        speak(voice, text, (speakStart == 0L) ? null
+            : () -> AACMetrics.stop(AACMetrics.Stage.AUDIO_START, speakStart));
+        AACMetrics.stop(AACMetrics.Stage.SYNTHESIS, speakStart);
+      } catch (Exception e) {
+        e.printStackTrace();
+      } // try-catch
+    });
+  } // speakLater(String, String)
+
+  /**
+   * Sets the voice used for categories that have no voice of their own
+   *
+   * @param voice the name of the voice
+   */
+  public void setDefaultVoice(String voice) {
+    this.defaultVoice = voice;
+  } // setDefaultVoice(String)
+
+  /**
+   * Sets the voice used when speaking items of a category
+   *
+   * @param categoryLoc the location of the category's image
+   * @param voice       the name of the voice, or null to use the default voice
+   */
+  public void setCategoryVoice(String categoryLoc, String voice) {
+    categoryLoc = ImageLocs.canonical(categoryLoc);
+    if (voice == null) {
+      categoryVoices.remove(categoryLoc);
+    } else {
+      categoryVoices.put(categoryLoc, voice);
+    } // if
+  } // setCategoryVoice(String, String)
+
+  /**
+   * Sets the voice of each category named by a property CATEGORY_VOICE_PREFIX followed by
+   * the location of the category's image; for example,
+   * aac.voice.category.img/food/plate.png=kevin speaks the food category in kevin
+   *
+   * @param properties the properties, such as System.getProperties()
+   */
+  public void setCategoryVoices(Properties properties) {
+    for (String name : properties.stringPropertyNames()) {
+      if (name.startsWith(CATEGORY_VOICE_PREFIX)) {
+        setCategoryVoice(name.substring(CATEGORY_VOICE_PREFIX.length()),
+            properties.getProperty(name));
+      } // if
+    } // for
+  } // setCategoryVoices(Properties)
+
+  /**
+   * Sets the voice used in a locale for categories that have no voice of their own
+   *
+   * @param locale the locale
+   * @param voice  the name of the voice, or null to use the default voice
+   */
+  public void setLocaleVoice(Locale locale, String voice) {
+    if (voice == null) {
+      localeVoices.remove(locale);
+    } else {
+      localeVoices.put(locale, voice);
+    } // if
+  } // setLocaleVoice(Locale, String)
+
+  /**
+   * Sets the locale of the text to be spoken, which chooses the voice of categories without
+   * their own voice
+   *
+   * @param locale the locale
+   */
+  public void setLocale(Locale locale) {
+    this.locale = locale;
+  } // setLocale(Locale)
+
+  /**
+   * Returns the voice used when speaking items of a category
+   *
+   * @param categoryLoc the location of the category's image ("" for the home page)
+   * @return the name of the voice
+   */
+  public String voiceFor(String categoryLoc) {
+    String voice = categoryVoices.get(categoryLoc);
+    return (voice != null) ? voice : localeVoices.getOrDefault(locale, defaultVoice);
+  } // voiceFor(String)
+
+  /**
+   * Lists every voice that may be chosen: the default voice and those set for locales and
+   * categories
+   *
+   * @return the names of the voices, each once
+   */
+  public Set<String> voices() {
+    Set<String> voices = new LinkedHashSet<String>();
+    voices.add(defaultVoice);
+    voices.addAll(localeVoices.values());
+    voices.addAll(categoryVoices.values());
+    return voices;
+  } // voices()
+} // class SpeechBackend
@@ -0,0 +1,354 @@
+import com.sun.speech.freetts.audio.AudioPlayer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A FreeTTS audio player that passes each chunk of PCM on as soon as FreeTTS produces it,
+ * and reports when the first chunk of an utterance arrives. Subclasses decide where the
+ * audio goes: Line plays it through a SourceDataLine that is opened once and reused, and
+ * Memory keeps it (for tests, or to save as a WAV file).
+ */
+public abstract class StreamingAudioPlayer implements AudioPlayer {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The format of the audio FreeTTS is producing */
+  AudioFormat format = new AudioFormat(8000f, 16, 1, true, true);
+
+  /** The volume, from 0 to 1 */
+  float volume = 1.0f;
+
+  /** Whether output is paused */
+  volatile boolean paused;
+
+  /** Whether the current utterance has been cancelled */
+  volatile boolean cancelled;
+
+  /** Whether any audio has been written since the last call to expectAudio */
+  boolean started;
+
+  /** Run when the first audio after expectAudio is written, or null */
+  Runnable onFirstAudio;
+
+  /** When resetTime was last called */
+  long timeBase = System.currentTimeMillis();
+
+  /** A copy of the audio written since startRecording, or null if not recording */
+  ByteArrayOutputStream recording;
+
+  // +------------------+--------------------------------------------
+  // | Abstract Methods |
+  // +------------------+
+
+  /**
+   * Prepares the output for audio in the given format
+   *
+   * @param audioFormat the format
+   * @throws IOException if the output cannot be prepared
+   */
+  abstract void open(AudioFormat audioFormat) throws IOException;
+
+  /**
+   * Sends audio to the output
+   *
+   * @param audio  the buffer of audio
+   * @param offset where the audio starts in the buffer
+   * @param length how many bytes to send
+   */
+  abstract void emit(byte[] audio, int offset, int length);
+
+  /**
+   * Waits until the audio sent has been fully output
+   */
+  abstract void drainOutput();
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Starts a new phrase; listener is run when its first audio is written
+   *
+   * @param listener run on the first audio, or null
+   */
+  public synchronized void expectAudio(Runnable listener) {
+    this.started = false;
+    this.cancelled = false;
+    this.onFirstAudio = listener;
+  } // expectAudio(Runnable)
+
+  /**
+   * Starts keeping a copy of all audio written, in addition to outputting it
+   */
+  public synchronized void startRecording() {
+    recording = new ByteArrayOutputStream();
+  } // startRecording()
+
+  /**
+   * Stops keeping a copy of the audio written
+   *
+   * @return the audio written since startRecording, or null if we were not recording
+   */
+  public synchronized byte[] stopRecording() {
+    byte[] recorded = (recording == null) ? null : recording.toByteArray();
+    recording = null;
+    return recorded;
+  } // stopRecording()
+
+  /**
+   * Outputs audio rendered earlier and waits until it has been output
+   *
+   * @param audioFormat the format of the audio
+   * @param pcm         the audio
+   * @param listener    run when the audio starts, or null
+   * @return true if all the audio was output, false if it was cancelled
+   */
+  public boolean play(AudioFormat audioFormat, byte[] pcm, Runnable listener) {
+    setAudioFormat(audioFormat);
+    expectAudio(listener);
+    begin(pcm.length);
+    write(pcm);
+    end();
+    return drain();
+  } // play(AudioFormat, byte[], Runnable)
+
+  // +-------------------------+-------------------------------------
+  // | AudioPlayer interface   |
+  // +-------------------------+
+
+  public synchronized void setAudioFormat(AudioFormat audioFormat) {
+    this.format = audioFormat;
+  } // setAudioFormat(AudioFormat)
+
+  public AudioFormat getAudioFormat() {
+    return format;
+  } // getAudioFormat()
+
+  public void pause() {
+    paused = true;
+  } // pause()
+
+  public synchronized void resume() {
+    paused = false;
+    notifyAll();
+  } // resume()
+
+  public void reset() {
+    cancelled = false;
+  } // reset()
+
+  public boolean drain() {
+    drainOutput();
+    return !cancelled;
+  } // drain()
+
+  public synchronized void begin(int size) {
+    try {
+      open(format);
+    } catch (IOException e) {
+      e.printStackTrace();
+      cancelled = true;
+    } // try-catch
+  } // begin(int)
+
+  public boolean end() {
+    return !cancelled;
+  } // end()
+
+  public void cancel() {
+    cancelled = true;
+  } // cancel()
+
+  public void close() {
+  } // close()
+
+  public float getVolume() {
+    return volume;
+  } // getVolume()
+
+  public void setVolume(float volume) {
+    this.volume = volume;
+  } // setVolume(float)
+
+  public long getTime() {
+    return System.currentTimeMillis() - timeBase;
+  } // getTime()
+
+  public void resetTime() {
+    timeBase = System.currentTimeMillis();
+  } // resetTime()
+
+  public void startFirstSampleTimer() {
+  } // startFirstSampleTimer()
+
+  public boolean write(byte[] audio) {
+    return write(audio, 0, audio.length);
+  } // write(byte[])
+
+  public synchronized boolean write(byte[] audio, int offset, int length) {
+    while (paused && !cancelled) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } // try-catch
+    } // while
+    if (cancelled) {
+      return false;
+    } // if
+    emit(audio, offset, length);
+    if (recording != null) {
+      recording.write(audio, offset, length);
+    } // if
+    if (!started) {
+      started = true;
+      if (onFirstAudio != null) {
+        onFirstAudio.run();
+      } // if
+    } // if
+    return true;
+  } // write(byte[], int, int)
+
+  public void showMetrics() {
+  } // showMetrics()
+
+  // +---------------+-----------------------------------------------
+  // | Inner Classes |
+  // +---------------+
+
+  /**
+   * Plays audio through a SourceDataLine. The line is opened on first use and reused for
+   * every later phrase in the same format, and playback starts with the first chunk.
+   */
+  public static class Line extends StreamingAudioPlayer {
+    /** The open line, or null */
+    SourceDataLine line;
+
+    @Override
+    void open(AudioFormat audioFormat) throws IOException {
+      if (line != null && line.getFormat().matches(audioFormat)) {
+        return;
+      } // if
+      if (line != null) {
+        line.close();
+      } // if
+      try {
+        line = AudioSystem.getSourceDataLine(audioFormat);
+        line.open(audioFormat);
+        line.start();
+      } catch (LineUnavailableException e) {
+        line = null;
+        throw new IOException(e);
+      } // try-catch
+      applyVolume();
+    } // open(AudioFormat)
+
+    @Override
+    void emit(byte[] audio, int offset, int length) {
+      if (line != null) {
+        line.write(audio, offset, length);
+      } // if
+    } // emit(byte[], int, int)
+
+    @Override
+    void drainOutput() {
+      if (line != null) {
+        line.drain();
+      } // if
+    } // drainOutput()
+
+    @Override
+    public void cancel() {
+      super.cancel();
+      if (line != null) {
+        line.flush();
+      } // if
+    } // cancel()
+
+    @Override
+    public void setVolume(float volume) {
+      super.setVolume(volume);
+      applyVolume();
+    } // setVolume(float)
+
+    @Override
+    public synchronized void close() {
+      if (line != null) {
+        line.close();
+        line = null;
+      } // if
+    } // close()
+
+    /**
+     * Sets the gain of the line to match the volume, if the line allows it
+     */
+    void applyVolume() {
+      if (line != null && line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+        FloatControl gain = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+        float db = (float) (20 * Math.log10(Math.max(volume, 0.0001f)));
+        gain.setValue(Math.max(gain.getMinimum(), Math.min(gain.getMaximum(), db)));
+      } // if
+    } // applyVolume()
+  } // class Line
+
+  /**
+   * Keeps audio in memory rather than playing it, for headless use
+   */
+  public static class Memory extends StreamingAudioPlayer {
+    /** The audio written so far */
+    final ByteArrayOutputStream audio = new ByteArrayOutputStream();
+
+    @Override
+    void open(AudioFormat audioFormat) {
+    } // open(AudioFormat)
+
+    @Override
+    void emit(byte[] bytes, int offset, int length) {
+      audio.write(bytes, offset, length);
+    } // emit(byte[], int, int)
+
+    @Override
+    void drainOutput() {
+    } // drainOutput()
+
+    /**
+     * Returns the audio written so far, in getAudioFormat()
+     *
+     * @return the audio
+     */
+    public synchronized byte[] getAudio() {
+      return audio.toByteArray();
+    } // getAudio()
+
+    /**
+     * Forgets the audio written so far
+     */
+    public synchronized void clear() {
+      audio.reset();
+    } // clear()
+
+    /**
+     * Saves the audio written so far as a WAV file
+     *
+     * @param file where to save the audio
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void saveWav(File file) throws IOException {
+      byte[] bytes = audio.toByteArray();
+      AudioInputStream stream = new AudioInputStream(new ByteArrayInputStream(bytes), format,
+          bytes.length / format.getFrameSize());
+      AudioSystem.write(stream, AudioFileFormat.Type.WAVE, file);
+    } // saveWav(File)
+  } // class Memory
+} // class StreamingAudioPlayer
@@ -0,0 +1,323 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.AbstractAction;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JRootPane;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+
+/**
+ * Switch scanning, for people who use a single switch rather than a mouse. The scanner
+ * highlights each row of buttons in turn; pressing the switch (space or enter) picks the
+ * highlighted row, and the scanner then highlights each of its buttons in turn, where
+ * pressing the switch clicks the highlighted button. A row whose buttons have all been
+ * highlighted without a press goes back to scanning rows.
+ * <p>
+ * The steps are timed by a thread of their own rather than a Swing Timer, so that they stay
+ * on schedule while the event thread is busy: it sleeps until just before each step and
+ * spins for the rest, and the steps keep to a fixed schedule measured from the last restart,
+ * so lateness does not accumulate. The highlight is drawn on the frame's glass pane, and a
+ * step repaints only the rectangles of the old and the new highlight. A step allocates
+ * nothing; how late each one is shown is recorded as AACMetrics.Stage.SCAN_STEP.
+ */
+public class SwitchScanner extends JComponent {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The version of the serialized form, which JComponent asks for */
+  private static final long serialVersionUID = 1L;
+
+  /** How long before a step the timing thread stops sleeping and spins, in nanoseconds */
+  static final long SPIN_NANOS = 1_000_000L;
+
+  /** The width of the highlight, in pixels */
+  static final int THICKNESS = 6;
+
+  /** How the highlight is drawn */
+  static final BasicStroke STROKE = new BasicStroke(THICKNESS);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The time between steps, in nanoseconds */
+  final long period;
+
+  /** The buttons to scan, by row */
+  JButton[][] rows = new JButton[0][];
+
+  /** The row highlighted, or being scanned */
+  int row;
+
+  /** The button highlighted, or -1 while scanning rows */
+  int cell = -1;
+
+  /** The highlight, in the glass pane's coordinates; empty if there is none */
+  final Rectangle highlight = new Rectangle();
+
+  /** The highlight before the last step, so that we can repaint where it was */
+  final Rectangle previous = new Rectangle();
+
+  /** The time the schedule was last restarted, from System.nanoTime */
+  volatile long epoch;
+
+  /** The time the next step is due, from System.nanoTime */
+  volatile long due;
+
+  /** Whether a step has been posted to the event thread and not yet run */
+  final AtomicBoolean posted = new AtomicBoolean();
+
+  /** The thread that times the steps, or null once the scanner is stopped */
+  volatile Thread timer;
+
+  /** Takes one step, on the event thread */
+  final Runnable step = this::step;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates a scanner for a frame, showing its highlight on the frame's glass pane and
+   * listening for the switch anywhere in the frame. The scanner starts once it is given
+   * some rows.
+   *
+   * @param frame  the frame
+   * @param millis the time between steps, in milliseconds
+   */
+  public SwitchScanner(JFrame frame, long millis) {
+    this(millis);
+    frame.setGlassPane(this);
+    setVisible(true);
+    JRootPane root = frame.getRootPane();
+    for (int key : new int[] {KeyEvent.VK_SPACE, KeyEvent.VK_ENTER}) {
+      root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+          .put(KeyStroke.getKeyStroke(key, 0), "switch");
+    } // for
+    root.getActionMap().put("switch", new AbstractAction() {
+      public void actionPerformed(ActionEvent e) {
+        press();
+      } // actionPerformed(ActionEvent)
+    });
+  } // SwitchScanner(JFrame, long)
+
+  /**
+   * Creates a scanner that is not shown and hears no switch, which steps all the same; for
+   * timing the steps without a frame.
+   *
+   * @param millis the time between steps, in milliseconds
+   */
+  SwitchScanner(long millis) {
+    this.period = millis * 1_000_000L;
+  } // SwitchScanner(long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Scans a new set of buttons, starting from the first row. Call on the event thread each
+   * time the buttons are rebuilt.
+   *
+   * @param rows the buttons, by row; empty rows are skipped
+   */
+  public void setRows(JButton[][] rows) {
+    this.rows = rows;
+    this.row = 0;
+    this.cell = -1;
+    for (JButton[] buttons : rows) {
+      for (JButton button : buttons) {
+        // The switch, not the focused button, answers space and enter
+        button.setFocusable(false);
+      } // for
+    } // for
+    while (this.row < rows.length - 1 && rows[this.row].length == 0) {
+      this.row++;
+    } // while
+    restart();
+    // Lay the new buttons out before measuring where they are
+    SwingUtilities.invokeLater(() -> {
+      highlight();
+      restart();
+    });
+    if (timer == null) {
+      timer = new Thread(this::run, "aac-scan");
+      timer.setDaemon(true);
+      timer.setPriority(Thread.MAX_PRIORITY);
+      timer.start();
+    } // if
+  } // setRows(JButton[][])
+
+  /**
+   * Responds to the switch: picks the highlighted row, or clicks the highlighted button.
+   * Call on the event thread.
+   */
+  public void press() {
+    if (row >= rows.length || rows[row].length == 0) {
+      return;
+    } // if
+    if (cell < 0) {
+      cell = 0;
+      highlight();
+      restart();
+    } else {
+      JButton button = rows[row][cell];
+      cell = -1;
+      highlight();
+      restart();
+      // The click usually rebuilds the buttons, which calls setRows
+      button.doClick(0);
+    } // if
+  } // press()
+
+  /**
+   * Stops scanning and removes the highlight
+   */
+  public void stop() {
+    Thread stopping = timer;
+    timer = null;
+    if (stopping != null) {
+      LockSupport.unpark(stopping);
+    } // if
+    previous.setBounds(highlight);
+    highlight.setBounds(0, 0, 0, 0);
+    repaint(previous);
+  } // stop()
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    if (!highlight.isEmpty()) {
+      Graphics2D g2 = (Graphics2D) g;
+      g2.setColor(Color.ORANGE);
+      g2.setStroke(STROKE);
+      g2.drawRect(highlight.x + THICKNESS / 2, highlight.y + THICKNESS / 2,
+          highlight.width - THICKNESS, highlight.height - THICKNESS);
+    } // if
+  } // paintComponent(Graphics)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Starts the schedule again from now, so that the next step comes a full period after
+   * the last change the user made
+   */
+  void restart() {
+    epoch = System.nanoTime();
+    Thread waiting = timer;
+    if (waiting != null) {
+      LockSupport.unpark(waiting);
+    } // if
+  } // restart()
+
+  /**
+   * Times the steps: waits for each one and posts it to the event thread, unless the
+   * previous one has not run yet
+   */
+  void run() {
+    long seen = epoch;
+    long next = seen + period;
+    while (timer == Thread.currentThread()) {
+      long wait;
+      while ((wait = next - System.nanoTime()) > SPIN_NANOS && epoch == seen
+          && timer == Thread.currentThread()) {
+        LockSupport.parkNanos(wait - SPIN_NANOS);
+      } // while
+      if (epoch != seen) {
+        seen = epoch;
+        next = seen + period;
+        continue;
+      } // if
+      while (System.nanoTime() < next) {
+        Thread.onSpinWait();
+      } // while
+      if (!posted.getAndSet(true)) {
+        due = next;
+        SwingUtilities.invokeLater(step);
+      } // if
+      next += period;
+      if (System.nanoTime() - next > period) {
+        // We were stopped (say, the machine slept); do not rush to catch up
+        next = System.nanoTime() + period;
+      } // if
+    } // while
+  } // run()
+
+  /**
+   * Moves the highlight to the next row, or the next button of the row; on the event thread
+   */
+  void step() {
+    // Record how late the step is, if metrics are on
+    AACMetrics.stop(AACMetrics.Stage.SCAN_STEP, (AACMetrics.start() == 0L) ? 0L : due);
+    posted.set(false);
+    if (rows.length == 0 || due - epoch < period) {
+      // Nothing to scan, or the step was due before the user last pressed the switch
+      return;
+    } // if
+    if (cell < 0) {
+      do {
+        row = (row + 1) % rows.length;
+      } while (rows[row].length == 0 && row != 0);
+    } else if (++cell >= rows[row].length) {
+      cell = -1;
+    } // if
+    highlight();
+  } // step()
+
+  /**
+   * Moves the highlight to the row or button being scanned, and repaints where it was and
+   * where it is
+   */
+  void highlight() {
+    previous.setBounds(highlight);
+    highlight.setBounds(0, 0, 0, 0);
+    if (row < rows.length) {
+      JButton[] buttons = rows[row];
+      for (int i = (cell < 0) ? 0 : cell; i < ((cell < 0) ? buttons.length : cell + 1); i++) {
+        include(buttons[i]);
+      } // for
+    } // if
+    if (!previous.isEmpty()) {
+      repaint(previous);
+    } // if
+    if (!highlight.isEmpty()) {
+      repaint(highlight);
+    } // if
+  } // highlight()
+
+  /**
+   * Adds the bounds of a button to the highlight, converting them to our coordinates
+   * without making any objects
+   */
+  void include(JButton button) {
+    if (!button.isShowing()) {
+      return;
+    } // if
+    int x = 0;
+    int y = 0;
+    Component c = button;
+    while (c != null && !(c instanceof JRootPane)) {
+      x += c.getX();
+      y += c.getY();
+      c = c.getParent();
+    } // while
+    if (highlight.isEmpty()) {
+      highlight.setBounds(x, y, button.getWidth(), button.getHeight());
+    } else {
+      highlight.add(x, y);
+      highlight.add(x + button.getWidth(), y + button.getHeight());
+    } // if
+  } // include(JButton)
+} // class SwitchScanner
@@ -0,0 +1,267 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.speech.Central;
+import javax.speech.synthesis.SpeakableAdapter;
+import javax.speech.synthesis.SpeakableEvent;
+import javax.speech.synthesis.SpeakableListener;
+import javax.speech.synthesis.Synthesizer;
+import javax.speech.synthesis.SynthesizerModeDesc;
+import javax.speech.synthesis.Voice;
+
+/**
+ * A pool of allocated FreeTTS synthesizers, kept per voice and locale, so that switching
+ * voices or speaking from several sessions at once does not pay the cost of allocating a
+ * synthesizer. A synthesizer comes from the engine of the locale in use when it was
+ * created, so one made for another locale is never handed out. Each voice may have up to
+ * maxPerVoice synthesizers speaking at once in each locale; callers beyond that wait for one
+ * to be released. Synthesizers left idle longer than the idle timeout are deallocated,
+ * except for one per voice and locale, which is kept warm.
+ */
+public class SynthesizerPool extends SpeechBackend {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The most synthesizers per voice and locale that may be in use at once */
+  final int maxPerVoice;
+
+  /** How long a synthesizer may sit idle before it is deallocated */
+  final long idleMillis;
+
+  /** The idle synthesizers for each voice and locale (see key), most recently used first */
+  final Map<String, ConcurrentLinkedDeque<Pooled>> idle =
+      new ConcurrentHashMap<String, ConcurrentLinkedDeque<Pooled>>();
+
+  /** Limits the synthesizers in use for each voice and locale */
+  final Map<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+  /** Deallocates idle synthesizers */
+  final ScheduledExecutorService evictor;
+
+  /**
+   * A synthesizer in the pool, with the key of its voice and locale and the time it was last
+   * released
+   */
+  static class Pooled {
+    final Synthesizer synthesizer;
+    final String key;
+    volatile long lastUsed;
+
+    Pooled(Synthesizer synthesizer, String key) {
+      this.synthesizer = synthesizer;
+      this.key = key;
+      this.lastUsed = System.currentTimeMillis();
+    } // Pooled(Synthesizer, String)
+  } // class Pooled
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates an empty pool. Call registerEngine once before creating any pool.
+   *
+   * @param maxPerVoice the most synthesizers per voice that may speak at once
+   * @param idleMillis  how long a synthesizer may sit idle before it is deallocated
+   */
+  public SynthesizerPool(int maxPerVoice, long idleMillis) {
+    if (maxPerVoice < 1) {
+      throw new IllegalArgumentException("Need at least one synthesizer per voice");
+    } // if
+    this.maxPerVoice = maxPerVoice;
+    this.idleMillis = idleMillis;
+    this.evictor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+      Thread thread = new Thread(runnable, "aac-synthesizer-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(idleMillis / 2, 1000);
+    this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+  } // SynthesizerPool(int, long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Registers the FreeTTS voices and JSAPI engine. Must be called before any synthesizer is
+   * created.
+   *
+   * @throws Exception if the engine cannot be registered
+   */
+  public static void registerEngine() throws Exception {
+    registerVoices();
+
+    // Register Engine
+    Central.registerEngineCentral("com.sun.speech.freetts" + ".jsapi.FreeTTSEngineCentral");
+  } // registerEngine()
+
+  /**
+   * Allocates synthesizers for a voice in the locale in use ahead of time, up to count (and
+   * at most maxPerVoice)
+   *
+   * @param voice the name of the voice
+   * @param count the number of synthesizers to have ready
+   * @throws Exception if a synthesizer cannot be allocated
+   */
+  public void prewarm(String voice, int count) throws Exception {
+    Locale inUse = this.locale;
+    String key = key(voice, inUse);
+    ConcurrentLinkedDeque<Pooled> ready = idleFor(key);
+    for (int i = ready.size(); i < Math.min(count, maxPerVoice); i++) {
+      ready.addLast(new Pooled(create(voice, inUse), key));
+    } // for
+  } // prewarm(String, int)
+
+  @Override
+  public void prewarm(String voice) throws Exception {
+    prewarm(voice, 1);
+  } // prewarm(String)
+
+  @Override
+  public void speak(String voice, String text, Runnable onAudioStart) throws Exception {
+    speak(voice, text, (onAudioStart == null) ? null : new SpeakableAdapter() {
+      @Override
+      public void speakableStarted(SpeakableEvent event) {
+        onAudioStart.run();
+      } // speakableStarted(SpeakableEvent)
+    });
+  } // speak(String, String, Runnable)
+
+  /**
+   * Speaks text in the given voice and waits until it has been spoken. Other threads may
+   * speak at the same time, in the same voice (up to maxPerVoice) or in others.
+   *
+   * @param voice    the name of the voice
+   * @param text     the text to speak
+   * @param listener notified of speech events, or null
+   * @throws Exception if the text cannot be spoken
+   */
+  public void speak(String voice, String text, SpeakableListener listener) throws Exception {
+    Pooled pooled = acquire(voice);
+    try {
+      pooled.synthesizer.speakPlainText(text, listener);
+      pooled.synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
+    } finally {
+      release(pooled);
+    } // try-finally
+  } // speak(String, String, SpeakableListener)
+
+  /**
+   * Deallocates every synthesizer that has been idle longer than the idle timeout, except
+   * the most recently used one of each voice and locale
+   */
+  public void evictIdle() {
+    long cutoff = System.currentTimeMillis() - idleMillis;
+    for (ConcurrentLinkedDeque<Pooled> ready : idle.values()) {
+      while (ready.size() > 1) {
+        Pooled oldest = ready.peekLast();
+        if (oldest == null || oldest.lastUsed > cutoff || !ready.removeLastOccurrence(oldest)) {
+          break;
+        } // if
+        deallocate(oldest);
+      } // while
+    } // for
+  } // evictIdle()
+
+  /**
+   * Deallocates every idle synthesizer and stops evicting. Synthesizers in use are
+   * deallocated when released.
+   */
+  @Override
+  public void close() {
+    evictor.shutdownNow();
+    for (ConcurrentLinkedDeque<Pooled> ready : idle.values()) {
+      Pooled pooled;
+      while ((pooled = ready.pollFirst()) != null) {
+        deallocate(pooled);
+      } // while
+    } // for
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Takes an idle synthesizer for voice in the locale in use, allocating one if none is
+   * idle, waiting if maxPerVoice are already in use
+   */
+  Pooled acquire(String voice) throws Exception {
+    Locale inUse = this.locale;
+    String key = key(voice, inUse);
+    permits.computeIfAbsent(key, (k) -> new Semaphore(maxPerVoice, true)).acquire();
+    try {
+      Pooled pooled = idleFor(key).pollFirst();
+      return (pooled != null) ? pooled : new Pooled(create(voice, inUse), key);
+    } catch (Exception e) {
+      permits.get(key).release();
+      throw e;
+    } // try-catch
+  } // acquire(String)
+
+  /**
+   * Returns a synthesizer taken by acquire to the pool, with the others of its voice and
+   * locale, whatever the locale is now
+   */
+  void release(Pooled pooled) {
+    pooled.lastUsed = System.currentTimeMillis();
+    if (evictor.isShutdown()) {
+      deallocate(pooled);
+    } else {
+      idleFor(pooled.key).addFirst(pooled);
+    } // if
+    permits.get(pooled.key).release();
+  } // release(Pooled)
+
+  /**
+   * Gets the idle synthesizers for a voice and locale
+   */
+  ConcurrentLinkedDeque<Pooled> idleFor(String key) {
+    return idle.computeIfAbsent(key, (k) -> new ConcurrentLinkedDeque<Pooled>());
+  } // idleFor(String)
+
+  /**
+   * Gets the key of a voice in a locale, in idle and permits
+   */
+  static String key(String voice, Locale locale) {
+    return (locale == null) ? voice : voice + ' ' + locale.toLanguageTag();
+  } // key(String, Locale)
+
+  /**
+   * Creates, allocates and resumes a synthesizer speaking in voice, from an engine for
+   * locale if there is one and the US English engine otherwise
+   */
+  static Synthesizer create(String voice, Locale locale) throws Exception {
+    Synthesizer synthesizer = Central.createSynthesizer(new SynthesizerModeDesc(locale));
+    if (synthesizer == null && !Locale.US.equals(locale)) {
+      // FreeTTS only registers US English; its voices still speak other locales' text
+      synthesizer = Central.createSynthesizer(new SynthesizerModeDesc(Locale.US));
+    } // if
+    if (synthesizer == null) {
+      throw new IllegalStateException("No synthesizer available; was registerEngine called?");
+    } // if
+    synthesizer.allocate();
+    synthesizer.resume();
+    synthesizer.getSynthesizerProperties().setVoice(
+        new Voice(voice, Voice.GENDER_DONT_CARE, Voice.AGE_DONT_CARE, null));
+    return synthesizer;
+  } // create(String, Locale)
+
+  /**
+   * Deallocates a pooled synthesizer, reporting but otherwise ignoring failures
+   */
+  static void deallocate(Pooled pooled) {
+    try {
+      pooled.synthesizer.deallocate();
+    } catch (Exception e) {
+      e.printStackTrace();
+    } // try-catch
+  } // deallocate(Pooled)
+} // class SynthesizerPool
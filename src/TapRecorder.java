@@ -0,0 +1,347 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Logs the calls made to a board (every select, reset, addItem and setLocale) with the time
+ * of each, so that TapReplay can play them back. A select is logged with its result, or with
+ * the fact that it failed, which lets a replay check that another build of the board answers
+ * the same. Since select returns the text of the locale in use, the log records the locale
+ * it started in and every change of locale. Other edits (removeItem, undo and so on) are not
+ * logged, so a session that made them will not replay exactly.
+ * <p>
+ * A tap log holds the magic number, the wall-clock time the log was started (in milliseconds),
+ * the name of the board file, the language tag of the locale in use ("" for the board's own
+ * text), and then one event after another until the end of the file. Logs written before
+ * the locale was recorded have OLD_MAGIC and no language tag.
+ * An event is an operation byte, the nanoseconds since the previous event as a variable-length
+ * number, and the strings of the operation. Each string is written in full the first time it
+ * appears (as 0 and then the string) and as its number plus one after that, so a log of taps
+ * on the same few images takes a few bytes per tap.
+ */
+public class TapRecorder {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** Identifies a tap log */
+  static final int MAGIC = 0x41414355;
+
+  /** Identifies a tap log without a locale in its header */
+  static final int OLD_MAGIC = 0x41414354;
+
+  /** A select that returned a text: the image location and the text */
+  public static final byte SELECT = 0;
+
+  /** A select that threw NoSuchElementException: the image location */
+  public static final byte SELECT_MISSING = 1;
+
+  /** A reset to the home page */
+  public static final byte RESET = 2;
+
+  /** An addItem: the image location and the text */
+  public static final byte ADD_ITEM = 3;
+
+  /** A setLocale: the language tag, or "" for the board's own text */
+  public static final byte LOCALE = 4;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** Where the log is written; null once it is closed or has failed */
+  DataOutputStream out;
+
+  /** The number of each string written so far */
+  final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+  /** The time of the previous event, from System.nanoTime */
+  long last;
+
+  /**
+   * One call read back from a tap log
+   */
+  public static final class Event {
+    /** The operation: SELECT, SELECT_MISSING, RESET, ADD_ITEM or LOCALE */
+    public final byte op;
+
+    /** The nanoseconds from the start of the log to the call */
+    public final long time;
+
+    /** The image location, or null for a reset or a setLocale */
+    public final String imageLoc;
+
+    /** The text selected or added, the language tag of a setLocale, or null */
+    public final String text;
+
+    Event(byte op, long time, String imageLoc, String text) {
+      this.op = op;
+      this.time = time;
+      this.imageLoc = imageLoc;
+      this.text = text;
+    } // Event(byte, long, String, String)
+  } // class Event
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Starts a new tap log, replacing the file if it exists
+   *
+   * @param file   the log file
+   * @param board  the name of the board file the calls are made on
+   * @param locale the locale whose text the board shows, or null for its own text
+   * @throws IOException if the file cannot be written
+   */
+  public TapRecorder(File file, String board, Locale locale) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    out.writeInt(MAGIC);
+    out.writeLong(System.currentTimeMillis());
+    out.writeUTF(board);
+    out.writeUTF((locale == null) ? "" : locale.toLanguageTag());
+    this.last = System.nanoTime();
+  } // TapRecorder(File, String, Locale)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Logs a select
+   *
+   * @param imageLoc the image selected
+   * @param text     what select returned, or null if it threw NoSuchElementException
+   */
+  public synchronized void select(String imageLoc, String text) {
+    if (start((text == null) ? SELECT_MISSING : SELECT)) {
+      write(imageLoc);
+      if (text != null) {
+        write(text);
+      } // if
+    } // if
+  } // select(String, String)
+
+  /**
+   * Logs a reset
+   */
+  public synchronized void reset() {
+    start(RESET);
+  } // reset()
+
+  /**
+   * Logs an addItem
+   *
+   * @param imageLoc the image added
+   * @param text     its text
+   */
+  public synchronized void addItem(String imageLoc, String text) {
+    if (start(ADD_ITEM)) {
+      write(imageLoc);
+      write(text);
+    } // if
+  } // addItem(String, String)
+
+  /**
+   * Logs a change of locale
+   *
+   * @param locale the locale now in use, or null for the board's own text
+   */
+  public synchronized void setLocale(Locale locale) {
+    if (start(LOCALE)) {
+      write((locale == null) ? "" : locale.toLanguageTag());
+    } // if
+  } // setLocale(Locale)
+
+  /**
+   * Writes the events logged so far to the file
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void flush() throws IOException {
+    if (out != null) {
+      out.flush();
+    } // if
+  } // flush()
+
+  /**
+   * Writes the events logged so far and closes the log; later events are ignored
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      DataOutputStream closing = out;
+      out = null;
+      closing.close();
+    } // if
+  } // close()
+
+  /**
+   * Reads every event of a tap log
+   *
+   * @param file   the log file
+   * @param header if not null, its first element is set to the name of the board file and,
+   *               if it has a second, that is set to the language tag of the locale the log
+   *               started in ("" for the board's own text)
+   * @return the events, in the order they happened
+   * @throws IOException if the file cannot be read or is not a tap log
+   */
+  public static List<Event> read(File file, String[] header) throws IOException {
+    List<Event> events = new ArrayList<Event>();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      int magic = in.readInt();
+      if (magic != MAGIC && magic != OLD_MAGIC) {
+        throw new IOException(file + " is not a tap log");
+      } // if
+      in.readLong();
+      String boardFile = in.readUTF();
+      String tag = (magic == MAGIC) ? in.readUTF() : "";
+      if (header != null) {
+        header[0] = boardFile;
+        if (header.length > 1) {
+          header[1] = tag;
+        } // if
+      } // if
+      List<String> strings = new ArrayList<String>();
+      long time = 0;
+      int op;
+      while ((op = in.read()) >= 0) {
+        time += readVarLong(in);
+        switch (op) {
+          case SELECT:
+          case ADD_ITEM:
+            String imageLoc = readString(in, strings);
+            events.add(new Event((byte) op, time, imageLoc, readString(in, strings)));
+            break;
+          case SELECT_MISSING:
+            events.add(new Event((byte) op, time, readString(in, strings), null));
+            break;
+          case RESET:
+            events.add(new Event((byte) op, time, null, null));
+            break;
+          case LOCALE:
+            events.add(new Event((byte) op, time, null, readString(in, strings)));
+            break;
+          default:
+            throw new IOException(file + ": unknown operation " + op);
+        } // switch
+      } // while
+    } catch (EOFException e) {
+      // A log cut short by a crash; keep the events that were written in full
+    } // try-catch
+    return events;
+  } // read(File, String[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Writes the operation and time of an event
+   *
+   * @param op the operation
+   * @return true if the rest of the event should be written, false if the log is closed
+   */
+  boolean start(byte op) {
+    if (out == null) {
+      return false;
+    } // if
+    long now = System.nanoTime();
+    try {
+      out.writeByte(op);
+      writeVarLong(now - last);
+    } catch (IOException e) {
+      fail(e);
+      return false;
+    } // try-catch
+    last = now;
+    return true;
+  } // start(byte)
+
+  /**
+   * Writes a string, or its number if it has been written before
+   */
+  void write(String string) {
+    if (out == null) {
+      return;
+    } // if
+    try {
+      Integer number = strings.get(string);
+      if (number != null) {
+        writeVarLong(number + 1);
+      } else {
+        strings.put(string, strings.size());
+        writeVarLong(0);
+        out.writeUTF(string);
+      } // if
+    } catch (IOException e) {
+      fail(e);
+    } // try-catch
+  } // write(String)
+
+  /**
+   * Writes a non-negative number seven bits at a time, low bits first
+   */
+  void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    } // while
+    out.writeByte((int) value);
+  } // writeVarLong(long)
+
+  /**
+   * Stops logging after a write fails; the calls on the board go on as before
+   */
+  void fail(IOException e) {
+    e.printStackTrace();
+    try {
+      close();
+    } catch (IOException ignored) {
+      // Already reported
+    } // try-catch
+  } // fail(IOException)
+
+  /**
+   * Reads a number written by writeVarLong
+   */
+  static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      } // if
+    } // for
+  } // readVarLong(DataInputStream)
+
+  /**
+   * Reads a string written by write, remembering it if it is new
+   */
+  static String readString(DataInputStream in, List<String> strings) throws IOException {
+    long number = readVarLong(in);
+    if (number == 0) {
+      String string = in.readUTF();
+      strings.add(string);
+      return string;
+    } // if
+    if (number > strings.size()) {
+      throw new IOException("string " + (number - 1) + " has not been read");
+    } // if
+    return strings.get((int) (number - 1));
+  } // readString(DataInputStream, List)
+} // class TapRecorder
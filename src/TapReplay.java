@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a tap log (see TapRecorder) back against a board loaded without a window, and prints
+ * the throughput and the latency of each kind of call. Each round loads the board afresh and
+ * shows the text of the locale the log started in, so every round starts from the board the
+ * log was recorded on.
+ * <p>
+ * Every select is checked against the result in the log, and the replay exits with status 1
+ * if any differ, so the same log can check a change to the board's maps as well as time it:
+ * for instance, run it once as it is and once with -Daac.hardened=true.
+ * <p>
+ * Run as java TapReplay log-file [-board file] [-realtime] [-rounds n]. The board defaults to
+ * the one named in the log; -realtime waits between calls as long as the user did, and the
+ * rounds after the first run once the JIT has seen the code.
+ */
+public class TapReplay {
+  /** The names of the operations, by operation byte */
+  static final String[] OPS = {"select", "select (missing)", "reset", "addItem", "setLocale"};
+
+  /** The number of mismatches printed in full */
+  static final int MAX_REPORTED = 10;
+
+  /**
+   * Replays a tap log
+   *
+   * @param args the log file and the options
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: java TapReplay log-file [-board file] [-realtime] [-rounds n]");
+      System.exit(2);
+    } // if
+    // The board file and the language tag of the locale the log started in
+    String[] board = new String[2];
+    List<TapRecorder.Event> events = TapRecorder.read(new File(args[0]), board);
+    boolean realtime = false;
+    int rounds = 1;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("-realtime")) {
+        realtime = true;
+      } else if (args[i].equals("-board") && i + 1 < args.length) {
+        board[0] = args[++i];
+      } else if (args[i].equals("-rounds") && i + 1 < args.length) {
+        rounds = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Unknown option " + args[i]);
+        System.exit(2);
+      } // if
+    } // for
+
+    LatencyHistogram[] latencies = new LatencyHistogram[OPS.length];
+    for (int op = 0; op < OPS.length; op++) {
+      latencies[op] = new LatencyHistogram();
+    } // for
+    long mismatches = 0;
+    long elapsed = 0;
+    for (int round = 0; round < rounds; round++) {
+      AACMappings mappings = AACMappings.load(board[0]);
+      setLocale(mappings, board[1]);
+      long start = System.nanoTime();
+      mismatches += replay(mappings, events, realtime, latencies, mismatches);
+      elapsed += System.nanoTime() - start;
+    } // for
+
+    long calls = (long) events.size() * rounds;
+    System.out.printf("%d calls in %.1f ms: %.0f calls/s, %d mismatches%n", calls,
+        elapsed / 1e6, calls / (elapsed / 1e9), mismatches);
+    System.out.printf("%-17s %10s %10s %10s %10s %10s%n", "call", "count", "mean ns",
+        "p50 ns", "p99 ns", "max ns");
+    for (int op = 0; op < OPS.length; op++) {
+      if (latencies[op].getCount() > 0) {
+        System.out.printf("%-17s %10d %10.0f %10d %10d %10d%n", OPS[op],
+            latencies[op].getCount(), latencies[op].getMean(),
+            latencies[op].getPercentile(0.5), latencies[op].getPercentile(0.99),
+            latencies[op].getMax());
+      } // if
+    } // for
+    System.exit((mismatches == 0) ? 0 : 1);
+  } // main(String[])
+
+  /**
+   * Makes the calls of a log on a board, recording the latency of each
+   *
+   * @param mappings  the board
+   * @param events    the calls
+   * @param realtime  whether to wait between calls as long as the user did
+   * @param latencies the histogram of each operation
+   * @param reported  the number of mismatches already found, to limit how many are printed
+   * @return the number of selects whose result differs from the log
+   */
+  static long replay(AACMappings mappings, List<TapRecorder.Event> events, boolean realtime,
+      LatencyHistogram[] latencies, long reported) {
+    long mismatches = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < events.size(); i++) {
+      TapRecorder.Event event = events.get(i);
+      if (realtime) {
+        long wait;
+        while ((wait = start + event.time - System.nanoTime()) > 0) {
+          LockSupport.parkNanos(wait);
+        } // while
+      } // if
+      String result = null;
+      long before = System.nanoTime();
+      switch (event.op) {
+        case TapRecorder.SELECT:
+        case TapRecorder.SELECT_MISSING:
+          try {
+            result = mappings.select(event.imageLoc);
+          } catch (NoSuchElementException e) {
+            result = null;
+          } // try-catch
+          break;
+        case TapRecorder.RESET:
+          mappings.reset();
+          break;
+        case TapRecorder.LOCALE:
+          setLocale(mappings, event.text);
+          break;
+        default:
+          mappings.addItem(event.imageLoc, event.text);
+          break;
+      } // switch
+      latencies[event.op].record(System.nanoTime() - before);
+      if ((event.op == TapRecorder.SELECT || event.op == TapRecorder.SELECT_MISSING)
+          && !(result == null ? event.text == null : result.equals(event.text))) {
+        if (reported + mismatches < MAX_REPORTED) {
+          System.err.println("call " + i + ": select " + event.imageLoc + " returned "
+              + describe(result) + ", logged " + describe(event.text));
+        } // if
+        mismatches++;
+      } // if
+    } // for
+    return mismatches;
+  } // replay(AACMappings, List, boolean, LatencyHistogram[], long)
+
+  /**
+   * Shows the text of a locale, reporting a locale without a text layer, whose selects will
+   * then not match the log
+   *
+   * @param mappings the board
+   * @param tag      the language tag, or "" for the board's own text
+   */
+  static void setLocale(AACMappings mappings, String tag) {
+    try {
+      mappings.setLocale(tag.isEmpty() ? null : Locale.forLanguageTag(tag));
+    } catch (FileNotFoundException e) {
+      System.err.println("No text for " + tag);
+    } // try-catch
+  } // setLocale(AACMappings, String)
+
+  /**
+   * Describes the result of a select for a mismatch report
+   */
+  static String describe(String result) {
+    return (result == null) ? "no such element" : "\"" + result + "\"";
+  } // describe(String)
+} // class TapReplay
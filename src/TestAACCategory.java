@@ -7,6 +7,8 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.NoSuchElementException;
+
 /**
  * Tests of AACCategory.
  *
@@ -155,4 +157,65 @@ public class TestAACCategory {
     assertTrue(containsString(abc, "imageC"), "imageLocs contains imageC");
   } // testImageLocs()
 
+  /**
+   * Tests of adding items in bulk, including a duplicate image.
+   */
+  @Test
+  void testAddItems() {
+    AACCategory category = new AACCategory("testAddItems");
+    category.addItem("imageA", "Apple");
+    category.addItems(new String[] {"imageB", "imageC", "imageA"},
+        new String[] {"Banana", "Cherry", "Apricot"});
+    assertEquals(3, category.getImageLocs().length, "three distinct images");
+    assertEquals("Apricot", category.select("imageA"), "later duplicate wins");
+    assertEquals("Banana", category.select("imageB"));
+    assertEquals("Cherry", category.select("imageC"));
+  } // testAddItems()
+
+  /**
+   * Does a frozen category behave like a thawed one, and thaw when changed?
+   */
+  @Test
+  void testFreezeThaw() throws Exception {
+    AACCategory category = new AACCategory("testFreezeThaw");
+    category.addItems(new String[] {"imageC", "imageA", "imageB"},
+        new String[] {"Cherry", "Apple", "Banana"});
+    category.freeze();
+    assertTrue(category.isFrozen(), "frozen");
+    assertArrayEquals(new String[] {"imageC", "imageA", "imageB"}, category.getImageLocs(),
+        "freezing keeps the order");
+    assertEquals("Apple", category.select("imageA"));
+    assertTrue(category.hasImage("imageB"));
+    assertFalse(category.hasImage("imageD"));
+    try {
+      category.select("imageD");
+      fail("selected a missing image");
+    } catch (Exception e) {
+      // We expected an exception
+    } // try/catch
+    StringBuilder lines = new StringBuilder();
+    category.writeItems(lines);
+    assertEquals(3, lines.toString().split(System.lineSeparator()).length, "three lines");
+
+    try {
+      category.removeItem("imageD");
+      fail("removed a missing image");
+    } catch (NoSuchElementException e) {
+      // We expected an exception
+    } // try/catch
+    try {
+      category.renameItem("imageD", "Date");
+      fail("renamed a missing image");
+    } catch (NoSuchElementException e) {
+      // We expected an exception
+    } // try/catch
+    assertTrue(category.isFrozen(), "a failed change thaws");
+
+    category.removeItem("imageC");
+    assertFalse(category.isFrozen(), "changing thaws");
+    assertArrayEquals(new String[] {"imageB", "imageA"}, category.getImageLocs(),
+        "imageB takes imageC's place");
+    assertEquals("Banana", category.select("imageB"));
+  } // testFreezeThaw()
+
 } // class TestAACCategory
@@ -14,6 +14,9 @@ import java.io.IOException;
 import java.io.File;
 import java.io.FileWriter;
 
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
 /**
  * Tests of AACMappings.
  *
@@ -463,4 +466,233 @@ public class TestAACMappings {
     assertEquals(4, mappings.getImageLocs().length, "4 toppings");
     assertEquals("pepperoni", mappings.select("p"), "selecting topping p");
   } // testAdd()
+
+  /**
+   * When ranking by usage, do the most used images come first?
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testRankByUsage() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+    mappings.trackUsage(new UsageStore(null, UsageStore.DEFAULT_HALF_LIFE));
+    mappings.rankByUsage(true);
+
+    assertEquals("", mappings.select("two"), "selecting two");
+    assertArrayEquals(new String[] {"d", "e", "f", "g"}, mappings.getImageLocs(),
+        "nothing used yet");
+    mappings.select("g");
+    mappings.select("g");
+    mappings.select("f");
+    assertArrayEquals(new String[] {"g", "f", "d", "e"}, mappings.getImageLocs(),
+        "g used most, then f");
+    mappings.select("f");
+    mappings.select("f");
+    assertArrayEquals(new String[] {"f", "g", "d", "e"}, mappings.getImageLocs(),
+        "f now used most");
+
+    mappings.reset();
+    assertArrayEquals(new String[] {"two", "one", "three"}, mappings.getImageLocs(),
+        "category two used most");
+
+    mappings.rankByUsage(false);
+    assertArrayEquals(new String[] {"one", "two", "three"}, mappings.getImageLocs(),
+        "insertion order");
+  } // testRankByUsage()
+
+  /**
+   * Can we undo and redo additions?
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testUndoRedo() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+    assertEquals("", mappings.select("one"), "selecting one");
+    mappings.addItem("a", "avocado");
+    mappings.addItem("z", "zucchini");
+    assertTrue(mappings.isModified(), "modified after adding");
+
+    assertTrue(mappings.undo(), "undoing zucchini");
+    assertArrayEquals(new String[] {"a", "b", "c"}, mappings.getImageLocs(), "no z");
+    assertTrue(mappings.undo(), "undoing avocado");
+    assertEquals("apple", mappings.select("a"), "a is for apple again");
+    assertTrue(!mappings.undo(), "nothing left to undo");
+    assertTrue(!mappings.isModified(), "back to the file");
+
+    assertTrue(mappings.redo(), "redoing avocado");
+    assertEquals("avocado", mappings.select("a"), "a is for avocado again");
+
+    mappings.reset();
+    mappings.addItem("four", "cuatro");
+    assertTrue(!mappings.redo(), "adding forgets what was undone");
+    assertEquals("", mappings.select("four"), "selecting four");
+    assertTrue(mappings.undo(), "undoing four");
+    assertEquals("", mappings.getCategory(), "back home once four is gone");
+    assertEquals(3, mappings.getImageLocs().length, "three categories");
+  } // testUndoRedo()
+
+  /**
+   * Can we remove, rename and move images, and undo doing so?
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testRemoveRenameMove() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(TEST_CONFIG));
+    assertEquals("", mappings.select("two"), "selecting two");
+    mappings.removeItem("e");
+    assertArrayEquals(new String[] {"d", "g", "f"}, mappings.getImageLocs(),
+        "g takes the place of e");
+    mappings.renameItem("d", "dungarees");
+    assertEquals("dungarees", mappings.select("d"), "d is for dungarees");
+    mappings.moveItem("f", "three");
+    assertArrayEquals(new String[] {"d", "g"}, mappings.getImageLocs(), "f moved out");
+    try {
+      mappings.removeItem("f");
+      fail("removed f twice");
+    } catch (Exception e) {
+      // We expected an exception
+    } // try/catch
+
+    mappings.reset();
+    assertEquals("", mappings.select("three"), "selecting three");
+    assertEquals("fitted shirt", mappings.select("f"), "f moved in");
+    assertEquals(3, mappings.getImageLocs().length, "three miscellaneous items");
+
+    mappings.reset();
+    for (String missing : new String[] {"img/never-seen.png", null}) {
+      try {
+        mappings.removeItem(missing);
+        fail("removed " + missing + " from the home page");
+      } catch (NoSuchElementException e) {
+        // We expected an exception
+      } // try/catch
+    } // for
+    mappings.renameItem("three", "misc");
+    mappings.removeItem("one");
+    assertArrayEquals(new String[] {"three", "two"}, mappings.getImageLocs(),
+        "three takes the place of one");
+    assertEquals("", mappings.select("three"), "selecting three");
+    assertEquals("misc", mappings.getCategory(), "three renamed");
+
+    while (mappings.undo()) {
+      // Undo everything
+    } // while
+    assertEquals("miscellaneous", mappings.getCategory(), "name restored");
+    assertArrayEquals(new String[] {"h", "i"}, mappings.getImageLocs(), "f moved back");
+    mappings.reset();
+    assertEquals("", mappings.select("two"), "selecting two");
+    assertArrayEquals(new String[] {"d", "e", "f", "g"}, mappings.getImageLocs(),
+        "two restored");
+    assertEquals("dress", mappings.select("d"), "d is for dress again");
+  } // testRemoveRenameMove()
+
+  /**
+   * Can we compose a board from several packs, and are conflicts reported?
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testCompose() throws IOException {
+    String fruit = configFile("one fruit\n>a apple\n>b banana\n");
+    String clothes = configFile("two clothes\n>d dress\n");
+    String more = configFile("one fruits\n>a avocado\n>c cherry\n");
+    AACMappings mappings =
+        AACMappings.compose(configFile("# packs\n" + fruit + "\n" + clothes + "\n" + more));
+
+    assertArrayEquals(new String[] {"one", "two"}, mappings.getImageLocs(),
+        "categories from every pack");
+    assertEquals("", mappings.select("one"), "selecting one");
+    assertEquals("fruit", mappings.getCategory(), "the first pack names one");
+    assertArrayEquals(new String[] {"a", "b", "c"}, mappings.getImageLocs(),
+        "fruit from both packs");
+    assertEquals("apple", mappings.select("a"), "the first pack wins");
+    assertEquals(2, mappings.getConflicts().size(), "a name and an item conflict");
+  } // testCompose()
+
+  /**
+   * Can we find images anywhere on the board, and list those under a directory?
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testImagesUnder() throws IOException {
+    AACMappings mappings = new AACMappings(configFile(
+        "img/food/plate.png food\n>img/food/apple.png apple\n>img/foodstuff.png stuff\n"
+        + "img/clothing/hanger.png clothing\n>img/clothing/dress.png dress\n"));
+    assertTrue(mappings.hasImage("img/food/apple.png"), "an item");
+    assertTrue(mappings.hasImage("img/clothing/hanger.png"), "a category");
+    assertEquals(false, mappings.hasImage("img/food"), "a directory is not an image");
+    assertArrayEquals(new String[] {"img/food/plate.png", "img/food/apple.png"},
+        mappings.getImageLocsUnder("img/food"), "whole segments only");
+
+    mappings.select("img/clothing/hanger.png");
+    mappings.moveItem("img/clothing/dress.png", "img/food/plate.png");
+    assertArrayEquals(new String[] {"img/clothing/hanger.png", "img/clothing/dress.png"},
+        mappings.getImageLocsUnder("img/clothing/"), "moving keeps the image");
+    mappings.reset();
+    mappings.removeItem("img/clothing/hanger.png");
+    assertArrayEquals(new String[] {"img/clothing/dress.png"},
+        mappings.getImageLocsUnder("img/clothing"), "the category is gone");
+    mappings.undo();
+    assertTrue(mappings.hasImage("img/clothing/hanger.png"), "the category is back");
+  } // testImagesUnder()
+
+  /**
+   * Do different names for the same image file become one location?
+   *
+   * @throws IOException
+   *   If an IO operation fails.
+   */
+  @Test
+  public void testCanonicalLocations() throws IOException {
+    AACMappings mappings = new AACMappings(configFile("img/food.png food\n>img/a.png apple\n"));
+    String absolute = new File("img/a.png").getAbsolutePath();
+    assertEquals("", mappings.select("./img/food.png"), "selecting food another way");
+    assertEquals("apple", mappings.select(absolute), "selecting apple by absolute path");
+    mappings.addItem(absolute, "avocado");
+    assertArrayEquals(new String[] {"img/a.png"}, mappings.getImageLocs(),
+        "the absolute path replaces the relative one");
+    mappings.addItem("img/x/../b.png", "banana");
+    assertArrayEquals(new String[] {"img/a.png", "img/b.png"}, mappings.getImageLocs(),
+        "the new path is normalized");
+    assertTrue(mappings.getImageLocs()[0] == ImageLocs.canonical(new String("img/a.png")),
+        "one string per image");
+    mappings.reset();
+    assertEquals(false, mappings.hasImage("img/nowhere/../missing.png"), "a missing image");
+    assertEquals(null, ImageLocs.POOL.get("img/missing.png"), "looking up interns");
+  } // testCanonicalLocations()
+
+  /**
+   * Does a text layer replace the text it has, and only that text?
+   */
+  @Test
+  public void testLocale() throws IOException {
+    String config = configFile("img/food.png food\n>img/a.png apple\n>img/b.png banana\n");
+    FileWriter layer = new FileWriter(config + ".es.txt");
+    layer.write("img/food.png comida\n>img/a.png manzana\n");
+    layer.close();
+    new File(config + ".es.txt").deleteOnExit();
+    AACMappings mappings = new AACMappings(config);
+    assertArrayEquals(new Locale[] {Locale.forLanguageTag("es")}, mappings.getLocales(),
+        "one layer");
+    mappings.setLocale(Locale.forLanguageTag("es"));
+    assertEquals("", mappings.select("img/food.png"), "selecting food");
+    assertEquals("comida", mappings.getCategory(), "translated category");
+    assertEquals("img/food.png", mappings.getCategoryLoc(), "same category image");
+    assertEquals("manzana", mappings.select("img/a.png"), "translated item");
+    assertEquals("banana", mappings.select("img/b.png"), "untranslated item");
+    assertArrayEquals(new String[] {"manzana", "banana"}, mappings.getTextsAt("img/food.png"),
+        "the texts to warm up");
+    mappings.setLocale(null);
+    assertEquals("apple", mappings.select("img/a.png"), "back to the board's text");
+    assertArrayEquals(new String[] {"apple", "banana"}, mappings.getTextsAt("./img/food.png"),
+        "the board's texts to warm up");
+  } // testLocale()
 } // class TestAACCategory
@@ -0,0 +1,1186 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.HardenedHashMap;
+import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.PairEncoder;
+import edu.grinnell.csc207.util.PathTrie;
+import edu.grinnell.csc207.util.PersistentMap;
+
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Differential tests of the associative arrays. Random sequences of operations are run on
+ * each kind of array and on a java.util.HashMap, the model, and every answer must agree. A
+ * failing sequence is shrunk to as few and as simple operations as still fail before it is
+ * reported, with the seed that generated it.
+ * <p>
+ * Run with -Daac.soak.seconds=n to have testSoak keep generating sequences for n seconds.
+ */
+public class TestAssociativeArray {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The number of sequences each test runs. */
+  static final int SEQUENCES = 300;
+
+  /** The most operations in a sequence. */
+  static final int MAX_LENGTH = 200;
+
+  /** The kinds of operation. */
+  static final int SET = 0;
+  static final int GET = 1;
+  static final int HAS = 2;
+  static final int REMOVE = 3;
+  static final int ITERATE = 4;
+  static final int CLONE = 5;
+  static final int SNAPSHOT = 6;
+  static final int TRIM = 7;
+  static final int SPLIT = 8;
+  static final int BULK = 9;
+
+  /** The name of each kind of operation. */
+  static final String[] NAMES = {"set", "get", "hasKey", "remove", "iterate", "clone",
+      "snapshot", "trim", "split", "bulk"};
+
+  /** How often each kind of operation is generated, relative to the others. */
+  static final int[] WEIGHTS = {35, 15, 10, 20, 5, 5, 5, 5, 3, 3};
+
+  /**
+   * The keys an operation can use: plain strings, strings that share a String.hashCode, and
+   * keys whose hashCode is constant, ordered (so hardened buckets become trees) and not (so
+   * trees must turn back into chains). An operation's key is an index here, or -1 for null.
+   */
+  static final Object[] KEYS = keys();
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A key with the same hash as every other Clash and Odd, that can be ordered.
+   */
+  static final class Clash implements Comparable<Clash> {
+    final int id;
+
+    Clash(int id) {
+      this.id = id;
+    } // Clash(int)
+
+    public int hashCode() {
+      return 42;
+    } // hashCode()
+
+    public boolean equals(Object other) {
+      return (other instanceof Clash) && ((Clash) other).id == id;
+    } // equals(Object)
+
+    public int compareTo(Clash other) {
+      return Integer.compare(id, other.id);
+    } // compareTo(Clash)
+
+    public String toString() {
+      return "clash" + id;
+    } // toString()
+  } // class Clash
+
+  /**
+   * A key with the same hash as every Clash and other Odd, that cannot be ordered.
+   */
+  static final class Odd {
+    final int id;
+
+    Odd(int id) {
+      this.id = id;
+    } // Odd(int)
+
+    public int hashCode() {
+      return 42;
+    } // hashCode()
+
+    public boolean equals(Object other) {
+      return (other instanceof Odd) && ((Odd) other).id == id;
+    } // equals(Object)
+
+    public String toString() {
+      return "odd" + id;
+    } // toString()
+  } // class Odd
+
+  /**
+   * Build the keys.
+   */
+  static Object[] keys() {
+    List<Object> keys = new ArrayList<Object>();
+    for (int i = 0; i < 8; i++) {
+      keys.add("img/" + i + ".png");
+    } // for
+    for (int i = 0; i < 8; i++) {
+      // "Aa" and "BB" have the same hashCode, so these do too
+      keys.add(((i & 4) == 0 ? "Aa" : "BB") + ((i & 2) == 0 ? "Aa" : "BB")
+          + ((i & 1) == 0 ? "Aa" : "BB"));
+    } // for
+    for (int i = 0; i < 12; i++) {
+      keys.add(new Clash(i));
+    } // for
+    for (int i = 0; i < 4; i++) {
+      keys.add(new Odd(i));
+    } // for
+    return keys.toArray();
+  } // keys()
+
+  /**
+   * One operation of a sequence.
+   */
+  static final class Op {
+    final int kind;
+    final int key;
+    final int value;
+
+    Op(int kind, int key, int value) {
+      this.kind = kind;
+      this.key = key;
+      this.value = value;
+    } // Op(int, int, int)
+
+    Object key() {
+      return (key < 0) ? null : KEYS[key];
+    } // key()
+
+    public String toString() {
+      return NAMES[kind] + "(" + key() + ", " + value + ")";
+    } // toString()
+  } // class Op
+
+  /**
+   * One kind of array, seen through the operations we test.
+   */
+  interface Subject {
+    /** Set a key; return false if the key is rejected. */
+    boolean set(Object key, Integer value);
+
+    /** Get the value of a key, or null if it is absent. */
+    Integer get(Object key);
+
+    boolean hasKey(Object key);
+
+    void remove(Object key);
+
+    int size();
+
+    /** List the pairs in iteration order. */
+    List<KVPair<Object, Integer>> pairs();
+
+    /** Iterate the pairs as they are now, whatever changes are made later. */
+    Iterator<KVPair<Object, Integer>> snapshot();
+
+    Subject copy();
+
+    void trim();
+
+    /** Split the pairs into up to 2^depth parts and list them in order. */
+    List<KVPair<Object, Integer>> split(int depth);
+
+    /** List the pairs of a sequential or parallel stream. */
+    List<KVPair<Object, Integer>> stream(boolean parallel);
+
+    /** List the pairs given to a bulk forEach, in any order. */
+    List<KVPair<Object, Integer>> forEach(long threshold);
+
+    /** Find a key whose value is at least least, or null if there is none. */
+    Object search(long threshold, int least);
+
+    /** Sum the values, or return null if there are none. */
+    Integer sum(long threshold);
+  } // interface Subject
+
+  /**
+   * An AssociativeArray as a subject.
+   */
+  static class ArraySubject implements Subject {
+    final AssociativeArray<Object, Integer> array;
+
+    ArraySubject(AssociativeArray<Object, Integer> array) {
+      this.array = array;
+    } // ArraySubject(AssociativeArray)
+
+    public boolean set(Object key, Integer value) {
+      try {
+        array.set(key, value);
+        return true;
+      } catch (NullKeyException e) {
+        return false;
+      } // try-catch
+    } // set(Object, Integer)
+
+    public Integer get(Object key) {
+      try {
+        return array.get(key);
+      } catch (KeyNotFoundException e) {
+        return null;
+      } // try-catch
+    } // get(Object)
+
+    public boolean hasKey(Object key) {
+      return array.hasKey(key);
+    } // hasKey(Object)
+
+    public void remove(Object key) {
+      array.remove(key);
+    } // remove(Object)
+
+    public int size() {
+      return array.size();
+    } // size()
+
+    public List<KVPair<Object, Integer>> pairs() {
+      List<KVPair<Object, Integer>> pairs = new ArrayList<KVPair<Object, Integer>>();
+      for (KVPair<Object, Integer> pair : array) {
+        // Positions follow iteration order
+        check(array.keyAt(pairs.size()) == pair.getKey(), "keyAt(" + pairs.size() + ") is "
+            + array.keyAt(pairs.size()) + " but iteration gives " + pair.getKey());
+        pairs.add(pair);
+      } // for
+      return pairs;
+    } // pairs()
+
+    public Iterator<KVPair<Object, Integer>> snapshot() {
+      return array.snapshotIterator();
+    } // snapshot()
+
+    public Subject copy() {
+      return new ArraySubject(array.clone());
+    } // copy()
+
+    public void trim() {
+      array.trimToSize();
+    } // trim()
+
+    public List<KVPair<Object, Integer>> split(int depth) {
+      List<KVPair<Object, Integer>> pairs = new ArrayList<KVPair<Object, Integer>>();
+      split(array.spliterator(), depth, pairs);
+      return pairs;
+    } // split(int)
+
+    public List<KVPair<Object, Integer>> stream(boolean parallel) {
+      return (parallel ? array.parallelStream() : array.stream()).collect(Collectors.toList());
+    } // stream(boolean)
+
+    public List<KVPair<Object, Integer>> forEach(long threshold) {
+      List<KVPair<Object, Integer>> pairs =
+          Collections.synchronizedList(new ArrayList<KVPair<Object, Integer>>());
+      array.forEach(threshold, (key, value) -> pairs.add(new KVPair<Object, Integer>(key, value)));
+      return pairs;
+    } // forEach(long)
+
+    public Object search(long threshold, int least) {
+      return array.search(threshold, (key, value) -> (value >= least) ? key : null);
+    } // search(long, int)
+
+    public Integer sum(long threshold) {
+      return array.reduce(threshold, (key, value) -> value, (left, right) -> left + right);
+    } // sum(long)
+
+    /**
+     * Split a spliterator depth times over, checking that it says it is sized, that each
+     * split halves it, and that each part gives as many pairs as it says, and list its pairs.
+     */
+    static void split(Spliterator<KVPair<Object, Integer>> whole, int depth,
+        List<KVPair<Object, Integer>> pairs) {
+      int sized = Spliterator.SIZED | Spliterator.SUBSIZED;
+      check((whole.characteristics() & sized) == sized, "a spliterator is not sized");
+      long size = whole.estimateSize();
+      check(whole.getExactSizeIfKnown() == size, "a spliterator does not know its size");
+      Spliterator<KVPair<Object, Integer>> prefix = (depth > 0) ? whole.trySplit() : null;
+      if (prefix == null) {
+        check(depth == 0 || size <= 1, "a spliterator of " + size + " pairs does not split");
+        int before = pairs.size();
+        whole.forEachRemaining(pairs::add);
+        check(pairs.size() - before == size,
+            "a spliterator of " + size + " pairs gives " + (pairs.size() - before));
+      } else {
+        check(prefix.estimateSize() + whole.estimateSize() == size,
+            "splitting " + size + " pairs gives " + prefix.estimateSize() + " and "
+            + whole.estimateSize());
+        check(Math.abs(prefix.estimateSize() - whole.estimateSize()) <= 1,
+            "splitting " + size + " pairs gives " + prefix.estimateSize() + " and "
+            + whole.estimateSize());
+        split(prefix, depth - 1, pairs);
+        split(whole, depth - 1, pairs);
+      } // if
+    } // split(Spliterator, int, List)
+  } // class ArraySubject
+
+  /**
+   * A HardenedHashMap as a subject.
+   */
+  static final class MapSubject implements Subject {
+    final HardenedHashMap<Object, Integer> map;
+
+    MapSubject(HardenedHashMap<Object, Integer> map) {
+      this.map = map;
+    } // MapSubject(HardenedHashMap)
+
+    public boolean set(Object key, Integer value) {
+      try {
+        map.put(key, value);
+        return true;
+      } catch (NullPointerException e) {
+        return false;
+      } // try-catch
+    } // set(Object, Integer)
+
+    public Integer get(Object key) {
+      return map.get(key);
+    } // get(Object)
+
+    public boolean hasKey(Object key) {
+      return map.containsKey(key);
+    } // hasKey(Object)
+
+    public void remove(Object key) {
+      map.remove(key);
+    } // remove(Object)
+
+    public int size() {
+      return map.size();
+    } // size()
+
+    public List<KVPair<Object, Integer>> pairs() {
+      List<KVPair<Object, Integer>> pairs = new ArrayList<KVPair<Object, Integer>>();
+      for (Map.Entry<Object, Integer> entry : map.entrySet()) {
+        pairs.add(new KVPair<Object, Integer>(entry.getKey(), entry.getValue()));
+      } // for
+      return pairs;
+    } // pairs()
+
+    public Iterator<KVPair<Object, Integer>> snapshot() {
+      return pairs().iterator();
+    } // snapshot()
+
+    public Subject copy() {
+      return new MapSubject(new HardenedHashMap<Object, Integer>(map));
+    } // copy()
+
+    public void trim() {
+      // Nothing to trim
+    } // trim()
+
+    public List<KVPair<Object, Integer>> split(int depth) {
+      // A HashMap's spliterator does not promise sized parts
+      return pairs();
+    } // split(int)
+
+    public List<KVPair<Object, Integer>> stream(boolean parallel) {
+      return (parallel ? map.entrySet().parallelStream() : map.entrySet().stream())
+          .map((entry) -> new KVPair<Object, Integer>(entry.getKey(), entry.getValue()))
+          .collect(Collectors.toList());
+    } // stream(boolean)
+
+    public List<KVPair<Object, Integer>> forEach(long threshold) {
+      return pairs();
+    } // forEach(long)
+
+    public Object search(long threshold, int least) {
+      for (Map.Entry<Object, Integer> entry : map.entrySet()) {
+        if (entry.getValue() >= least) {
+          return entry.getKey();
+        } // if
+      } // for
+      return null;
+    } // search(long, int)
+
+    public Integer sum(long threshold) {
+      return map.values().stream().reduce(Integer::sum).orElse(null);
+    } // sum(long)
+  } // class MapSubject
+
+  /**
+   * A structure keyed by strings as a subject. Each key is stored as its toString, which is
+   * different for every key in KEYS, and each pair is listed with the key it came from.
+   * None of these structures splits or streams, so those list the pairs, as for MapSubject.
+   */
+  abstract static class StringSubject implements Subject {
+    /** The keys, by the strings they are stored as. */
+    static final Map<String, Object> NAMED = named();
+
+    /** Set a key; return false if the key is rejected. */
+    abstract boolean put(String key, Integer value);
+
+    /** Get the value of a key, or null if it is absent. */
+    abstract Integer find(String key);
+
+    abstract boolean contains(String key);
+
+    abstract void delete(String key);
+
+    /** Iterate the pairs in order. */
+    abstract Iterable<KVPair<String, Integer>> entries();
+
+    static Map<String, Object> named() {
+      Map<String, Object> named = new HashMap<String, Object>();
+      for (Object key : KEYS) {
+        named.put(key.toString(), key);
+      } // for
+      return named;
+    } // named()
+
+    static String name(Object key) {
+      return (key == null) ? null : key.toString();
+    } // name(Object)
+
+    public boolean set(Object key, Integer value) {
+      return put(name(key), value);
+    } // set(Object, Integer)
+
+    public Integer get(Object key) {
+      return find(name(key));
+    } // get(Object)
+
+    public boolean hasKey(Object key) {
+      return contains(name(key));
+    } // hasKey(Object)
+
+    public void remove(Object key) {
+      delete(name(key));
+    } // remove(Object)
+
+    public List<KVPair<Object, Integer>> pairs() {
+      List<KVPair<Object, Integer>> pairs = new ArrayList<KVPair<Object, Integer>>();
+      for (KVPair<String, Integer> pair : entries()) {
+        pairs.add(new KVPair<Object, Integer>(NAMED.get(pair.getKey()), pair.getValue()));
+      } // for
+      return pairs;
+    } // pairs()
+
+    public Iterator<KVPair<Object, Integer>> snapshot() {
+      return pairs().iterator();
+    } // snapshot()
+
+    public void trim() {
+      // Nothing to trim
+    } // trim()
+
+    public List<KVPair<Object, Integer>> split(int depth) {
+      return pairs();
+    } // split(int)
+
+    public List<KVPair<Object, Integer>> stream(boolean parallel) {
+      return pairs();
+    } // stream(boolean)
+
+    public List<KVPair<Object, Integer>> forEach(long threshold) {
+      return pairs();
+    } // forEach(long)
+
+    public Object search(long threshold, int least) {
+      for (KVPair<Object, Integer> pair : pairs()) {
+        if (pair.getValue() >= least) {
+          return pair.getKey();
+        } // if
+      } // for
+      return null;
+    } // search(long, int)
+
+    public Integer sum(long threshold) {
+      return pairs().stream().map(KVPair::getValue).reduce(Integer::sum).orElse(null);
+    } // sum(long)
+  } // class StringSubject
+
+  /**
+   * A PathTrie as a subject. The image locations among the keys share a directory, which
+   * must be pruned only once both are gone.
+   */
+  static final class TrieSubject extends StringSubject {
+    final PathTrie<Integer> trie;
+
+    TrieSubject(PathTrie<Integer> trie) {
+      this.trie = trie;
+    } // TrieSubject(PathTrie)
+
+    boolean put(String key, Integer value) {
+      try {
+        trie.set(key, value);
+        return true;
+      } catch (NullKeyException e) {
+        return false;
+      } // try-catch
+    } // put(String, Integer)
+
+    Integer find(String key) {
+      try {
+        return trie.get(key);
+      } catch (KeyNotFoundException e) {
+        return null;
+      } // try-catch
+    } // find(String)
+
+    boolean contains(String key) {
+      return trie.hasKey(key);
+    } // contains(String)
+
+    void delete(String key) {
+      trie.remove(key);
+    } // delete(String)
+
+    Iterable<KVPair<String, Integer>> entries() {
+      return trie;
+    } // entries()
+
+    public int size() {
+      return trie.size();
+    } // size()
+
+    public Subject copy() {
+      // A trie cannot be cloned, so copy it pair by pair
+      PathTrie<Integer> copy = new PathTrie<Integer>();
+      for (KVPair<String, Integer> pair : trie) {
+        try {
+          copy.set(pair.getKey(), pair.getValue());
+        } catch (NullKeyException e) {
+          throw new Mismatch("the trie holds a null key");
+        } // try-catch
+      } // for
+      return new TrieSubject(copy);
+    } // copy()
+  } // class TrieSubject
+
+  /**
+   * A PersistentMap as a subject. Each change makes a new version, so a copy shares the
+   * current one and a snapshot iterates it.
+   */
+  static final class PersistentSubject extends StringSubject {
+    PersistentMap<String, Integer> map;
+
+    PersistentSubject(PersistentMap<String, Integer> map) {
+      this.map = map;
+    } // PersistentSubject(PersistentMap)
+
+    boolean put(String key, Integer value) {
+      try {
+        map = map.set(key, value);
+        return true;
+      } catch (NullKeyException e) {
+        return false;
+      } // try-catch
+    } // put(String, Integer)
+
+    Integer find(String key) {
+      try {
+        return map.get(key);
+      } catch (KeyNotFoundException e) {
+        return null;
+      } // try-catch
+    } // find(String)
+
+    boolean contains(String key) {
+      return map.hasKey(key);
+    } // contains(String)
+
+    void delete(String key) {
+      map = map.remove(key);
+    } // delete(String)
+
+    Iterable<KVPair<String, Integer>> entries() {
+      return map;
+    } // entries()
+
+    public int size() {
+      return map.size();
+    } // size()
+
+    public Iterator<KVPair<Object, Integer>> snapshot() {
+      Iterator<KVPair<String, Integer>> pairs = map.iterator();
+      return new Iterator<KVPair<Object, Integer>>() {
+        public boolean hasNext() {
+          return pairs.hasNext();
+        } // hasNext()
+
+        public KVPair<Object, Integer> next() {
+          KVPair<String, Integer> pair = pairs.next();
+          return new KVPair<Object, Integer>(NAMED.get(pair.getKey()), pair.getValue());
+        } // next()
+      };
+    } // snapshot()
+
+    public Subject copy() {
+      return new PersistentSubject(map);
+    } // copy()
+  } // class PersistentSubject
+
+  /**
+   * An AACCategory as a subject, frozen again after every change so that every read goes
+   * through the frozen table and every change thaws it first. Values are stored as texts.
+   */
+  static final class CategorySubject extends StringSubject {
+    final AACCategory category;
+
+    CategorySubject(AACCategory category) {
+      this.category = category;
+      category.freeze();
+    } // CategorySubject(AACCategory)
+
+    boolean put(String key, Integer value) {
+      // addItem ignores a null location; the size check catches it if not
+      category.addItem(key, String.valueOf(value));
+      category.freeze();
+      return key != null;
+    } // put(String, Integer)
+
+    Integer find(String key) {
+      try {
+        return Integer.valueOf(category.select(key));
+      } catch (NoSuchElementException e) {
+        return null;
+      } // try-catch
+    } // find(String)
+
+    boolean contains(String key) {
+      return category.hasImage(key);
+    } // contains(String)
+
+    void delete(String key) {
+      try {
+        category.removeItem(key);
+      } catch (NoSuchElementException e) {
+        // Like the model, ignore a missing key
+      } // try-catch
+      category.freeze();
+    } // delete(String)
+
+    Iterable<KVPair<String, Integer>> entries() {
+      if (!category.isFrozen()) {
+        throw new Mismatch("the category is not frozen");
+      } // if
+      List<KVPair<String, Integer>> entries = new ArrayList<KVPair<String, Integer>>();
+      for (KVPair<String, String> item : category.items()) {
+        entries.add(new KVPair<String, Integer>(item.getKey(), Integer.valueOf(item.getValue())));
+      } // for
+      return entries;
+    } // entries()
+
+    public int size() {
+      return category.size();
+    } // size()
+
+    public Subject copy() {
+      AACCategory copy = new AACCategory(category.getCategory());
+      for (KVPair<String, String> item : category.items()) {
+        copy.addItem(item.getKey(), item.getValue());
+      } // for
+      return new CategorySubject(copy);
+    } // copy()
+  } // class CategorySubject
+
+  /**
+   * A difference between a subject and the model.
+   */
+  static final class Mismatch extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Mismatch(String message) {
+      super(message);
+    } // Mismatch(String)
+  } // class Mismatch
+
+  /**
+   * Report a mismatch unless ok.
+   */
+  static void check(boolean ok, String message) {
+    if (!ok) {
+      throw new Mismatch(message);
+    } // if
+  } // check(boolean, String)
+
+  /**
+   * Check that a list of pairs holds exactly the pairs of the model.
+   */
+  static void checkPairs(List<KVPair<Object, Integer>> pairs, Map<Object, Integer> model,
+      String what) {
+    Map<Object, Integer> seen = new HashMap<Object, Integer>();
+    for (KVPair<Object, Integer> pair : pairs) {
+      check(seen.put(pair.getKey(), pair.getValue()) == null,
+          what + " lists " + pair.getKey() + " twice");
+    } // for
+    check(seen.equals(model), what + " gives " + seen + " but the model has " + model);
+  } // checkPairs(List, Map, String)
+
+  /**
+   * Check that two lists hold the same pairs in the same order.
+   */
+  static void checkOrder(List<KVPair<Object, Integer>> pairs,
+      List<KVPair<Object, Integer>> expected, String what) {
+    check(pairs.toString().equals(expected.toString()),
+        what + " gives " + pairs + " rather than " + expected);
+  } // checkOrder(List, List, String)
+
+  /**
+   * Run the bulk operations on a subject at a parallelism threshold and check them against
+   * the model.
+   */
+  static void checkBulk(Subject subject, Map<Object, Integer> model, long threshold,
+      int least) {
+    String at = " at threshold " + threshold + " with " + model.size() + " pairs";
+    checkPairs(subject.forEach(threshold), model, "forEach" + at);
+    Object found = subject.search(threshold, least);
+    boolean any = model.values().stream().anyMatch((value) -> value >= least);
+    check((found == null) ? !any : model.containsKey(found) && model.get(found) >= least,
+        "search for a value of at least " + least + at + " gives " + found);
+    Integer sum = subject.sum(threshold);
+    Integer expected = model.values().stream().reduce(Integer::sum).orElse(null);
+    check(Objects.equals(sum, expected), "reduce" + at + " gives " + sum);
+  } // checkBulk(Subject, Map, long, int)
+
+  /**
+   * Generate a random sequence of operations.
+   */
+  static List<Op> generate(Random random) {
+    int total = 0;
+    for (int weight : WEIGHTS) {
+      total += weight;
+    } // for
+    List<Op> ops = new ArrayList<Op>();
+    int length = 1 + random.nextInt(MAX_LENGTH);
+    for (int i = 0; i < length; i++) {
+      int pick = random.nextInt(total);
+      int kind = 0;
+      while (pick >= WEIGHTS[kind]) {
+        pick -= WEIGHTS[kind++];
+      } // while
+      // A null key now and then
+      int key = (random.nextInt(100) == 0) ? -1 : random.nextInt(KEYS.length);
+      ops.add(new Op(kind, key, random.nextInt(100)));
+    } // for
+    return ops;
+  } // generate(Random)
+
+  /**
+   * Run a sequence of operations on a new subject and on the model, comparing every answer.
+   *
+   * @return a description of the first mismatch, or null if there is none.
+   */
+  static String run(List<Op> ops, Supplier<Subject> variant) {
+    Subject subject = variant.get();
+    Map<Object, Integer> model = new HashMap<Object, Integer>();
+    // Copies (or originals) set aside by CLONE, which later operations must not change
+    List<Subject> setAside = new ArrayList<Subject>();
+    List<Map<Object, Integer>> setAsideModels = new ArrayList<Map<Object, Integer>>();
+    int step = 0;
+    try {
+      for (; step < ops.size(); step++) {
+        Op op = ops.get(step);
+        Object key = op.key();
+        switch (op.kind) {
+          case SET:
+            check(subject.set(key, op.value) == (key != null),
+                (key == null) ? "the null key was accepted" : "the key was rejected");
+            if (key != null) {
+              model.put(key, op.value);
+            } // if
+            break;
+          case GET:
+            Integer value = subject.get(key);
+            check(Objects.equals(value, model.get(key)),
+                "got " + value + ", expected " + model.get(key));
+            break;
+          case HAS:
+            check(subject.hasKey(key) == model.containsKey(key),
+                "hasKey is " + subject.hasKey(key));
+            break;
+          case REMOVE:
+            subject.remove(key);
+            model.remove(key);
+            break;
+          case ITERATE:
+            checkPairs(subject.pairs(), model, "iteration");
+            break;
+          case CLONE:
+            Subject copy = subject.copy();
+            checkPairs(copy.pairs(), model, "the copy");
+            setAsideModels.add(new HashMap<Object, Integer>(model));
+            if (op.value % 2 == 0) {
+              // Go on with the copy and make sure the original stays as it is
+              setAside.add(subject);
+              subject = copy;
+            } else {
+              setAside.add(copy);
+            } // if
+            break;
+          case SNAPSHOT:
+            Iterator<KVPair<Object, Integer>> snapshot = subject.snapshot();
+            Map<Object, Integer> before = new HashMap<Object, Integer>(model);
+            if (key != null) {
+              // Change the subject while the snapshot is open
+              if (op.value % 2 == 0) {
+                subject.set(key, op.value);
+                model.put(key, op.value);
+              } else {
+                subject.remove(key);
+                model.remove(key);
+              } // if
+            } // if
+            List<KVPair<Object, Integer>> seen = new ArrayList<KVPair<Object, Integer>>();
+            while (snapshot.hasNext()) {
+              seen.add(snapshot.next());
+            } // while
+            checkPairs(seen, before, "the snapshot");
+            break;
+          case SPLIT:
+            List<KVPair<Object, Integer>> inOrder = subject.pairs();
+            checkOrder(subject.split(op.value % 5), inOrder, "splitting");
+            checkOrder(subject.stream(false), inOrder, "the stream");
+            checkOrder(subject.stream(true), inOrder, "the parallel stream");
+            break;
+          case BULK:
+            // Below, at and above the size, so that the operations run both in parallel and not
+            checkBulk(subject, model, Math.max(model.size() - 1, 1), op.value);
+            checkBulk(subject, model, Math.max(model.size(), 1), op.value);
+            checkBulk(subject, model, model.size() + 1, op.value);
+            break;
+          default:
+            subject.trim();
+            break;
+        } // switch
+        check(subject.size() == model.size(),
+            "size is " + subject.size() + ", expected " + model.size());
+      } // for
+      checkPairs(subject.pairs(), model, "at the end, iteration");
+      for (int i = 0; i < setAside.size(); i++) {
+        checkPairs(setAside.get(i).pairs(), setAsideModels.get(i),
+            "at the end, set-aside copy " + i);
+      } // for
+      return null;
+    } catch (RuntimeException e) {
+      String where = (step < ops.size()) ? "step " + step + " " + ops.get(step) : "the end";
+      return where + ": " + ((e instanceof Mismatch) ? e.getMessage() : e.toString());
+    } // try-catch
+  } // run(List, Supplier)
+
+  /**
+   * Shrink a failing sequence: drop runs of operations, then single ones, then make keys and
+   * values smaller, for as long as the sequence still fails.
+   *
+   * @return the shrunk sequence.
+   */
+  static List<Op> shrink(List<Op> ops, Supplier<Subject> variant) {
+    boolean shrunk = true;
+    while (shrunk) {
+      shrunk = false;
+      for (int chunk = Math.max(ops.size() / 2, 1); chunk >= 1; chunk /= 2) {
+        for (int start = 0; start + chunk <= ops.size(); ) {
+          List<Op> smaller = new ArrayList<Op>(ops.subList(0, start));
+          smaller.addAll(ops.subList(start + chunk, ops.size()));
+          if (run(smaller, variant) != null) {
+            ops = smaller;
+            shrunk = true;
+          } else {
+            start += 1;
+          } // if
+        } // for
+      } // for
+      for (int i = 0; i < ops.size(); i++) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+          Op op = ops.get(i);
+          // Smaller keys and values, keeping null keys null and the parity of values, which
+          // chooses what clone and snapshot do
+          Op simpler = (attempt == 0) ? new Op(op.kind, 0, op.value)
+              : (attempt == 1) ? new Op(op.kind, op.key / 2, op.value)
+              : new Op(op.kind, op.key, op.value % 2);
+          if (op.key >= 0 && (simpler.key != op.key || simpler.value != op.value)) {
+            List<Op> simplified = new ArrayList<Op>(ops);
+            simplified.set(i, simpler);
+            if (run(simplified, variant) != null) {
+              ops = simplified;
+              shrunk = true;
+            } // if
+          } // if
+        } // for
+      } // for
+    } // while
+    return ops;
+  } // shrink(List, Supplier)
+
+  /**
+   * Run random sequences on a subject, failing with a shrunk sequence if one disagrees with
+   * the model.
+   */
+  static void differential(String name, Supplier<Subject> variant, long seed, int sequences) {
+    Random random = new Random(seed);
+    for (int i = 0; i < sequences; i++) {
+      List<Op> ops = generate(random);
+      String failure = run(ops, variant);
+      if (failure != null) {
+        List<Op> shrunk = shrink(ops, variant);
+        throw new AssertionError(name + ", seed " + seed + ", sequence " + i + ", shrunk from "
+            + ops.size() + " to " + shrunk + ": " + run(shrunk, variant));
+      } // if
+    } // for
+  } // differential(String, Supplier, long, int)
+
+  /**
+   * Convert an array to a string the way toString did before it wrote through writeTo.
+   */
+  static String oldToString(AssociativeArray<String, String> array) {
+    if (array.size() >= 1) {
+      String rString = "{";
+      for (int i = 0; i < array.size() - 1; i++) {
+        rString += array.keyAt(i) + ":" + value(array, array.keyAt(i)) + ", ";
+      } // for
+      String last = array.keyAt(array.size() - 1);
+      return rString + last + ":" + value(array, last) + "}";
+    } else {
+      return "{}";
+    } // if
+  } // oldToString(AssociativeArray)
+
+  /**
+   * Get the value of a key we know is there.
+   */
+  static String value(AssociativeArray<String, String> array, String key) {
+    try {
+      return array.get(key);
+    } catch (KeyNotFoundException e) {
+      throw new AssertionError(key + " is missing");
+    } // try-catch
+  } // value(AssociativeArray, String)
+
+  /** The subjects, by name. */
+  static final Map<String, Supplier<Subject>> VARIANTS = variants();
+
+  /**
+   * Build the subjects.
+   */
+  static Map<String, Supplier<Subject>> variants() {
+    Map<String, Supplier<Subject>> variants = new LinkedHashMap<String, Supplier<Subject>>();
+    variants.put("plain", () -> new ArraySubject(new AssociativeArray<Object, Integer>()));
+    variants.put("slow-growing", () -> new ArraySubject(
+        new AssociativeArray<Object, Integer>(0, 1.1)));
+    variants.put("hardened", () -> new ArraySubject(new AssociativeArray<Object, Integer>(
+        AssociativeArray.DEFAULT_CAPACITY, AssociativeArray.DEFAULT_GROWTH_FACTOR, true)));
+    variants.put("HardenedHashMap",
+        () -> new MapSubject(new HardenedHashMap<Object, Integer>()));
+    variants.put("PathTrie", () -> new TrieSubject(new PathTrie<Integer>()));
+    variants.put("PersistentMap",
+        () -> new PersistentSubject(PersistentMap.<String, Integer>empty()));
+    variants.put("frozen AACCategory", () -> new CategorySubject(new AACCategory("frozen")));
+    return variants;
+  } // variants()
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Does a plain array agree with HashMap?
+   */
+  @Test
+  void testPlain() {
+    differential("plain", VARIANTS.get("plain"), 207, SEQUENCES);
+  } // testPlain()
+
+  /**
+   * Does an array that grows one pair at a time agree with HashMap?
+   */
+  @Test
+  void testSlowGrowing() {
+    differential("slow-growing", VARIANTS.get("slow-growing"), 207, SEQUENCES);
+  } // testSlowGrowing()
+
+  /**
+   * Does a hardened array agree with HashMap?
+   */
+  @Test
+  void testHardened() {
+    differential("hardened", VARIANTS.get("hardened"), 207, SEQUENCES);
+  } // testHardened()
+
+  /**
+   * Does HardenedHashMap agree with HashMap?
+   */
+  @Test
+  void testHardenedHashMap() {
+    differential("HardenedHashMap", VARIANTS.get("HardenedHashMap"), 207, SEQUENCES);
+  } // testHardenedHashMap()
+
+  /**
+   * Does PathTrie agree with HashMap?
+   */
+  @Test
+  void testPathTrie() {
+    differential("PathTrie", VARIANTS.get("PathTrie"), 207, SEQUENCES);
+  } // testPathTrie()
+
+  /**
+   * Does PersistentMap agree with HashMap, with every copy left as it was?
+   */
+  @Test
+  void testPersistentMap() {
+    differential("PersistentMap", VARIANTS.get("PersistentMap"), 207, SEQUENCES);
+  } // testPersistentMap()
+
+  /**
+   * Does a category that is frozen between changes agree with HashMap?
+   */
+  @Test
+  void testFrozenCategory() {
+    differential("frozen AACCategory", VARIANTS.get("frozen AACCategory"), 207, SEQUENCES);
+  } // testFrozenCategory()
+
+  /**
+   * Does the harness catch a broken array, and shrink the sequence that shows it?
+   */
+  @Test
+  void testShrinking() {
+    // An array that forgets to remove a key once it has three
+    Supplier<Subject> broken = () -> new ArraySubject(new AssociativeArray<Object, Integer>()) {
+      @Override
+      public void remove(Object key) {
+        if (size() < 3) {
+          super.remove(key);
+        } // if
+      } // remove(Object)
+    };
+    Random random = new Random(207);
+    List<Op> ops = null;
+    while (ops == null || run(ops, broken) == null) {
+      ops = generate(random);
+    } // while
+    List<Op> shrunk = shrink(ops, broken);
+    assertNotNull(run(shrunk, broken), "the shrunk sequence still fails");
+    assertTrue(shrunk.size() <= 5, "shrunk to " + shrunk);
+    assertNull(run(shrunk, VARIANTS.get("plain")), "a correct array passes it");
+  } // testShrinking()
+
+  /**
+   * Do toString and writeTo give the same form as toString always did, for no pairs, one
+   * pair and many?
+   */
+  @Test
+  void testWriteTo() throws NullKeyException, IOException {
+    AssociativeArray<String, String> array = new AssociativeArray<String, String>();
+    for (int size = 0; size <= 40; size++) {
+      if (size > 0) {
+        array.set("img/" + size + ".png", (size % 7 == 0) ? null : "text " + size);
+      } // if
+      // Change a pair in place, which must keep its position
+      if (size == 20) {
+        array.set("img/3.png", "changed");
+      } // if
+      StringBuilder written = new StringBuilder();
+      array.writeTo(written);
+      assertEquals(oldToString(array), written.toString(), "writeTo of " + size + " pairs");
+      assertEquals(oldToString(array), array.toString(), "toString of " + size + " pairs");
+    } // for
+    assertEquals("{}", new AssociativeArray<String, String>().toString());
+    AssociativeArray<String, String> one = new AssociativeArray<String, String>();
+    one.set("a", "apple");
+    assertEquals("{a:apple}", one.toString());
+  } // testWriteTo()
+
+  /**
+   * Can pairs written with a PairEncoder be read back, in order, even if the array changes
+   * while they are written?
+   */
+  @Test
+  void testPairEncoder() throws NullKeyException, IOException {
+    AssociativeArray<String, String> array = new AssociativeArray<String, String>();
+    Map<String, String> expected = new LinkedHashMap<String, String>();
+    for (int i = 0; i < 30; i++) {
+      array.set("img/" + i + ".png", "text " + i + " with spaces");
+      expected.put("img/" + i + ".png", "text " + i + " with spaces");
+    } // for
+    // Write each pair as a line of the board format, and change the array half way
+    PairEncoder<String, String> encoder = new PairEncoder<String, String>() {
+      int written = 0;
+
+      public void encode(String key, String val, Appendable out) throws IOException {
+        out.append('>').append(key).append(' ').append(val).append('\n');
+        if (++written == 15) {
+          try {
+            array.remove("img/20.png");
+            array.set("img/99.png", "late");
+          } catch (NullKeyException e) {
+            throw new AssertionError(e);
+          } // try-catch
+        } // if
+      } // encode(String, String, Appendable)
+    };
+    StringBuilder out = new StringBuilder();
+    array.writeTo(out, encoder);
+    Map<String, String> read = new LinkedHashMap<String, String>();
+    for (String line : out.toString().split("\n")) {
+      int space = line.indexOf(' ');
+      assertTrue(line.startsWith(">") && space > 0, "bad line " + line);
+      assertNull(read.put(line.substring(1, space), line.substring(space + 1)),
+          "wrote " + line + " twice");
+    } // for
+    assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(read.keySet()),
+        "the order of the pairs");
+    assertEquals(expected, read);
+  } // testPairEncoder()
+
+  /**
+   * Do large arrays split evenly into sized parts, and do the parallel and sequential bulk
+   * operations agree?
+   */
+  @Test
+  void testParallelBulk() throws NullKeyException {
+    for (int size : new int[] {0, 1, 2, 3, 1000, 10007}) {
+      AssociativeArray<Object, Integer> array = new AssociativeArray<Object, Integer>();
+      Map<Object, Integer> model = new HashMap<Object, Integer>();
+      for (int i = 0; i < size; i++) {
+        array.set("img/" + i + ".png", i % 100);
+        model.put("img/" + i + ".png", i % 100);
+      } // for
+      ArraySubject subject = new ArraySubject(array);
+      List<KVPair<Object, Integer>> inOrder = subject.pairs();
+      checkOrder(subject.split(20), inOrder, "splitting " + size + " pairs");
+      checkOrder(subject.stream(true), inOrder, "the parallel stream of " + size + " pairs");
+      for (long threshold : new long[] {1, size, size + 1, Long.MAX_VALUE}) {
+        checkBulk(subject, model, threshold, 99);
+        checkBulk(subject, model, threshold, 100);
+      } // for
+    } // for
+  } // testParallelBulk()
+
+  /**
+   * Do the arrays agree with HashMap for as long as we care to look? Runs only with
+   * -Daac.soak.seconds=n.
+   */
+  @Test
+  void testSoak() {
+    long seconds = Long.getLong("aac.soak.seconds", 0);
+    assumeTrue(seconds > 0, "set aac.soak.seconds to soak");
+    long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+    Random seeds = new Random();
+    while (System.nanoTime() < deadline) {
+      long seed = seeds.nextLong();
+      for (Map.Entry<String, Supplier<Subject>> variant : VARIANTS.entrySet()) {
+        differential(variant.getKey(), variant.getValue(), seed, 10);
+      } // for
+    } // while
+  } // testSoak()
+} // class TestAssociativeArray
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of BoardHistory's limit on the memory held by earlier versions.
+ */
+public class TestBoardHistory {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The location of the image of the one category */
+  static final String CATEGORY = "img/food/icons8-watermelon-96.png";
+
+  /** The number of edits made */
+  static final int EDITS = 200;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make a history of a board with one category, and add an item to it EDITS times.
+   */
+  static BoardHistory edited(long maxBytes) {
+    BoardHistory history =
+        new BoardHistory(new BoardHistory.Board().setCategory(CATEGORY, "food"), maxBytes);
+    for (int i = 0; i < EDITS; i++) {
+      history.record(history.current().setItem(CATEGORY, item(i), "item " + i));
+      assertTrue(history.bytes() <= maxBytes,
+          history.bytes() + " bytes held after " + (i + 1) + " edits");
+    } // for
+    return history;
+  } // edited(long)
+
+  /**
+   * Get the location of the image of item i.
+   */
+  static String item(int i) {
+    return "img/food/" + i + ".png";
+  } // item(int)
+
+  /**
+   * Check that the current version holds the first n items, with their texts.
+   */
+  static void checkItems(String message, BoardHistory history, int n) {
+    BoardHistory.Category category = history.current().category(CATEGORY);
+    assertEquals(n, category.items.size(), message + ": the number of items");
+    for (int i = 0; i < n; i++) {
+      assertEquals("item " + i, BoardHistory.Board.item(category, item(i)).text,
+          message + ": the text of item " + i);
+    } // for
+  } // checkItems(String, BoardHistory, int)
+
+  /**
+   * Undo as far as possible.
+   *
+   * @return the number of versions undone
+   */
+  static int undoAll(BoardHistory history) {
+    int undone = 0;
+    while (history.canUndo()) {
+      history.undo();
+      undone++;
+    } // while
+    return undone;
+  } // undoAll(BoardHistory)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * With room for every version, can every edit be undone and redone, back to the saved
+   * board?
+   */
+  @Test
+  void testUnbounded() {
+    BoardHistory history = edited(BoardHistory.DEFAULT_MAX_BYTES);
+    assertFalse(history.isSaved(), "the edited board is saved");
+    assertEquals(EDITS, undoAll(history), "the versions undone");
+    checkItems("undone", history, 0);
+    assertTrue(history.isSaved(), "the initial board is not saved");
+    while (history.canRedo()) {
+      history.redo();
+    } // while
+    checkItems("redone", history, EDITS);
+  } // testUnbounded()
+
+  /**
+   * With room for some versions, are the oldest dropped, and are those left intact?
+   */
+  @Test
+  void testEviction() {
+    BoardHistory history = edited(4096);
+    int undone = undoAll(history);
+    assertTrue(undone > 0 && undone < EDITS, undone + " versions kept");
+    checkItems("undone", history, EDITS - undone);
+    assertFalse(history.isSaved(), "the dropped saved version came back");
+    assertTrue(history.bytes() <= 4096, history.bytes() + " bytes held after undoing");
+    for (int i = 0; i < undone; i++) {
+      history.redo();
+      checkItems("redo " + i, history, EDITS - undone + i + 1);
+    } // for
+    assertFalse(history.canRedo(), "more to redo than was undone");
+  } // testEviction()
+
+  /**
+   * Does a smaller limit keep fewer versions, and does dropping the undone versions free
+   * what they held?
+   */
+  @Test
+  void testLimits() {
+    int kept = Integer.MAX_VALUE;
+    for (long maxBytes : new long[] {16384, 4096, 1024}) {
+      BoardHistory history = edited(maxBytes);
+      int undone = undoAll(history);
+      assertTrue(undone < kept, maxBytes + " bytes kept " + undone + " versions");
+      kept = undone;
+      // Redo half, then edit: the other half can no longer be redone
+      for (int i = 0; i < undone / 2; i++) {
+        history.redo();
+      } // for
+      long before = history.bytes();
+      history.record(history.current().renameCategory(CATEGORY, "fruit"));
+      assertFalse(history.canRedo(), "redo after an edit");
+      assertTrue(history.bytes() <= maxBytes, history.bytes() + " bytes after an edit");
+      assertTrue(history.bytes() < before, "dropping the undone versions freed nothing");
+    } // for
+    BoardHistory none = edited(0);
+    assertFalse(none.canUndo(), "an undo with no room for one");
+    assertEquals(0, none.bytes(), "the bytes held with no room");
+    checkItems("no room", none, EDITS);
+  } // testLimits()
+} // class TestBoardHistory
@@ -0,0 +1,189 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Tests of BoardRenderer, with a stand-in for FreeTTS whose "audio" for a phrase is the
+ * phrase's bytes, so that the bundle can be read back.
+ */
+public class TestBoardRenderer {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * A board in which one image is an item of two categories, with different text in each,
+   * and an item shows the image of a category. "apple" is said by two items.
+   */
+  static final String BOARD =
+      """
+      img/a.png fruit
+      >img/x.png apple
+      >img/b.png banana
+      img/b.png clothes
+      >img/x.png shirt
+      >img/y.png apple
+      """;
+
+  /** The format of the stand-in's audio */
+  static final AudioFormat FORMAT = new AudioFormat(16000f, 16, 1, true, true);
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A renderer whose workers return the bytes of each phrase and log what they render.
+   */
+  static class FakeRenderer extends BoardRenderer {
+    final List<String> spoken = new ArrayList<String>();
+
+    FakeRenderer(File bundle) throws IOException {
+      super(bundle, "fake");
+    } // FakeRenderer(File)
+
+    @Override
+    Worker newWorker() {
+      return new Worker() {
+        public PhraseAudioCache.Audio render(String text) {
+          synchronized (spoken) {
+            spoken.add(text);
+          } // synchronized
+          return new PhraseAudioCache.Audio(FORMAT, text.getBytes(StandardCharsets.UTF_8));
+        } // render(String)
+
+        public void close() {
+        } // close()
+      };
+    } // newWorker()
+  } // class FakeRenderer
+
+  /**
+   * Write a board to a new file.
+   */
+  static AACMappings board(Path dir, String contents) throws IOException {
+    Path file = dir.resolve("board.txt");
+    Files.writeString(file, contents);
+    return new AACMappings(file.toString());
+  } // board(Path, String)
+
+  /**
+   * Read a bundle: the text each manifest line points to, by its category and image.
+   */
+  static Map<String, String> read(File bundle) throws IOException {
+    Map<String, String> texts = new LinkedHashMap<String, String>();
+    List<String> lines = Files.readAllLines(new File(bundle, BoardRenderer.MANIFEST_FILE)
+        .toPath());
+    try (RandomAccessFile audio =
+        new RandomAccessFile(new File(bundle, BoardRenderer.AUDIO_FILE), "r")) {
+      for (String line : lines) {
+        String[] tokens = line.split(" ");
+        assertEquals(6, tokens.length, "the fields of " + line);
+        byte[] pcm = new byte[Integer.parseInt(tokens[3])];
+        audio.seek(Long.parseLong(tokens[2]));
+        audio.readFully(pcm);
+        assertEquals(String.valueOf(FORMAT.getSampleRate()), tokens[4], "the rate of " + line);
+        texts.put(tokens[0] + " " + tokens[1], new String(pcm, StandardCharsets.UTF_8));
+      } // for
+    } // try
+    return texts;
+  } // read(File)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Does each image get the text it has in each of its categories, and is each distinct
+   * phrase rendered once?
+   */
+  @Test
+  void testEntriesPerCategory() throws Exception {
+    Path dir = Files.createTempDirectory("TestBoardRenderer");
+    File bundle = dir.resolve("bundle").toFile();
+    FakeRenderer renderer = new FakeRenderer(bundle);
+    renderer.render(board(dir, BOARD));
+    Map<String, String> expected = new LinkedHashMap<String, String>();
+    expected.put(". img/a.png", "fruit");
+    expected.put("img/a.png img/x.png", "apple");
+    expected.put("img/a.png img/b.png", "banana");
+    expected.put(". img/b.png", "clothes");
+    expected.put("img/b.png img/x.png", "shirt");
+    expected.put("img/b.png img/y.png", "apple");
+    assertEquals(expected, read(bundle));
+    assertEquals(5, renderer.renderedCount, "phrases rendered");
+    assertEquals(5, renderer.spoken.size(), "phrases spoken");
+  } // testEntriesPerCategory()
+
+  /**
+   * Does a re-run render only the phrases that changed, leaving the audio of the rest where
+   * it was?
+   */
+  @Test
+  void testIncremental() throws Exception {
+    Path dir = Files.createTempDirectory("TestBoardRenderer");
+    File bundle = dir.resolve("bundle").toFile();
+    AACMappings mappings = board(dir, BOARD);
+    new FakeRenderer(bundle).render(mappings);
+    File audio = new File(bundle, BoardRenderer.AUDIO_FILE);
+    File manifest = new File(bundle, BoardRenderer.MANIFEST_FILE);
+    long audioLength = audio.length();
+    List<String> lines = Files.readAllLines(manifest.toPath());
+
+    // Nothing changed
+    FakeRenderer again = new FakeRenderer(bundle);
+    again.render(mappings);
+    assertEquals(0, again.renderedCount, "phrases rendered again");
+    assertEquals(audioLength, audio.length(), "the audio after rendering again");
+    assertEquals(lines, Files.readAllLines(manifest.toPath()), "the manifest");
+
+    // One text changed
+    mappings.select("img/b.png");
+    mappings.renameItem("img/x.png", "sweater");
+    mappings.reset();
+    FakeRenderer changed = new FakeRenderer(bundle);
+    changed.render(mappings);
+    assertEquals(List.of("sweater"), changed.spoken, "phrases rendered after a change");
+    assertEquals(audioLength + "sweater".length(), audio.length(), "the audio after a change");
+    List<String> changedLines = Files.readAllLines(manifest.toPath());
+    for (int i = 0; i < lines.size(); i++) {
+      assertTrue(lines.get(i).startsWith("img/b.png img/x.png ")
+          || lines.get(i).equals(changedLines.get(i)), "line " + i + " moved");
+    } // for
+    assertEquals("sweater", read(bundle).get("img/b.png img/x.png"), "the changed text");
+  } // testIncremental()
+
+  /**
+   * Are the phrases of a manifest written before lines named their category still known?
+   */
+  @Test
+  void testOldManifest() throws Exception {
+    Path dir = Files.createTempDirectory("TestBoardRenderer");
+    File bundle = dir.resolve("bundle").toFile();
+    AACMappings mappings = board(dir, BOARD);
+    new FakeRenderer(bundle).render(mappings);
+    File manifest = new File(bundle, BoardRenderer.MANIFEST_FILE);
+    List<String> old = new ArrayList<String>();
+    for (String line : Files.readAllLines(manifest.toPath())) {
+      old.add(line.substring(line.indexOf(' ') + 1));
+    } // for
+    Files.write(manifest.toPath(), old);
+    FakeRenderer renderer = new FakeRenderer(bundle);
+    renderer.render(mappings);
+    assertEquals(0, renderer.renderedCount, "phrases rendered from an old manifest");
+    assertEquals(6, read(bundle).size(), "the lines of the new manifest");
+  } // testOldManifest()
+} // class TestBoardRenderer
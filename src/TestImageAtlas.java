@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * Tests of ImageAtlas: reading an atlas without decoding, checking it against the images'
+ * files afterwards, and the budget on the icons kept loaded.
+ */
+public class TestImageAtlas {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The width and height of a cell */
+  static final int CELL = 4;
+
+  /** The bytes of one icon */
+  static final long ICON_BYTES = CELL * CELL * 4;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * An atlas store that logs each image it decodes.
+   */
+  static class LoggedAtlas extends ImageAtlas {
+    final List<String> decoded = new ArrayList<String>();
+
+    LoggedAtlas(File dir, long maxBytes) {
+      super(dir, CELL, maxBytes);
+    } // LoggedAtlas(File, long)
+
+    @Override
+    synchronized BufferedImage scale(String imageLoc) {
+      decoded.add(imageLoc);
+      return super.scale(imageLoc);
+    } // scale(String)
+  } // class LoggedAtlas
+
+  /**
+   * Write a square image of one color.
+   */
+  static String image(Path dir, String name, int rgb) throws IOException {
+    BufferedImage image = new BufferedImage(2 * CELL, 2 * CELL, BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, rgb);
+      } // for
+    } // for
+    File file = dir.resolve(name).toFile();
+    ImageIO.write(image, "png", file);
+    return file.getPath();
+  } // image(Path, String, int)
+
+  /**
+   * Get the color at the middle of an icon.
+   */
+  static int color(ImageIcon icon) {
+    return ((BufferedImage) icon.getImage()).getRGB(CELL / 2, CELL / 2);
+  } // color(ImageIcon)
+
+  /**
+   * Wait until the checks queued so far have run.
+   */
+  static void checked(ImageAtlas atlas) throws Exception {
+    atlas.checker.submit(() -> { }).get(10, TimeUnit.SECONDS);
+  } // checked(ImageAtlas)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Is an atlas, once built, read back without decoding, and is an image that changed
+   * rebuilt in the background and shown the next time?
+   */
+  @Test
+  void testRevalidate() throws Exception {
+    Path dir = Files.createTempDirectory("TestImageAtlas");
+    String red = image(dir, "red.png", 0xFFFF0000);
+    String blue = image(dir, "blue.png", 0xFF0000FF);
+    String[] images = {red, blue};
+    File atlasDir = dir.resolve("atlas").toFile();
+    LoggedAtlas first = new LoggedAtlas(atlasDir, ImageAtlas.DEFAULT_MAX_BYTES);
+    first.iconsFor("colors", images);
+    assertEquals(List.of(red, blue), first.decoded, "the images decoded to build");
+
+    LoggedAtlas second = new LoggedAtlas(atlasDir, ImageAtlas.DEFAULT_MAX_BYTES);
+    Map<String, ImageIcon> icons = second.iconsFor("colors", images);
+    assertEquals(0xFFFF0000, color(icons.get(red)), "the red icon");
+    checked(second);
+    assertEquals(List.of(), second.decoded, "the images decoded to read the atlas");
+
+    // Turn red green; the store shows the atlas at once and rebuilds it afterwards
+    File redFile = new File(red);
+    long before = redFile.lastModified();
+    image(dir, "red.png", 0xFF00FF00);
+    assertTrue(redFile.setLastModified(before + 2000), "the image's time cannot be set");
+    LoggedAtlas third = new LoggedAtlas(atlasDir, ImageAtlas.DEFAULT_MAX_BYTES);
+    assertEquals(0xFFFF0000, color(third.iconsFor("colors", images).get(red)),
+        "the icon before the check");
+    checked(third);
+    assertEquals(List.of(red, blue), third.decoded, "the images decoded after a change");
+    assertEquals(0xFF00FF00, color(third.iconsFor("colors", images).get(red)),
+        "the icon after the check");
+    LoggedAtlas fourth = new LoggedAtlas(atlasDir, ImageAtlas.DEFAULT_MAX_BYTES);
+    assertEquals(0xFF00FF00, color(fourth.iconsFor("colors", images).get(red)),
+        "the icon read from the rebuilt atlas");
+    checked(fourth);
+    assertEquals(List.of(), fourth.decoded, "the images decoded to read the rebuilt atlas");
+  } // testRevalidate()
+
+  /**
+   * Are no more bytes of icons kept than the budget allows, the least recently used dropped
+   * first, and is a dropped category read again when needed?
+   */
+  @Test
+  void testBudget() throws Exception {
+    Path dir = Files.createTempDirectory("TestImageAtlas");
+    String[][] categories = new String[4][];
+    for (int i = 0; i < categories.length; i++) {
+      categories[i] = new String[] {image(dir, i + "a.png", 0xFF000000 + i),
+          image(dir, i + "b.png", 0xFF000100 + i)};
+    } // for
+    LoggedAtlas atlas = new LoggedAtlas(dir.resolve("atlas").toFile(), 5 * ICON_BYTES);
+    Map<String, ImageIcon> zero = atlas.iconsFor("0", categories[0]);
+    atlas.iconsFor("1", categories[1]);
+    assertEquals(4 * ICON_BYTES, atlas.size(), "the bytes of two categories");
+    assertSame(zero, atlas.iconsFor("0", categories[0]), "the icons kept");
+    atlas.iconsFor("2", categories[2]);
+    assertEquals(List.of("0", "2"), new ArrayList<String>(atlas.loaded.keySet()),
+        "the categories kept, least recently used first");
+    assertEquals(4 * ICON_BYTES, atlas.size(), "the bytes after dropping one");
+    atlas.evict("0");
+    assertEquals(2 * ICON_BYTES, atlas.size(), "the bytes after evicting");
+    assertFalse(atlas.loaded.containsKey("0"), "the evicted category");
+    atlas.decoded.clear();
+    assertEquals(0xFF000001, color(atlas.iconsFor("1", categories[1]).get(categories[1][0])),
+        "a dropped category read again");
+    checked(atlas);
+    assertEquals(List.of(), atlas.decoded, "the images decoded to read it again");
+
+    // A category larger than the budget is still kept, alone
+    LoggedAtlas small = new LoggedAtlas(dir.resolve("small").toFile(), ICON_BYTES);
+    small.iconsFor("0", categories[0]);
+    small.iconsFor("3", categories[3]);
+    assertEquals(List.of("3"), new ArrayList<String>(small.loaded.keySet()), "the one kept");
+    assertEquals(2 * ICON_BYTES, small.size(), "the bytes of the one kept");
+    assertNull(small.cached("0", categories[0]), "the dropped category");
+  } // testBudget()
+} // class TestImageAtlas
@@ -0,0 +1,152 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests of LatencyHistogram: where values fall, what the buckets report, and how close the
+ * percentiles come to the true ones.
+ */
+public class TestLatencyHistogram {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** How far above a value its bucket may report it: one sub-bucket in sixteen. */
+  static final double ERROR = 1.0 / LatencyHistogram.SUB_COUNT;
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Does each value below SUB_COUNT get a bucket of its own?
+   */
+  @Test
+  void testSmallValues() {
+    for (int i = 0; i < LatencyHistogram.SUB_COUNT; i++) {
+      assertEquals(i, LatencyHistogram.bucketFor(i), "the bucket of " + i);
+      assertEquals(i, LatencyHistogram.highestInBucket(i), "the top of bucket " + i);
+    } // for
+  } // testSmallValues()
+
+  /**
+   * Do the buckets tile the longs: each one starts just past the last, and the last ends at
+   * Long.MAX_VALUE?
+   */
+  @Test
+  void testBucketEdges() {
+    for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+      long top = LatencyHistogram.highestInBucket(i);
+      assertEquals(i, LatencyHistogram.bucketFor(top), "the bucket of the top of " + i);
+      assertEquals(i + 1, LatencyHistogram.bucketFor(top + 1),
+          "the bucket just past the top of " + i);
+      assertTrue(LatencyHistogram.highestInBucket(i + 1) > top, "bucket " + i + " overlaps");
+    } // for
+    int last = LatencyHistogram.BUCKET_COUNT - 1;
+    assertEquals(last, LatencyHistogram.bucketFor(Long.MAX_VALUE), "the bucket of MAX_VALUE");
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.highestInBucket(last), "the top bucket");
+    // Powers of two start a new run of sub-buckets
+    for (int bit = LatencyHistogram.SUB_BITS; bit < 63; bit++) {
+      long power = 1L << bit;
+      assertEquals(LatencyHistogram.bucketFor(power - 1) + 1, LatencyHistogram.bucketFor(power),
+          "the bucket of 2^" + bit);
+    } // for
+  } // testBucketEdges()
+
+  /**
+   * Does every value fall in a bucket whose top is at most one sub-bucket above it?
+   */
+  @Test
+  void testRelativeError() {
+    Random random = new Random(207);
+    for (int i = 0; i < 100_000; i++) {
+      long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+      long top = LatencyHistogram.highestInBucket(LatencyHistogram.bucketFor(value));
+      assertTrue(top >= value, value + " is above the top of its bucket, " + top);
+      assertTrue(top - value <= value * ERROR, value + " is reported as " + top);
+    } // for
+  } // testRelativeError()
+
+  /**
+   * Do the count, sum, mean and maximum match what was recorded, with negative values taken
+   * as 0?
+   */
+  @Test
+  void testSummary() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount(), "the count when empty");
+    assertEquals(0.0, histogram.getMean(), 0.0, "the mean when empty");
+    assertEquals(0, histogram.getMax(), "the maximum when empty");
+    assertEquals(0, histogram.getPercentile(0.99), "the 99th percentile when empty");
+    histogram.record(-5);
+    histogram.record(10);
+    histogram.record(1_000_003);
+    histogram.record(20);
+    assertEquals(4, histogram.getCount(), "the count");
+    assertEquals(1_000_033, histogram.getSum(), "the sum");
+    assertEquals(1_000_033 / 4.0, histogram.getMean(), 1e-9, "the mean");
+    assertEquals(1_000_003, histogram.getMax(), "the maximum");
+    // The top bucket reaches past the maximum, so the maximum is reported exactly
+    assertEquals(1_000_003, histogram.getPercentile(1.0), "the 100th percentile");
+    assertEquals(0, histogram.getPercentile(0.25), "the 25th percentile");
+    assertEquals(10, histogram.getPercentile(0.5), "the 50th percentile");
+    histogram.reset();
+    assertEquals(0, histogram.getCount(), "the count after reset");
+    assertEquals(0, histogram.getMax(), "the maximum after reset");
+    assertEquals(0, histogram.getPercentile(0.5), "the median after reset");
+  } // testSummary()
+
+  /**
+   * Are the percentiles of a spread of latencies no lower than the true ones, and at most one
+   * sub-bucket higher?
+   */
+  @Test
+  void testPercentiles() {
+    Random random = new Random(207);
+    LatencyHistogram histogram = new LatencyHistogram();
+    long[] values = new long[200_000];
+    for (int i = 0; i < values.length; i++) {
+      // Mostly around 50 microseconds, with a long tail, as taps are
+      values[i] = (long) (50_000 * Math.exp(random.nextGaussian()));
+      histogram.record(values[i]);
+    } // for
+    Arrays.sort(values);
+    for (double fraction : new double[] {0.0, 0.1, 0.5, 0.9, 0.99, 0.999, 0.9999, 1.0}) {
+      long exact = values[(int) Math.max(0, Math.ceil(fraction * values.length) - 1)];
+      long reported = histogram.getPercentile(fraction);
+      assertTrue(reported >= exact,
+          "the " + fraction + " percentile is " + reported + ", below " + exact);
+      assertTrue(reported - exact <= exact * ERROR,
+          "the " + fraction + " percentile is " + reported + ", well above " + exact);
+    } // for
+    assertEquals(values[values.length - 1], histogram.getMax(), "the maximum");
+  } // testPercentiles()
+
+  /**
+   * Does recording from several threads at once lose nothing?
+   */
+  @Test
+  void testConcurrentRecording() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 1; i <= 100_000; i++) {
+          histogram.record(i);
+        } // for
+      });
+      threads[t].start();
+    } // for
+    for (Thread thread : threads) {
+      thread.join();
+    } // for
+    assertEquals(400_000, histogram.getCount(), "the count");
+    assertEquals(4 * (100_000L * 100_001 / 2), histogram.getSum(), "the sum");
+    assertEquals(100_000, histogram.getMax(), "the maximum");
+    assertEquals(100_000, histogram.getPercentile(1.0), "the 100th percentile");
+  } // testConcurrentRecording()
+} // class TestLatencyHistogram
@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tests of NavigationGraph's guesses, and of reading back what it saves.
+ */
+public class TestNavigationGraph {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Record a move some number of times.
+   */
+  static void record(NavigationGraph graph, String from, String to, int times) {
+    for (int i = 0; i < times; i++) {
+      graph.record(from, to);
+    } // for
+  } // record(NavigationGraph, String, String, int)
+
+  /**
+   * Make a graph in which the user goes from home to fruit three times and to clothes once,
+   * and from fruit home twice and to drinks once.
+   */
+  static NavigationGraph graph() {
+    NavigationGraph graph = new NavigationGraph();
+    record(graph, "", "img/fruit.png", 3);
+    record(graph, "", "img/clothes.png", 1);
+    record(graph, "img/fruit.png", "", 2);
+    record(graph, "img/fruit.png", "img/drinks.png", 1);
+    return graph;
+  } // graph()
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are the categories entered most often from a page guessed first, and no more of them
+   * than asked for?
+   */
+  @Test
+  void testLikely() {
+    NavigationGraph graph = graph();
+    assertArrayEquals(new String[] {"img/fruit.png", "img/clothes.png"}, graph.likely("", 5),
+        "from home");
+    assertArrayEquals(new String[] {"img/fruit.png"}, graph.likely("", 1), "one from home");
+    assertArrayEquals(new String[0], graph.likely("img/clothes.png", 5), "from a dead end");
+    assertArrayEquals(new String[0], graph.likely("img/unknown.png", 5), "from a new page");
+    assertEquals(3, graph.count("", "img/fruit.png"), "the count of a move");
+    assertEquals(0, graph.count("img/clothes.png", ""), "the count of a move never made");
+    // Equal chances are ranked by location
+    record(graph, "img/drinks.png", "img/tea.png", 1);
+    record(graph, "img/drinks.png", "img/coffee.png", 1);
+    assertArrayEquals(new String[] {"img/coffee.png", "img/tea.png"},
+        graph.likely("img/drinks.png", 2), "a tie");
+  } // testLikely()
+
+  /**
+   * Is going home shared among the categories entered from home, never guessing home or
+   * the page the user is on?
+   */
+  @Test
+  void testThroughHome() {
+    NavigationGraph graph = graph();
+    // From fruit: drinks 1/3; home 2/3, which is fruit 1/2 and clothes 1/6
+    assertArrayEquals(new String[] {"img/drinks.png", "img/clothes.png"},
+        graph.likely("img/fruit.png", 5), "from fruit");
+    // Home is looked past only once
+    record(graph, "", "", 100);
+    assertArrayEquals(new String[] {"img/fruit.png", "img/clothes.png"}, graph.likely("", 5),
+        "from home, which mostly goes home");
+    assertArrayEquals(new String[] {"img/drinks.png", "img/clothes.png"},
+        graph.likely("img/fruit.png", 5), "from fruit, past a home that mostly goes home");
+  } // testThroughHome()
+
+  /**
+   * Does a saved graph read back with every count, and are a missing file and a file of
+   * something else told apart?
+   */
+  @Test
+  void testSaveLoad() throws IOException {
+    Path dir = Files.createTempDirectory("TestNavigationGraph");
+    File file = dir.resolve("nav").toFile();
+    assertArrayEquals(new String[0], NavigationGraph.load(file).likely("", 5),
+        "the guesses of a missing file");
+    NavigationGraph graph = graph();
+    graph.save(file);
+    graph.save(file);
+    NavigationGraph loaded = NavigationGraph.load(file);
+    assertEquals(graph.edges, loaded.edges, "the counts read back");
+    assertArrayEquals(graph.likely("img/fruit.png", 5), loaded.likely("img/fruit.png", 5),
+        "the guesses read back");
+    assertEquals(1, dir.toFile().list().length, "the files left after saving");
+    Files.writeString(file.toPath(), "img/a.png apple\n");
+    assertThrows(IOException.class, () -> NavigationGraph.load(file), "a board read as a graph");
+  } // testSaveLoad()
+} // class TestNavigationGraph
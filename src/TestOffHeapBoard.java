@@ -0,0 +1,212 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Differential tests of OffHeapBoard. Random sequences of adds, removes, renames, selects and
+ * resets are run on an OffHeapBoard and on AACMappings, the model, and both must answer
+ * alike. The two order a page differently once an image is removed, so pages are compared as
+ * sets of images.
+ */
+public class TestOffHeapBoard {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The board both start from. */
+  static final String BOARD =
+      """
+      img/0.png fruit
+      >img/1.png apple
+      >img/2.png banana
+      img/3.png clothes
+      >img/4.png dress
+      >img/0.png fruit shirt
+      """;
+
+  /** The number of sequences run. */
+  static final int SEQUENCES = 200;
+
+  /** The number of operations in a sequence. */
+  static final int LENGTH = 150;
+
+  /** The number of image locations drawn from; a few more than the board has. */
+  static final int IMAGES = 10;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write a file in a temporary directory.
+   */
+  static String file(Path dir, String name, String contents) throws IOException {
+    Path file = dir.resolve(name);
+    Files.writeString(file, contents);
+    return file.toString();
+  } // file(Path, String, String)
+
+  /**
+   * Do something to a board.
+   */
+  interface Action {
+    String apply(AACBoard board);
+  } // interface Action
+
+  /**
+   * Do the same thing to both boards, and check that both return the same or both throw
+   * NoSuchElementException.
+   */
+  static void both(String message, AACBoard model, AACBoard board, Action action) {
+    String expected;
+    try {
+      expected = action.apply(model);
+    } catch (NoSuchElementException e) {
+      expected = "NoSuchElementException";
+    } // try-catch
+    String actual;
+    try {
+      actual = action.apply(board);
+    } catch (NoSuchElementException e) {
+      actual = "NoSuchElementException";
+    } // try-catch
+    assertEquals(expected, actual, message);
+  } // both(String, AACBoard, AACBoard, Action)
+
+  /**
+   * Check that two boards show the same page.
+   */
+  static void checkPage(String message, AACBoard model, AACBoard board) {
+    assertEquals(model.getCategory(), board.getCategory(), message + ": the category");
+    String[] expected = model.getImageLocs();
+    String[] actual = board.getImageLocs();
+    Arrays.sort(expected);
+    Arrays.sort(actual);
+    assertArrayEquals(expected, actual, message + ": the images");
+    // AACMappings.hasImage looks at the whole board, OffHeapBoard's at the page
+    for (int i = 0; i < IMAGES; i++) {
+      String imageLoc = image(i);
+      assertEquals(Arrays.binarySearch(actual, imageLoc) >= 0, board.hasImage(imageLoc),
+          message + ": whether the page has " + imageLoc);
+    } // for
+  } // checkPage(String, AACBoard, AACBoard)
+
+  /**
+   * Get the categories of a board, each with its name and its items' texts, going back to
+   * the home page.
+   */
+  static Map<String, Map<String, String>> contents(AACBoard board) {
+    Map<String, Map<String, String>> contents = new TreeMap<String, Map<String, String>>();
+    board.reset();
+    for (String categoryLoc : board.getImageLocs()) {
+      board.select(categoryLoc);
+      Map<String, String> items = new TreeMap<String, String>();
+      for (String imageLoc : board.getImageLocs()) {
+        items.put(imageLoc, board.select(imageLoc));
+      } // for
+      contents.put(categoryLoc + " " + board.getCategory(), items);
+      board.reset();
+    } // for
+    return contents;
+  } // contents(AACBoard)
+
+  /**
+   * Get the location of image i.
+   */
+  static String image(int i) {
+    return "img/" + i + ".png";
+  } // image(int)
+
+  /**
+   * Run a random sequence on both boards.
+   */
+  static void run(Random random, AACMappings model, OffHeapBoard board) {
+    for (int op = 0; op < LENGTH; op++) {
+      String imageLoc = image(random.nextInt(IMAGES));
+      String text = "text " + random.nextInt(5);
+      String message = "operation " + op;
+      switch (random.nextInt(10)) {
+        case 0, 1 -> both(message + ": add " + imageLoc, model, board, (b) -> {
+          b.addItem(imageLoc, text);
+          return "";
+        });
+        case 2 -> both(message + ": remove " + imageLoc, model, board, (b) -> {
+          b.removeItem(imageLoc);
+          return "";
+        });
+        case 3 -> both(message + ": rename " + imageLoc, model, board, (b) -> {
+          b.renameItem(imageLoc, text);
+          return "";
+        });
+        case 4 -> both(message + ": reset", model, board, (b) -> {
+          b.reset();
+          return "";
+        });
+        default -> {
+          // Select what is there more often than not
+          String[] shown = model.getImageLocs();
+          String selected = (shown.length > 0 && random.nextInt(4) > 0)
+              ? shown[random.nextInt(shown.length)] : imageLoc;
+          both(message + ": select " + selected, model, board, (b) -> b.select(selected));
+        }
+      } // switch
+      checkPage(message, model, board);
+    } // for
+  } // run(Random, AACMappings, OffHeapBoard)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Do random edits and selections give the same pages, and the same board, as on
+   * AACMappings?
+   */
+  @Test
+  void testDifferential() throws IOException {
+    Path dir = Files.createTempDirectory("TestOffHeapBoard");
+    String start = file(dir, "board.txt", BOARD);
+    for (int seed = 0; seed < SEQUENCES; seed++) {
+      AACMappings model = new AACMappings(start);
+      OffHeapBoard board = new OffHeapBoard(start);
+      run(new Random(seed), model, board);
+      assertEquals(contents(model), contents(board), "the board after sequence " + seed);
+    } // for
+  } // testDifferential()
+
+  /**
+   * Does a board written out read back the same, both as an OffHeapBoard and as
+   * AACMappings, and write out the same again?
+   */
+  @Test
+  void testWriteToFile() throws IOException {
+    Path dir = Files.createTempDirectory("TestOffHeapBoard");
+    String start = file(dir, "board.txt", BOARD);
+    for (int seed = 0; seed < 20; seed++) {
+      OffHeapBoard board = new OffHeapBoard(start);
+      run(new Random(seed), new AACMappings(start), board);
+      String written = dir.resolve("written.txt").toString();
+      board.writeToFile(written);
+      Map<String, Map<String, String>> expected = contents(board);
+      OffHeapBoard reread = new OffHeapBoard(written);
+      assertEquals(expected, contents(reread), "read back after sequence " + seed);
+      assertEquals(expected, contents(new AACMappings(written)),
+          "read back by AACMappings after sequence " + seed);
+      String again = dir.resolve("again.txt").toString();
+      reread.writeToFile(again);
+      assertEquals(Files.readString(new File(written).toPath()),
+          Files.readString(new File(again).toPath()), "written again after sequence " + seed);
+    } // for
+  } // testWriteToFile()
+} // class TestOffHeapBoard
@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.grinnell.csc207.util.KVPair;
+import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.PersistentMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Tests of PersistentMap, against a java.util.TreeMap. Besides the contents, each map must
+ * stay as balanced as an AVL tree can be, and every earlier version must be unchanged.
+ */
+public class TestPersistentMap {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the height of a map's tree, which updateBytes counts in nodes.
+   */
+  static int height(PersistentMap<?, ?> map) {
+    return (int) (map.updateBytes() / PersistentMap.NODE_BYTES) - 1;
+  } // height(PersistentMap)
+
+  /**
+   * Get the greatest height an AVL tree of n nodes can have.
+   */
+  static int maxHeight(int n) {
+    return (int) Math.floor(1.4405 * Math.log(n + 2) / Math.log(2) - 0.3277);
+  } // maxHeight(int)
+
+  /**
+   * Check that a map has the same pairs as the model, in the same order, and that its tree
+   * is no taller than an AVL tree of that size may be.
+   */
+  static void check(String message, TreeMap<Integer, String> model,
+      PersistentMap<Integer, String> map) throws KeyNotFoundException {
+    assertEquals(model.size(), map.size(), message + ": the size");
+    List<Map.Entry<Integer, String>> pairs = new ArrayList<Map.Entry<Integer, String>>();
+    for (KVPair<Integer, String> pair : map) {
+      pairs.add(Map.entry(pair.getKey(), pair.getValue()));
+    } // for
+    assertEquals(new ArrayList<Map.Entry<Integer, String>>(model.entrySet()), pairs,
+        message + ": the pairs");
+    for (Map.Entry<Integer, String> entry : model.entrySet()) {
+      assertEquals(entry.getValue(), map.get(entry.getKey()),
+          message + ": the value of " + entry.getKey());
+    } // for
+    int height = height(map);
+    assertTrue(height <= maxHeight(map.size()),
+        message + ": a height of " + height + " for " + map.size() + " pairs");
+    assertTrue(map.size() < (1L << height),
+        message + ": a height of " + height + " for " + map.size() + " pairs");
+  } // check(String, TreeMap, PersistentMap)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Do sequential keys, which unbalance a plain search tree, build a perfectly balanced one,
+   * and does removing them in order keep it balanced?
+   */
+  @Test
+  void testSequential() throws Exception {
+    TreeMap<Integer, String> model = new TreeMap<Integer, String>();
+    PersistentMap<Integer, String> up = PersistentMap.empty();
+    PersistentMap<Integer, String> down = PersistentMap.empty();
+    for (int i = 1; i <= 1023; i++) {
+      up = up.set(i, "up" + i);
+      down = down.set(1024 - i, "up" + (1024 - i));
+      model.put(i, "up" + i);
+    } // for
+    check("ascending", model, up);
+    check("descending", model, down);
+    assertEquals(10, height(up), "the height of 1023 ascending keys");
+    assertEquals(10, height(down), "the height of 1023 descending keys");
+    for (int i = 1; i <= 1000; i++) {
+      up = up.remove(i);
+      model.remove(i);
+      check("removing " + i, model, up);
+    } // for
+  } // testSequential()
+
+  /**
+   * Does removing a key with two children put its successor in its place?
+   */
+  @Test
+  void testRemoveWithTwoChildren() throws Exception {
+    TreeMap<Integer, String> model = new TreeMap<Integer, String>();
+    PersistentMap<Integer, String> map = PersistentMap.empty();
+    for (int i = 1; i <= 7; i++) {
+      map = map.set(i, "v" + i);
+      model.put(i, "v" + i);
+    } // for
+    // 4 is the root, with 2 and 6 below it, and 6 has two children of its own
+    for (int key : new int[] {4, 6, 5, 2}) {
+      PersistentMap<Integer, String> before = map;
+      map = map.remove(key);
+      model.remove(key);
+      check("removing " + key, model, map);
+      assertFalse(map.hasKey(key), "the removed key " + key);
+      assertTrue(before.hasKey(key), "the earlier version lost " + key);
+    } // for
+    assertSame(map, map.remove(4), "removing a missing key");
+    assertSame(map, map.remove(null), "removing null");
+  } // testRemoveWithTwoChildren()
+
+  /**
+   * Do random sets and removes agree with a TreeMap, with every earlier version left as it
+   * was?
+   */
+  @Test
+  void testRandom() throws Exception {
+    Random random = new Random(207);
+    List<PersistentMap<Integer, String>> versions =
+        new ArrayList<PersistentMap<Integer, String>>();
+    List<TreeMap<Integer, String>> models = new ArrayList<TreeMap<Integer, String>>();
+    TreeMap<Integer, String> model = new TreeMap<Integer, String>();
+    PersistentMap<Integer, String> map = PersistentMap.empty();
+    for (int i = 0; i < 20_000; i++) {
+      // Grow for a while, then shrink, so that removals rebalance large trees too
+      int key = random.nextInt(500);
+      if (random.nextInt(100) < ((i / 2_000) % 2 == 0 ? 70 : 30)) {
+        String value = "v" + random.nextInt(3);
+        map = map.set(key, value);
+        model.put(key, value);
+      } else {
+        map = map.remove(key);
+        model.remove(key);
+      } // if
+      if (i % 100 == 0) {
+        check("after " + i + " operations", model, map);
+        versions.add(map);
+        models.add(new TreeMap<Integer, String>(model));
+      } // if
+    } // for
+    for (int v = 0; v < versions.size(); v++) {
+      check("version " + v, models.get(v), versions.get(v));
+    } // for
+  } // testRandom()
+
+  /**
+   * Does setting a key to the value it has return the same map, and are null keys and
+   * missing keys refused?
+   */
+  @Test
+  void testUnchanged() throws Exception {
+    String value = "apple";
+    PersistentMap<Integer, String> map = PersistentMap.<Integer, String>empty().set(1, value);
+    assertSame(map, map.set(1, value), "setting the same value");
+    assertThrows(NullKeyException.class, () -> map.set(null, "x"), "setting null");
+    assertThrows(KeyNotFoundException.class, () -> map.get(2), "getting a missing key");
+    assertThrows(KeyNotFoundException.class, () -> map.get(null), "getting null");
+    assertEquals(0, PersistentMap.empty().size(), "the size of the empty map");
+  } // testUnchanged()
+} // class TestPersistentMap
@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Tests of PhraseAudioCache's byte accounting, eviction order and matching of phrases.
+ */
+public class TestPhraseAudioCache {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The format of every entry */
+  static final AudioFormat FORMAT = new AudioFormat(16000f, 16, 1, true, true);
+
+  /** The voice of every entry, unless a test says otherwise */
+  static final String VOICE = "kevin16";
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make audio of some number of bytes.
+   */
+  static PhraseAudioCache.Audio audio(int bytes) {
+    return new PhraseAudioCache.Audio(FORMAT, new byte[bytes]);
+  } // audio(int)
+
+  /**
+   * List the phrases cached, least recently used first, without marking any as used.
+   */
+  static List<String> phrases(PhraseAudioCache cache) {
+    List<String> phrases = new ArrayList<String>();
+    for (String key : cache.entries.keySet()) {
+      phrases.add(key.substring(key.indexOf('\u0000') + 1));
+    } // for
+    return phrases;
+  } // phrases(PhraseAudioCache)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are the phrases least recently used dropped first, with get marking a phrase as used
+   * and contains not?
+   */
+  @Test
+  void testEvictionOrder() {
+    PhraseAudioCache cache = new PhraseAudioCache(300);
+    cache.put(VOICE, "apple", audio(100));
+    cache.put(VOICE, "banana", audio(100));
+    cache.put(VOICE, "cherry", audio(100));
+    assertEquals(300, cache.size(), "the bytes of three phrases");
+    assertTrue(cache.get(VOICE, "apple") != null, "apple is not cached");
+    assertTrue(cache.contains(VOICE, "banana"), "banana is not cached");
+    cache.put(VOICE, "date", audio(100));
+    assertEquals(List.of("cherry", "apple", "date"), phrases(cache), "after one eviction");
+    cache.put(VOICE, "elderberry", audio(200));
+    assertEquals(List.of("date", "elderberry"), phrases(cache), "after two evictions");
+    assertEquals(300, cache.size(), "the bytes after evicting");
+  } // testEvictionOrder()
+
+  /**
+   * Does putting a phrase again replace its audio and count only the new bytes?
+   */
+  @Test
+  void testReplace() {
+    PhraseAudioCache cache = new PhraseAudioCache(300);
+    cache.put(VOICE, "apple", audio(100));
+    cache.put(VOICE, "banana", audio(100));
+    PhraseAudioCache.Audio longer = audio(150);
+    cache.put(VOICE, "apple", longer);
+    assertSame(longer, cache.get(VOICE, "apple"), "the replaced audio");
+    assertEquals(250, cache.size(), "the bytes after replacing");
+    assertEquals(List.of("banana", "apple"), phrases(cache), "the order after replacing");
+    cache.put(VOICE, "apple", audio(250));
+    assertEquals(List.of("apple"), phrases(cache), "after a replacement that must evict");
+    assertEquals(250, cache.size(), "the bytes after a replacement that must evict");
+  } // testReplace()
+
+  /**
+   * Is audio larger than the whole cache refused, leaving what is cached alone?
+   */
+  @Test
+  void testOversize() {
+    PhraseAudioCache cache = new PhraseAudioCache(300);
+    cache.put(VOICE, "apple", audio(100));
+    cache.put(VOICE, "banana", audio(301));
+    assertNull(cache.get(VOICE, "banana"), "the oversize audio");
+    assertEquals(List.of("apple"), phrases(cache), "the phrases after refusing");
+    assertEquals(100, cache.size(), "the bytes after refusing");
+    cache.put(VOICE, "banana", audio(300));
+    assertEquals(List.of("banana"), phrases(cache), "audio the size of the cache");
+  } // testOversize()
+
+  /**
+   * Do phrases that differ only in whitespace share an entry, in the same voice only?
+   */
+  @Test
+  void testWhitespace() {
+    PhraseAudioCache cache = new PhraseAudioCache(1000);
+    PhraseAudioCache.Audio shirt = audio(10);
+    cache.put(VOICE, "t shirt", shirt);
+    for (String phrase : new String[] {"t shirt", " t  shirt", "t\tshirt\n", "\r\n t \f shirt"}) {
+      assertSame(shirt, cache.get(VOICE, phrase), "the audio of \"" + phrase + "\"");
+    } // for
+    assertFalse(cache.contains(VOICE, "tshirt"), "a phrase without the space");
+    assertFalse(cache.contains("alan", "t shirt"), "the phrase in another voice");
+    cache.put(VOICE, "  t shirt  ", audio(20));
+    assertEquals(1, cache.entries.size(), "the entries for one phrase");
+    assertEquals(20, cache.size(), "the bytes of one phrase");
+    assertEquals(PhraseAudioCache.key(VOICE, "a b c"), PhraseAudioCache.key(VOICE, "a \t b\n\nc "),
+        "the keys of phrases that differ in whitespace");
+    assertEquals(VOICE + "\u0000", PhraseAudioCache.key(VOICE, " \t "), "the key of blank text");
+  } // testWhitespace()
+} // class TestPhraseAudioCache
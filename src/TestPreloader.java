@@ -0,0 +1,207 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of Preloader, with a stand-in for the atlas store whose categories each take
+ * SIZE bytes, and whose category "slow" loads only when allowed to.
+ */
+public class TestPreloader {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The bytes of each category's icons */
+  static final long SIZE = 100;
+
+  /** The key of the category that loads only once released */
+  static final String SLOW = "slow";
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * An atlas store that loads nothing, logging what it is asked to do.
+   */
+  static class FakeAtlas extends ImageAtlas {
+    /** The categories preloaded and evicted, in order, as "preload key" and "evict key" */
+    final List<String> log = new ArrayList<String>();
+
+    /** Set once the slow category has started loading */
+    final CountDownLatch slowStarted = new CountDownLatch(1);
+
+    /** Lets the slow category finish loading */
+    final CountDownLatch release = new CountDownLatch(1);
+
+    /** The priority of each thread that preloaded, in order */
+    final List<Integer> priorities = new ArrayList<Integer>();
+
+    /** Whether the slow category's load was interrupted */
+    volatile boolean interrupted;
+
+    FakeAtlas() throws IOException {
+      super(Files.createTempDirectory("TestPreloader").toFile(), 1);
+    } // FakeAtlas()
+
+    @Override
+    public long preload(String category, String[] imageLocs) {
+      synchronized (this) {
+        log.add("preload " + category);
+        priorities.add(Thread.currentThread().getPriority());
+      } // synchronized
+      if (category.equals(SLOW)) {
+        slowStarted.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          interrupted = true;
+          return -1;
+        } // try-catch
+      } // if
+      return SIZE;
+    } // preload(String, String[])
+
+    @Override
+    public synchronized void evict(String category) {
+      log.add("evict " + category);
+    } // evict(String)
+
+    synchronized List<String> log() {
+      return new ArrayList<String>(log);
+    } // log()
+  } // class FakeAtlas
+
+  /**
+   * Describe a category to load.
+   */
+  static Preloader.Request request(String key) {
+    return new Preloader.Request(key, new String[] {key + "/a.png"}, null, null);
+  } // request(String)
+
+  /**
+   * Ask for categories to be loaded after the current one and wait until they are.
+   */
+  static void expect(Preloader preloader, String current, String... keys) throws Exception {
+    Preloader.Request[] requests = new Preloader.Request[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      requests[i] = request(keys[i]);
+    } // for
+    preloader.expect(current, requests);
+    for (Preloader.Request request : requests) {
+      if (request.task != null) {
+        request.task.get(10, TimeUnit.SECONDS);
+      } // if
+    } // for
+  } // expect(Preloader, String, String...)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are no more bytes held than the budget allows, each category loaded once, and a
+   * category no longer counted once the user enters it?
+   */
+  @Test
+  void testBudget() throws Exception {
+    FakeAtlas atlas = new FakeAtlas();
+    Preloader preloader = new Preloader(atlas, null, 2 * SIZE + SIZE / 2, 1);
+    expect(preloader, "", "a", "b");
+    assertEquals(2 * SIZE, preloader.size(), "the bytes of two categories");
+    expect(preloader, "", "a", "b", "c");
+    assertEquals(2 * SIZE, preloader.size(), "the bytes after going over the budget");
+    assertEquals(List.of("preload a", "preload b", "preload c", "evict a"), atlas.log(),
+        "what was loaded and dropped");
+    expect(preloader, "b");
+    assertEquals(SIZE, preloader.size(), "the bytes after entering a category");
+    assertFalse(preloader.loaded.containsKey("b"), "the entered category is still counted");
+    preloader.close();
+  } // testBudget()
+
+  /**
+   * Are the categories least recently loaded or guessed dropped first?
+   */
+  @Test
+  void testEvictionOrder() throws Exception {
+    FakeAtlas atlas = new FakeAtlas();
+    Preloader preloader = new Preloader(atlas, null, 3 * SIZE, 1);
+    expect(preloader, "", "a", "b", "c");
+    // Guessing a again makes b the least recently used
+    expect(preloader, "", "a", "d");
+    expect(preloader, "", "c", "e");
+    assertEquals(List.of("preload a", "preload b", "preload c", "preload d", "evict b",
+        "preload e", "evict a"), atlas.log(), "what was loaded and dropped");
+    assertEquals(List.of("d", "c", "e"), new ArrayList<String>(preloader.loaded.keySet()),
+        "the categories held, least recently used first");
+    preloader.close();
+  } // testEvictionOrder()
+
+  /**
+   * Is a load that is no longer guessed interrupted and not counted, and is the next guess
+   * loaded all the same?
+   */
+  @Test
+  void testCancellation() throws Exception {
+    FakeAtlas atlas = new FakeAtlas();
+    Preloader preloader = new Preloader(atlas, null, 10 * SIZE, 1);
+    Preloader.Request slow = request(SLOW);
+    preloader.expect("", new Preloader.Request[] {slow});
+    assertTrue(atlas.slowStarted.await(10, TimeUnit.SECONDS), "the slow load never started");
+    expect(preloader, "", "a");
+    assertTrue(slow.task.isCancelled(), "the slow load was not cancelled");
+    assertTrue(atlas.interrupted, "the slow load was not interrupted");
+    assertEquals(SIZE, preloader.size(), "the bytes held");
+    assertFalse(preloader.loaded.containsKey(SLOW), "the cancelled load is counted");
+    preloader.close();
+  } // testCancellation()
+
+  /**
+   * Does waiting for a running load raise its thread to the waiter's priority, and only
+   * while it runs, and is a queued load cancelled rather than waited for?
+   */
+  @Test
+  void testAwait() throws Exception {
+    FakeAtlas atlas = new FakeAtlas();
+    Preloader preloader = new Preloader(atlas, null, 10 * SIZE, 1);
+    Preloader.Request slow = request(SLOW);
+    Preloader.Request queued = request("queued");
+    preloader.expect("", new Preloader.Request[] {slow, queued});
+    assertTrue(atlas.slowStarted.await(10, TimeUnit.SECONDS), "the slow load never started");
+    preloader.await("queued");
+    assertTrue(queued.task.isCancelled(), "the queued load was waited for");
+    assertFalse(slow.task.isDone(), "the slow load ended early");
+
+    Thread waiter = new Thread(() -> preloader.await(SLOW));
+    waiter.setPriority(Thread.NORM_PRIORITY + 1);
+    waiter.start();
+    Thread runner = null;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (runner == null || runner.getPriority() != Thread.NORM_PRIORITY + 1) {
+      assertTrue(System.nanoTime() < deadline, "the loading thread was not raised");
+      synchronized (preloader) {
+        runner = slow.runner;
+      } // synchronized
+      Thread.sleep(1);
+    } // while
+    atlas.release.countDown();
+    waiter.join(10_000);
+    assertFalse(waiter.isAlive(), "the waiter is still waiting");
+    assertTrue(slow.task.isDone(), "await returned before the load was done");
+    assertEquals(Thread.MIN_PRIORITY, runner.getPriority(), "the priority after the load");
+
+    expect(preloader, "", SLOW, "after");
+    assertEquals(List.of(Thread.MIN_PRIORITY, Thread.MIN_PRIORITY), atlas.priorities,
+        "the priorities of the loads");
+    preloader.close();
+  } // testAwait()
+} // class TestPreloader
@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JButton;
+import javax.swing.SwingUtilities;
+
+/**
+ * Tests of SwitchScanner's timing while the rest of the program is busy.
+ */
+public class TestSwitchScanner {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The time between steps, in milliseconds */
+  static final long PERIOD = 20;
+
+  /** How long a phrase takes to speak, in milliseconds */
+  static final long PHRASE = 600;
+
+  /** The latest a step may be shown, in nanoseconds */
+  static final long LATEST = TimeUnit.MILLISECONDS.toNanos(10);
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A backend that takes PHRASE milliseconds to speak anything, blocking as the real ones
+   * do until the phrase has been heard.
+   */
+  static class SlowSpeech extends SpeechBackend {
+    @Override
+    public void speak(String voice, String text, Runnable onAudioStart) throws Exception {
+      if (onAudioStart != null) {
+        onAudioStart.run();
+      } // if
+      Thread.sleep(PHRASE);
+    } // speak(String, String, Runnable)
+
+    @Override
+    public void prewarm(String voice) {
+    } // prewarm(String)
+
+    @Override
+    public void close() {
+    } // close()
+  } // class SlowSpeech
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Are the steps shown on time, and not held up, while a phrase tapped on the event thread
+   * is being spoken?
+   */
+  @Test
+  void testStepsWhileSpeaking() throws Exception {
+    boolean enabled = AACMetrics.enabled;
+    LatencyHistogram steps = AACMetrics.histogram(AACMetrics.Stage.SCAN_STEP);
+    SwitchScanner scanner = new SwitchScanner(PERIOD);
+    try {
+      AACMetrics.enabled = true;
+      JButton[][] rows = {{new JButton("a"), new JButton("b")}, {new JButton("c")}};
+      SwingUtilities.invokeAndWait(() -> scanner.setRows(rows));
+      Thread.sleep(3 * PERIOD);
+      steps.reset();
+      SpeechBackend speech = new SlowSpeech();
+      // Tap as AAC does, on the event thread
+      Future<?>[] spoken = new Future<?>[1];
+      SwingUtilities.invokeAndWait(() -> spoken[0] = speech.speakLater("kevin16", "hello"));
+      spoken[0].get(10, TimeUnit.SECONDS);
+      long count = steps.getCount();
+      assertTrue(count >= PHRASE / PERIOD / 2, "the steps taken while speaking: " + count);
+      assertTrue(steps.getMax() < LATEST,
+          "the latest step while speaking: " + steps.getMax() / 1e6 + "ms");
+    } finally {
+      AACMetrics.enabled = enabled;
+      SwingUtilities.invokeAndWait(scanner::stop);
+    } // try-finally
+  } // testStepsWhileSpeaking()
+} // class TestSwitchScanner
@@ -0,0 +1,211 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tests of TapRecorder's log format, and of replaying a log in the locale it was recorded in.
+ */
+public class TestTapRecorder {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write a log of a few selects, resets, adds and a change of locale.
+   */
+  static File log(Path dir) throws IOException {
+    File file = dir.resolve("taps.log").toFile();
+    TapRecorder recorder = new TapRecorder(file, "board.txt", Locale.forLanguageTag("es"));
+    for (int i = 0; i < 50; i++) {
+      recorder.select("img/food.png", "");
+      recorder.select("img/a.png", "manzana");
+      recorder.select("img/z.png", null);
+      recorder.reset();
+    } // for
+    recorder.addItem("img/c.png", "cereza");
+    recorder.setLocale(null);
+    recorder.select("img/c.png", "cereza");
+    recorder.close();
+    return file;
+  } // log(Path)
+
+  /**
+   * Describe an event, for comparing lists of them.
+   */
+  static String describe(TapRecorder.Event event) {
+    return event.op + " " + event.imageLoc + " " + event.text;
+  } // describe(TapRecorder.Event)
+
+  /**
+   * Describe the events of a log.
+   */
+  static List<String> describe(List<TapRecorder.Event> events) {
+    return events.stream().map(TestTapRecorder::describe).toList();
+  } // describe(List)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Does every event read back as written, with the board and locale of the header, and
+   * times that never go backwards?
+   */
+  @Test
+  void testRoundTrip() throws IOException {
+    Path dir = Files.createTempDirectory("TestTapRecorder");
+    String[] header = new String[2];
+    List<TapRecorder.Event> events = TapRecorder.read(log(dir), header);
+    assertEquals("board.txt", header[0], "the board");
+    assertEquals("es", header[1], "the locale");
+    assertEquals(203, events.size(), "the number of events");
+    assertEquals(TapRecorder.SELECT + " img/a.png manzana", describe(events.get(1)),
+        "a select");
+    assertEquals(TapRecorder.SELECT_MISSING + " img/z.png null", describe(events.get(2)),
+        "a missing select");
+    assertEquals(TapRecorder.RESET + " null null", describe(events.get(3)), "a reset");
+    assertEquals(TapRecorder.ADD_ITEM + " img/c.png cereza", describe(events.get(200)),
+        "an addItem");
+    assertEquals(TapRecorder.LOCALE + " null ", describe(events.get(201)), "a setLocale");
+    for (int i = 1; i < events.size(); i++) {
+      assertTrue(events.get(i).time >= events.get(i - 1).time, "time went back at " + i);
+    } // for
+  } // testRoundTrip()
+
+  /**
+   * Is each string written once, with later uses only a number?
+   */
+  @Test
+  void testBackReferences() throws IOException {
+    Path dir = Files.createTempDirectory("TestTapRecorder");
+    byte[] bytes = Files.readAllBytes(log(dir).toPath());
+    String contents = new String(bytes, StandardCharsets.ISO_8859_1);
+    for (String string : new String[] {"img/food.png", "img/a.png", "manzana", "img/z.png"}) {
+      int first = contents.indexOf(string);
+      assertTrue(first >= 0, string + " is not in the log");
+      assertEquals(-1, contents.indexOf(string, first + 1), string + " is written twice");
+    } // for
+    // A repeated select is the operation, the time and two one-byte references
+    assertTrue(bytes.length < 50 * 4 * 8 + 200, bytes.length + " bytes for 203 events");
+  } // testBackReferences()
+
+  /**
+   * Do numbers of every size read back, in as few bytes as seven bits each allow?
+   */
+  @Test
+  void testVarLong() throws IOException {
+    Path dir = Files.createTempDirectory("TestTapRecorder");
+    TapRecorder recorder = new TapRecorder(dir.resolve("v.log").toFile(), "", null);
+    recorder.close();
+    long[] values = {0, 1, 127, 128, 255, 16383, 16384, 1L << 35, Long.MAX_VALUE, -1};
+    int[] lengths = {1, 1, 1, 2, 2, 2, 3, 6, 9, 10};
+    for (int i = 0; i < values.length; i++) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      recorder.out = new DataOutputStream(bytes);
+      recorder.writeVarLong(values[i]);
+      recorder.out = null;
+      assertEquals(lengths[i], bytes.size(), "the bytes of " + values[i]);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      assertEquals(values[i], TapRecorder.readVarLong(in), "reading back " + values[i]);
+      assertEquals(-1, in.read(), "bytes left after " + values[i]);
+    } // for
+  } // testVarLong()
+
+  /**
+   * Does a log cut short at any byte read back as the events written in full before the
+   * cut, rather than failing with an EOFException?
+   */
+  @Test
+  void testTruncated() throws IOException {
+    Path dir = Files.createTempDirectory("TestTapRecorder");
+    byte[] bytes = Files.readAllBytes(log(dir).toPath());
+    List<String> all = describe(TapRecorder.read(log(dir), null));
+    File cut = dir.resolve("cut.log").toFile();
+    int previous = 0;
+    for (int length = 0; length < bytes.length; length++) {
+      try (FileOutputStream out = new FileOutputStream(cut)) {
+        out.write(bytes, 0, length);
+      } // try
+      List<String> events = describe(TapRecorder.read(cut, null));
+      assertTrue(events.size() < all.size(), "all events read from " + length + " bytes");
+      assertTrue(events.size() >= previous, "events lost at " + length + " bytes");
+      assertEquals(all.subList(0, events.size()), events, "the events in " + length + " bytes");
+      previous = events.size();
+    } // for
+    assertEquals(all.size() - 1, previous, "the events before the last byte");
+  } // testTruncated()
+
+  /**
+   * Is a log written before the locale was recorded still read, as the board's own text?
+   */
+  @Test
+  void testOldHeader() throws IOException {
+    Path dir = Files.createTempDirectory("TestTapRecorder");
+    File file = dir.resolve("old.log").toFile();
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+      out.writeInt(TapRecorder.OLD_MAGIC);
+      out.writeLong(0);
+      out.writeUTF("board.txt");
+      out.writeByte(TapRecorder.SELECT);
+      out.writeByte(5);
+      out.writeByte(0);
+      out.writeUTF("img/a.png");
+      out.writeByte(1);
+    } // try
+    String[] header = {null, null};
+    List<TapRecorder.Event> events = TapRecorder.read(file, header);
+    assertEquals(Arrays.asList("board.txt", ""), Arrays.asList(header), "the header");
+    assertEquals(List.of(TapRecorder.SELECT + " img/a.png img/a.png"), describe(events),
+        "the events");
+  } // testOldHeader()
+
+  /**
+   * Does a session in a locale, with a change of locale in the middle, replay without
+   * mismatches?
+   */
+  @Test
+  void testReplayInLocale() throws IOException {
+    Path dir = Files.createTempDirectory("TestTapRecorder");
+    Path board = dir.resolve("board.txt");
+    Files.writeString(board, "img/food.png food\n>img/a.png apple\n>img/b.png banana\n");
+    Files.writeString(dir.resolve("board.es.txt"), "img/food.png comida\n>img/a.png manzana\n");
+    AACMappings mappings = new AACMappings(board.toString());
+    mappings.setLocale(Locale.forLanguageTag("es"));
+    File file = dir.resolve("taps.log").toFile();
+    TapRecorder recorder = new TapRecorder(file, board.toString(), mappings.getLocale());
+    mappings.record(recorder);
+    mappings.select("img/food.png");
+    assertEquals("manzana", mappings.select("img/a.png"), "selecting in Spanish");
+    mappings.setLocale(null);
+    assertEquals("apple", mappings.select("img/a.png"), "selecting in English");
+    mappings.setLocale(Locale.forLanguageTag("es"));
+    mappings.select("img/b.png");
+    recorder.close();
+
+    String[] header = new String[2];
+    List<TapRecorder.Event> events = TapRecorder.read(file, header);
+    LatencyHistogram[] latencies = new LatencyHistogram[TapReplay.OPS.length];
+    for (int op = 0; op < latencies.length; op++) {
+      latencies[op] = new LatencyHistogram();
+    } // for
+    AACMappings replayed = AACMappings.load(header[0]);
+    TapReplay.setLocale(replayed, header[1]);
+    assertEquals(0, TapReplay.replay(replayed, events, false, latencies, 0), "mismatches");
+    assertEquals(2, latencies[TapRecorder.LOCALE].getCount(), "locale changes replayed");
+  } // testReplayInLocale()
+} // class TestTapRecorder
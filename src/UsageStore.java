@@ -0,0 +1,236 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts how often each image is selected, with older selections counting for less: a
+ * selection is worth half as much after every half-life. The counts are kept in memory and
+ * written to a file in batches, never on the selection itself.
+ * <p>
+ * Each image's count is stored as a single number, the base-2 log of the sum of
+ * 2^((t - EPOCH) / halfLife) over the times t it was selected. Every count decays at the
+ * same rate, so the order of two images only changes when one of them is selected; nothing
+ * has to be re-ranked as time passes.
+ * <p>
+ * A usage file holds the magic number, the number of images, and then, for each image, its
+ * location and its count.
+ */
+public class UsageStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** Identifies a usage file */
+  static final int MAGIC = 0x41414355;
+
+  /** The time from which counts are measured: 2024-01-01T00:00:00Z */
+  static final long EPOCH = 1704067200000L;
+
+  /** The default half-life of a selection: two weeks */
+  public static final long DEFAULT_HALF_LIFE = 14L * 24 * 60 * 60 * 1000;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** Where the counts are kept, or null to keep them only in memory */
+  final File file;
+
+  /** How long a selection takes to lose half its weight, in milliseconds */
+  final long halfLife;
+
+  /** The log count of each image selected so far */
+  final Map<String, Double> counts = new HashMap<String, Double>();
+
+  /** Whether there are selections not yet written to the file */
+  boolean dirty;
+
+  /** Held while writing the file, so that an older snapshot never replaces a newer one */
+  final Object writing = new Object();
+
+  /** Writes the counts in the background, or null */
+  ScheduledExecutorService flusher;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Creates a store, reading the counts already in file if it exists
+   *
+   * @param file     where the counts are kept, or null to keep them only in memory
+   * @param halfLife how long a selection takes to lose half its weight, in milliseconds
+   * @throws IOException if file exists but is not a usage file
+   */
+  public UsageStore(File file, long halfLife) throws IOException {
+    this.file = file;
+    this.halfLife = halfLife;
+    if (file != null && file.exists()) {
+      DataInputStream in = new DataInputStream(
+          new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+      if (in.readInt() != MAGIC) {
+        throw new IOException(file + " is not a usage file");
+      } // if
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        counts.put(in.readUTF(), in.readDouble());
+      } // for
+    } // if
+  } // UsageStore(File, long)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Records a selection of an image now
+   *
+   * @param imageLoc the location of the image
+   */
+  public void record(String imageLoc) {
+    record(imageLoc, System.currentTimeMillis());
+  } // record(String)
+
+  /**
+   * Records a selection of an image at a given time
+   *
+   * @param imageLoc the location of the image
+   * @param time     when it was selected, in milliseconds since 1970
+   */
+  public synchronized void record(String imageLoc, long time) {
+    double weight = (double) (time - EPOCH) / halfLife;
+    Double old = counts.get(imageLoc);
+    if (old == null) {
+      counts.put(imageLoc, weight);
+    } else {
+      // log2(2^old + 2^weight), without overflowing
+      double high = Math.max(old, weight);
+      double low = Math.min(old, weight);
+      counts.put(imageLoc, high + Math.log1p(Math.pow(2, low - high)) / Math.log(2));
+    } // if
+    dirty = true;
+  } // record(String, long)
+
+  /**
+   * Gets the count of an image, for ranking against other counts from this store
+   *
+   * @param imageLoc the location of the image
+   * @return its log count, or negative infinity if it has never been selected
+   */
+  public synchronized double score(String imageLoc) {
+    Double count = counts.get(imageLoc);
+    return (count == null) ? Double.NEGATIVE_INFINITY : count;
+  } // score(String)
+
+  /**
+   * Gets how many selections of an image its count is worth at a given time
+   *
+   * @param imageLoc the location of the image
+   * @param time     the time, in milliseconds since 1970
+   * @return the decayed number of selections
+   */
+  public double frequency(String imageLoc, long time) {
+    return Math.pow(2, score(imageLoc) - (double) (time - EPOCH) / halfLife);
+  } // frequency(String, long)
+
+  /**
+   * Forgets every selection of an image
+   *
+   * @param imageLoc the location of the image
+   */
+  public synchronized void forget(String imageLoc) {
+    if (counts.remove(imageLoc) != null) {
+      dirty = true;
+    } // if
+  } // forget(String)
+
+  /**
+   * Writes the counts to the file, if any have changed since they were last written
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public void flush() throws IOException {
+    synchronized (writing) {
+      Map<String, Double> snapshot;
+      synchronized (this) {
+        if (file == null || !dirty) {
+          return;
+        } // if
+        snapshot = new HashMap<String, Double>(counts);
+        dirty = false;
+      } // synchronized
+      Path target = file.toPath().toAbsolutePath();
+      Path temp = Files.createTempFile(target.getParent(), "aac-usage", ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temp)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(snapshot.size());
+          for (Map.Entry<String, Double> count : snapshot.entrySet()) {
+            out.writeUTF(count.getKey());
+            out.writeDouble(count.getValue());
+          } // for
+        } // try
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        // Try again on the next flush
+        synchronized (this) {
+          dirty = true;
+        } // synchronized
+        Files.deleteIfExists(temp);
+        throw e;
+      } // try-catch
+    } // synchronized
+  } // flush()
+
+  /**
+   * Starts a background thread that writes the counts every period seconds, if they have
+   * changed. Does nothing if it has already been started.
+   *
+   * @param period the number of seconds between writes
+   */
+  public synchronized void startFlushing(long period) {
+    if (flusher != null) {
+      return;
+    } // if
+    flusher = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+      Thread thread = new Thread(runnable, "aac-usage-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    flusher.scheduleWithFixedDelay(() -> {
+      try {
+        flush();
+      } catch (IOException e) {
+        e.printStackTrace();
+      } // try-catch
+    }, period, period, TimeUnit.SECONDS);
+  } // startFlushing(long)
+
+  /**
+   * Stops the background thread, if any, and writes any counts not yet written
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      if (flusher != null) {
+        flusher.shutdown();
+        flusher = null;
+      } // if
+    } // synchronized
+    flush();
+  } // close()
+} // class UsageStore
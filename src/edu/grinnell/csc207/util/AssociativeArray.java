@@ -2,7 +2,19 @@ package edu.grinnell.csc207.util;
 
 import static java.lang.reflect.Array.newInstance;
 
+import java.io.IOException;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A basic implementation of Associative Arrays with keys of type K and values of type V.
@@ -19,7 +31,13 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
   // +-----------+
 
   /** The default capacity of the initial array. */
-  static final int DEFAULT_CAPACITY = 16;
+  public static final int DEFAULT_CAPACITY = 16;
+
+  /** The default factor by which the array grows when it fills. */
+  public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+
+  /** The size above which we keep an index rather than scanning for keys. */
+  static final int INDEX_THRESHOLD = 8;
 
   // +--------+------------------------------------------------------
   // | Fields |
@@ -28,25 +46,96 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
   /** The size of the associative array (the number of key/value pairs). */
   int size;
 
+  /** The number of pairs the array can hold before expanding. */
   int curCapacity;
 
+  /** The factor by which the capacity grows when the array fills. */
+  double growthFactor;
+
   /** The array of key/value pairs. */
   KVPair<K, V>[] pairs;
 
+  /** The number of structural modifications so far, so that iterators can fail fast. */
+  int modCount;
+
+  /**
+   * The number of snapshots that may still be reading `pairs`. If there are any, we copy the
+   * array before writing to it. Pairs are never updated in place, so a copy of the array is a
+   * full snapshot. A snapshot stops counting once it is done with the array.
+   */
+  int snapshots;
+
+  /**
+   * The position of each key in `pairs`, so that lookups, updates and removals take O(1) average
+   * time. Null until the array grows past INDEX_THRESHOLD pairs, since scanning a few pairs is
+   * faster than hashing.
+   */
+  Map<K, Integer> index;
+
+  /**
+   * Whether the index is a HardenedHashMap, which keys chosen to collide cannot slow down.
+   */
+  final boolean hardened;
+
 
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
 
   /** Create a new, empty associative array. */
-  @SuppressWarnings({"unchecked"})
   public AssociativeArray() {
-    // Creating new arrays is sometimes a PITA.
-    this.pairs = (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(), DEFAULT_CAPACITY);
-    this.size = 0;
-    curCapacity = DEFAULT_CAPACITY;
+    this(DEFAULT_CAPACITY);
   } // AssociativeArray()
 
+  /**
+   * Create a new, empty associative array that can hold initialCapacity pairs before expanding.
+   *
+   * @param initialCapacity The initial capacity.
+   * @throws IllegalArgumentException If initialCapacity is negative.
+   */
+  public AssociativeArray(int initialCapacity) {
+    this(initialCapacity, DEFAULT_GROWTH_FACTOR);
+  } // AssociativeArray(int)
+
+  /**
+   * Create a new, empty associative array with the given initial capacity whose capacity is
+   * multiplied by growthFactor each time it fills.
+   *
+   * @param initialCapacity The initial capacity.
+   * @param growthFactor The growth factor; must be greater than 1.
+   * @throws IllegalArgumentException If initialCapacity is negative or growthFactor is not
+   *   greater than 1.
+   */
+  public AssociativeArray(int initialCapacity, double growthFactor) {
+    this(initialCapacity, growthFactor, false);
+  } // AssociativeArray(int, double)
+
+  /**
+   * Create a new, empty associative array with the given initial capacity and growth factor
+   * that, if hardened, indexes its keys with a HardenedHashMap. A hardened array is a little
+   * slower, but keys crafted to collide cannot make it scan: every operation takes O(log n)
+   * time at worst. Use one when the keys come from people you do not trust.
+   *
+   * @param initialCapacity The initial capacity.
+   * @param growthFactor The growth factor; must be greater than 1.
+   * @param hardened Whether to resist keys crafted to collide.
+   * @throws IllegalArgumentException If initialCapacity is negative or growthFactor is not
+   *   greater than 1.
+   */
+  public AssociativeArray(int initialCapacity, double growthFactor, boolean hardened) {
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("Negative capacity: " + initialCapacity);
+    } // if
+    if (!(growthFactor > 1.0)) {
+      throw new IllegalArgumentException("Growth factor must exceed 1: " + growthFactor);
+    } // if
+    this.pairs = newPairs(initialCapacity);
+    this.size = 0;
+    this.curCapacity = initialCapacity;
+    this.growthFactor = growthFactor;
+    this.hardened = hardened;
+  } // AssociativeArray(int, double, boolean)
+
   // +------------------+--------------------------------------------
   // | Standard Methods |
   // +------------------+
@@ -57,17 +146,18 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
    * @return a new copy of the array
    */
   public AssociativeArray<K, V> clone() {
-    AssociativeArray<K, V> clone = new AssociativeArray<K, V>();
-
-    for (KVPair<K, V> pair : this.pairs) {
-      try {
-        if (pair != null) {
-          clone.set(pair.key, pair.val);
-        } // if
-      } catch (Exception e) {
-        // Do nothing.
-      } // try-catch
+    AssociativeArray<K, V> clone =
+        new AssociativeArray<K, V>(this.curCapacity, this.growthFactor, this.hardened);
+    // The keys are already distinct, so we can copy the pairs directly rather than set each one.
+    for (int i = 0; i < this.size; i++) {
+      clone.pairs[i] = this.pairs[i].clone();
     } // for
+    clone.size = this.size;
+    if (this.index != null) {
+      clone.index = this.hardened
+          ? new HardenedHashMap<K, Integer>(this.index)
+          : new HashMap<K, Integer>(this.index);
+    } // if
     return clone;
   } // clone()
 
@@ -77,23 +167,60 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
    * @return a string of the form "{Key0:Value0, Key1:Value1, ... KeyN:ValueN}"
    */
   public String toString() {
-    if (this.size >= 1) {
-      String rString = "";
-      rString += "{";
-      for (int i = 0; i < this.size - 1; i++) {
-        rString += this.pairs[i].key + ":" + this.pairs[i].val + ", ";
-      } // for
-      rString += this.pairs[this.size - 1].key + ":" + this.pairs[this.size - 1].val + "}";
-      return rString;
-    } else {
-      return "{}";
-    } // if
+    StringBuilder builder = new StringBuilder();
+    try {
+      this.writeTo(builder);
+    } catch (IOException e) {
+      // Do nothing; a StringBuilder never throws.
+    } // try-catch
+    return builder.toString();
   } // toString()
 
   // +----------------+----------------------------------------------
   // | Public Methods |
   // +----------------+
 
+  /**
+   * Write the array to out in the same form as toString, without building the whole string
+   * first.
+   *
+   * @param out Where to write the array.
+   * @throws IOException If out cannot be written.
+   */
+  public void writeTo(Appendable out) throws IOException {
+    out.append('{');
+    for (int i = 0; i < this.size; i++) {
+      if (i > 0) {
+        out.append(", ");
+      } // if
+      out.append(String.valueOf(this.pairs[i].key)).append(':');
+      out.append(String.valueOf(this.pairs[i].val));
+    } // for
+    out.append('}');
+  } // writeTo(Appendable)
+
+  /**
+   * Write each key/value pair to out using encoder, in iteration order. Writes a snapshot of the
+   * array, so changes made while writing do not corrupt the output.
+   *
+   * @param out Where to write the pairs.
+   * @param encoder How to write each pair.
+   * @throws IOException If out cannot be written.
+   */
+  public void writeTo(Appendable out, PairEncoder<? super K, ? super V> encoder)
+      throws IOException {
+    KVPair<K, V>[] snapshot = this.pairs;
+    int snapshotSize = this.size;
+    this.snapshots += 1;
+    try {
+      for (int i = 0; i < snapshotSize; i++) {
+        encoder.encode(snapshot[i].key, snapshot[i].val, out);
+      } // for
+    } finally {
+      this.release(snapshot);
+    } // try-finally
+  } // writeTo(Appendable, PairEncoder)
+
   /**
    * Set the value associated with key to value. Future calls to get(key) will return value.
    *
@@ -104,22 +231,99 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
   public void set(K key, V value) throws NullKeyException {
     if (key == null) {
       throw new NullKeyException("Null key Exception.");
-    } else if (hasKey(key)) {
-      try {
-        this.pairs[find(key)].val = value;
-      } catch (KeyNotFoundException e) {
-        // Do nothing.
-      } // try-catch
+    } // if
+    int existing = indexOf(key);
+    if (existing >= 0) {
+      this.prepareWrite();
+      this.pairs[existing] = new KVPair<K, V>(key, value);
     } else {
       // check for expanding the aa
       if (this.size == pairs.length) {
         this.expand();
       } // if
+      this.prepareWrite();
       this.pairs[this.size] = new KVPair<K, V>(key, value);
       this.size += 1;
+      this.modCount += 1;
+      if (this.index != null) {
+        this.index.put(key, this.size - 1);
+      } else if (this.size > INDEX_THRESHOLD) {
+        this.index = this.buildIndex(0);
+      } // if
     } // if
   } // set(K,V)
 
+  /**
+   * Set every key/value pair produced by source. Equivalent to calling set on each pair in turn
+   * (later duplicates win), but the storage is presized once from sizeHint and duplicates are
+   * detected with a temporary index rather than a scan per insert, so a bulk load is linear.
+   *
+   * @param source The pairs to add.
+   * @param sizeHint The expected number of pairs; used only to presize the storage.
+   * @throws NullKeyException If one of the pairs has a null key. Pairs before it remain set.
+   */
+  public void putAll(Iterator<KVPair<K, V>> source, int sizeHint) throws NullKeyException {
+    this.ensureCapacity(this.size + Math.max(sizeHint, 0));
+    Map<K, Integer> bulkIndex = this.buildIndex(sizeHint);
+    try {
+      while (source.hasNext()) {
+        KVPair<K, V> pair = source.next();
+        this.bulkSet(bulkIndex, pair.key, pair.val);
+      } // while
+    } finally {
+      this.keepIndex(bulkIndex);
+    } // try-finally
+  } // putAll(Iterator, int)
+
+  /**
+   * Set every key/value pair in other.
+   *
+   * @param other The associative array whose pairs we are copying.
+   */
+  public void putAll(AssociativeArray<K, V> other) {
+    try {
+      this.putAll(other.iterator(), other.size());
+    } catch (NullKeyException e) {
+      // Do nothing; other cannot contain a null key.
+    } // try-catch
+  } // putAll(AssociativeArray)
+
+  /**
+   * Set keys[i] to values[i] for each i. Later duplicates win, as with set.
+   *
+   * @param keys The keys we are setting.
+   * @param values The values of those keys.
+   * @throws NullKeyException If one of the keys is null. Keys before it remain set.
+   * @throws IllegalArgumentException If keys and values differ in length.
+   */
+  public void putAll(K[] keys, V[] values) throws NullKeyException {
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("Mismatched keys and values.");
+    } // if
+    this.ensureCapacity(this.size + keys.length);
+    Map<K, Integer> bulkIndex = this.buildIndex(keys.length);
+    try {
+      for (int i = 0; i < keys.length; i++) {
+        this.bulkSet(bulkIndex, keys[i], values[i]);
+      } // for
+    } finally {
+      this.keepIndex(bulkIndex);
+    } // try-finally
+  } // putAll(K[], V[])
+
+  /**
+   * Make sure the array can hold at least minCapacity pairs without expanding.
+   *
+   * @param minCapacity The number of pairs we expect to hold.
+   */
+  public void ensureCapacity(int minCapacity) {
+    if (minCapacity > this.pairs.length) {
+      this.pairs = java.util.Arrays.copyOf(this.pairs, minCapacity);
+      curCapacity = minCapacity;
+      this.snapshots = 0;
+    } // if
+  } // ensureCapacity(int)
+
   /**
    * Get the value associated with key.
    *
@@ -128,11 +332,11 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
    * @throws KeyNotFoundException when the key is null or does not appear in the associative array.
    */
   public V get(K key) throws KeyNotFoundException {
-    try {
-      return this.pairs[find(key)].val;
-    } catch (KeyNotFoundException e) {
+    int position = indexOf(key);
+    if (position < 0) {
       throw new KeyNotFoundException();
-    } // try-catch
+    } // if
+    return this.pairs[position].val;
   } // get(K)
 
   /**
@@ -143,18 +347,7 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
    * @return true if the key appears and false otherwise.
    */
   public boolean hasKey(K key) {
-    if (key == null) {
-      return false;
-    } // if
-
-    for (KVPair<K, V> pair : this.pairs) {
-      if (pair == null) {
-        break;
-      } else if (pair.key.equals(key)) {
-        return true;
-      } // if
-    } // for
-    return false;
+    return indexOf(key) >= 0;
   } // hasKey(K)
 
   /**
@@ -164,21 +357,37 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
    * @param key The key to remove.
    */
   public void remove(K key) {
-    if (hasKey(key)) {
-      try {
-        int overWrittenIndex = find(key);
-        int swappingIndex = this.size - 1;
-        if (swappingIndex >= 0) {
-          this.pairs[overWrittenIndex] = this.pairs[swappingIndex];
-        } // if
-        pairs[swappingIndex] = null;
-        this.size -= 1;
-      } catch (KeyNotFoundException e) {
-        // Does nothing.
-      } // try-catch
+    int overWrittenIndex = indexOf(key);
+    if (overWrittenIndex < 0) {
+      return;
+    } // if
+    int swappingIndex = this.size - 1;
+    this.prepareWrite();
+    this.pairs[overWrittenIndex] = this.pairs[swappingIndex];
+    pairs[swappingIndex] = null;
+    this.size -= 1;
+    this.modCount += 1;
+    if (this.index != null) {
+      this.index.remove(key);
+      if (overWrittenIndex < this.size) {
+        this.index.put(this.pairs[overWrittenIndex].key, overWrittenIndex);
+      } // if
     } // if
   } // remove(K)
 
+  /**
+   * Get the key at a position in iteration order. Removing a key moves the last key into its
+   * position, so keyAt(size() - 1) tells you which key a removal will move.
+   *
+   * @param position The position, from 0 to size() - 1.
+   * @return The key at that position.
+   * @throws IndexOutOfBoundsException If position is not a valid position.
+   */
+  public K keyAt(int position) {
+    Objects.checkIndex(position, this.size);
+    return this.pairs[position].key;
+  } // keyAt(int)
+
   /**
    * Determine how many key/value pairs are in the associative array.
    *
@@ -188,33 +397,235 @@ public class AssociativeArray<K, V> implements Iterable<KVPair<K, V>> {
     return this.size;
   } // size()
 
+  /**
+   * Get a sequential stream of the key/value pairs.
+   *
+   * @return the stream.
+   */
+  public Stream<KVPair<K, V>> stream() {
+    return StreamSupport.stream(this.spliterator(), false);
+  } // stream()
+
+  /**
+   * Get a possibly parallel stream of the key/value pairs.
+   *
+   * @return the stream.
+   */
+  public Stream<KVPair<K, V>> parallelStream() {
+    return StreamSupport.stream(this.spliterator(), true);
+  } // parallelStream()
+
+  /**
+   * Perform action on each key/value pair, in parallel if the array has at least
+   * parallelismThreshold pairs. Use Long.MAX_VALUE to force sequential processing and 1 for
+   * maximal parallelism.
+   *
+   * @param parallelismThreshold The size at which we switch to parallel processing.
+   * @param action The action to perform.
+   */
+  public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+    this.stream(parallelismThreshold).forEach((pair) -> action.accept(pair.key, pair.val));
+  } // forEach(long, BiConsumer)
+
+  /**
+   * Find a non-null result of applying searchFunction to some key/value pair, in parallel if the
+   * array has at least parallelismThreshold pairs. When run in parallel, the result may come from
+   * any matching pair, not necessarily the first.
+   *
+   * @param parallelismThreshold The size at which we switch to parallel processing.
+   * @param searchFunction A function that returns a non-null result on success, else null.
+   * @param <U> The type of the result.
+   * @return a non-null result, or null if there is none.
+   */
+  public <U> U search(long parallelismThreshold,
+      BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+    return this.stream(parallelismThreshold)
+        .<U>map((pair) -> searchFunction.apply(pair.key, pair.val))
+        .filter(Objects::nonNull)
+        .findAny()
+        .orElse(null);
+  } // search(long, BiFunction)
+
+  /**
+   * Combine the results of applying transformer to every key/value pair using reducer, in
+   * parallel if the array has at least parallelismThreshold pairs. Null results of transformer
+   * are skipped.
+   *
+   * @param parallelismThreshold The size at which we switch to parallel processing.
+   * @param transformer A function that returns the transformation of a pair, or null to skip it.
+   * @param reducer An associative function combining two results.
+   * @param <U> The type of the result.
+   * @return the combined result, or null if there were no non-null transformations.
+   */
+  public <U> U reduce(long parallelismThreshold,
+      BiFunction<? super K, ? super V, ? extends U> transformer,
+      BiFunction<? super U, ? super U, ? extends U> reducer) {
+    return this.stream(parallelismThreshold)
+        .<U>map((pair) -> transformer.apply(pair.key, pair.val))
+        .filter(Objects::nonNull)
+        .reduce((left, right) -> reducer.apply(left, right))
+        .orElse(null);
+  } // reduce(long, BiFunction, BiFunction)
+
+  /**
+   * Determine how many key/value pairs the array can hold before it next expands.
+   *
+   * @return The current capacity.
+   */
+  public int capacity() {
+    return this.curCapacity;
+  } // capacity()
+
+  /**
+   * Shrink the underlying array so that its capacity equals its size, releasing the space left
+   * behind by removals.
+   */
+  public void trimToSize() {
+    if (this.curCapacity > this.size) {
+      this.pairs = java.util.Arrays.copyOf(this.pairs, this.size);
+      curCapacity = this.size;
+      this.snapshots = 0;
+    } // if
+  } // trimToSize()
+
   // +-----------------+---------------------------------------------
   // | Private Methods |
   // +-----------------+
 
-  /** Expand the underlying array. */
+  /** Expand the underlying array by the growth factor (and by at least one slot). */
   void expand() {
-    int newCapacity = this.size * 2;
+    int newCapacity = Math.max(this.pairs.length + 1, (int) (this.pairs.length * growthFactor));
     this.pairs = java.util.Arrays.copyOf(this.pairs, newCapacity);
     curCapacity = newCapacity;
+    this.snapshots = 0;
   } // expand()
 
+  /** Copy `pairs` if a snapshot may still be reading it, so that we can safely write to it. */
+  void prepareWrite() {
+    if (this.snapshots > 0) {
+      this.pairs = this.pairs.clone();
+      this.snapshots = 0;
+    } // if
+  } // prepareWrite()
+
+  /**
+   * Note that a snapshot is done reading an array of pairs. If a write has since copied
+   * `pairs`, the snapshot was not counted against the copy, so there is nothing to do.
+   *
+   * @param snapshot The array the snapshot read.
+   */
+  void release(KVPair<K, V>[] snapshot) {
+    if (snapshot == this.pairs && this.snapshots > 0) {
+      this.snapshots -= 1;
+    } // if
+  } // release(KVPair[])
+
+  /**
+   * Get a stream of the pairs that is parallel only if we hold at least parallelismThreshold
+   * pairs.
+   *
+   * @param parallelismThreshold The size at which we switch to parallel processing.
+   * @return the stream.
+   */
+  Stream<KVPair<K, V>> stream(long parallelismThreshold) {
+    return StreamSupport.stream(this.spliterator(), this.size >= parallelismThreshold);
+  } // stream(long)
+
+  /**
+   * Create a new array of pairs.
+   *
+   * @param capacity The length of the new array.
+   * @return the array.
+   */
+  @SuppressWarnings({"unchecked"})
+  static <K, V> KVPair<K, V>[] newPairs(int capacity) {
+    // Creating new arrays is sometimes a PITA.
+    return (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(), capacity);
+  } // newPairs(int)
+
+  /**
+   * Get an index from each key to its position in `pairs`: our own index if we keep one, or
+   * a temporary one otherwise.
+   *
+   * @param expected The number of keys we expect to add to the index.
+   * @return the index.
+   */
+  Map<K, Integer> buildIndex(int expected) {
+    if (this.index != null) {
+      return this.index;
+    } // if
+    int capacity = this.size + Math.max(expected, 0);
+    Map<K, Integer> built = this.hardened
+        ? new HardenedHashMap<K, Integer>(capacity)
+        : new HashMap<K, Integer>(2 * capacity);
+    for (int i = 0; i < this.size; i++) {
+      built.put(this.pairs[i].key, i);
+    } // for
+    return built;
+  } // buildIndex(int)
+
+  /**
+   * Keep an index built for a bulk operation if we are now large enough to need one.
+   *
+   * @param built An index of every key, kept up to date by bulkSet.
+   */
+  void keepIndex(Map<K, Integer> built) {
+    if (this.index == null && this.size > INDEX_THRESHOLD) {
+      this.index = built;
+    } // if
+  } // keepIndex(Map)
+
+  /**
+   * Set key to value, using index (rather than a scan) to find an existing entry.
+   *
+   * @param index The index built by buildIndex; updated for new keys.
+   * @param key The key whose value we are setting.
+   * @param value The value of that key.
+   * @throws NullKeyException If key is null.
+   */
+  void bulkSet(Map<K, Integer> index, K key, V value) throws NullKeyException {
+    if (key == null) {
+      throw new NullKeyException("Null key Exception.");
+    } // if
+    Integer existing = index.get(key);
+    if (existing != null) {
+      this.prepareWrite();
+      this.pairs[existing] = new KVPair<K, V>(key, value);
+    } else {
+      if (this.size == pairs.length) {
+        this.expand();
+      } // if
+      this.prepareWrite();
+      this.pairs[this.size] = new KVPair<K, V>(key, value);
+      index.put(key, this.size);
+      this.size += 1;
+      this.modCount += 1;
+    } // if
+  } // bulkSet(Map, K, V)
+
   /**
-   * Find the index of the first entry in `pairs` that contains key. If no such entry is found,
-   * throws an exception.
+   * Find the index of the entry in `pairs` that contains key. A miss is an ordinary answer
+   * here (every new key is one), so it costs no exception; only the public methods throw.
    *
    * @param key The key of the entry.
-   * @return The index of the key, if found.
-   * @throws KeyNotFoundException If the key does not appear in the associative array.
+   * @return The index of the key, or -1 if it is null or does not appear.
    */
-  int find(K key) throws KeyNotFoundException {
+  int indexOf(K key) {
+    if (key == null) {
+      return -1;
+    } // if
+    if (this.index != null) {
+      Integer position = this.index.get(key);
+      return (position == null) ? -1 : position;
+    } // if
     for (int i = 0; i < this.size; i++) {
-      if (pairs[i].key.equals(key)) {
+      // Interned keys usually match by reference, so check that before calling equals
+      if (pairs[i].key == key || pairs[i].key.equals(key)) {
         return i;
       } // if
     } // for
-    throw new KeyNotFoundException();
-  } // find(K)
+    return -1;
+  } // indexOf(K)
 
 
 /**
@@ -230,6 +641,7 @@ public Iterator<KVPair<K, V>> iterator() {
   return new Iterator<KVPair<K, V>>() {
     int curIndex = 0;
     int size = AssociativeArray.this.size;
+    int expectedModCount = modCount;
 
     /**
      * Returns boolean indicating if there is another KVPair<K,V>
@@ -244,9 +656,17 @@ public Iterator<KVPair<K, V>> iterator() {
     /**
      * Returns next pair in associative array.
      * @return KVPair<K,V>
+     * @throws ConcurrentModificationException if a pair was added or removed since
+     * the iterator was created
      * */
     @Override
     public KVPair<K, V> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      } // if
+      if (curIndex >= size) {
+        throw new NoSuchElementException();
+      } // if
       return pairs[curIndex++];
     } // next()
 
@@ -259,4 +679,131 @@ public Iterator<KVPair<K, V>> iterator() {
     } // remove()
   };
 } // Iterator()
+
+/**
+ * Returns an iterator over a snapshot of the current pairs. Later changes to the
+ * array are not seen by the iterator and do not disturb it. Taking the snapshot
+ * is free; the array is copied once, by the next write, only if one happens
+ * before the iterator is exhausted.
+ * @return Iterator<KVPair<K, V>>
+ * */
+public Iterator<KVPair<K, V>> snapshotIterator() {
+  KVPair<K, V>[] snapshot = this.pairs;
+  int snapshotSize = this.size;
+  this.snapshots += 1;
+
+  /**
+   * Iterator object with anonymous class declaration.
+   */
+  return new Iterator<KVPair<K, V>>() {
+    int curIndex = 0;
+    boolean released = false;
+
+    @Override
+    public boolean hasNext() {
+      if (curIndex < snapshotSize) {
+        return true;
+      } // if
+      if (!released) {
+        // Exhausted, so later writes need not copy the array for us
+        released = true;
+        release(snapshot);
+      } // if
+      return false;
+    } // hasNext()
+
+    @Override
+    public KVPair<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      } // if
+      KVPair<K, V> pair = snapshot[curIndex++];
+      // Release the array as soon as the last pair is handed out
+      hasNext();
+      return pair;
+    } // next()
+  };
+} // snapshotIterator()
+
+/**
+ * Spliterator() implementation for Associative array. The spliterator is sized and
+ * splits by halving its range of `pairs`.
+ * @return Spliterator<KVPair<K, V>>
+ * */
+@Override
+public Spliterator<KVPair<K, V>> spliterator() {
+  return new PairSpliterator(0, this.size, this.modCount);
+} // spliterator()
+
+/**
+ * A spliterator over the range [lo, hi) of `pairs`.
+ */
+class PairSpliterator implements Spliterator<KVPair<K, V>> {
+  /** The index of the next pair to visit. */
+  int lo;
+
+  /** One past the index of the last pair to visit. */
+  final int hi;
+
+  /** The modCount when the spliterator was created. */
+  final int expectedModCount;
+
+  /**
+   * Create a spliterator over [lo, hi).
+   * @param lo the first index
+   * @param hi one past the last index
+   * @param expectedModCount the modCount the array should keep
+   * */
+  PairSpliterator(int lo, int hi, int expectedModCount) {
+    this.lo = lo;
+    this.hi = hi;
+    this.expectedModCount = expectedModCount;
+  } // PairSpliterator(int, int, int)
+
+  @Override
+  public boolean tryAdvance(Consumer<? super KVPair<K, V>> action) {
+    if (modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    } // if
+    if (lo < hi) {
+      action.accept(pairs[lo++]);
+      return true;
+    } // if
+    return false;
+  } // tryAdvance(Consumer)
+
+  @Override
+  public void forEachRemaining(Consumer<? super KVPair<K, V>> action) {
+    KVPair<K, V>[] local = pairs;
+    for (int i = lo; i < hi; i++) {
+      action.accept(local[i]);
+    } // for
+    lo = hi;
+    if (modCount != expectedModCount) {
+      throw new ConcurrentModificationException();
+    } // if
+  } // forEachRemaining(Consumer)
+
+  @Override
+  public Spliterator<KVPair<K, V>> trySplit() {
+    int mid = (lo + hi) >>> 1;
+    if (mid <= lo) {
+      return null;
+    } // if
+    Spliterator<KVPair<K, V>> prefix = new PairSpliterator(lo, mid, expectedModCount);
+    lo = mid;
+    return prefix;
+  } // trySplit()
+
+  @Override
+  public long estimateSize() {
+    return hi - lo;
+  } // estimateSize()
+
+  @Override
+  public int characteristics() {
+    return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED
+        | Spliterator.NONNULL | Spliterator.DISTINCT;
+  } // characteristics()
+} // class PairSpliterator
 } // class AssociativeArray
@@ -0,0 +1,433 @@
+package edu.grinnell.csc207.util;
+
+import java.security.SecureRandom;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A hash map for keys chosen by people who may want it to be slow. A map whose keys come from
+ * users can be flooded with keys that all land in one bucket, making every lookup a scan of
+ * them all. This map resists that in two ways.
+ * <ul>
+ * <li>Each map hashes with its own random seed. String keys are hashed from their characters
+ * rather than from hashCode, so keys that collide in one map, or under String.hashCode, are
+ * no more likely than any others to collide in another.</li>
+ * <li>A bucket that still fills up is turned into a balanced tree, as in HashMap, so even
+ * keys that all collide cost O(log n) per operation rather than O(n). Trees are only used
+ * when the bucket's keys are all of one Comparable class, whose natural ordering must be
+ * consistent with equals (as String's is).</li>
+ * </ul>
+ * Null keys are not permitted. Iteration order is unspecified, and iterators do not support
+ * remove.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class HardenedHashMap<K, V> extends AbstractMap<K, V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The number of keys in a bucket at which it becomes a tree. */
+  static final int TREEIFY_THRESHOLD = 8;
+
+  /** The smallest number of buckets. */
+  static final int MIN_CAPACITY = 16;
+
+  /** Mixed into every seed, so that seeds cannot be predicted from the time. */
+  static final long SECRET = new SecureRandom().nextLong();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** This map's seed. */
+  final long seed;
+
+  /** The buckets: each is null, a chain of Nodes, or a TreeMap from key to Node. */
+  Object[] table;
+
+  /** The number of keys. */
+  int size;
+
+  /**
+   * One key/value pair in a bucket.
+   */
+  static final class Node<K, V> implements Map.Entry<K, V> {
+    final int hash;
+    final K key;
+    V val;
+    Node<K, V> next;
+
+    Node(int hash, K key, V val, Node<K, V> next) {
+      this.hash = hash;
+      this.key = key;
+      this.val = val;
+      this.next = next;
+    } // Node(int, K, V, Node)
+
+    public K getKey() {
+      return key;
+    } // getKey()
+
+    public V getValue() {
+      return val;
+    } // getValue()
+
+    public V setValue(V value) {
+      V old = val;
+      val = value;
+      return old;
+    } // setValue(V)
+  } // class Node
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /** Create a new, empty map. */
+  public HardenedHashMap() {
+    this(MIN_CAPACITY);
+  } // HardenedHashMap()
+
+  /**
+   * Create a new, empty map that can hold expected keys without growing.
+   *
+   * @param expected The number of keys expected.
+   */
+  public HardenedHashMap(int expected) {
+    this.seed = ThreadLocalRandom.current().nextLong() ^ SECRET;
+    int capacity = MIN_CAPACITY;
+    while (capacity * 3 / 4 < expected && capacity < (1 << 30)) {
+      capacity *= 2;
+    } // while
+    this.table = new Object[capacity];
+  } // HardenedHashMap(int)
+
+  /**
+   * Create a map with the same pairs as another, but its own seed.
+   *
+   * @param other The map to copy.
+   */
+  public HardenedHashMap(Map<? extends K, ? extends V> other) {
+    this(other.size());
+    this.putAll(other);
+  } // HardenedHashMap(Map)
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Object key) {
+    return this.node(key) != null;
+  } // containsKey(Object)
+
+  @Override
+  public V get(Object key) {
+    Node<K, V> node = this.node(key);
+    return (node == null) ? null : node.val;
+  } // get(Object)
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Null key");
+    } // if
+    int hash = this.hash(key);
+    int i = hash & (this.table.length - 1);
+    Object bin = this.table[i];
+    if (bin instanceof TreeMap && !sameClass((TreeMap<?, ?>) bin, key)) {
+      // A key of another class cannot be compared with the tree's keys
+      bin = this.untreeify(i);
+    } // if
+    if (bin instanceof TreeMap) {
+      TreeMap<K, Node<K, V>> tree = (TreeMap<K, Node<K, V>>) bin;
+      Node<K, V> node = tree.get(key);
+      if (node != null) {
+        return node.setValue(value);
+      } // if
+      tree.put(key, new Node<K, V>(hash, key, value, null));
+    } else {
+      int length = 0;
+      for (Node<K, V> node = (Node<K, V>) bin; node != null; node = node.next) {
+        if (node.hash == hash && (node.key == key || node.key.equals(key))) {
+          return node.setValue(value);
+        } // if
+        length++;
+      } // for
+      this.table[i] = new Node<K, V>(hash, key, value, (Node<K, V>) bin);
+      if (length + 1 >= TREEIFY_THRESHOLD) {
+        this.treeify(i);
+      } // if
+    } // if
+    this.size += 1;
+    if (this.size > this.table.length * 3 / 4) {
+      this.resize();
+    } // if
+    return null;
+  } // put(K, V)
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    if (key == null) {
+      return null;
+    } // if
+    int hash = this.hash(key);
+    int i = hash & (this.table.length - 1);
+    Object bin = this.table[i];
+    if (bin instanceof TreeMap) {
+      TreeMap<K, Node<K, V>> tree = (TreeMap<K, Node<K, V>>) bin;
+      Node<K, V> node = sameClass(tree, key) ? tree.remove(key) : null;
+      if (node == null) {
+        return null;
+      } // if
+      if (tree.isEmpty()) {
+        this.table[i] = null;
+      } // if
+      this.size -= 1;
+      return node.val;
+    } // if
+    Node<K, V> previous = null;
+    for (Node<K, V> node = (Node<K, V>) bin; node != null; node = node.next) {
+      if (node.hash == hash && (node.key == key || node.key.equals(key))) {
+        if (previous == null) {
+          this.table[i] = node.next;
+        } else {
+          previous.next = node.next;
+        } // if
+        this.size -= 1;
+        return node.val;
+      } // if
+      previous = node;
+    } // for
+    return null;
+  } // remove(Object)
+
+  @Override
+  public void clear() {
+    this.table = new Object[MIN_CAPACITY];
+    this.size = 0;
+  } // clear()
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    return new AbstractSet<Map.Entry<K, V>>() {
+      public int size() {
+        return HardenedHashMap.this.size;
+      } // size()
+
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return HardenedHashMap.this.nodes();
+      } // iterator()
+    }; // new AbstractSet
+  } // entrySet()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Hash a key with this map's seed. Strings are hashed from their characters, so that
+   * collisions under String.hashCode carry over to no other map.
+   *
+   * @param key The key.
+   * @return the hash.
+   */
+  int hash(Object key) {
+    long h = this.seed;
+    if (key instanceof String) {
+      String str = (String) key;
+      for (int i = 0; i < str.length(); i++) {
+        h = (h ^ str.charAt(i)) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 29;
+      } // for
+      h ^= str.length();
+    } else {
+      h ^= key.hashCode();
+    } // if
+    // Finish with MurmurHash3's mixer, so that every bit of h affects the bucket
+    h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+    h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return (int) (h ^ (h >>> 33));
+  } // hash(Object)
+
+  /**
+   * Find the node for a key.
+   *
+   * @param key The key.
+   * @return the node, or null if the key is null or absent.
+   */
+  @SuppressWarnings("unchecked")
+  Node<K, V> node(Object key) {
+    if (key == null) {
+      return null;
+    } // if
+    int hash = this.hash(key);
+    Object bin = this.table[hash & (this.table.length - 1)];
+    if (bin instanceof TreeMap) {
+      TreeMap<K, Node<K, V>> tree = (TreeMap<K, Node<K, V>>) bin;
+      return sameClass(tree, key) ? tree.get(key) : null;
+    } // if
+    for (Node<K, V> node = (Node<K, V>) bin; node != null; node = node.next) {
+      if (node.hash == hash && (node.key == key || node.key.equals(key))) {
+        return node;
+      } // if
+    } // for
+    return null;
+  } // node(Object)
+
+  /**
+   * Determine whether a key is of the class of the keys in a tree, and so can be compared
+   * with them. A key of another class is not equal to any of them.
+   */
+  static boolean sameClass(TreeMap<?, ?> tree, Object key) {
+    return tree.isEmpty() || tree.firstKey().getClass() == key.getClass();
+  } // sameClass(TreeMap, Object)
+
+  /**
+   * Turn the chain in a bucket into a tree, if its keys are all of one Comparable class.
+   * <p>
+   * A bucket whose keys are of mixed or non-Comparable classes stays a chain, so the worst
+   * case there is that of an unhardened map: O(n) per operation in that bucket, and each
+   * put that finds it at the threshold scans it again here. Strings are hashed with the
+   * seed, so colliding String keys cannot be chosen in advance, but other keys are hashed
+   * from hashCode, so keys of two classes with equal hash codes (an Integer and a Long of
+   * the same value, say) always share a bucket. Adding a key of another class to a tree
+   * turns it back into a chain, which becomes a tree again only once its keys are of one
+   * class.
+   *
+   * @param i The bucket.
+   */
+  @SuppressWarnings("unchecked")
+  void treeify(int i) {
+    Node<K, V> chain = (Node<K, V>) this.table[i];
+    Class<?> keyClass = chain.key.getClass();
+    if (!Comparable.class.isAssignableFrom(keyClass)) {
+      return;
+    } // if
+    for (Node<K, V> node = chain; node != null; node = node.next) {
+      if (node.key.getClass() != keyClass) {
+        return;
+      } // if
+    } // for
+    TreeMap<K, Node<K, V>> tree = new TreeMap<K, Node<K, V>>();
+    for (Node<K, V> node = chain; node != null; node = node.next) {
+      tree.put(node.key, new Node<K, V>(node.hash, node.key, node.val, null));
+    } // for
+    this.table[i] = tree;
+  } // treeify(int)
+
+  /**
+   * Turn the tree in a bucket back into a chain.
+   *
+   * @param i The bucket.
+   * @return the chain.
+   */
+  @SuppressWarnings("unchecked")
+  Node<K, V> untreeify(int i) {
+    Node<K, V> chain = null;
+    for (Node<K, V> node : ((TreeMap<K, Node<K, V>>) this.table[i]).values()) {
+      chain = new Node<K, V>(node.hash, node.key, node.val, chain);
+    } // for
+    this.table[i] = chain;
+    return chain;
+  } // untreeify(int)
+
+  /**
+   * Double the number of buckets and redistribute the keys.
+   */
+  @SuppressWarnings("unchecked")
+  void resize() {
+    if (this.table.length >= (1 << 30)) {
+      return;
+    } // if
+    ArrayList<Node<K, V>> all = new ArrayList<Node<K, V>>(this.size);
+    Iterator<Map.Entry<K, V>> nodes = this.nodes();
+    while (nodes.hasNext()) {
+      all.add((Node<K, V>) nodes.next());
+    } // while
+    // Relink the nodes by their stored hashes, then turn long chains back into trees
+    this.table = new Object[this.table.length * 2];
+    int[] lengths = new int[this.table.length];
+    for (Node<K, V> node : all) {
+      int i = node.hash & (this.table.length - 1);
+      node.next = (Node<K, V>) this.table[i];
+      this.table[i] = node;
+      lengths[i]++;
+    } // for
+    for (int i = 0; i < lengths.length; i++) {
+      if (lengths[i] >= TREEIFY_THRESHOLD) {
+        this.treeify(i);
+      } // if
+    } // for
+  } // resize()
+
+  /**
+   * Iterate every node, bucket by bucket.
+   */
+  @SuppressWarnings("unchecked")
+  Iterator<Map.Entry<K, V>> nodes() {
+    return new Iterator<Map.Entry<K, V>>() {
+      /** The next bucket to look in. */
+      int bucket = 0;
+
+      /** The rest of the current chain, or null. */
+      Node<K, V> chain;
+
+      /** The rest of the current tree, or null. */
+      Iterator<Node<K, V>> tree;
+
+      /** The next node to return, or null if there are no more. */
+      Node<K, V> next = advance();
+
+      Node<K, V> advance() {
+        while (true) {
+          if (chain != null) {
+            Node<K, V> node = chain;
+            chain = chain.next;
+            return node;
+          } else if (tree != null && tree.hasNext()) {
+            return tree.next();
+          } else if (bucket >= table.length) {
+            return null;
+          } // if
+          Object bin = table[bucket++];
+          tree = null;
+          if (bin instanceof TreeMap) {
+            tree = ((TreeMap<K, Node<K, V>>) bin).values().iterator();
+          } else {
+            chain = (Node<K, V>) bin;
+          } // if
+        } // while
+      } // advance()
+
+      public boolean hasNext() {
+        return next != null;
+      } // hasNext()
+
+      public Map.Entry<K, V> next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        } // if
+        Node<K, V> node = next;
+        next = advance();
+        return node;
+      } // next()
+    }; // new Iterator
+  } // nodes()
+} // class HardenedHashMap
@@ -43,7 +43,7 @@ public class KVPair<K, V> {
    * @param pairValue
    *   The value of the new pair.
    */
-  KVPair(K pairKey, V pairValue) {
+  public KVPair(K pairKey, V pairValue) {
     this.key = pairKey;
     this.val = pairValue;
   } // KVPair(K,V)
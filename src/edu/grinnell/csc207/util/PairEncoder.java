@@ -0,0 +1,31 @@
+package edu.grinnell.csc207.util;
+
+import java.io.IOException;
+
+/**
+ * A way of writing key/value pairs to a stream of characters. Used by
+ * AssociativeArray.writeTo so that clients can choose the format
+ * without building intermediate strings.
+ *
+ * @param <K>
+ *   The type of the keys.
+ * @param <V>
+ *   The type of the values.
+ */
+@FunctionalInterface
+public interface PairEncoder<K, V> {
+  /**
+   * Write one key/value pair.
+   *
+   * @param key
+   *   The key of the pair.
+   * @param val
+   *   The value of the pair.
+   * @param out
+   *   Where to write the pair.
+   *
+   * @throws IOException
+   *   If out cannot be written.
+   */
+  void encode(K key, V val, Appendable out) throws IOException;
+} // interface PairEncoder
@@ -0,0 +1,372 @@
+package edu.grinnell.csc207.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from slash-separated paths (such as "img/food/plate.png") to values of type V, with the
+ * same methods as AssociativeArray. The paths are stored as a trie of segments, so a directory
+ * shared by many keys is stored once, and a lookup compares one segment at a time rather than
+ * whole paths. A lookup hashes each segment where it lies in the path and compares it in
+ * place, so it allocates nothing. Every key under a directory can be listed without looking
+ * at any other key.
+ * <p>
+ * Iteration is depth first: a key comes before the keys under it, and keys that share a
+ * directory are listed in the order their first segment below it was added.
+ *
+ * @param <V> the value type
+ */
+public class PathTrie<V> implements Iterable<KVPair<String, V>> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The character between the segments of a path. */
+  public static final char SEPARATOR = '/';
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The node for the empty path. */
+  final Node<V> root = new Node<V>(null, "");
+
+  /** The number of keys. */
+  int size;
+
+  /**
+   * One segment of a path, and the value of the path that ends there, if any. The children
+   * are found through an open-addressed table of their segments' hashes, and listed in the
+   * order they were added through a list of siblings.
+   */
+  static final class Node<V> {
+    final Node<V> parent;
+    final String segment;
+    final int hash;
+    boolean hasValue;
+    V val;
+
+    /** The children, by the hash of their segments, with linear probing; null if none */
+    Node<V>[] table;
+
+    /** The number of children */
+    int childCount;
+
+    /** The first and last children, in the order they were added */
+    Node<V> first;
+    Node<V> last;
+
+    /** The siblings added just before and just after this node */
+    Node<V> prev;
+    Node<V> next;
+
+    Node(Node<V> parent, String segment) {
+      this.parent = parent;
+      this.segment = segment;
+      this.hash = segment.hashCode();
+    } // Node(Node, String)
+
+    /**
+     * Find the child for the segment of key from start to end, whose hash is hash.
+     */
+    Node<V> child(String key, int start, int end, int hash) {
+      if (table == null) {
+        return null;
+      } // if
+      int length = end - start;
+      int mask = table.length - 1;
+      for (int slot = hash & mask; table[slot] != null; slot = (slot + 1) & mask) {
+        Node<V> child = table[slot];
+        if (child.hash == hash && child.segment.length() == length
+            && key.regionMatches(start, child.segment, 0, length)) {
+          return child;
+        } // if
+      } // for
+      return null;
+    } // child(String, int, int, int)
+
+    /**
+     * Add a child, after the others.
+     */
+    void addChild(Node<V> child) {
+      if (table == null || 2 * (childCount + 1) > table.length) {
+        @SuppressWarnings("unchecked")
+        Node<V>[] grown = (Node<V>[]) new Node<?>[(table == null) ? 4 : 2 * table.length];
+        for (Node<V> other = first; other != null; other = other.next) {
+          place(grown, other);
+        } // for
+        table = grown;
+      } // if
+      place(table, child);
+      childCount += 1;
+      child.prev = last;
+      if (last == null) {
+        first = child;
+      } else {
+        last.next = child;
+      } // if
+      last = child;
+    } // addChild(Node)
+
+    /**
+     * Remove a child, shifting back the children probed past it.
+     */
+    void removeChild(Node<V> child) {
+      int mask = table.length - 1;
+      int slot = child.hash & mask;
+      while (table[slot] != child) {
+        slot = (slot + 1) & mask;
+      } // while
+      table[slot] = null;
+      for (int next = (slot + 1) & mask; table[next] != null; next = (next + 1) & mask) {
+        Node<V> moved = table[next];
+        table[next] = null;
+        place(table, moved);
+      } // for
+      childCount -= 1;
+      if (child.prev == null) {
+        first = child.next;
+      } else {
+        child.prev.next = child.next;
+      } // if
+      if (child.next == null) {
+        last = child.prev;
+      } else {
+        child.next.prev = child.prev;
+      } // if
+      child.prev = null;
+      child.next = null;
+    } // removeChild(Node)
+
+    /**
+     * Put a node in the first free slot of a table from the slot of its hash.
+     */
+    static <V> void place(Node<V>[] table, Node<V> node) {
+      int mask = table.length - 1;
+      int slot = node.hash & mask;
+      while (table[slot] != null) {
+        slot = (slot + 1) & mask;
+      } // while
+      table[slot] = node;
+    } // place(Node[], Node)
+
+    /**
+     * Rebuild the path that ends at this node.
+     */
+    String path() {
+      if (parent == null) {
+        return segment;
+      } // if
+      StringBuilder path = new StringBuilder();
+      appendPath(path);
+      return path.toString();
+    } // path()
+
+    void appendPath(StringBuilder path) {
+      if (parent.parent != null) {
+        parent.appendPath(path);
+        path.append(SEPARATOR);
+      } // if
+      path.append(segment);
+    } // appendPath(StringBuilder)
+  } // class Node
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Set the value associated with key to value. Future calls to get(key) will return value.
+   *
+   * @param key The path whose value we are setting.
+   * @param value The value of that path.
+   * @throws NullKeyException If the client provides a null key.
+   */
+  public void set(String key, V value) throws NullKeyException {
+    if (key == null) {
+      throw new NullKeyException("Null key Exception.");
+    } // if
+    Node<V> node = find(key, true);
+    if (!node.hasValue) {
+      node.hasValue = true;
+      this.size += 1;
+    } // if
+    node.val = value;
+  } // set(String, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @param key A path.
+   * @return The corresponding value.
+   * @throws KeyNotFoundException when the key is null or does not appear in the trie.
+   */
+  public V get(String key) throws KeyNotFoundException {
+    Node<V> node = find(key, false);
+    if (node == null || !node.hasValue) {
+      throw new KeyNotFoundException();
+    } // if
+    return node.val;
+  } // get(String)
+
+  /**
+   * Determine if key appears in the trie.
+   *
+   * @param key The path we're looking for.
+   * @return true if the key appears and false otherwise.
+   */
+  public boolean hasKey(String key) {
+    Node<V> node = find(key, false);
+    return node != null && node.hasValue;
+  } // hasKey(String)
+
+  /**
+   * Remove the value associated with a key, and any directories left empty. If the key does not
+   * appear in the trie, does nothing.
+   *
+   * @param key The path to remove.
+   */
+  public void remove(String key) {
+    Node<V> node = find(key, false);
+    if (node == null || !node.hasValue) {
+      return;
+    } // if
+    node.hasValue = false;
+    node.val = null;
+    this.size -= 1;
+    while (node.parent != null && !node.hasValue
+        && node.childCount == 0) {
+      node.parent.removeChild(node);
+      node = node.parent;
+    } // while
+  } // remove(String)
+
+  /**
+   * Determine how many keys are in the trie.
+   *
+   * @return The number of keys.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Iterate every key/value pair.
+   *
+   * @return an iterator over the pairs.
+   */
+  public Iterator<KVPair<String, V>> iterator() {
+    return under(this.root);
+  } // iterator()
+
+  /**
+   * Iterate the key/value pairs whose keys are prefix or lie under the directory prefix. The
+   * prefix is matched segment by segment: "img/food" matches "img/food/plate.png" but not
+   * "img/foodstuff.png". A trailing separator is ignored.
+   *
+   * @param prefix The directory.
+   * @return an iterator over the pairs under it.
+   */
+  public Iterator<KVPair<String, V>> withPrefix(String prefix) {
+    if (prefix == null) {
+      return under(null);
+    } // if
+    if (!prefix.isEmpty() && prefix.charAt(prefix.length() - 1) == SEPARATOR) {
+      prefix = prefix.substring(0, prefix.length() - 1);
+    } // if
+    return under(find(prefix, false));
+  } // withPrefix(String)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the node for a path, one segment at a time.
+   *
+   * @param key The path.
+   * @param create Whether to add nodes for missing segments.
+   * @return the node, or null if there is none and create is false.
+   */
+  Node<V> find(String key, boolean create) {
+    if (key == null) {
+      return null;
+    } // if
+    Node<V> node = this.root;
+    if (key.isEmpty()) {
+      return node;
+    } // if
+    int start = 0;
+    while (node != null) {
+      // Find the end of the segment and hash it as String.hashCode would, in one pass
+      int end = start;
+      int hash = 0;
+      while (end < key.length() && key.charAt(end) != SEPARATOR) {
+        hash = 31 * hash + key.charAt(end);
+        end++;
+      } // while
+      Node<V> child = node.child(key, start, end, hash);
+      if (child == null && create) {
+        child = new Node<V>(node, key.substring(start, end));
+        node.addChild(child);
+      } // if
+      node = child;
+      if (end == key.length()) {
+        break;
+      } // if
+      start = end + 1;
+    } // while
+    return node;
+  } // find(String, boolean)
+
+  /**
+   * Iterate the pairs at and below a node, depth first.
+   *
+   * @param top The node, or null for no pairs.
+   * @return the iterator.
+   */
+  Iterator<KVPair<String, V>> under(Node<V> top) {
+    return new Iterator<KVPair<String, V>>() {
+      /** The nodes still to visit, next on top. */
+      final ArrayDeque<Node<V>> pending = new ArrayDeque<Node<V>>();
+
+      /** The next node with a value, or null if there are no more. */
+      Node<V> next;
+
+      {
+        if (top != null) {
+          pending.push(top);
+        } // if
+        advance();
+      } // initializer
+
+      void advance() {
+        next = null;
+        while (next == null && !pending.isEmpty()) {
+          Node<V> node = pending.pop();
+          // Push in reverse so that the first child is visited first
+          for (Node<V> child = node.last; child != null; child = child.prev) {
+            pending.push(child);
+          } // for
+          if (node.hasValue) {
+            next = node;
+          } // if
+        } // while
+      } // advance()
+
+      public boolean hasNext() {
+        return next != null;
+      } // hasNext()
+
+      public KVPair<String, V> next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        } // if
+        KVPair<String, V> pair = new KVPair<String, V>(next.path(), next.val);
+        advance();
+        return pair;
+      } // next()
+    }; // new Iterator
+  } // under(Node)
+} // class PathTrie
@@ -0,0 +1,322 @@
+package edu.grinnell.csc207.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable map from keys of type K to values of type V. Each "update" returns a new map
+ * and leaves the old one unchanged. The new map shares every node of the old one except
+ * those on the path to the changed key, so an update costs O(log n) time and memory rather
+ * than a full copy, and keeping many versions around is cheap.
+ * <p>
+ * The map is an AVL tree ordered by key, and iterates in key order.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class PersistentMap<K extends Comparable<? super K>, V>
+    implements Iterable<KVPair<K, V>> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** An estimate of the bytes of memory taken by one node. */
+  public static final int NODE_BYTES = 40;
+
+  /** The empty map. */
+  @SuppressWarnings("rawtypes")
+  static final PersistentMap EMPTY = new PersistentMap<>(null);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /** The root of the tree, or null if the map is empty. */
+  final Node<K, V> root;
+
+  /**
+   * One node of the tree. Nodes are never changed once built.
+   */
+  static final class Node<K, V> {
+    final K key;
+    final V val;
+    final Node<K, V> left;
+    final Node<K, V> right;
+    final int height;
+    final int size;
+
+    Node(K key, V val, Node<K, V> left, Node<K, V> right) {
+      this.key = key;
+      this.val = val;
+      this.left = left;
+      this.right = right;
+      this.height = Math.max(height(left), height(right)) + 1;
+      this.size = size(left) + size(right) + 1;
+    } // Node(K, V, Node, Node)
+  } // class Node
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a map with the given tree.
+   *
+   * @param root the root of the tree.
+   */
+  private PersistentMap(Node<K, V> root) {
+    this.root = root;
+  } // PersistentMap(Node)
+
+  /**
+   * Get the empty map.
+   *
+   * @param <K> the key type.
+   * @param <V> the value type.
+   * @return a map with no keys.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable<? super K>, V> PersistentMap<K, V> empty() {
+    return (PersistentMap<K, V>) EMPTY;
+  } // empty()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Get a map like this one but with key mapped to value.
+   *
+   * @param key the key.
+   * @param value the value.
+   * @return the new map (or this map, if key already maps to value).
+   * @throws NullKeyException if the key is null.
+   */
+  public PersistentMap<K, V> set(K key, V value) throws NullKeyException {
+    if (key == null) {
+      throw new NullKeyException();
+    } // if
+    Node<K, V> newRoot = set(root, key, value);
+    return (newRoot == root) ? this : new PersistentMap<K, V>(newRoot);
+  } // set(K, V)
+
+  /**
+   * Get a map like this one but without key.
+   *
+   * @param key the key to remove.
+   * @return the new map (or this map, if it does not contain key).
+   */
+  public PersistentMap<K, V> remove(K key) {
+    if (key == null) {
+      return this;
+    } // if
+    Node<K, V> newRoot = remove(root, key);
+    return (newRoot == root) ? this : new PersistentMap<K, V>(newRoot);
+  } // remove(K)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @param key a key.
+   * @return the corresponding value.
+   * @throws KeyNotFoundException when the key is null or does not appear in the map.
+   */
+  public V get(K key) throws KeyNotFoundException {
+    Node<K, V> node = find(key);
+    if (node == null) {
+      throw new KeyNotFoundException();
+    } // if
+    return node.val;
+  } // get(K)
+
+  /**
+   * Determine if key appears in the map.
+   *
+   * @param key the key to look for.
+   * @return true if the key appears and false otherwise.
+   */
+  public boolean hasKey(K key) {
+    return find(key) != null;
+  } // hasKey(K)
+
+  /**
+   * Determine how many key/value pairs are in the map.
+   *
+   * @return the number of key/value pairs.
+   */
+  public int size() {
+    return size(root);
+  } // size()
+
+  /**
+   * Estimate the bytes of memory an update to this map creates: one node per level of the
+   * tree, plus perhaps one for rebalancing.
+   *
+   * @return the estimate.
+   */
+  public long updateBytes() {
+    return (long) (height(root) + 1) * NODE_BYTES;
+  } // updateBytes()
+
+  /**
+   * Iterate the key/value pairs in key order.
+   *
+   * @return an iterator over the pairs.
+   */
+  public Iterator<KVPair<K, V>> iterator() {
+    return new Iterator<KVPair<K, V>>() {
+      final ArrayDeque<Node<K, V>> path = descendLeft(new ArrayDeque<Node<K, V>>(), root);
+
+      public boolean hasNext() {
+        return !path.isEmpty();
+      } // hasNext()
+
+      public KVPair<K, V> next() {
+        if (path.isEmpty()) {
+          throw new NoSuchElementException();
+        } // if
+        Node<K, V> node = path.pop();
+        descendLeft(path, node.right);
+        return new KVPair<K, V>(node.key, node.val);
+      } // next()
+    }; // new Iterator
+  } // iterator()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the node for a key.
+   *
+   * @param key the key.
+   * @return the node, or null if there is none.
+   */
+  Node<K, V> find(K key) {
+    if (key == null) {
+      return null;
+    } // if
+    Node<K, V> node = root;
+    while (node != null) {
+      int order = key.compareTo(node.key);
+      if (order == 0) {
+        return node;
+      } // if
+      node = (order < 0) ? node.left : node.right;
+    } // while
+    return null;
+  } // find(K)
+
+  /**
+   * Set a key in a subtree.
+   *
+   * @return the new subtree, or node itself if nothing changed.
+   */
+  static <K extends Comparable<? super K>, V> Node<K, V> set(Node<K, V> node, K key, V value) {
+    if (node == null) {
+      return new Node<K, V>(key, value, null, null);
+    } // if
+    int order = key.compareTo(node.key);
+    if (order == 0) {
+      return (node.val == value) ? node : new Node<K, V>(key, value, node.left, node.right);
+    } else if (order < 0) {
+      Node<K, V> left = set(node.left, key, value);
+      return (left == node.left) ? node : balance(node.key, node.val, left, node.right);
+    } else {
+      Node<K, V> right = set(node.right, key, value);
+      return (right == node.right) ? node : balance(node.key, node.val, node.left, right);
+    } // if
+  } // set(Node, K, V)
+
+  /**
+   * Remove a key from a subtree.
+   *
+   * @return the new subtree, or node itself if nothing changed.
+   */
+  static <K extends Comparable<? super K>, V> Node<K, V> remove(Node<K, V> node, K key) {
+    if (node == null) {
+      return null;
+    } // if
+    int order = key.compareTo(node.key);
+    if (order < 0) {
+      Node<K, V> left = remove(node.left, key);
+      return (left == node.left) ? node : balance(node.key, node.val, left, node.right);
+    } else if (order > 0) {
+      Node<K, V> right = remove(node.right, key);
+      return (right == node.right) ? node : balance(node.key, node.val, node.left, right);
+    } else if (node.left == null) {
+      return node.right;
+    } else if (node.right == null) {
+      return node.left;
+    } else {
+      // Replace the node with its successor
+      Node<K, V> successor = node.right;
+      while (successor.left != null) {
+        successor = successor.left;
+      } // while
+      return balance(successor.key, successor.val, node.left, remove(node.right, successor.key));
+    } // if
+  } // remove(Node, K)
+
+  /**
+   * Build a node, rotating if the heights of its subtrees differ by more than one.
+   */
+  static <K, V> Node<K, V> balance(K key, V val, Node<K, V> left, Node<K, V> right) {
+    if (height(left) > height(right) + 1) {
+      if (height(left.left) < height(left.right)) {
+        left = rotateLeft(left.key, left.val, left.left, left.right);
+      } // if
+      return new Node<K, V>(left.key, left.val, left.left,
+          new Node<K, V>(key, val, left.right, right));
+    } else if (height(right) > height(left) + 1) {
+      if (height(right.right) < height(right.left)) {
+        right = rotateRight(right.key, right.val, right.left, right.right);
+      } // if
+      return new Node<K, V>(right.key, right.val,
+          new Node<K, V>(key, val, left, right.left), right.right);
+    } // if
+    return new Node<K, V>(key, val, left, right);
+  } // balance(K, V, Node, Node)
+
+  /**
+   * Build a node whose right child becomes its parent.
+   */
+  static <K, V> Node<K, V> rotateLeft(K key, V val, Node<K, V> left, Node<K, V> right) {
+    return new Node<K, V>(right.key, right.val, new Node<K, V>(key, val, left, right.left),
+        right.right);
+  } // rotateLeft(K, V, Node, Node)
+
+  /**
+   * Build a node whose left child becomes its parent.
+   */
+  static <K, V> Node<K, V> rotateRight(K key, V val, Node<K, V> left, Node<K, V> right) {
+    return new Node<K, V>(left.key, left.val, left.left,
+        new Node<K, V>(key, val, left.right, right));
+  } // rotateRight(K, V, Node, Node)
+
+  /**
+   * Push a node and its chain of left children onto a path.
+   */
+  static <K, V> ArrayDeque<Node<K, V>> descendLeft(ArrayDeque<Node<K, V>> path, Node<K, V> node) {
+    while (node != null) {
+      path.push(node);
+      node = node.left;
+    } // while
+    return path;
+  } // descendLeft(ArrayDeque, Node)
+
+  /**
+   * Get the height of a subtree.
+   */
+  static int height(Node<?, ?> node) {
+    return (node == null) ? 0 : node.height;
+  } // height(Node)
+
+  /**
+   * Get the number of nodes in a subtree.
+   */
+  static int size(Node<?, ?> node) {
+    return (node == null) ? 0 : node.size;
+  } // size(Node)
+} // class PersistentMap